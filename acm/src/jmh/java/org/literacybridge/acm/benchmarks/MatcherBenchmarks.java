@@ -0,0 +1,111 @@
+package org.literacybridge.acm.benchmarks;
+
+import org.literacybridge.acm.gui.assistants.Matcher.ImportableFile;
+import org.literacybridge.acm.gui.assistants.Matcher.MatchableItem;
+import org.literacybridge.acm.gui.assistants.Matcher.Matcher;
+import org.literacybridge.acm.gui.assistants.Matcher.Target;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matcher.autoMatch: matching the messages of a program specification with the audio files
+ * chosen for import, as the Content Import assistant does, with as many files as messages.
+ *
+ * The file names are the message titles as people actually name recordings: some exactly the
+ * title, some with different case or punctuation, some with words missing or reordered, and some
+ * that match nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatcherBenchmarks {
+    private static final int THRESHOLD = 60;
+
+    @Param({"100", "1000", "5000"})
+    public int count;
+
+    private final List<Title> titles = new ArrayList<>();
+    private final List<ImportableFile> files = new ArrayList<>();
+    private Matcher<Title, ImportableFile, Item> matcher;
+
+    /**
+     * A message title from the program specification.
+     */
+    static class Title extends Target {
+        private final String title;
+
+        Title(String title) {
+            this.title = title;
+        }
+
+        @Override
+        public String toString() {
+            return title;
+        }
+    }
+
+    static class Item extends MatchableItem<Title, ImportableFile> {
+        Item(Title left, ImportableFile right) {
+            super(left, right);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(43);
+        for (String title : SyntheticData.messageTitles(count)) {
+            titles.add(new Title(title));
+            String fileName;
+            switch (random.nextInt(5)) {
+            case 0:
+                fileName = title;
+                break;
+            case 1:
+                fileName = title.toLowerCase().replace(' ', '_');
+                break;
+            case 2:
+                fileName = title.substring(title.indexOf(' ') + 1);
+                break;
+            case 3:
+                String[] words = title.split(" ");
+                fileName = words[words.length - 1] + ' ' + String.join(" ", Arrays.copyOf(words, words.length - 1));
+                break;
+            default:
+                fileName = SyntheticData.words(random, 4);
+                break;
+            }
+            files.add(new ImportableFile(new File(fileName + ".mp3")));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setData() {
+        matcher = new Matcher<>();
+        matcher.setData(titles, files, Item::new);
+    }
+
+    @Benchmark
+    public Matcher.MatchStats autoMatch() {
+        return matcher.autoMatch(THRESHOLD);
+    }
+}
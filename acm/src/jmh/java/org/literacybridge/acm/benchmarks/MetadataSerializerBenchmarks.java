@@ -0,0 +1,104 @@
+package org.literacybridge.acm.benchmarks;
+
+import org.literacybridge.acm.store.Category;
+import org.literacybridge.acm.store.LBMetadataSerializer;
+import org.literacybridge.acm.store.Metadata;
+import org.literacybridge.acm.store.MetadataSpecification;
+import org.literacybridge.acm.store.Taxonomy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LBMetadataSerializer: the metadata of one audio item, in version 1 as appended to .a18 files,
+ * and in version 2 as stored in the index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetadataSerializerBenchmarks {
+    private final LBMetadataSerializer serializer = new LBMetadataSerializer();
+    private Taxonomy taxonomy;
+    private Metadata metadata;
+    private List<Category> categories;
+    private byte[] serialized;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        taxonomy = Taxonomy.createTaxonomy(null, null);
+        metadata = SyntheticData.metadata(new Random(41));
+        // Most messages have one or two categories.
+        categories = new ArrayList<>(SyntheticData.leafCategories(taxonomy, 2));
+        serialized = serialize();
+        encoded = encode();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            serializer.serialize(categories, metadata, out);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public Metadata deserialize() throws IOException {
+        Metadata result = new Metadata();
+        Collection<Category> resultCategories = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(serialized))) {
+            serializer.deserialize(result, taxonomy, resultCategories, in);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return serializer.encode(categories, metadata);
+    }
+
+    @Benchmark
+    public Metadata decode() throws IOException {
+        Metadata result = new Metadata();
+        serializer.decode(encoded, 0, encoded.length, result, taxonomy, new ArrayList<>());
+        // Everything, as when the item is edited.
+        result.size();
+        return result;
+    }
+
+    /**
+     * Only the fields that the audio item table shows first.
+     */
+    @Benchmark
+    public Metadata decodeForTable() throws IOException {
+        Metadata result = new Metadata();
+        serializer.decode(encoded, 0, encoded.length, result, taxonomy, new ArrayList<>());
+        result.getMetadataValue(MetadataSpecification.DC_TITLE);
+        result.getMetadataValue(MetadataSpecification.LB_DURATION);
+        result.getMetadataValue(MetadataSpecification.DC_LANGUAGE);
+        return result;
+    }
+}
@@ -0,0 +1,103 @@
+package org.literacybridge.acm.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+import org.literacybridge.acm.store.AudioItem;
+import org.literacybridge.acm.store.LuceneMetadataStore;
+import org.literacybridge.acm.store.MetadataSpecification;
+import org.literacybridge.acm.store.MetadataValue;
+import org.literacybridge.acm.store.Taxonomy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LuceneMetadataStore: opening a store, searching it as the user types, and committing a change.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetadataStoreBenchmarks {
+    @Param({"SMALL", "LARGE"})
+    public SyntheticData.ProgramSize size;
+
+    private File tempDir;
+    // Opened and closed by the open() benchmark.
+    private File openDir;
+    // Kept open for the search and commit benchmarks.
+    private File storeDir;
+    private Taxonomy taxonomy;
+    private LuceneMetadataStore store;
+    private final List<String> queries = new ArrayList<>();
+    private List<AudioItem> items;
+    private final Random random = new Random(37);
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        tempDir = Files.createTempDirectory("acm-jmh-store-").toFile();
+        openDir = new File(tempDir, "open");
+        storeDir = new File(tempDir, "store");
+        taxonomy = Taxonomy.createTaxonomy(null, null);
+        SyntheticData.buildMetadataStore(taxonomy, openDir, size);
+        FileUtils.copyDirectory(openDir, storeDir);
+        store = new LuceneMetadataStore(taxonomy, storeDir);
+        items = new ArrayList<>(store.getAudioItems());
+        // Every prefix of the words, as they're typed into the search box.
+        for (String word : SyntheticData.WORDS) {
+            for (int i = 1; i <= word.length(); i++) {
+                queries.add(word.substring(0, i));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        store.close();
+        FileUtils.deleteQuietly(tempDir);
+    }
+
+    @Benchmark
+    public int open() throws Exception {
+        LuceneMetadataStore openedStore = new LuceneMetadataStore(taxonomy, openDir);
+        int count = openedStore.getAudioItems().size();
+        openedStore.search("", null, null);
+        openedStore.close();
+        return count;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int search() {
+        String query = queries.get(next++ % queries.size());
+        return store.search(query, null, null).getAudioItems().size();
+    }
+
+    @Benchmark
+    public AudioItem commit() throws Exception {
+        AudioItem item = items.get(random.nextInt(items.size()));
+        item.getMetadata().putMetadataField(MetadataSpecification.LB_KEYWORDS,
+            MetadataValue.newValue(SyntheticData.words(random, 3)));
+        store.commit(item);
+        return item;
+    }
+}
@@ -0,0 +1,130 @@
+package org.literacybridge.acm.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+import org.literacybridge.core.spec.ProgramSpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProgramSpec: reading a program specification's .csv files (with CsvReader), and the queries
+ * the TB-Loader and Deployment assistant make of it.
+ *
+ * A program spec in a directory is parsed once per version of its files, and the result kept in
+ * memory and in a snapshot file in a cache directory. load() is warm; coldLoad() has neither
+ * (with deleteSnapshot) or only the snapshot file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgramSpecBenchmarks {
+    @Param({"SMALL", "MEDIUM", "LARGE", "XLARGE"})
+    public SyntheticData.ProgramSize size;
+
+    private File specDir;
+    private File snapshotDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        specDir = Files.createTempDirectory("acm-jmh-progspec-").toFile();
+        SyntheticData.writeProgramSpec(specDir, size);
+        snapshotDir = Files.createTempDirectory("acm-jmh-progspec-snapshots-").toFile();
+        ProgramSpec.setSnapshotDirectory(snapshotDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ProgramSpec.setSnapshotDirectory(null);
+        FileUtils.deleteQuietly(specDir);
+        FileUtils.deleteQuietly(snapshotDir);
+    }
+
+    /**
+     * Makes the next load miss the in-memory copy, by touching the .csv files, and, if cold, the
+     * snapshot file too, by deleting it.
+     */
+    @State(Scope.Thread)
+    public static class Invalidated {
+        @Param({"true", "false"})
+        public boolean deleteSnapshot;
+
+        @Setup(Level.Invocation)
+        public void invalidate(ProgramSpecBenchmarks benchmarks) {
+            File[] files = benchmarks.specDir.listFiles();
+            if (files == null) return;
+            long now = System.currentTimeMillis();
+            for (File file : files) {
+                if (file.getName().endsWith(".csv")) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.setLastModified(now);
+                }
+            }
+            if (deleteSnapshot) {
+                try {
+                    FileUtils.cleanDirectory(benchmarks.snapshotDir);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads everything in the program specification.
+     */
+    @Benchmark
+    public ProgramSpec load() {
+        return loadAll(specDir);
+    }
+
+    /**
+     * Loads everything, parsing the .csv files (when deleteSnapshot) or reading the snapshot file.
+     */
+    @Benchmark
+    public ProgramSpec coldLoad(Invalidated invalidated) {
+        return loadAll(specDir);
+    }
+
+    private static ProgramSpec loadAll(File specDir) {
+        ProgramSpec programSpec = new ProgramSpec(specDir);
+        programSpec.getRecipients();
+        programSpec.getRecipientsMap();
+        programSpec.getDeployments();
+        programSpec.getContentSpec();
+        return programSpec;
+    }
+
+    /**
+     * Loads the program specification and finds the languages and variants of every deployment.
+     */
+    @Benchmark
+    public int deploymentQueries() {
+        ProgramSpec programSpec = new ProgramSpec(specDir);
+        int result = 0;
+        for (int d = 1; d <= size.deployments; d++) {
+            for (String language : programSpec.getLanguagesForDeployment(d)) {
+                result += programSpec.getRecipientsForDeploymentAndLanguage(d, language).size();
+                result += programSpec.getVariantsForDeploymentAndLanguage(d, language).size();
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,341 @@
+package org.literacybridge.acm.benchmarks;
+
+import org.literacybridge.acm.store.Category;
+import org.literacybridge.acm.store.Metadata;
+import org.literacybridge.acm.store.MetadataSpecification;
+import org.literacybridge.acm.store.MetadataValue;
+import org.literacybridge.acm.store.RFC3066LanguageCode;
+import org.literacybridge.acm.store.Taxonomy;
+import org.literacybridge.acm.tools.MetadataStoreBenchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Generators of synthetic program data for the benchmarks: metadata stores, metadata, program
+ * specifications, Talking Book content trees and flash statistics.
+ *
+ * Everything is generated from fixed seeds, so that every run, and every release, measures the
+ * same data.
+ */
+public final class SyntheticData {
+    static final String[] LANGUAGES = {"en", "dga", "tw", "ssl1", "maw", "fr"};
+    static final String[] WORDS = {"health", "water", "farming", "malaria", "school",
+        "market", "cocoa", "rain", "family", "savings", "vaccine", "soil", "story", "song"};
+    private static final String[] CATEGORIES = {"Health", "Agriculture", "Livelihood", "Education", "Gender"};
+
+    /**
+     * Program sizes, from a small pilot to the largest programs we run.
+     */
+    public enum ProgramSize {
+        SMALL(2_000, 100, 4, 4, 6, 2),
+        MEDIUM(10_000, 1_000, 8, 6, 8, 4),
+        LARGE(50_000, 5_000, 12, 8, 10, 6),
+        // A large program spec: 5,000 recipients, 2,000 messages.
+        XLARGE(50_000, 5_000, 20, 10, 10, 6);
+
+        // Audio items in the ACM.
+        final int audioItems;
+        final int recipients;
+        final int deployments;
+        final int playlistsPerDeployment;
+        final int messagesPerPlaylist;
+        final int languages;
+
+        ProgramSize(int audioItems, int recipients, int deployments, int playlistsPerDeployment,
+            int messagesPerPlaylist, int languages) {
+            this.audioItems = audioItems;
+            this.recipients = recipients;
+            this.deployments = deployments;
+            this.playlistsPerDeployment = playlistsPerDeployment;
+            this.messagesPerPlaylist = messagesPerPlaylist;
+            this.languages = languages;
+        }
+    }
+
+    private SyntheticData() {
+    }
+
+    /**
+     * Builds a metadata store with the program's number of audio items, as MetadataStoreBenchmark does.
+     */
+    static void buildMetadataStore(Taxonomy taxonomy, File indexDir, ProgramSize size) throws Exception {
+        MetadataStoreBenchmark.buildIndex(taxonomy, indexDir, size.audioItems);
+    }
+
+    static String words(Random random, int n) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            if (i > 0) result.append(' ');
+            result.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return result.toString();
+    }
+
+    /**
+     * @return the metadata of a typical audio item, with every commonly used field filled in.
+     */
+    static Metadata metadata(Random random) {
+        Metadata metadata = new Metadata();
+        metadata.putMetadataField(MetadataSpecification.DC_TITLE, MetadataValue.newValue(words(random, 4)));
+        metadata.putMetadataField(MetadataSpecification.DC_IDENTIFIER,
+            MetadataValue.newValue(String.format("LB-2_%08x_%d", random.nextInt(), random.nextInt(1000))));
+        metadata.putMetadataField(MetadataSpecification.DC_SOURCE, MetadataValue.newValue("Amplio"));
+        metadata.putMetadataField(MetadataSpecification.DC_PUBLISHER, MetadataValue.newValue("ACM-DEMO"));
+        metadata.putMetadataField(MetadataSpecification.DC_LANGUAGE,
+            MetadataValue.newValue(new RFC3066LanguageCode(LANGUAGES[random.nextInt(LANGUAGES.length)])));
+        metadata.putMetadataField(MetadataSpecification.DTB_REVISION, MetadataValue.newValue("1"));
+        metadata.putMetadataField(MetadataSpecification.LB_DURATION,
+            MetadataValue.newValue(String.format("%02d:%02d  l", random.nextInt(10), random.nextInt(60))));
+        metadata.putMetadataField(MetadataSpecification.LB_MESSAGE_FORMAT, MetadataValue.newValue("Song"));
+        metadata.putMetadataField(MetadataSpecification.LB_TARGET_AUDIENCE, MetadataValue.newValue("Farmers"));
+        metadata.putMetadataField(MetadataSpecification.LB_DATE_RECORDED, MetadataValue.newValue("2021-06-15"));
+        metadata.putMetadataField(MetadataSpecification.LB_KEYWORDS, MetadataValue.newValue(words(random, 3)));
+        metadata.putMetadataField(MetadataSpecification.LB_PRIMARY_SPEAKER, MetadataValue.newValue("Health worker"));
+        metadata.putMetadataField(MetadataSpecification.LB_NOTES, MetadataValue.newValue(words(random, 8)));
+        metadata.putMetadataField(MetadataSpecification.LB_STATUS, MetadataValue.newValue(0));
+        return metadata;
+    }
+
+    /**
+     * @return up to n of the taxonomy's leaf categories, the ones that are assigned to audio items.
+     */
+    static List<Category> leafCategories(Taxonomy taxonomy, int n) {
+        return StreamSupport.stream(taxonomy.breadthFirstIterator().spliterator(), false)
+            .filter(c -> !c.hasChildren() && !taxonomy.isRoot(c))
+            .limit(n)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the titles of the program's messages, as they appear in content.csv.
+     */
+    static List<String> messageTitles(ProgramSize size) {
+        Random random = new Random(17);
+        List<String> titles = new ArrayList<>();
+        for (int d = 1; d <= size.deployments; d++) {
+            for (int p = 1; p <= size.playlistsPerDeployment; p++) {
+                for (int m = 1; m <= size.messagesPerPlaylist; m++) {
+                    titles.add(String.format("%s %d-%d-%d", capitalize(words(random, 3)), d, p, m));
+                }
+            }
+        }
+        return titles;
+    }
+
+    /**
+     * @return n message titles, in the same style as messageTitles(size), for benchmarks that
+     * need a particular number of them.
+     */
+    static List<String> messageTitles(int n) {
+        Random random = new Random(19);
+        List<String> titles = new ArrayList<>();
+        for (int ix = 0; ix < n; ix++) {
+            titles.add(String.format("%s %d-%d-%d", capitalize(words(random, 3)), ix / 100 + 1, ix / 10 % 10 + 1,
+                ix % 10 + 1));
+        }
+        return titles;
+    }
+
+    /**
+     * Writes a program specification, recipients.csv, recipients_map.csv, deployment_spec.csv and
+     * content.csv, as the ProgramSpec reads them.
+     */
+    static void writeProgramSpec(File dir, ProgramSize size) throws IOException {
+        Random random = new Random(23);
+        List<String> languages = new ArrayList<>();
+        for (int i = 0; i < size.languages; i++) languages.add(LANGUAGES[i]);
+
+        try (PrintWriter recipients = csvWriter(new File(dir, "recipients.csv"));
+             PrintWriter recipientsMap = csvWriter(new File(dir, "recipients_map.csv"))) {
+            recipients.println("recipientid,project,partner,affiliate,component,country,region,district," +
+                "communityname,groupname,numhouseholds,numtbs,supportentity,model,languagecode,variant,agent");
+            recipientsMap.println("project,directory,recipientid");
+            for (int r = 0; r < size.recipients; r++) {
+                String recipientId = String.format("%016x", random.nextLong());
+                String community = capitalize(words(random, 2));
+                String group = r % 3 == 0 ? capitalize(words(random, 1)) : "";
+                recipients.printf("%s,DEMO,Amplio,Amplio,Component %d,Ghana,Region %d,District %d,%s,%s,%d,%d,%s,Group,%s,%s,%s%n",
+                    recipientId, r % 4, r % 10, r % 40, community, group, 20 + random.nextInt(200),
+                    1 + random.nextInt(8), "Agent " + (r % 50), languages.get(r % languages.size()),
+                    r % 5 == 0 ? "v1" : "", "Agent " + (r % 50));
+                recipientsMap.printf("DEMO,%s,%s%n",
+                    (community + (group.isEmpty() ? "" : "_" + group)).toUpperCase().replace(' ', '_'), recipientId);
+            }
+        }
+
+        try (PrintWriter deployments = csvWriter(new File(dir, "deployment_spec.csv"))) {
+            deployments.println("project,deployment_num,startdate,enddate,component");
+            for (int d = 1; d <= size.deployments; d++) {
+                int month = (d - 1) % 12 + 1;
+                deployments.printf("DEMO,%d,%d-%02d-01,%d-%02d-28,%s%n", d, 2020 + (d - 1) / 12, month,
+                    2020 + (d - 1) / 12, month, d % 3 == 0 ? "~Component 0" : "");
+            }
+        }
+
+        List<String> titles = messageTitles(size);
+        try (PrintWriter content = csvWriter(new File(dir, "content.csv"))) {
+            content.println("deployment_num,playlist_title,message_title,key_points,languagecode,variant,default_category");
+            int ix = 0;
+            for (int d = 1; d <= size.deployments; d++) {
+                for (int p = 1; p <= size.playlistsPerDeployment; p++) {
+                    String category = CATEGORIES[(d + p) % CATEGORIES.length];
+                    for (int m = 1; m <= size.messagesPerPlaylist; m++) {
+                        // Most messages are for every language; some are for only one or two.
+                        String language = m % 4 == 0 ? languages.get(m % languages.size()) : "";
+                        content.printf("%d,%s %d,%s,\"%s, %s\",%s,%s,%s%n", d, category, p, titles.get(ix++),
+                            capitalize(words(random, 5)), words(random, 4), language, m % 7 == 0 ? "v1" : "",
+                            category);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a tree of files like a Talking Book image: audio in messages/audio, playlists in
+     * messages/lists/1, and small control files in system.
+     * @param dir where to write the tree.
+     * @param audioFiles how many audio files.
+     * @param audioFileSize the size of each audio file.
+     * @return the total number of bytes written.
+     */
+    static long writeContentTree(File dir, int audioFiles, int audioFileSize) throws IOException {
+        Random random = new Random(29);
+        long total = 0;
+        File audioDir = new File(dir, "messages/audio");
+        File listsDir = new File(dir, "messages/lists/1");
+        File systemDir = new File(dir, "system");
+        for (File d : new File[]{audioDir, listsDir, systemDir}) {
+            if (!d.mkdirs() && !d.isDirectory()) throw new IOException("Unable to create directory " + d);
+        }
+        byte[] audio = new byte[audioFileSize];
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < audioFiles; i++) {
+            // Compressed audio looks like random bytes.
+            random.nextBytes(audio);
+            String id = String.format("LB-2_%08x_%d", random.nextInt(), i);
+            write(new File(audioDir, id + ".a18"), audio);
+            total += audio.length;
+            list.append(id).append("\r\n");
+            if (i % 10 == 9 || i == audioFiles - 1) {
+                byte[] listBytes = list.toString().getBytes(StandardCharsets.UTF_8);
+                write(new File(listsDir, String.format("Playlist_%d.txt", i / 10)), listBytes);
+                total += listBytes.length;
+                list.setLength(0);
+            }
+        }
+        for (String name : new String[]{"profiles.txt", "config.txt", "deployment.txt", "firmware.txt"}) {
+            byte[] control = (name + "\r\n" + words(random, 20) + "\r\n").getBytes(StandardCharsets.UTF_8);
+            write(new File(systemDir, name), control);
+            total += control.length;
+        }
+        return total;
+    }
+
+    /**
+     * @return a flashData.bin image, as written by a v1 Talking Book, with statistics for the given
+     * number of messages (at most 40).
+     */
+    static byte[] flashData(int messages) throws IOException {
+        Random random = new Random(31);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FlashWriter out = new FlashWriter(bytes);
+        // struct SystemData
+        out.writeShort(0);
+        out.writeShort(3);
+        out.writeString("B-000C02CA", 12);
+        out.writeString("DEMO-21-4", 20);
+        out.writeString("DEMO-SEATTLE", 40);
+        out.writeString("DEMO-21-4", 20);
+        out.writeShort(15);
+        out.writeShort(6);
+        out.writeShort(2021);
+        // struct SystemCounts2
+        out.writeShort(0);
+        out.writeShort(120);
+        out.writeShort(95);
+        out.writeShort(0);
+        out.writeShort(300);
+        out.writeShort(240);
+        for (int r = 0; r < 5; r++) {
+            out.writeShort(0);
+            out.writeShort(r);
+            out.writeShort(r * 20);
+            out.writeShort(r * 480);
+            out.writeShort(230 + r);
+        }
+        // struct NORmsgMap
+        out.writeShort(0);
+        out.writeShort(messages);
+        for (int m = 0; m < 40; m++) {
+            out.writeString(m < messages ? String.format("LB-2_%08x_%d", random.nextInt(), m) : "", 20);
+        }
+        // struct NORallMsgStats
+        out.writeShort(0);
+        out.writeShort(1);
+        out.writeString("EN", 20);
+        out.writeShort(messages);
+        out.writeShort(5);
+        for (int m = 0; m < messages; m++) {
+            for (int r = 0; r < 5; r++) {
+                out.writeShort(0);
+                out.writeShort(m);
+                out.writeShort(0);
+                out.writeShort(r);
+                for (int c = 0; c < 7; c++) {
+                    out.writeShort(random.nextInt(50));
+                }
+                out.writeShort(random.nextInt(65536));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes the little-endian shorts and 16-bit character strings of the Talking Book's flash.
+     */
+    private static class FlashWriter {
+        private final OutputStream out;
+
+        FlashWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        void writeShort(int value) throws IOException {
+            out.write(value & 0xff);
+            out.write((value >> 8) & 0xff);
+        }
+
+        void writeString(String value, int maxChars) throws IOException {
+            for (int i = 0; i < maxChars; i++) {
+                writeShort(i < value.length() ? value.charAt(i) : 0);
+            }
+        }
+    }
+
+    private static String capitalize(String s) {
+        return s.isEmpty() ? s : Character.toUpperCase(s.charAt(0)) + s.substring(1);
+    }
+
+    private static PrintWriter csvWriter(File file) throws IOException {
+        return new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    private static void write(File file, byte[] content) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+    }
+}
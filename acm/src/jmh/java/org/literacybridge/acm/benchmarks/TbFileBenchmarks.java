@@ -0,0 +1,69 @@
+package org.literacybridge.acm.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+import org.literacybridge.core.fs.FsFile;
+import org.literacybridge.core.fs.TbFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TbFile.copyDir: copying a Talking Book image, as the TB-Loader does onto a Talking Book.
+ * Here both ends are local directories, so this measures the copy itself, not the device.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TbFileBenchmarks {
+    @Param({"200"})
+    public int audioFiles;
+
+    @Param({"262144"})
+    public int audioFileSize;
+
+    private File tempDir;
+    private TbFile source;
+    private File targetDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("acm-jmh-tbfile-").toFile();
+        File sourceDir = new File(tempDir, "source");
+        SyntheticData.writeContentTree(sourceDir, audioFiles, audioFileSize);
+        source = new FsFile(sourceDir);
+        targetDir = new File(tempDir, "target");
+    }
+
+    @Setup(Level.Invocation)
+    public void clean() {
+        FileUtils.deleteQuietly(targetDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtils.deleteQuietly(tempDir);
+    }
+
+    @Benchmark
+    public long copyDir() throws IOException {
+        return TbFile.copyDir(source, new FsFile(targetDir));
+    }
+}
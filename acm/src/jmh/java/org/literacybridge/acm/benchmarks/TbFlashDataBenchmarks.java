@@ -0,0 +1,60 @@
+package org.literacybridge.acm.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+import org.literacybridge.core.fs.FsFile;
+import org.literacybridge.core.fs.TbFile;
+import org.literacybridge.core.tbloader.TbFlashData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * TbFlashData: parsing the statistics from a v1 Talking Book's flashData.bin.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TbFlashDataBenchmarks {
+    // TbFlashData logs everything it parses; keep that out of the measurement.
+    private final Logger flashDataLogger = Logger.getLogger(TbFlashData.class.getName());
+
+    private File tempDir;
+    private TbFile flashData;
+
+    @Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void setUp() throws IOException {
+        flashDataLogger.setLevel(Level.WARNING);
+        tempDir = Files.createTempDirectory("acm-jmh-flash-").toFile();
+        File flashDataFile = new File(tempDir, "flashData.bin");
+        Files.write(flashDataFile.toPath(), SyntheticData.flashData(40));
+        flashData = new FsFile(flashDataFile);
+    }
+
+    @TearDown(org.openjdk.jmh.annotations.Level.Trial)
+    public void tearDown() {
+        FileUtils.deleteQuietly(tempDir);
+    }
+
+    @Benchmark
+    public TbFlashData parse() throws IOException {
+        return new TbFlashData(flashData);
+    }
+}
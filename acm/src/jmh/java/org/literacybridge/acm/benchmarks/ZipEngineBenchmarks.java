@@ -0,0 +1,92 @@
+package org.literacybridge.acm.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+import org.literacybridge.core.fs.ZipEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ZipEngine: zipping and unzipping a synthetic 2 GB deployment tree, on one thread the way
+ * ZipUnzip used to (deflating everything), and on several (storing the audio). Each operation
+ * takes seconds, so each iteration is a single one. Needs about 6 GB of temporary disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ZipEngineBenchmarks {
+    // 8192 files of 256 KB: 2 GB of audio.
+    @Param({"8192"})
+    public int audioFiles;
+
+    @Param({"262144"})
+    public int audioFileSize;
+
+    @Param({"1", "8"})
+    public int threads;
+
+    private ZipEngine engine;
+    private File tempDir;
+    private File sourceDir;
+    private File zipFile;
+    private File outputZip;
+    private File outputDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ZipEngine.Builder builder = new ZipEngine.Builder().withThreads(threads);
+        if (threads == 1) {
+            builder.withParallelCompression(false).withStoredExtensions(Collections.emptySet());
+        }
+        engine = builder.build();
+        tempDir = Files.createTempDirectory("acm-jmh-zipengine-").toFile();
+        sourceDir = new File(tempDir, "source");
+        SyntheticData.writeContentTree(sourceDir, audioFiles, audioFileSize);
+        zipFile = new File(tempDir, "source.zip");
+        engine.zip(sourceDir, zipFile, false, null);
+        outputZip = new File(tempDir, "output.zip");
+        outputDir = new File(tempDir, "output");
+    }
+
+    @Setup(Level.Iteration)
+    public void clean() {
+        FileUtils.deleteQuietly(outputZip);
+        FileUtils.deleteQuietly(outputDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtils.deleteQuietly(tempDir);
+    }
+
+    @Benchmark
+    public long zip() throws IOException {
+        engine.zip(sourceDir, outputZip, false, null);
+        return outputZip.length();
+    }
+
+    @Benchmark
+    public File unzip() throws IOException {
+        engine.unzip(zipFile, outputDir, null);
+        return outputDir;
+    }
+}
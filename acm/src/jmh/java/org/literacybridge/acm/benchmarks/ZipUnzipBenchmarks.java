@@ -0,0 +1,79 @@
+package org.literacybridge.acm.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+import org.literacybridge.core.fs.ZipUnzip;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ZipUnzip: zipping and unzipping a tree like a Talking Book image.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZipUnzipBenchmarks {
+    @Param({"200"})
+    public int audioFiles;
+
+    @Param({"262144"})
+    public int audioFileSize;
+
+    private File tempDir;
+    private File sourceDir;
+    private File zipFile;
+    private File outputZip;
+    private File outputDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("acm-jmh-zip-").toFile();
+        sourceDir = new File(tempDir, "source");
+        SyntheticData.writeContentTree(sourceDir, audioFiles, audioFileSize);
+        zipFile = new File(tempDir, "source.zip");
+        ZipUnzip.zip(sourceDir, zipFile);
+        outputZip = new File(tempDir, "output.zip");
+        outputDir = new File(tempDir, "output");
+    }
+
+    @Setup(Level.Invocation)
+    public void clean() {
+        FileUtils.deleteQuietly(outputZip);
+        FileUtils.deleteQuietly(outputDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtils.deleteQuietly(tempDir);
+    }
+
+    @Benchmark
+    public long zip() throws IOException {
+        ZipUnzip.zip(sourceDir, outputZip);
+        return outputZip.length();
+    }
+
+    @Benchmark
+    public File unzip() throws IOException {
+        ZipUnzip.unzip(zipFile, outputDir);
+        return outputDir;
+    }
+}
@@ -0,0 +1,223 @@
+package org.literacybridge.acm.tbbuilder;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.literacybridge.acm.config.ACMConfiguration;
+import org.literacybridge.acm.config.DBConfiguration;
+import org.literacybridge.acm.deployment.DeploymentInfo;
+import org.literacybridge.acm.gui.CommandLineParams;
+import org.literacybridge.acm.gui.assistants.Deployment.PlaylistPrompts;
+import org.literacybridge.acm.store.AudioItem;
+import org.literacybridge.acm.utils.LogHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Creates the TBv2 images of a synthetic deployment twice, once one image at a time, and once
+ * several at a time, and reports the times and whether the two results are the same.
+ *
+ * The deployment has a package for each variant of each language, each with playlists made from
+ * the ACM's messages in that language. The variants of a language share all of their audio, as
+ * real variants share most of theirs. The ACM must have the system prompts for the languages.
+ *
+ * Built with the JMH benchmarks ("gradle jmhClasses"), in the tbbuilder package for access to CreateForV2,
+ * but not a JMH benchmark itself; from the acm directory:
+ *
+ * java -cp build/classes/java/jmh:build/classes/java/main:lib/* org.literacybridge.acm.tbbuilder.ImageBuildBenchmark \
+ *     --acm ACM-DEMO --language en --variants 4 --threads 4
+ */
+public class ImageBuildBenchmark {
+    // Lines that vary from build to build, like "#------- Created on 2021/03/04 @ 12:34:56 PST --------".
+    private static final String COMMENT_PREFIX = "#";
+
+    private final Params params;
+
+    public static void main(String[] args) throws Exception {
+        new LogHelper().inDirectory("logs").withName("ImageBuildBenchmark.log").initialize();
+        Params params = new Params();
+        CmdLineParser parser = new CmdLineParser(params);
+        try {
+            parser.parseArgument(args);
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage());
+            System.err.println(String.format("java -cp build/classes/java/jmh:build/classes/java/main:lib/* %s ",
+                ImageBuildBenchmark.class.getName()));
+            parser.printUsage(System.err);
+            System.exit(1);
+        }
+
+        boolean same = new ImageBuildBenchmark(params).run();
+        System.exit(same ? 0 : 4);
+    }
+
+    private ImageBuildBenchmark(Params params) {
+        this.params = params;
+    }
+
+    /**
+     * Builds the images serially and in parallel, and compares them.
+     * @return true if both builds created the same files.
+     * @throws Exception if the ACM can't be opened or an image can't be created.
+     */
+    private boolean run() throws Exception {
+        CommandLineParams acmParams = new CommandLineParams();
+        acmParams.disableUI = true;
+        acmParams.sharedACM = ACMConfiguration.cannonicalAcmDirectoryName(params.acmName);
+        ACMConfiguration.initialize(acmParams);
+        ACMConfiguration.getInstance().setCurrentDB(acmParams.sharedACM);
+        DBConfiguration dbConfig = ACMConfiguration.getInstance().getCurrentDB();
+
+        DeploymentInfo deploymentInfo = buildDeploymentInfo(dbConfig.getProgramId());
+        System.out.printf("Deployment %s: %d package(s)%n", deploymentInfo.getName(),
+            deploymentInfo.getPackages().size());
+
+        TBBuilder tbBuilder = new TBBuilder(dbConfig, params.deploymentNo, deploymentInfo.getName(), s -> {},
+            Exception::printStackTrace);
+        TBBuilder.BuilderContext baseContext = new TBBuilder.BuilderContext(dbConfig, params.deploymentNo,
+            deploymentInfo.getName(), s -> {}, Exception::printStackTrace);
+
+        File serialDir = build(tbBuilder, baseContext, deploymentInfo, 1);
+        File parallelDir = build(tbBuilder, baseContext, deploymentInfo, params.threads);
+
+        List<String> differences = compare(serialDir, parallelDir);
+        if (differences.isEmpty()) {
+            System.out.println("The serial and parallel builds are the same.");
+        } else {
+            System.out.printf("The serial and parallel builds differ in %d file(s):%n", differences.size());
+            differences.forEach(d -> System.out.printf("    %s%n", d));
+        }
+        return differences.isEmpty();
+    }
+
+    private DeploymentInfo buildDeploymentInfo(String programId) {
+        DeploymentInfo deploymentInfo = new DeploymentInfo(programId, params.deploymentNo, Calendar.getInstance());
+        Map<String, List<AudioItem>> itemsByLanguage = ACMConfiguration.getInstance()
+            .getCurrentDB()
+            .getMetadataStore()
+            .getAudioItems()
+            .stream()
+            .filter(item -> params.languages.contains(item.getLanguageCode()))
+            .sorted((a, b) -> a.getId().compareTo(b.getId()))
+            .collect(Collectors.groupingBy(AudioItem::getLanguageCode, TreeMap::new, Collectors.toList()));
+
+        for (Map.Entry<String, List<AudioItem>> entry : itemsByLanguage.entrySet()) {
+            List<AudioItem> items = entry.getValue();
+            if (items.size() < 2) continue;
+            for (int variantNo = 0; variantNo < params.variants; variantNo++) {
+                String variant = variantNo == 0 ? "" : "v" + variantNo;
+                DeploymentInfo.PackageInfo packageInfo = deploymentInfo.addPackage(entry.getKey(), variant);
+                for (int playlistNo = 0; playlistNo < params.playlists; playlistNo++) {
+                    String title = "Playlist " + (playlistNo + 1);
+                    // The first two messages stand in for the playlist's prompts.
+                    PlaylistPrompts prompts = new PlaylistPrompts(title, entry.getKey(),
+                        String.format("%d-0", playlistNo + 1), null, items.get(0), null, items.get(1));
+                    DeploymentInfo.PackageInfo.PlaylistInfo playlistInfo = packageInfo.addPlaylist(
+                        packageInfo.new PlaylistBuilder().withTitle(title).withPrompts(prompts).isLocked(true));
+                    for (int i = playlistNo; i < items.size(); i += params.playlists) {
+                        playlistInfo.addContent(items.get(i));
+                    }
+                }
+            }
+        }
+        deploymentInfo.prune();
+        return deploymentInfo;
+    }
+
+    /**
+     * Creates the deployment's TBv2 images, into a staging directory of their own.
+     * @return the staged deployment directory.
+     */
+    private File build(TBBuilder tbBuilder, TBBuilder.BuilderContext baseContext, DeploymentInfo deploymentInfo,
+        int threads) throws Exception {
+        TBBuilder.BuilderContext builderContext = new TBBuilder.BuilderContext("bench-" + threads + "-", baseContext);
+        builderContext.imageThreads = threads;
+        CreateForV2 createForV2 = new CreateForV2(tbBuilder, builderContext, deploymentInfo);
+
+        long startTime = System.currentTimeMillis();
+        createForV2.go();
+        System.out.printf("%d thread(s): %d ms%n", threads, System.currentTimeMillis() - startTime);
+        return builderContext.stagedDeploymentDir;
+    }
+
+    /**
+     * Compares the images, manifests, and shadow files of two builds.
+     * @return the paths of the files that are missing from one build, or different in the two.
+     */
+    private List<String> compare(File serialDir, File parallelDir) throws IOException {
+        List<String> differences = new ArrayList<>();
+        for (String dir : Arrays.asList("images.v2", "manifests.v2", "shadowFiles")) {
+            Map<String, File> serialFiles = listFiles(new File(serialDir, dir));
+            Map<String, File> parallelFiles = listFiles(new File(parallelDir, dir));
+            for (String path : serialFiles.keySet()) {
+                File parallelFile = parallelFiles.get(path);
+                if (parallelFile == null) {
+                    differences.add(dir + "/" + path + " (only in serial)");
+                } else if (!sameContent(serialFiles.get(path), parallelFile)) {
+                    differences.add(dir + "/" + path);
+                }
+            }
+            for (String path : parallelFiles.keySet()) {
+                if (!serialFiles.containsKey(path)) {
+                    differences.add(dir + "/" + path + " (only in parallel)");
+                }
+            }
+        }
+        return differences;
+    }
+
+    private static Map<String, File> listFiles(File dir) throws IOException {
+        Map<String, File> files = new TreeMap<>();
+        if (dir.isDirectory()) {
+            Files.walk(dir.toPath())
+                .filter(Files::isRegularFile)
+                .forEach(p -> files.put(dir.toPath().relativize(p).toString().replace(File.separatorChar, '/'),
+                    p.toFile()));
+        }
+        return files;
+    }
+
+    private static boolean sameContent(File a, File b) throws IOException {
+        if (a.getName().endsWith(".txt")) {
+            return textLines(a).equals(textLines(b));
+        }
+        return Arrays.equals(Files.readAllBytes(a.toPath()), Files.readAllBytes(b.toPath()));
+    }
+
+    private static List<String> textLines(File file) throws IOException {
+        return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)
+            .stream()
+            .filter(line -> !line.startsWith(COMMENT_PREFIX))
+            .collect(Collectors.toList());
+    }
+
+    private static final class Params {
+        @Option(name = "--acm", aliases = "-a", required = true, usage = "ACM in which the audio items are.", metaVar = "ACM")
+        String acmName;
+
+        @Option(name = "--language", aliases = "-l", required = true, usage = "Language(s) for the packages.", metaVar = "LANGUAGE")
+        List<String> languages;
+
+        @Option(name = "--variants", usage = "Packages per language, default 3.", metaVar = "N")
+        int variants = 3;
+
+        @Option(name = "--playlists", usage = "Playlists per package, default 4.", metaVar = "N")
+        int playlists = 4;
+
+        @Option(name = "--deployment", usage = "Deployment number, default 99.", metaVar = "N")
+        int deploymentNo = 99;
+
+        @Option(name = "--threads", aliases = "-t", usage = "Threads for the parallel build.", metaVar = "N")
+        int threads = TBBuilder.BuilderContext.DEFAULT_IMAGE_THREADS;
+    }
+}
@@ -0,0 +1,92 @@
+package org.literacybridge.acm.tools;
+
+import org.apache.commons.io.FileUtils;
+import org.literacybridge.acm.audioconverter.api.ExternalConverter;
+import org.literacybridge.acm.repository.AudioConversionEngine;
+import org.literacybridge.acm.repository.AudioItemRepository.AudioFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Measures audio conversion throughput for various sizes of the conversion thread pool.
+ *
+ * Converts every .wav file in a directory to A18 and to MP3, once for each requested thread count,
+ * and reports files per second and speedup relative to the first thread count. Requires the
+ * converters in ~/Amplio/ACM/software/converters; A18 conversion is only available on Windows.
+ *
+ * Built with the JMH benchmarks ("gradle jmhClasses"), but not a JMH benchmark itself; from the acm
+ * directory:
+ *
+ * java -cp build/classes/java/jmh:build/classes/java/main:lib/* org.literacybridge.acm.tools.ConversionBenchmark {wav-dir} [1,2,4,8]
+ */
+public class ConversionBenchmark {
+    private static final AudioFormat[] TARGET_FORMATS = {AudioFormat.A18, AudioFormat.MP3};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            printUsage();
+            System.exit(1);
+        }
+        File wavDir = new File(args[0]);
+        File[] wavFiles = wavDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".wav"));
+        if (wavFiles == null || wavFiles.length == 0) {
+            System.err.printf("No .wav files found in '%s'.\n", wavDir);
+            System.exit(1);
+        }
+        List<Integer> threadCounts = Arrays.stream((args.length > 1 ? args[1] : "1,2,4,8").split(","))
+            .map(String::trim)
+            .map(Integer::parseInt)
+            .collect(Collectors.toList());
+
+        System.out.printf("Converting %d files to %s with %s threads (%d processors).\n",
+            wavFiles.length, Arrays.toString(TARGET_FORMATS), threadCounts,
+            Runtime.getRuntime().availableProcessors());
+
+        double baseline = 0;
+        for (int threads : threadCounts) {
+            long millis = runOnce(wavFiles, threads);
+            double filesPerSecond = wavFiles.length * TARGET_FORMATS.length * 1000.0 / Math.max(1, millis);
+            if (baseline == 0) baseline = filesPerSecond;
+            System.out.printf("threads: %3d  time: %7d ms  conversions/sec: %7.2f  speedup: %5.2fx\n",
+                threads, millis, filesPerSecond, filesPerSecond / baseline);
+        }
+        System.exit(0);
+    }
+
+    private static long runOnce(File[] wavFiles, int threads) throws Exception {
+        AudioConversionEngine engine = new AudioConversionEngine(threads);
+        ExternalConverter converter = new ExternalConverter();
+        File outDir = Files.createTempDirectory("acm-conversion-benchmark-").toFile();
+        try {
+            AudioConversionEngine.Batch batch = engine.newBatch();
+            long startTime = System.currentTimeMillis();
+            for (File wavFile : wavFiles) {
+                for (AudioFormat format : TARGET_FORMATS) {
+                    // Each source file gets its own output directory, which also serves as the converter's
+                    // temp directory, so concurrent conversions never share intermediate files.
+                    File targetDir = new File(outDir, format.getFileExtension() + File.separator + wavFile.getName());
+                    File targetFile = ExternalConverter.targetFile(wavFile, targetDir, format.getAudioConversionFormat());
+                    batch.submit(targetFile.getPath(), () -> {
+                        if (!targetDir.mkdirs()) throw new IOException("Can't create " + targetDir);
+                        converter.convert(wavFile, targetFile, targetDir, format.getAudioConversionFormat(), true);
+                        return targetFile;
+                    });
+                }
+            }
+            batch.await();
+            return System.currentTimeMillis() - startTime;
+        } finally {
+            FileUtils.deleteQuietly(outDir);
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: ConversionBenchmark {directory-of-wav-files} [thread-counts, like 1,2,4,8]");
+        System.err.println("  Converts the .wav files to A18 and MP3 with each number of threads, and reports throughput.");
+    }
+}
@@ -0,0 +1,170 @@
+package org.literacybridge.acm.tools;
+
+import org.apache.commons.io.FileUtils;
+import org.literacybridge.acm.store.AudioItem;
+import org.literacybridge.acm.store.Category;
+import org.literacybridge.acm.store.LuceneMetadataStore;
+import org.literacybridge.acm.store.MetadataSpecification;
+import org.literacybridge.acm.store.MetadataValue;
+import org.literacybridge.acm.store.Playlist;
+import org.literacybridge.acm.store.RFC3066LanguageCode;
+import org.literacybridge.acm.store.Taxonomy;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Measures how long it takes to open a metadata store, eagerly and lazily, and how much heap the
+ * open store occupies.
+ *
+ * Builds a synthetic index of N audio items (50,000 by default) in a temporary directory, with
+ * titles, keywords, languages, categories, and playlists, then opens it in each mode. "First
+ * window" is the time to open the store and have what the main window needs to first paint:
+ * the item count, the unfiltered search (for the facet counts), and the first screenful of items.
+ *
+ * Built with the JMH benchmarks ("gradle jmhClasses"), but not a JMH benchmark itself; from the acm
+ * directory:
+ *
+ * java -cp build/classes/java/jmh:build/classes/java/main:lib/* org.literacybridge.acm.tools.MetadataStoreBenchmark [items]
+ */
+public class MetadataStoreBenchmark {
+    private static final int FIRST_PAGE = 50;
+    private static final String[] LANGUAGES = {"en", "dga", "tw", "ssl1", "maw", "fr"};
+    private static final String[] WORDS = {"health", "water", "farming", "malaria", "school",
+        "market", "cocoa", "rain", "family", "savings", "vaccine", "soil", "story", "song"};
+
+    public static void main(String[] args) throws Exception {
+        int numItems = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        File indexDir = Files.createTempDirectory("acm-store-benchmark-").toFile();
+        try {
+            Taxonomy taxonomy = Taxonomy.createTaxonomy(null, null);
+            long startTime = System.currentTimeMillis();
+            buildIndex(taxonomy, indexDir, numItems);
+            System.out.printf("Built synthetic index of %d items in %d ms.\n", numItems,
+                System.currentTimeMillis() - startTime);
+
+            // Once to warm up the JVM and the file system cache, then measure each mode.
+            measure(taxonomy, indexDir, false);
+            for (boolean lazy : new boolean[]{false, true}) {
+                Result result = measure(taxonomy, indexDir, lazy);
+                System.out.printf("%-5s  open: %6d ms  first window: %6d ms  heap: %6.1f MB\n",
+                    lazy ? "lazy" : "eager", result.openMillis, result.firstWindowMillis,
+                    result.heapBytes / 1024.0 / 1024.0);
+            }
+        } finally {
+            FileUtils.deleteQuietly(indexDir);
+        }
+        System.exit(0);
+    }
+
+    private static Result measure(Taxonomy taxonomy, File indexDir, boolean lazy) throws Exception {
+        long heapBefore = usedHeap();
+        long startTime = System.nanoTime();
+        LuceneMetadataStore store = new LuceneMetadataStore(taxonomy, indexDir, lazy);
+        long openMillis = (System.nanoTime() - startTime) / 1000000;
+
+        int count = store.getAudioItems().size();
+        store.search("", null, null);
+        Iterator<AudioItem> it = store.getAudioItems().iterator();
+        for (int i = 0; i < FIRST_PAGE && it.hasNext(); i++) {
+            it.next().getTitle();
+        }
+        long firstWindowMillis = (System.nanoTime() - startTime) / 1000000;
+
+        long heapBytes = usedHeap() - heapBefore;
+        if (count == 0) throw new IllegalStateException("Empty store");
+        return new Result(openMillis, firstWindowMillis, heapBytes, store);
+    }
+
+    /**
+     * Builds a synthetic metadata store of numItems audio items, with a playlist for every 100 items.
+     * Also used by SearchBenchmark and the JMH benchmarks.
+     * @param taxonomy for the items' categories.
+     * @param indexDir an empty directory for the index.
+     * @param numItems how many audio items to create.
+     * @throws Exception if the store can't be written.
+     */
+    public static void buildIndex(Taxonomy taxonomy, File indexDir, int numItems) throws Exception {
+        Random random = new Random(42);
+        List<Category> leaves = StreamSupport.stream(taxonomy.breadthFirstIterator().spliterator(), false)
+            .filter(c -> !c.hasChildren() && !taxonomy.isRoot(c))
+            .limit(100)
+            .collect(Collectors.toList());
+        LuceneMetadataStore store = new LuceneMetadataStore(taxonomy, indexDir);
+
+        List<AudioItem> batch = new ArrayList<>();
+        List<AudioItem> all = new ArrayList<>();
+        for (int i = 0; i < numItems; i++) {
+            AudioItem item = store.newAudioItem(String.format("LB-2_%08x_%d", random.nextInt(), i));
+            item.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+                MetadataValue.newValue(words(random, 4)));
+            item.getMetadata().putMetadataField(MetadataSpecification.LB_KEYWORDS,
+                MetadataValue.newValue(words(random, 3)));
+            item.getMetadata().putMetadataField(MetadataSpecification.DC_LANGUAGE,
+                MetadataValue.newValue(new RFC3066LanguageCode(LANGUAGES[random.nextInt(LANGUAGES.length)])));
+            if (!leaves.isEmpty()) {
+                item.addCategory(leaves.get(random.nextInt(leaves.size())));
+            }
+            batch.add(item);
+            all.add(item);
+            if (batch.size() == 1000) {
+                store.commit(batch.toArray(new AudioItem[0]));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            store.commit(batch.toArray(new AudioItem[0]));
+        }
+
+        // A playlist for every 100 items, of 20 items each.
+        List<Playlist> playlists = new ArrayList<>();
+        for (int p = 0; p < numItems / 100; p++) {
+            Playlist playlist = store.newPlaylist("playlist-" + p);
+            for (int i = 0; i < 20; i++) {
+                playlist.addAudioItem(all.get(random.nextInt(all.size())));
+            }
+            playlists.add(playlist);
+        }
+        store.commit(playlists.toArray(new Playlist[0]));
+        store.close();
+    }
+
+    private static String words(Random random, int n) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            if (i > 0) result.append(' ');
+            result.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return result.toString();
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static class Result {
+        final long openMillis;
+        final long firstWindowMillis;
+        final long heapBytes;
+        // Keeps the store reachable until the heap has been measured.
+        final LuceneMetadataStore store;
+
+        Result(long openMillis, long firstWindowMillis, long heapBytes, LuceneMetadataStore store) {
+            this.openMillis = openMillis;
+            this.firstWindowMillis = firstWindowMillis;
+            this.heapBytes = heapBytes;
+            this.store = store;
+        }
+    }
+}
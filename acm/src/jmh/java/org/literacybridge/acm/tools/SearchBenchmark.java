@@ -0,0 +1,102 @@
+package org.literacybridge.acm.tools;
+
+import org.apache.commons.io.FileUtils;
+import org.literacybridge.acm.store.LuceneMetadataStore;
+import org.literacybridge.acm.store.SearchResult;
+import org.literacybridge.acm.store.Taxonomy;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures the latency of search-as-you-type: a search for every prefix of a few words, as the
+ * search box issues them while the word is typed ("h", "he", "hea", ...).
+ *
+ * Builds the same synthetic index as MetadataStoreBenchmark (50,000 items by default), opens it,
+ * runs the searches a few times to warm up, then reports the mean, median and 99th percentile
+ * of the measured searches.
+ *
+ * Built with the JMH benchmarks ("gradle jmhClasses"), but not a JMH benchmark itself; from the acm
+ * directory:
+ *
+ * java -cp build/classes/java/jmh:build/classes/java/main:lib/* org.literacybridge.acm.tools.SearchBenchmark [items]
+ */
+public class SearchBenchmark {
+    private static final String[] TYPED = {"health", "malaria", "water farming", "vaccine", "savings"};
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 20;
+
+    public static void main(String[] args) throws Exception {
+        int numItems = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        File indexDir = Files.createTempDirectory("acm-search-benchmark-").toFile();
+        try {
+            Taxonomy taxonomy = Taxonomy.createTaxonomy(null, null);
+            long startTime = System.currentTimeMillis();
+            MetadataStoreBenchmark.buildIndex(taxonomy, indexDir, numItems);
+            System.out.printf("Built synthetic index of %d items in %d ms.\n", numItems,
+                System.currentTimeMillis() - startTime);
+
+            LuceneMetadataStore store = new LuceneMetadataStore(taxonomy, indexDir);
+            List<String> queries = prefixes();
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                search(store, queries, null);
+            }
+            List<Long> nanos = new ArrayList<>();
+            long hits = 0;
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                hits += search(store, queries, nanos);
+            }
+            store.close();
+
+            Collections.sort(nanos);
+            long total = 0;
+            for (long n : nanos) total += n;
+            System.out.printf("%d searches (%d hits): mean %.2f ms  p50 %.2f ms  p99 %.2f ms  max %.2f ms\n",
+                nanos.size(), hits, total / (double) nanos.size() / 1e6, percentile(nanos, 50) / 1e6,
+                percentile(nanos, 99) / 1e6, nanos.get(nanos.size() - 1) / 1e6);
+        } finally {
+            FileUtils.deleteQuietly(indexDir);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * @return every prefix of every typed string, in the order they'd be typed.
+     */
+    private static List<String> prefixes() {
+        List<String> queries = new ArrayList<>();
+        for (String typed : TYPED) {
+            for (int i = 1; i <= typed.length(); i++) {
+                if (typed.charAt(i - 1) != ' ') {
+                    queries.add(typed.substring(0, i));
+                }
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Runs each query once.
+     * @param nanos if not null, receives the time of each search.
+     * @return the total number of hits, so that the searches can't be optimized away.
+     */
+    private static long search(LuceneMetadataStore store, List<String> queries, List<Long> nanos) {
+        long hits = 0;
+        for (String query : queries) {
+            long startTime = System.nanoTime();
+            SearchResult result = store.search(query, null, null);
+            long elapsed = System.nanoTime() - startTime;
+            hits += result.getAudioItems().size();
+            if (nanos != null) nanos.add(elapsed);
+        }
+        return hits;
+    }
+
+    private static long percentile(List<Long> sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+}
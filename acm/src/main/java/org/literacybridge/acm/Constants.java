@@ -27,6 +27,7 @@ public class Constants {
     public final static File USER_HOME_DIR = new File(
       System.getProperty("user.home", "."));
   public final static long DEFAULT_CACHE_SIZE_IN_BYTES = 2L * 1024L * 1024L * 1024L; // 2GB
+  public final static long DEFAULT_CONVERSION_CACHE_SIZE_IN_BYTES = 1024L * 1024L * 1024L; // 1GB
 
   public final static String USER_NAME = "USER_NAME";
   public final static String USER_CONTACT_INFO = "USER_CONTACT_INFO";
@@ -36,6 +37,7 @@ public class Constants {
   public final static String AUDIO_LANGUAGES = "AUDIO_LANGUAGES";
   public final static String PRE_CACHE_WAV = "PRE_CACHE_WAV";
   public final static String CACHE_SIZE_PROP_NAME = "CACHE_SIZE_IN_BYTES";
+  public final static String CONVERSION_CACHE_SIZE_PROP_NAME = "CONVERSION_CACHE_SIZE_IN_BYTES";
   public final static String DESCRIPTION_PROP_NAME = "DESCRIPTION";
   public final static String FRIENDLY_NAME_PROP_NAME = "NAME";
   public final static String STRICT_DEPLOYMENT_NAMING = "STRICT_DEPLOYMENT_NAMING";
@@ -56,6 +58,10 @@ public class Constants {
   public final static String FORCE_WAV_CONVERSION = "FORCE_WAV_CONVERSION";
   public final static String HAS_TBV2_DEVICES = "HAS_TBV2_DEVICES";
   public final static String NOTIFY_LIST = "NOTIFY_LIST";
+  public final static String CONVERSION_THREADS = "CONVERSION_THREADS";
+  public final static String LAZY_METADATA_LOADING = "LAZY_METADATA_LOADING";
+  public final static String DB_SNAPSHOTS = "DB_SNAPSHOTS";
+  public final static String COMPACT_METADATA = "COMPACT_METADATA";
 
   // Gather obsolete property names here. We could write code to remove these from the properties file.
   public final static String[] OBSOLETE_PROPERTY_NAMES = {"NEXT_CORRELATION_ID", "DEPLOYMENT_CHOICE", "USE_AWS_LOCKING",
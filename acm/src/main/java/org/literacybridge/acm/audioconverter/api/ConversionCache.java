@@ -0,0 +1,404 @@
+package org.literacybridge.acm.audioconverter.api;
+
+import org.apache.commons.io.FileUtils;
+import org.literacybridge.core.fs.FileHash;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A persistent, content addressed cache of converted audio files.
+ *
+ * Entries are keyed by the SHA-256 of the source file plus the parameters of the target format
+ * (extension, bit rate, sample rate, and for A18 the algorithm and header choice). Two audio items,
+ * or two programs, with the same source audio share one entry, and entries survive ACM restarts.
+ *
+ * Eviction is "greedy dual size frequency": every entry has a priority of
+ *     L + hits * (milliseconds it took to convert) / (size in KB)
+ * and the entry with the lowest priority is evicted first. L is raised to the priority of each
+ * evicted entry, so entries that haven't been used in a while age out, but an expensive A18
+ * conversion outlives a cheap WAV conversion of the same age.
+ *
+ * Changes are appended to the index as they happen; the whole index is only rewritten when
+ * most of it is superseded, and at shutdown.
+ */
+public class ConversionCache {
+    private static final Logger LOG = Logger.getLogger(ConversionCache.class.getName());
+    static final String INDEX_FILE_NAME = "conversion-cache.index";
+    // Rewrite the index when it has more than this many appended records, and more than it has entries.
+    private static final int MIN_RECORDS_TO_COMPACT = 1024;
+
+    // Index records other than entries.
+    private static final String INFLATION = "L\t";
+    private static final String REMOVED = "X\t";
+
+    private static final Map<File, ConversionCache> instances = new HashMap<>();
+
+    /**
+     * Gets the cache for the given directory, creating it if necessary. There is only one cache
+     * object per directory.
+     * @param cacheDir where the cached files live.
+     * @param maxSizeInBytes the size above which entries are evicted.
+     * @return the cache.
+     */
+    public static synchronized ConversionCache getInstance(File cacheDir, long maxSizeInBytes) {
+        File key = cacheDir.getAbsoluteFile();
+        ConversionCache cache = instances.get(key);
+        if (cache == null) {
+            cache = new ConversionCache(key, maxSizeInBytes);
+            instances.put(key, cache);
+            ConversionCache shutdownCache = cache;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                shutdownCache.saveIndex();
+                LOG.info(shutdownCache.getStats().toString());
+            }));
+        }
+        return cache;
+    }
+
+    private final File cacheDir;
+    private final File indexFile;
+    private final long maxSizeInBytes;
+    private final Map<String, Entry> entries = new HashMap<>();
+    // Hashing a large source file isn't free; remember the hash until the file changes.
+    private final Map<String, SourceHash> sourceHashes = new HashMap<>();
+    private long currentSizeInBytes = 0;
+    private double inflation = 0;
+    private double savedInflation = 0;
+    // Records appended to the index since it was last rewritten.
+    private int appendedRecords = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long bytesSaved = 0;
+    private long millisSaved = 0;
+    private long evictions = 0;
+
+    ConversionCache(File cacheDir, long maxSizeInBytes) {
+        this.cacheDir = cacheDir;
+        this.indexFile = new File(cacheDir, INDEX_FILE_NAME);
+        this.maxSizeInBytes = maxSizeInBytes;
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            LOG.warning(String.format("Can't create conversion cache directory %s", cacheDir));
+        }
+        loadIndex();
+    }
+
+    /**
+     * Computes the cache key for converting the source to the target format.
+     * @param sourceFile the file to be converted.
+     * @param targetFormat the desired format.
+     * @return the key, or null if the source can't be read.
+     */
+    public String keyFor(File sourceFile, AudioConversionFormat targetFormat) {
+        String hash = hashOf(sourceFile);
+        if (hash == null) return null;
+        StringBuilder key = new StringBuilder(hash)
+            .append('-').append(targetFormat.getFileEnding().toLowerCase())
+            .append('-').append(targetFormat.getBitRateString())
+            .append('-').append(targetFormat.getSampleRateString());
+        if (targetFormat instanceof A18Format) {
+            A18Format a18Format = (A18Format) targetFormat;
+            key.append('-').append(a18Format.usedAlgo).append('-').append(a18Format.usedHeader);
+        }
+        return key.toString().replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+
+    /**
+     * If there is an entry for the key, copies it to the target file.
+     * @param key from keyFor().
+     * @param targetFile to receive the cached conversion.
+     * @return true if the target file was restored from the cache, false for a cache miss.
+     */
+    public boolean restore(String key, File targetFile) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                misses++;
+                return false;
+            }
+            entry.hits++;
+            entry.lastAccess = System.currentTimeMillis();
+            entry.priority = inflation + entry.value();
+        }
+        try {
+            File parent = targetFile.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists()) parent.mkdirs();
+            Files.copy(fileFor(key).toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // Evicted out from under us, or someone deleted it. Treat as a miss.
+            LOG.log(Level.FINE, "Conversion cache entry unreadable: " + key, e);
+            synchronized (this) {
+                misses++;
+                remove(key);
+                appendToIndex(Collections.singletonList(REMOVED + key));
+            }
+            return false;
+        }
+        synchronized (this) {
+            hits++;
+            bytesSaved += entry.size;
+            millisSaved += entry.costMillis;
+        }
+        return true;
+    }
+
+    /**
+     * Adds a converted file to the cache.
+     * @param key from keyFor().
+     * @param convertedFile the result of the conversion. It is copied, not moved.
+     * @param costMillis how long the conversion took.
+     */
+    public void store(String key, File convertedFile, long costMillis) {
+        File cachedFile = fileFor(key);
+        File tmpFile = new File(cachedFile.getParentFile(), cachedFile.getName() + ".tmp" + Thread.currentThread().getId());
+        try {
+            if (!cachedFile.getParentFile().exists()) cachedFile.getParentFile().mkdirs();
+            Files.copy(convertedFile.toPath(), tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmpFile.toPath(), cachedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to add file to conversion cache: " + convertedFile, e);
+            FileUtils.deleteQuietly(tmpFile);
+            return;
+        }
+        synchronized (this) {
+            Entry previous = entries.remove(key);
+            if (previous != null) currentSizeInBytes -= previous.size;
+            Entry entry = new Entry(key, cachedFile.length(), Math.max(1, costMillis), 1, System.currentTimeMillis());
+            entry.priority = inflation + entry.value();
+            entries.put(key, entry);
+            currentSizeInBytes += entry.size;
+            List<String> records = new ArrayList<>();
+            records.add(entry.toRecord());
+            evictAsNeeded(key, records);
+            appendToIndex(records);
+        }
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, bytesSaved, millisSaved, evictions, entries.size(), currentSizeInBytes);
+    }
+
+    /**
+     * Evicts the lowest priority entries until the cache fits. Never evicts the entry just added.
+     * @param keep key of the newest entry.
+     * @param records receives the index records for the evictions.
+     */
+    private void evictAsNeeded(String keep, List<String> records) {
+        if (currentSizeInBytes <= maxSizeInBytes) return;
+        List<Entry> candidates = new ArrayList<>(entries.values());
+        candidates.sort(Comparator.comparingDouble((Entry e) -> e.priority).thenComparingLong(e -> e.lastAccess));
+        for (Entry victim : candidates) {
+            if (currentSizeInBytes <= maxSizeInBytes) break;
+            if (victim.key.equals(keep)) continue;
+            inflation = Math.max(inflation, victim.priority);
+            remove(victim.key);
+            records.add(REMOVED + victim.key);
+            evictions++;
+        }
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            currentSizeInBytes -= entry.size;
+            FileUtils.deleteQuietly(fileFor(key));
+        }
+    }
+
+    /**
+     * Cached files are spread over 256 sub-directories by the first two characters of the hash.
+     */
+    private File fileFor(String key) {
+        return new File(new File(cacheDir, key.substring(0, 2)), key);
+    }
+
+    /**
+     * The hash of the file's contents. The file is read without holding the cache's lock, so that
+     * hashing a large file doesn't hold up other threads' lookups.
+     */
+    private String hashOf(File sourceFile) {
+        if (!sourceFile.isFile()) return null;
+        String path = sourceFile.getAbsolutePath();
+        long length = sourceFile.length();
+        long lastModified = sourceFile.lastModified();
+        synchronized (this) {
+            SourceHash known = sourceHashes.get(path);
+            if (known != null && known.length == length && known.lastModified == lastModified) {
+                return known.hash;
+            }
+        }
+        try {
+            String hash = FileHash.sha256(sourceFile);
+            synchronized (this) {
+                sourceHashes.put(path, new SourceHash(length, lastModified, hash));
+            }
+            return hash;
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to hash file for conversion cache: " + sourceFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the index. Later records replace earlier ones for the same key. Entries whose files
+     * have gone missing, or changed size, are dropped.
+     */
+    private synchronized void loadIndex() {
+        if (!indexFile.exists()) return;
+        try (BufferedReader reader = new BufferedReader(new FileReader(indexFile))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                appendedRecords++;
+                if (line.startsWith(INFLATION)) {
+                    inflation = Double.parseDouble(line.substring(INFLATION.length()));
+                    continue;
+                } else if (line.startsWith(REMOVED)) {
+                    entries.remove(line.substring(REMOVED.length()));
+                    continue;
+                }
+                String[] parts = line.split("\t");
+                if (parts.length != 6) continue;
+                Entry entry = new Entry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                    Long.parseLong(parts[3]), Long.parseLong(parts[4]));
+                entry.priority = Double.parseDouble(parts[5]);
+                entries.put(entry.key, entry);
+            }
+        } catch (IOException | RuntimeException e) {
+            // A damaged index only costs us the cached conversions; they'll be recreated as needed.
+            LOG.log(Level.WARNING, "Unable to read conversion cache index; starting empty.", e);
+            entries.clear();
+        }
+        entries.values().removeIf(entry -> fileFor(entry.key).length() != entry.size);
+        currentSizeInBytes = entries.values().stream().mapToLong(entry -> entry.size).sum();
+        savedInflation = inflation;
+    }
+
+    /**
+     * Appends records to the index, or rewrites it if it is mostly superseded records.
+     */
+    private synchronized void appendToIndex(List<String> records) {
+        appendedRecords += records.size();
+        if (appendedRecords > MIN_RECORDS_TO_COMPACT && appendedRecords > 2 * entries.size()) {
+            saveIndex();
+            return;
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile, true))) {
+            for (String record : records) {
+                writer.write(record);
+                writer.newLine();
+            }
+            if (inflation != savedInflation) {
+                writer.write(INFLATION + inflation);
+                writer.newLine();
+                appendedRecords++;
+                savedInflation = inflation;
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to append to conversion cache index.", e);
+        }
+    }
+
+    /**
+     * Rewrites the index with just the current entries.
+     */
+    synchronized void saveIndex() {
+        File tmpFile = new File(cacheDir, INDEX_FILE_NAME + ".tmp");
+        try {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(tmpFile))) {
+                writer.write(INFLATION + inflation);
+                writer.newLine();
+                for (Entry entry : entries.values()) {
+                    writer.write(entry.toRecord());
+                    writer.newLine();
+                }
+            }
+            Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            appendedRecords = entries.size() + 1;
+            savedInflation = inflation;
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to write conversion cache index.", e);
+        }
+    }
+
+    private static class Entry {
+        final String key;
+        final long size;
+        final long costMillis;
+        long hits;
+        long lastAccess;
+        double priority;
+
+        Entry(String key, long size, long costMillis, long hits, long lastAccess) {
+            this.key = key;
+            this.size = size;
+            this.costMillis = costMillis;
+            this.hits = hits;
+            this.lastAccess = lastAccess;
+        }
+
+        String toRecord() {
+            return String.format("%s\t%d\t%d\t%d\t%d\t%s", key, size, costMillis, hits, lastAccess, priority);
+        }
+
+        /**
+         * The value of keeping this entry: conversion time saved per KB of cache, per use.
+         */
+        double value() {
+            return hits * (double) costMillis / Math.max(1, size / 1024.0);
+        }
+    }
+
+    private static class SourceHash {
+        final long length;
+        final long lastModified;
+        final String hash;
+
+        SourceHash(long length, long lastModified, String hash) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    public static class Stats {
+        public final long hits;
+        public final long misses;
+        public final long bytesSaved;
+        public final long millisSaved;
+        public final long evictions;
+        public final int entries;
+        public final long sizeInBytes;
+
+        Stats(long hits, long misses, long bytesSaved, long millisSaved, long evictions, int entries, long sizeInBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.bytesSaved = bytesSaved;
+            this.millisSaved = millisSaved;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.sizeInBytes = sizeInBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Conversion cache: %d hits, %d misses, %d bytes and %d ms of conversion saved, "
+                + "%d evictions, %d entries using %d bytes.",
+                hits, misses, bytesSaved, millisSaved, evictions, entries, sizeInBytes);
+        }
+    }
+}
@@ -9,6 +9,20 @@ import org.literacybridge.acm.audioconverter.converters.*;
 import org.literacybridge.acm.audioconverter.converters.BaseAudioConverter.ConversionException;
 
 public class ExternalConverter {
+    private final ConversionCache cache;
+
+    public ExternalConverter() {
+        this(null);
+    }
+
+    /**
+     * Creates a converter that consults the given cache before running an external converter, and
+     * adds the result of every conversion to the cache.
+     * @param cache The conversion cache, or null for no caching.
+     */
+    public ExternalConverter(ConversionCache cache) {
+        this.cache = cache;
+    }
 
     /**
      * Gets a File named like the source but with the correct extension for the audio format, and in the target
@@ -31,6 +45,14 @@ public class ExternalConverter {
     public String convert(File sourceFile, File targetFile, File tmpDir,
                 AudioConversionFormat targetFormat, boolean overwrite)
             throws ConversionException {
+        String key = null;
+        if (cache != null && (overwrite || !targetFile.exists())) {
+            key = cache.keyFor(sourceFile, targetFormat);
+            if (key != null && cache.restore(key, targetFile)) {
+                return "Restored from conversion cache.";
+            }
+        }
+
         String result = null;
         Map<String, String> parameters = getParameters(targetFormat);
         BaseAudioConverter converter = null;
@@ -48,7 +70,11 @@ public class ExternalConverter {
                  converter = new FFMpegConverter();
             }
         }
+        long startTime = System.currentTimeMillis();
         result = converter.convertFile(sourceFile, targetFile, tmpDir, overwrite, parameters);
+        if (key != null && targetFile.exists()) {
+            cache.store(key, targetFile, System.currentTimeMillis() - startTime);
+        }
 
         return result;
     }
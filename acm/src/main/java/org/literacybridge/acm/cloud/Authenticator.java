@@ -554,7 +554,7 @@ public class Authenticator {
          *
          * @return the S3 client object.
          */
-        AmazonS3 getS3Client() {
+        public AmazonS3 getS3Client() {
             checkSession();
             if (s3Client == null) {
                 Regions region = cognitoHelper.getRegion();
@@ -569,7 +569,7 @@ public class Authenticator {
             return s3Client;
         }
 
-        void refreshSession() {
+        public void refreshSession() {
             if (authenticationResult.isSuccess()) {
                 String refreshToken = authenticationResult.getRefreshToken();
                 AuthenticationHelper.AuthenticationResult refreshResult =
@@ -635,6 +635,37 @@ public class Authenticator {
             return true;
         }
 
+        /**
+         * Opens an object for reading, from the given offset. The caller must close the stream.
+         * @param bucket          containing the object
+         * @param key             of the object
+         * @param eTag            if not null, the object must still have this eTag
+         * @param offset          of the first byte to read
+         * @return the stream of the object's bytes
+         * @throws IOException if the object can't be opened, or has changed.
+         */
+        public InputStream openS3Object(String bucket, String key, String eTag, long offset) throws IOException {
+            if (!isAuthenticated()) throw new IOException("Not authenticated");
+            GetObjectRequest request = new GetObjectRequest(bucket, key);
+            if (eTag != null) {
+                request.withMatchingETagConstraint(eTag);
+            }
+            if (offset > 0) {
+                request.withRange(offset);
+            }
+            try {
+                S3Object s3Object = getS3Client().getObject(request);
+                if (s3Object == null) {
+                    throw new IOException(String.format("%s/%s has changed", bucket, key));
+                }
+                return s3Object.getObjectContent();
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(String.format("Unable to open %s/%s", bucket, key), e);
+            }
+        }
+
         public boolean uploadS3Object(String bucket, String key, File inputFile) {
             boolean result = false;
             if (!isAuthenticated()) return false;
@@ -7,6 +7,8 @@ import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
@@ -66,6 +68,7 @@ public class ProjectsHelper {
         Date fileDate;          // Date the file was last modified (ie, uploaded to s3)
         String eTag;            // eTag of the .zip file.
         long size;              // size of the .zip file.
+        String manifestKey;     // Key of the content manifest, if published content-addressed.
         boolean isCurrent;      // true if this is the ".current" Deployment
 
         DeploymentInfo(String project) {
@@ -115,6 +118,18 @@ public class ProjectsHelper {
         public boolean isCurrent() {
             return isCurrent;
         }
+
+        public String getManifestKey() {
+            return manifestKey;
+        }
+
+        /**
+         * @return true if the Deployment can be fetched as a manifest and objects, so that only
+         * what changed since the local revision needs to be downloaded.
+         */
+        public boolean hasManifest() {
+            return manifestKey != null;
+        }
     }
 
     private final Authenticator authInstance = Authenticator.getInstance();
@@ -125,6 +140,7 @@ public class ProjectsHelper {
     private final Pattern deploymentPattern = Pattern.compile("((\\w+(?:-\\w+)*)-(\\w+))");
     private final Pattern markerPattern = Pattern.compile("((\\w+(?:-\\w+)*)-(\\w+))\\.(current|rev)");
     private final Pattern zipPattern = Pattern.compile("((\\w+(?:-\\w+)*)-(\\w+))\\.zip");
+    private final Pattern manifestPattern = Pattern.compile("content-((\\w+(?:-\\w+)*)-(\\w+))\\.manifest");
 
     /**
      * Get the latest deployment info for the project.
@@ -223,6 +239,19 @@ public class ProjectsHelper {
                         di.isCurrent = true;
                     }
                 } else if (parts.length == 5) {
+                    // Like TEST/TB-Loaders/published/TEST-21-3-a/content-TEST-21-3-a.manifest
+                    Matcher manifestMatcher = manifestPattern.matcher(parts[4]);
+                    if (manifestMatcher.matches() && manifestMatcher.group(1).equals(parts[3])) {
+                        DeploymentInfo di = deplInfo.computeIfAbsent(manifestMatcher.group(1), unused -> {
+                            DeploymentInfo newDi = new DeploymentInfo(programid);
+                            newDi.versionMarker = manifestMatcher.group(1);    // like TEST-19-1-ap
+                            newDi.deploymentName = manifestMatcher.group(2);   // like TEST-19-1
+                            newDi.revId = manifestMatcher.group(3);            // like ap
+                            return newDi;
+                        });
+                        di.manifestKey = s3publishedObject.getKey();
+                        continue;
+                    }
                     Matcher zipMatcher = zipPattern.matcher(parts[4]);
                     if (zipMatcher.matches()) {
                         Matcher deploymentMatcher = deploymentPattern.matcher(parts[3]);
@@ -258,14 +287,14 @@ public class ProjectsHelper {
             }
         });
 
-        // Filter by latest rev; only ones with a .zip file. Drop the revision from the key.
+        // Filter by latest rev; only ones with a .zip file or a manifest. Drop the revision from the key.
         return deplInfo.entrySet().stream()
             .filter(e->{
                 String thisRev = e.getValue().getRevId();
                 String latestRev = latestRevs.get(e.getValue().getDeploymentName());
                 return thisRev.equalsIgnoreCase(latestRev);
             })
-            .filter(e->e.getValue().getKey() != null)
+            .filter(e->e.getValue().getKey() != null || e.getValue().hasManifest())
             .collect(Collectors.toMap(e->e.getValue().getDeploymentName(), Map.Entry::getValue));
     }
 
@@ -326,6 +355,24 @@ public class ProjectsHelper {
     }
 
 
+    /**
+     * Opens a Deployment's .zip for reading, from the given offset, so that it can be extracted
+     * as it arrives.
+     * @param deploymentInfo of the Deployment.
+     * @param offset of the first byte to read.
+     * @return the stream. The caller must close it.
+     * @throws IOException if offline, or the .zip can't be opened, or has changed.
+     */
+    public InputStream openDeployment(DeploymentInfo deploymentInfo, long offset) throws IOException {
+        if (!authInstance.isAuthenticated() || !authInstance.isOnline()) {
+            throw new IOException("Not online");
+        }
+        return authInstance.getAwsInterface().openS3Object(deploymentInfo.getBucket(),
+            deploymentInfo.getKey(),
+            deploymentInfo.geteTag(),
+            offset);
+    }
+
     public boolean downloadDeployment(DeploymentInfo deploymentInfo,
         File outputFile,
         BiConsumer<Long, Long> progressHandler)
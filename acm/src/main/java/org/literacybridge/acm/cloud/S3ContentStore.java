@@ -0,0 +1,59 @@
+package org.literacybridge.acm.cloud;
+
+import org.literacybridge.acm.deployment.ContentStore;
+import org.literacybridge.acm.deployment.DirectoryContentStore;
+import org.literacybridge.core.tbloader.ContentManifest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+/**
+ * The published deployments of a program, in S3. The program's TB-Loaders directory, a
+ * DirectoryContentStore, is synced to {programid}/TB-Loaders/ in the program content bucket, so
+ * the layout is the same.
+ */
+public class S3ContentStore implements ContentStore {
+    private final String programid;
+
+    public S3ContentStore(String programid) {
+        this.programid = programid;
+    }
+
+    private String keyPrefix() {
+        return programid + "/TB-Loaders/";
+    }
+
+    @Override
+    public ContentManifest getManifest(String versionMarker) throws IOException {
+        String key = keyPrefix() + DirectoryContentStore.PUBLISHED_DIR + '/' + versionMarker + '/'
+            + DirectoryContentStore.manifestName(versionMarker);
+        File tempFile = File.createTempFile("manifest", ".tmp");
+        try {
+            if (!download(key, tempFile)) {
+                return null;
+            }
+            try (InputStream in = new FileInputStream(tempFile)) {
+                return ContentManifest.read(in);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    @Override
+    public void getObject(String hash, File target) throws IOException {
+        String key = keyPrefix() + DirectoryContentStore.OBJECTS_DIR + '/' + hash.substring(0, 2) + '/' + hash;
+        if (!download(key, target)) {
+            throw new IOException("Unable to download " + key);
+        }
+    }
+
+    private boolean download(String key, File target) {
+        Authenticator authInstance = Authenticator.getInstance();
+        return authInstance.isAuthenticated() && authInstance.isOnline() &&
+            authInstance.getAwsInterface().downloadS3Object(ProjectsHelper.CONTENT_BUCKET_NAME, key, target, null);
+    }
+}
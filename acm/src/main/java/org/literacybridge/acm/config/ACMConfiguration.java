@@ -411,6 +411,17 @@ public class ACMConfiguration {
         return Boolean.parseBoolean(UsersConfigurationProperties.getProperty("SUPPRESS_STATISTICS_UPLOAD", "FALSE"));
     }
 
+    /**
+     * @return how many statistics files the TB-Loader uploads at once.
+     */
+    public int getMaxConcurrentUploads() {
+        try {
+            return Math.max(1, Integer.parseInt(UsersConfigurationProperties.getProperty("MAX_CONCURRENT_UPLOADS", "4")));
+        } catch (NumberFormatException ignored) {
+            return 4;
+        }
+    }
+
     public long getLatestUpdateSetupPromptDate() {
         String value = getUserConfigurationItem(Constants.LATEST_UPDATE_SETUP_WARNING, null);
         try {
@@ -37,9 +37,13 @@ public class AccessControl {
     private static final int NUM_ZIP_FILES_TO_KEEP = 4;
     // First db zip name is "db1.zip"
     private final static String DB_ZIP_FILENAME_PREFIX = Constants.DBHomeDir;
-    private final static String DB_ZIP_FILENAME_INITIAL = DB_ZIP_FILENAME_PREFIX + "1.zip";
     private final static String DB_ZIP_FILENAME_FORMAT = DB_ZIP_FILENAME_PREFIX + "%d.zip";
-    final static Pattern DB_ZIP_MATCHER = Pattern.compile("(?i)^db([0-9]+)\\.zip$");
+    // Or, if the program uses snapshots, "db1.snapshot".
+    private final static String DB_SNAPSHOT_FILENAME_FORMAT = DB_ZIP_FILENAME_PREFIX + "%d" + DbSnapshot.SNAPSHOT_EXTENSION;
+    // Matches both dbNN.zip and dbNN.snapshot; either is a version of the database.
+    final static Pattern DB_ZIP_MATCHER = Pattern.compile("(?i)^db([0-9]+)\\.(zip|snapshot)$");
+    // What was restored into the local db directory, beside it in the program's temp directory.
+    private final static String DB_SNAPSHOT_RECORD = "dbsnapshot.txt";
     // The php checkout app returns the string "NULL" if no checkin file was found
     private final static String DB_DOES_NOT_EXIST = "NULL";
     private final static String DB_KEY_OVERRIDE = "force";
@@ -97,14 +101,14 @@ public class AccessControl {
             if (currentFilename.equalsIgnoreCase(DB_DOES_NOT_EXIST)) {
                 // ACM does not yet exist, so create name for newly created zip to use on
                 // updateDB()
-                nextFilename = DB_ZIP_FILENAME_INITIAL;
+                nextFilename = getDbFilename(1);
             } else {
                 // Extract NN from dbNN.zip
                 String currentFileNumber = currentFilename.substring(
                         DB_ZIP_FILENAME_PREFIX.length(), currentFilename.lastIndexOf('.'));
                 try {
                     int nextFileNumber = Integer.parseInt(currentFileNumber) + 1;
-                    nextFilename = String.format(DB_ZIP_FILENAME_FORMAT, nextFileNumber);
+                    nextFilename = getDbFilename(nextFileNumber);
                 } catch (NumberFormatException e) {
                     // there's some strange .zip -- probably a "(conflicted copy)" or
                     // something else weird -- don't use it!
@@ -116,6 +120,22 @@ public class AccessControl {
         dbInfo.setFilenames(currentFilename, nextFilename);
     }
 
+    /**
+     * The file name for a version of the database: dbNN.zip, or dbNN.snapshot if the program uses snapshots.
+     */
+    private String getDbFilename(int fileNumber) {
+        return String.format(dbConfiguration.isDbSnapshots() ? DB_SNAPSHOT_FILENAME_FORMAT : DB_ZIP_FILENAME_FORMAT,
+            fileNumber);
+    }
+
+    private DbSnapshot getDbSnapshot() {
+        return new DbSnapshot(dbConfiguration.getSandbox(), dbConfiguration.getProgramHomeDir());
+    }
+
+    private File getDbSnapshotRecord() {
+        return new File(dbConfiguration.getPathProvider().getLocalProgramTempDir(), DB_SNAPSHOT_RECORD);
+    }
+
     int getCurrentDbVersion() {
         try {
             String currentFilename = getCurrentZipFilename();
@@ -690,7 +710,8 @@ public class AccessControl {
     }
 
     /**
-     * Expand the latest .zip file into the temporary database directory.
+     * Expand the latest .zip file, or restore the latest snapshot, into the temporary database directory.
+     * A .zip that was expanded before is taken from the local DbMirrorCache, if it is still valid.
      */
     private void createDBMirror() {
         String zipFileName = getCurrentZipFilename();
@@ -700,14 +721,29 @@ public class AccessControl {
         }
         try {
             File outDirectory = dbConfiguration.getLocalTempDbDir();
-            Path inZipPath = new File(dbConfiguration.getProgramHomeDir(), zipFileName).toPath();
-            File inSbFile = dbConfiguration.getSandbox().inputFile(inZipPath);
             Calendar cal = Calendar.getInstance();
             LOG.info(String.format("Started DB Mirror: %2d:%02d.%03d\n",
                     cal.get(Calendar.MINUTE),
                     cal.get(Calendar.SECOND),
                     cal.get(Calendar.MILLISECOND)));
-            ZipUnzip.unzip(inSbFile, outDirectory);
+            if (DbSnapshot.isSnapshotName(zipFileName)) {
+                long startTime = System.currentTimeMillis();
+                DbSnapshot.Stats stats = getDbSnapshot().restore(zipFileName, outDirectory, getDbSnapshotRecord());
+                DbSnapshot.logStats("Restored", zipFileName, stats, System.currentTimeMillis() - startTime);
+            } else {
+                Path inZipPath = new File(dbConfiguration.getProgramHomeDir(), zipFileName).toPath();
+                File inSbFile = dbConfiguration.getSandbox().inputFile(inZipPath);
+                DbMirrorCache mirrorCache = new DbMirrorCache(dbConfiguration.getLocalCacheDirectory());
+                try {
+                    mirrorCache.mirror(inSbFile, outDirectory);
+                } catch (IOException e) {
+                    // Expand the zip directly, as if there were no cache.
+                    LOG.log(Level.WARNING, "Unable to use DB mirror cache", e);
+                    mirrorCache.clear();
+                    FileUtils.deleteQuietly(outDirectory);
+                    ZipUnzip.unzip(inSbFile, outDirectory);
+                }
+            }
             cal = Calendar.getInstance();
             LOG.info(String.format("Completed DB Mirror: %2d:%02d.%03d\n",
                 cal.get(Calendar.MINUTE),
@@ -722,9 +758,10 @@ public class AccessControl {
 
     /**
      * Zip the current contents of the temporary database directory into the
-     * previously determined "next" zip file name.
+     * previously determined "next" zip file name. If that is a snapshot name, save
+     * the changed segments and a new snapshot instead.
      *
-     * @return The name of the new .zip file, if it was created OK, null if any error.
+     * @return The name of the new .zip or .snapshot file, if it was created OK, null if any error.
      */
     private String saveDbFromMirror() {
         String filename;
@@ -732,9 +769,15 @@ public class AccessControl {
             // The name previously decided for the next zip file name.
             filename = getNextZipFilename();
             Path outZipPath = new File(dbConfiguration.getProgramHomeDir(), filename).toPath();
-            File outSbFile = dbConfiguration.getSandbox().outputFile(outZipPath);
             File inDirectory = dbConfiguration.getLocalTempDbDir();
-            ZipUnzip.zip(inDirectory, outSbFile);
+            if (DbSnapshot.isSnapshotName(filename)) {
+                long startTime = System.currentTimeMillis();
+                DbSnapshot.Stats stats = getDbSnapshot().save(inDirectory, filename, getDbSnapshotRecord());
+                DbSnapshot.logStats("Saved", filename, stats, System.currentTimeMillis() - startTime);
+            } else {
+                File outSbFile = dbConfiguration.getSandbox().outputFile(outZipPath);
+                ZipUnzip.zip(inDirectory, outSbFile);
+            }
         } catch (IOException ex) {
             return null;
         }
@@ -763,7 +806,8 @@ public class AccessControl {
     }
 
     /**
-     * Helper to delete old .zip files from the ACM- directory.
+     * Helper to delete old .zip and .snapshot files from the ACM- directory, and then the
+     * snapshot segments that no remaining snapshot uses.
      *
      */
     private void deleteOldZipFiles() {
@@ -784,6 +828,21 @@ public class AccessControl {
         for (int i = 0; i < numToDelete; i++) {
             dbConfiguration.getSandbox().delete(zipFiles.get(i));
         }
+
+        List<String> keptSnapshots = zipFiles.subList(Math.max(0, numToDelete), zipFiles.size())
+            .stream()
+            .map(File::getName)
+            .filter(DbSnapshot::isSnapshotName)
+            .collect(Collectors.toList());
+        try {
+            int deleted = getDbSnapshot().deleteUnreferencedSegments(keptSnapshots);
+            if (deleted > 0) {
+                LOG.info(String.format("Deleted %d unused db segments.", deleted));
+            }
+        } catch (IOException e) {
+            // Leave the segments; they'll be cleaned up after a later check-in.
+            LOG.log(Level.WARNING, "Unable to clean up db segments", e);
+        }
     }
 
     /**
@@ -2,6 +2,7 @@ package org.literacybridge.acm.config;
 
 import org.literacybridge.acm.Constants;
 import org.literacybridge.acm.utils.DropboxFinder;
+import org.literacybridge.core.spec.ProgramSpec;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
@@ -154,6 +155,7 @@ public class AmplioHome {
         if (instance == null) {
             instance = new AmplioHome();
             findHomeDirectory(instance);
+            ProgramSpec.setSnapshotDirectory(new File(getCachesDir(), "progspec"));
         }
         return instance;
     }
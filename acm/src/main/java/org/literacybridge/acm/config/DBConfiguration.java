@@ -14,6 +14,7 @@ import org.literacybridge.acm.store.LuceneMetadataStore;
 import org.literacybridge.acm.store.MetadataStore;
 import org.literacybridge.acm.store.MetadataValue;
 import org.literacybridge.acm.store.RFC3066LanguageCode;
+import org.literacybridge.acm.store.SearchResult;
 import org.literacybridge.acm.store.Taxonomy;
 import org.literacybridge.acm.store.Transaction;
 import org.literacybridge.core.spec.LanguageLabelProvider;
@@ -32,11 +33,13 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
 import java.util.function.Predicate;
@@ -213,7 +216,10 @@ public class DBConfiguration {
           findChangeMarkerFile();
           initializeRepositories();
           final Taxonomy taxonomy = Taxonomy.createTaxonomy(loadCategoryFilter(), getProgramHomeDir());
-          this.store = new LuceneMetadataStore(taxonomy, getLocalLuceneIndexDir());
+          LuceneMetadataStore luceneStore = new LuceneMetadataStore(taxonomy, getLocalLuceneIndexDir(),
+              isLazyMetadataLoading(), isWritable());
+          luceneStore.setCompactMetadata(isCompactMetadata());
+          this.store = luceneStore;
           this.store.addDataChangeListener(metadataChangeListener);
 
           getLanguageLabelProvider();
@@ -276,6 +282,7 @@ public class DBConfiguration {
   }
 
   public void commitDbChanges() {
+      closeStore();
       AccessControlResolver.UpdateDbStatus closeResult;
       if (hasMetadataChange || store.hasChanges()) {
           closeResult = accessControl.commitDbChanges();
@@ -286,7 +293,12 @@ public class DBConfiguration {
           return;
       }
       if (getSandbox().hasChanges()) {
-          getSandbox().commit();
+          if (!getSandbox().commit()) {
+              // The sandbox's journal finishes the commit when the program is next opened; until then the
+              // changes aren't complete, so keep the marker, and don't sync them.
+              LOG.log(Level.SEVERE, "Sandbox commit incomplete; not requesting a sync.");
+              return;
+          }
       } else {
           getSandbox().discard();
       }
@@ -302,6 +314,7 @@ public class DBConfiguration {
   }
 
     public void discardDbChanges() {
+        closeStore();
         accessControl.discardDbChanges();
         getSandbox().discard();
         deleteChangeMarkerFile();
@@ -316,6 +329,19 @@ public class DBConfiguration {
       }
   }
 
+    /**
+     * The metadata store keeps its index writer open; close it before the index is zipped or deleted.
+     */
+    private void closeStore() {
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                LOG.log(Level.SEVERE, "Unable to close metadata store.", e);
+            }
+        }
+    }
+
   public int getCurrentDbVersion() {
     return accessControl.getCurrentDbVersion();
   }
@@ -381,6 +407,42 @@ public class DBConfiguration {
         return size;
     }
 
+    /**
+     * The size of the shared cache of converted audio files. May be overridden with
+     * CONVERSION_CACHE_SIZE_IN_BYTES in the program's config.properties.
+     * @return the size, in bytes.
+     */
+    public long getConversionCacheSizeInBytes() {
+        long size = Constants.DEFAULT_CONVERSION_CACHE_SIZE_IN_BYTES;
+        String value = getDbProperties().getProperty(Constants.CONVERSION_CACHE_SIZE_PROP_NAME);
+        if (value != null) {
+            try {
+                size = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                // ignore and use default value
+            }
+        }
+        return size;
+    }
+
+    /**
+     * The number of audio conversions to run at once. Defaults to the number of processors; may be
+     * overridden with CONVERSION_THREADS in the program's config.properties.
+     * @return the number of conversion threads, at least 1.
+     */
+    public int getConversionThreads() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String value = getDbProperties().getProperty(Constants.CONVERSION_THREADS);
+        if (value != null) {
+            try {
+                threads = Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                // ignore and use default value
+            }
+        }
+        return Math.max(1, threads);
+    }
+
     public String getFriendlyName() {
         String description = getProjectName();
         String value = getDbProperties().getProperty(Constants.FRIENDLY_NAME_PROP_NAME);
@@ -516,6 +578,35 @@ public class DBConfiguration {
         getDbProperties().setProperty(Constants.FORCE_WAV_CONVERSION, Boolean.toString(isForceWavConversion));
     }
 
+    /**
+     * If true, audio item metadata is read from the index as it is needed, rather than all at startup.
+     * Helps programs with many thousands of messages open quickly.
+     */
+    public boolean isLazyMetadataLoading() {
+        String value = getDbProperties().getProperty(Constants.LAZY_METADATA_LOADING);
+        return Boolean.parseBoolean(value);
+    }
+
+    /**
+     * If true, check-ins save the database as a snapshot of its segment files, writing only the segments
+     * that changed, rather than as a whole new dbNN.zip. ACMs that predate snapshots can't open a database
+     * saved that way, so only turn this on once everyone using the program has a newer ACM.
+     */
+    public boolean isDbSnapshots() {
+        String value = getDbProperties().getProperty(Constants.DB_SNAPSHOTS);
+        return Boolean.parseBoolean(value);
+    }
+
+    /**
+     * If true, audio item metadata is stored in the index in a more compact encoding, which is faster to
+     * load. ACMs that predate it can't read an index written that way, so only turn this on once everyone
+     * using the program has a newer ACM.
+     */
+    public boolean isCompactMetadata() {
+        String value = getDbProperties().getProperty(Constants.COMPACT_METADATA);
+        return Boolean.parseBoolean(value);
+    }
+
     public Boolean hasTbV2Devices() {
         String value = getDbProperties().getProperty(Constants.HAS_TBV2_DEVICES);
         return Boolean.parseBoolean(value);
@@ -699,7 +790,14 @@ public class DBConfiguration {
             abstractLanguageCode);
 
         Transaction transaction = this.store.newTransaction();
-        Collection<AudioItem> items = this.store.getAudioItems();
+        // Only items with the language can need fixing. Ask the index for them, rather than
+        // reading every item in the program.
+        SearchResult candidates = this.store.search(null, null, Collections.singletonList(new Locale(from)));
+        Collection<AudioItem> items = candidates == null ? this.store.getAudioItems() :
+            candidates.getAudioItems().stream()
+                .map(store::getAudioItem)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
         int itemsFixed = 0;
 
         boolean success = false;
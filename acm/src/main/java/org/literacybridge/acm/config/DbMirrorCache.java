@@ -0,0 +1,219 @@
+package org.literacybridge.acm.config;
+
+import org.apache.commons.io.FileUtils;
+import org.literacybridge.core.fs.FileHash;
+import org.literacybridge.core.fs.ZipUnzip;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A pristine copy of the database as expanded from a dbNN.zip, kept in the program's local cache
+ * directory, so that opening the same dbNN.zip again needn't expand it again.
+ *
+ * The temporary database directory is deleted at every clean shutdown (and before every open), so
+ * the expanded files are kept here instead, and linked (or, failing that, copied) into the temporary
+ * directory. Lucene never writes to an existing file, so the cached files stay as they were expanded.
+ *
+ * The cache records the name, size, modification time and SHA-256 of the zip it was expanded from,
+ * and the size and last 8 bytes of every expanded file. For Lucene's files the last 8 bytes are the
+ * CRC-32 footer, so checking them is a cheap test that the files are the ones that were expanded.
+ * Anything that doesn't match causes the zip to be expanded again.
+ */
+class DbMirrorCache {
+    private static final Logger LOG = Logger.getLogger(DbMirrorCache.class.getName());
+
+    private static final String MIRROR_DIR = "dbmirror";
+    private static final String MIRROR_PROPERTIES = "dbmirror.properties";
+    private static final String SOURCE_NAME = "source.name";
+    private static final String SOURCE_SIZE = "source.size";
+    private static final String SOURCE_MODIFIED = "source.modified";
+    private static final String SOURCE_HASH = "source.sha256";
+    private static final String FILE_PREFIX = "file.";
+    private static final int FOOTER_LENGTH = 8;
+
+    private final File mirrorDir;
+    private final File propertiesFile;
+
+    /**
+     * @param cacheDir the program's local cache directory, like ~/Amplio/ACM/cache/ACM-DEMO.
+     */
+    DbMirrorCache(File cacheDir) {
+        this.mirrorDir = new File(cacheDir, MIRROR_DIR);
+        this.propertiesFile = new File(cacheDir, MIRROR_PROPERTIES);
+    }
+
+    /**
+     * Fills the database directory with the contents of the zip file, from the cache if it is valid
+     * for the zip, otherwise by expanding the zip into the cache.
+     * @param zipFile the dbNN.zip.
+     * @param dbDir the temporary database directory.
+     * @return true if the cache was used, false if the zip had to be expanded.
+     * @throws IOException if the zip can't be expanded or the files can't be put in the db directory.
+     */
+    boolean mirror(File zipFile, File dbDir) throws IOException {
+        long startTime = System.currentTimeMillis();
+        Properties properties = readProperties();
+        boolean valid = properties != null && isValidFor(properties, zipFile);
+        LOG.log(Level.INFO, String.format("DB mirror cache for %s validated in %d ms: %s", zipFile.getName(),
+            System.currentTimeMillis() - startTime, valid ? "valid" : "not valid"));
+
+        if (!valid) {
+            startTime = System.currentTimeMillis();
+            properties = expand(zipFile);
+            LOG.log(Level.INFO, String.format("DB mirror cache for %s expanded in %d ms", zipFile.getName(),
+                System.currentTimeMillis() - startTime));
+        }
+
+        startTime = System.currentTimeMillis();
+        int copied = linkInto(properties, dbDir);
+        LOG.log(Level.INFO, String.format("DB mirror for %s placed in %d ms (%d files copied rather than linked)",
+            zipFile.getName(), System.currentTimeMillis() - startTime, copied));
+        return valid;
+    }
+
+    /**
+     * Forgets the cached database, as when it is known to be out of date.
+     */
+    void clear() {
+        FileUtils.deleteQuietly(propertiesFile);
+        FileUtils.deleteQuietly(mirrorDir);
+    }
+
+    private boolean isValidFor(Properties properties, File zipFile) throws IOException {
+        if (!zipFile.getName().equals(properties.getProperty(SOURCE_NAME)) ||
+            !Long.toString(zipFile.length()).equals(properties.getProperty(SOURCE_SIZE))) {
+            return false;
+        }
+        // Same name and size. Unless the time also matches, make sure of the content.
+        if (!Long.toString(zipFile.lastModified()).equals(properties.getProperty(SOURCE_MODIFIED))) {
+            if (!FileHash.sha256(zipFile).equals(properties.getProperty(SOURCE_HASH))) {
+                return false;
+            }
+            properties.setProperty(SOURCE_MODIFIED, Long.toString(zipFile.lastModified()));
+            writeProperties(properties);
+        }
+        for (Map.Entry<String, String> file : getFiles(properties).entrySet()) {
+            File mirrorFile = new File(mirrorDir, file.getKey());
+            if (!mirrorFile.isFile() || !fingerprint(mirrorFile).equals(file.getValue())) {
+                LOG.log(Level.INFO, "DB mirror cache file changed or missing: " + file.getKey());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Properties expand(File zipFile) throws IOException {
+        // Forget the old cache first, so that an interrupted expansion is never taken as valid.
+        clear();
+        ZipUnzip.unzip(zipFile, mirrorDir);
+
+        Properties properties = new Properties();
+        properties.setProperty(SOURCE_NAME, zipFile.getName());
+        properties.setProperty(SOURCE_SIZE, Long.toString(zipFile.length()));
+        properties.setProperty(SOURCE_MODIFIED, Long.toString(zipFile.lastModified()));
+        properties.setProperty(SOURCE_HASH, FileHash.sha256(zipFile));
+        addFiles(properties, mirrorDir, "");
+        writeProperties(properties);
+        return properties;
+    }
+
+    private void addFiles(Properties properties, File dir, String prefix) throws IOException {
+        File[] children = dir.listFiles();
+        if (children == null) return;
+        for (File child : children) {
+            if (child.isDirectory()) {
+                addFiles(properties, child, prefix + child.getName() + '/');
+            } else {
+                properties.setProperty(FILE_PREFIX + prefix + child.getName(), fingerprint(child));
+            }
+        }
+    }
+
+    /**
+     * Links the cached files into the db directory, or copies them where that isn't possible.
+     * @return the number of files that had to be copied.
+     */
+    private int linkInto(Properties properties, File dbDir) throws IOException {
+        int copied = 0;
+        for (String path : getFiles(properties).keySet()) {
+            File source = new File(mirrorDir, path);
+            File target = new File(dbDir, path);
+            File parent = target.getParentFile();
+            if (!parent.mkdirs() && !parent.isDirectory()) {
+                throw new IOException("Unable to create directory " + parent);
+            }
+            Files.deleteIfExists(target.toPath());
+            try {
+                Files.createLink(target.toPath(), source.toPath());
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(source.toPath(), target.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+                copied++;
+            }
+        }
+        return copied;
+    }
+
+    /**
+     * @return the cached files, by path relative to the mirror directory, with their fingerprints.
+     */
+    private static Map<String, String> getFiles(Properties properties) {
+        Map<String, String> files = new TreeMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(FILE_PREFIX)) {
+                files.put(name.substring(FILE_PREFIX.length()), properties.getProperty(name));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @return the file's size and its last (up to) 8 bytes, in hex.
+     */
+    private static String fingerprint(File file) throws IOException {
+        StringBuilder result = new StringBuilder();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            result.append(length).append(':');
+            int footerLength = (int) Math.min(FOOTER_LENGTH, length);
+            byte[] footer = new byte[footerLength];
+            raf.seek(length - footerLength);
+            raf.readFully(footer);
+            result.append(FileHash.toHex(footer));
+        }
+        return result.toString();
+    }
+
+    private Properties readProperties() {
+        if (!propertiesFile.exists() || !mirrorDir.isDirectory()) return null;
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(propertiesFile)) {
+            properties.load(in);
+            return properties;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void writeProperties(Properties properties) throws IOException {
+        File parent = propertiesFile.getParentFile();
+        if (!parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        try (OutputStream out = new FileOutputStream(propertiesFile)) {
+            properties.store(out, "Expanded database, see DbMirrorCache");
+        }
+    }
+}
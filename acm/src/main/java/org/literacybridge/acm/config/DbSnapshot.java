@@ -0,0 +1,289 @@
+package org.literacybridge.acm.config;
+
+import org.literacybridge.acm.sandbox.Sandbox;
+import org.literacybridge.core.fs.FileHash;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Saves and restores the local database directory as a content-addressed snapshot, an
+ * alternative to zipping the whole directory into dbNN.zip at every check-in.
+ *
+ * Lucene never changes a file once it is written, so a file's content is stored once, in
+ * dbsegments/${hash}, and each version of the database is a small manifest, dbNN.snapshot,
+ * listing the files of that version:
+ * # acm db snapshot 1
+ * ${hash} ${size} ${path}    # one line per file, path relative to the db directory, separated by '/'
+ *
+ * Saving writes only the files that aren't already stored. Restoring links the stored files
+ * into the db directory, copying only where links aren't supported. A record of the files as
+ * restored, kept beside the db directory, lets saving skip re-hashing files that haven't changed.
+ *
+ * All access to the program's home directory goes through the Sandbox, like the dbNN.zip files.
+ */
+class DbSnapshot {
+    private static final Logger LOG = Logger.getLogger(DbSnapshot.class.getName());
+
+    static final String SNAPSHOT_EXTENSION = ".snapshot";
+    static final String SEGMENTS_DIR = "dbsegments";
+    private static final String HEADER = "# acm db snapshot 1";
+    private static final String LOCAL_RECORD_HEADER = "# acm db snapshot record 1";
+
+    /**
+     * Counts of the work done by a save or restore.
+     */
+    static class Stats {
+        int files;
+        long bytes;
+        // Files actually written to the segment store (save) or copied from it (restore).
+        int filesTransferred;
+        long bytesTransferred;
+
+        @Override
+        public String toString() {
+            return String.format("%d files, %d bytes; %d files, %d bytes transferred", files, bytes,
+                filesTransferred, bytesTransferred);
+        }
+    }
+
+    private static class Entry {
+        final String path;
+        final long size;
+        final String hash;
+        // Only meaningful in the local record.
+        final long lastModified;
+
+        Entry(String path, long size, String hash, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.hash = hash;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private final Sandbox sandbox;
+    private final File programHomeDir;
+
+    DbSnapshot(Sandbox sandbox, File programHomeDir) {
+        this.sandbox = sandbox;
+        this.programHomeDir = programHomeDir;
+    }
+
+    static boolean isSnapshotName(String filename) {
+        return filename != null && filename.toLowerCase().endsWith(SNAPSHOT_EXTENSION);
+    }
+
+    /**
+     * Restores a snapshot into the db directory.
+     * @param snapshotName like "db58.snapshot".
+     * @param dbDir the local db directory; should be empty or missing.
+     * @param recordFile where to remember what was restored.
+     * @return what was done.
+     * @throws IOException if the snapshot or one of its files can't be read, or is the wrong size.
+     */
+    Stats restore(String snapshotName, File dbDir, File recordFile) throws IOException {
+        Map<String, Entry> manifest = readManifest(snapshotName);
+        Stats stats = new Stats();
+        Map<String, Entry> record = new TreeMap<>();
+        for (Entry entry : manifest.values()) {
+            File segment = sandbox.inputFile(segmentPath(entry.hash));
+            if (segment.length() != entry.size) {
+                throw new IOException(String.format("Segment %s for %s is %d bytes, expected %d", entry.hash,
+                    entry.path, segment.length(), entry.size));
+            }
+            File target = new File(dbDir, entry.path.replace('/', File.separatorChar));
+            File parent = target.getParentFile();
+            if (!parent.mkdirs() && !parent.isDirectory()) {
+                throw new IOException("Unable to create directory " + parent);
+            }
+            Files.deleteIfExists(target.toPath());
+            try {
+                Files.createLink(target.toPath(), segment.toPath());
+            } catch (IOException | UnsupportedOperationException e) {
+                // Different file systems, or no hard links. Copy it instead.
+                Files.copy(segment.toPath(), target.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+                stats.filesTransferred++;
+                stats.bytesTransferred += entry.size;
+            }
+            stats.files++;
+            stats.bytes += entry.size;
+            record.put(entry.path, new Entry(entry.path, entry.size, entry.hash, target.lastModified()));
+        }
+        writeEntries(record.values(), LOCAL_RECORD_HEADER, true, recordFile);
+        return stats;
+    }
+
+    /**
+     * Saves the db directory as a snapshot. Only files not already in the segment store are written.
+     * @param dbDir the local db directory.
+     * @param snapshotName like "db59.snapshot".
+     * @param recordFile what was restored, and when; updated with the newly saved files.
+     * @return what was done.
+     * @throws IOException if a file can't be read, or the snapshot can't be written.
+     */
+    Stats save(File dbDir, String snapshotName, File recordFile) throws IOException {
+        Map<String, Entry> record = new TreeMap<>();
+        if (recordFile.exists()) {
+            try {
+                record = readEntries(recordFile, LOCAL_RECORD_HEADER, true);
+            } catch (IOException e) {
+                // The record only saves re-hashing; without it, every file is hashed.
+                LOG.log(Level.WARNING, "Ignoring unreadable db snapshot record " + recordFile, e);
+            }
+        }
+        Map<String, Entry> manifest = new TreeMap<>();
+        Stats stats = new Stats();
+        for (Map.Entry<String, File> e : listFiles(dbDir).entrySet()) {
+            String path = e.getKey();
+            File file = e.getValue();
+            Entry recorded = record.get(path);
+            String hash;
+            if (recorded != null && recorded.size == file.length() && recorded.lastModified == file.lastModified()) {
+                hash = recorded.hash;
+            } else {
+                hash = FileHash.sha256(file);
+            }
+            Path segmentPath = segmentPath(hash);
+            if (!sandbox.exists(segmentPath)) {
+                writeSegment(file, segmentPath);
+                stats.filesTransferred++;
+                stats.bytesTransferred += file.length();
+            }
+            stats.files++;
+            stats.bytes += file.length();
+            manifest.put(path, new Entry(path, file.length(), hash, file.lastModified()));
+        }
+        File manifestFile = sandbox.outputFile(new File(programHomeDir, snapshotName).toPath());
+        writeEntries(manifest.values(), HEADER, false, manifestFile);
+        writeEntries(manifest.values(), LOCAL_RECORD_HEADER, true, recordFile);
+        return stats;
+    }
+
+    /**
+     * Deletes the segments that aren't part of any of the given snapshots.
+     * @param snapshotNames the snapshots being kept.
+     * @return the number of segments deleted.
+     * @throws IOException if one of the snapshots can't be read. Nothing is deleted in that case.
+     */
+    int deleteUnreferencedSegments(Collection<String> snapshotNames) throws IOException {
+        Set<String> referenced = new HashSet<>();
+        for (String snapshotName : snapshotNames) {
+            for (Entry entry : readManifest(snapshotName).values()) {
+                referenced.add(entry.hash);
+            }
+        }
+        int deleted = 0;
+        for (Path path : sandbox.listPaths(new File(programHomeDir, SEGMENTS_DIR).toPath())) {
+            if (!referenced.contains(path.getFileName().toString())) {
+                sandbox.delete(new File(programHomeDir, path.toString()).toPath());
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    private Path segmentPath(String hash) {
+        return new File(new File(programHomeDir, SEGMENTS_DIR), hash).toPath();
+    }
+
+    private void writeSegment(File file, Path segmentPath) throws IOException {
+        File segment = sandbox.outputFile(segmentPath);
+        // Write under a temporary name, so that a partially written segment is never taken for a whole one.
+        File partial = new File(segment.getParentFile(), segment.getName() + ".partial");
+        Files.copy(file.toPath(), partial.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(partial.toPath(), segment.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Map<String, Entry> readManifest(String snapshotName) throws IOException {
+        File manifestFile = sandbox.inputFile(new File(programHomeDir, snapshotName).toPath());
+        return readEntries(manifestFile, HEADER, false);
+    }
+
+    private static Map<String, Entry> readEntries(File file, String header, boolean withTimes) throws IOException {
+        Map<String, Entry> entries = new TreeMap<>();
+        try (InputStream in = new FileInputStream(file);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if (!header.equals(line)) {
+                throw new IOException("Not a db snapshot: " + file);
+            }
+            int numParts = withTimes ? 4 : 3;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                String[] parts = line.split(" ", numParts);
+                if (parts.length != numParts) {
+                    throw new IOException("Malformed db snapshot line: " + line);
+                }
+                try {
+                    long lastModified = withTimes ? Long.parseLong(parts[2]) : 0;
+                    String path = parts[numParts - 1];
+                    entries.put(path, new Entry(path, Long.parseLong(parts[1]), parts[0], lastModified));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed db snapshot line: " + line, e);
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static void writeEntries(Collection<Entry> entries, String header, boolean withTimes, File file)
+        throws IOException
+    {
+        try (OutputStream out = new FileOutputStream(file);
+             PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            writer.print(header + "\n");
+            for (Entry entry : entries) {
+                writer.print(entry.hash + ' ' + entry.size + ' ');
+                if (withTimes) {
+                    writer.print(Long.toString(entry.lastModified) + ' ');
+                }
+                writer.print(entry.path + '\n');
+            }
+        }
+    }
+
+    /**
+     * @return the files in the directory and its subdirectories, by their '/' separated relative paths.
+     */
+    private static Map<String, File> listFiles(File dir) {
+        Map<String, File> files = new TreeMap<>();
+        addFiles(files, dir, "");
+        return files;
+    }
+
+    private static void addFiles(Map<String, File> files, File dir, String prefix) {
+        File[] children = dir.listFiles();
+        if (children == null) return;
+        for (File child : children) {
+            if (child.isDirectory()) {
+                addFiles(files, child, prefix + child.getName() + '/');
+            } else {
+                files.put(prefix + child.getName(), child);
+            }
+        }
+    }
+
+    static void logStats(String operation, String snapshotName, Stats stats, long millis) {
+        LOG.log(Level.INFO, String.format("%s %s: %s in %d ms", operation, snapshotName, stats, millis));
+    }
+}
@@ -0,0 +1,237 @@
+package org.literacybridge.acm.deployment;
+
+import org.literacybridge.core.fs.FsFile;
+import org.literacybridge.core.tbloader.ContentManifest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Publishes and fetches deployments as a manifest plus content-addressed objects (see
+ * ContentStore), so that fetching a new revision only downloads the files that changed.
+ *
+ * A manifest describes the same tree as the deployment's content-*.zip: "content/", and under it
+ * the deployment's directory. Fetching is three steps, so that the old content can stay in place
+ * until the new content is all at hand:
+ * - adopt: files of the current local content that the new revision also has are added to the
+ *   local object store, without being read again from the network;
+ * - fetchMissing: the remaining objects are downloaded, and their hashes checked;
+ * - materialize: the tree is re-created from the local objects, with hard links where possible.
+ */
+public class ContentAddressedDeployments {
+    private static final Logger LOG = Logger.getLogger(ContentAddressedDeployments.class.getName());
+
+    // Objects are mostly small; several downloads at once hide the latency of each.
+    private static final int FETCH_THREADS = 4;
+
+    private ContentAddressedDeployments() {
+    }
+
+    /**
+     * Publishes deployments: adds their files to the store, and writes the manifest.
+     * @param contentDir the "content" directory with the deployments' directories.
+     * @param deployments names of the deployments to publish. Effectively, always exactly one.
+     * @param versionMarker of the revision being published, like TEST-21-3-a.
+     * @param store into which to publish.
+     * @return the manifest.
+     * @throws IOException if a file can't be read, or the store can't be written.
+     */
+    public static ContentManifest publish(File contentDir, Collection<String> deployments,
+        String versionMarker, DirectoryContentStore store) throws IOException
+    {
+        ContentManifest manifest = new ContentManifest();
+        String prefix = contentDir.getName() + '/';
+        manifest.add(directoryEntry(prefix));
+        for (String deployment : deployments) {
+            File deploymentDir = new File(contentDir, deployment);
+            if (deploymentDir.isDirectory()) {
+                addTree(manifest, deploymentDir, prefix + deployment + '/', store);
+            }
+        }
+        store.putManifest(versionMarker, manifest);
+        return manifest;
+    }
+
+    private static void addTree(ContentManifest manifest, File dir, String path,
+        DirectoryContentStore store) throws IOException
+    {
+        manifest.add(directoryEntry(path));
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (file.isDirectory()) {
+                addTree(manifest, file, path + file.getName() + '/', store);
+            } else {
+                String hash = ContentManifest.hash(new FsFile(file));
+                store.putObject(hash, file);
+                manifest.add(new ContentManifest.Entry(path + file.getName(), file.length(), hash));
+            }
+        }
+    }
+
+    private static ContentManifest.Entry directoryEntry(String path) {
+        return new ContentManifest.Entry(path, 0, ContentManifest.DIRECTORY_HASH);
+    }
+
+    /**
+     * Adds to the local store the files under a directory, like the current local content, that
+     * the manifest has and the store doesn't. Only files at the same path, with the same size,
+     * are read and hashed.
+     * @param manifest of the revision being fetched.
+     * @param dir where the manifest's paths may already exist.
+     * @param cache the local store.
+     * @return the number of objects added.
+     */
+    public static int adopt(ContentManifest manifest, File dir, DirectoryContentStore cache) {
+        int adopted = 0;
+        for (ContentManifest.Entry entry : manifest.getEntries()) {
+            if (entry.isDirectory() || cache.hasObject(entry.hash, entry.size)) continue;
+            File file = new File(dir, entry.path);
+            if (!file.isFile() || file.length() != entry.size) continue;
+            try {
+                if (entry.hash.equals(ContentManifest.hash(new FsFile(file)))) {
+                    cache.linkObject(entry.hash, file);
+                    adopted++;
+                }
+            } catch (IOException e) {
+                // Then it will be downloaded.
+                LOG.warning(String.format("Could not adopt '%s': %s", file, e.getMessage()));
+            }
+        }
+        return adopted;
+    }
+
+    /**
+     * Downloads the manifest's objects that aren't in the local store.
+     * @param manifest of the revision being fetched.
+     * @param source from which to download.
+     * @param cache the local store.
+     * @param progressHandler optional, called with (bytes downloaded, bytes to download).
+     * @return the number of bytes downloaded.
+     * @throws IOException if an object can't be downloaded, or its content doesn't match its hash.
+     */
+    public static long fetchMissing(ContentManifest manifest, ContentStore source,
+        DirectoryContentStore cache, BiConsumer<Long, Long> progressHandler) throws IOException
+    {
+        Map<String, Long> missing = new LinkedHashMap<>();
+        for (ContentManifest.Entry entry : manifest.getEntries()) {
+            if (!entry.isDirectory() && !cache.hasObject(entry.hash, entry.size)) {
+                missing.put(entry.hash, entry.size);
+            }
+        }
+        long total = missing.values().stream().mapToLong(Long::longValue).sum();
+        if (progressHandler != null) {
+            progressHandler.accept(0L, total);
+        }
+        if (missing.isEmpty()) {
+            return 0;
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(FETCH_THREADS, missing.size()), r -> {
+            Thread t = new Thread(r, "deployment-fetch-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        long[] done = {0};
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (Map.Entry<String, Long> object : missing.entrySet()) {
+                futures.add(executor.submit(() -> {
+                    fetchObject(object.getKey(), object.getValue(), source, cache);
+                    if (progressHandler != null) {
+                        synchronized (done) {
+                            done[0] += object.getValue();
+                            progressHandler.accept(done[0], total);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching deployment objects", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            futures.forEach(f -> f.cancel(true));
+            executor.shutdownNow();
+        }
+        return total;
+    }
+
+    private static void fetchObject(String hash, long size, ContentStore source,
+        DirectoryContentStore cache) throws IOException
+    {
+        File tempFile = cache.newTempFile(hash);
+        try {
+            source.getObject(hash, tempFile);
+            if (tempFile.length() != size || !hash.equals(ContentManifest.hash(new FsFile(tempFile)))) {
+                throw new IOException("Downloaded object doesn't match its hash: " + hash);
+            }
+            cache.moveObject(hash, tempFile);
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Re-creates the manifest's tree from the local store.
+     * @param manifest of the revision.
+     * @param cache the local store, with all of the manifest's objects.
+     * @param targetDir where to create the tree, like ~/LiteracyBridge/TB-Loaders/TEST.
+     * @throws IOException if an object is missing, or a file can't be created.
+     */
+    public static void materialize(ContentManifest manifest, DirectoryContentStore cache,
+        File targetDir) throws IOException
+    {
+        for (ContentManifest.Entry entry : manifest.getEntries()) {
+            File file = new File(targetDir, checkedPath(entry.path));
+            if (entry.isDirectory()) {
+                if (!file.mkdirs() && !file.isDirectory()) {
+                    throw new IOException("Unable to create directory " + file);
+                }
+            } else {
+                File parent = file.getParentFile();
+                if (!parent.mkdirs() && !parent.isDirectory()) {
+                    throw new IOException("Unable to create directory " + parent);
+                }
+                cache.materializeObject(entry.hash, file);
+            }
+        }
+    }
+
+    /**
+     * Manifests come from the network; don't let one write outside the target.
+     */
+    private static String checkedPath(String path) throws IOException {
+        for (String part : path.split("/")) {
+            if (part.equals("..")) {
+                throw new IOException("Invalid path in manifest: " + path);
+            }
+        }
+        if (path.startsWith("/") || path.contains("\\") || path.contains(":")) {
+            throw new IOException("Invalid path in manifest: " + path);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,28 @@
+package org.literacybridge.acm.deployment;
+
+import org.literacybridge.core.tbloader.ContentManifest;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Where published deployments can be fetched from, in content-addressed form: each revision is a
+ * manifest of paths, sizes and hashes, and the files themselves are objects named by their hash.
+ * A file that is the same in two revisions (or in two deployments) is stored once.
+ */
+public interface ContentStore {
+    /**
+     * @param versionMarker of the deployment revision, like TEST-21-3-a.
+     * @return the revision's manifest, or null if the revision wasn't published this way.
+     * @throws IOException if the manifest exists but can't be read.
+     */
+    ContentManifest getManifest(String versionMarker) throws IOException;
+
+    /**
+     * Copies an object to a file.
+     * @param hash of the object.
+     * @param target file to receive the object. Overwritten.
+     * @throws IOException if there is no such object, or it can't be copied.
+     */
+    void getObject(String hash, File target) throws IOException;
+}
@@ -0,0 +1,208 @@
+package org.literacybridge.acm.deployment;
+
+import org.literacybridge.core.tbloader.ContentManifest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A ContentStore in a directory:
+ *   objects/${hash[0..2]}/${hash}                              # the objects
+ *   published/${versionMarker}/content-${versionMarker}.manifest   # the manifests
+ *
+ * A program's TB-Loaders directory is one: the TB-Builder publishes into it, and it is synced to
+ * the cloud with the rest of the program. The TB-Loader keeps the objects of the deployments it
+ * has fetched in one, in its local program directory, so that a later revision only needs what
+ * changed. It also stands in for the cloud in tests.
+ */
+public class DirectoryContentStore implements ContentStore {
+    public static final String OBJECTS_DIR = "objects";
+    public static final String PUBLISHED_DIR = "published";
+
+    private final File root;
+
+    public DirectoryContentStore(File root) {
+        this.root = root;
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * @param versionMarker of a deployment revision, like TEST-21-3-a.
+     * @return the name of the revision's manifest, like content-TEST-21-3-a.manifest.
+     */
+    public static String manifestName(String versionMarker) {
+        return "content-" + versionMarker + ".manifest";
+    }
+
+    public File getManifestFile(String versionMarker) {
+        return new File(new File(new File(root, PUBLISHED_DIR), versionMarker), manifestName(versionMarker));
+    }
+
+    public File getObjectFile(String hash) {
+        return new File(new File(new File(root, OBJECTS_DIR), hash.substring(0, 2)), hash);
+    }
+
+    /**
+     * @param hash of an object.
+     * @param size of the object.
+     * @return true if the object is here, with the expected size.
+     */
+    public boolean hasObject(String hash, long size) {
+        File objectFile = getObjectFile(hash);
+        return objectFile.isFile() && objectFile.length() == size;
+    }
+
+    @Override
+    public ContentManifest getManifest(String versionMarker) throws IOException {
+        File manifestFile = getManifestFile(versionMarker);
+        if (!manifestFile.isFile()) {
+            return null;
+        }
+        try (InputStream in = new FileInputStream(manifestFile)) {
+            return ContentManifest.read(in);
+        }
+    }
+
+    @Override
+    public void getObject(String hash, File target) throws IOException {
+        File objectFile = getObjectFile(hash);
+        if (!objectFile.isFile()) {
+            throw new FileNotFoundException("No object " + hash + " in " + root);
+        }
+        Files.copy(objectFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public void putManifest(String versionMarker, ContentManifest manifest) throws IOException {
+        File manifestFile = getManifestFile(versionMarker);
+        File tempFile = newTempFile(manifestFile);
+        try (OutputStream out = new FileOutputStream(tempFile)) {
+            manifest.write(out);
+        }
+        moveIntoPlace(tempFile, manifestFile);
+    }
+
+    /**
+     * Adds an object, by copying the given file, unless the object is already here.
+     * @param hash of the file's content.
+     * @param source file with the content.
+     * @throws IOException if the file can't be copied.
+     */
+    public void putObject(String hash, File source) throws IOException {
+        if (hasObject(hash, source.length())) return;
+        File objectFile = getObjectFile(hash);
+        File tempFile = newTempFile(objectFile);
+        Files.copy(source.toPath(), tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        moveIntoPlace(tempFile, objectFile);
+    }
+
+    /**
+     * Adds an object by linking to the given file, or copying it if it can't be linked, unless the
+     * object is already here. The file mustn't be changed afterwards.
+     * @param hash of the file's content.
+     * @param source file with the content.
+     * @throws IOException if the file can't be linked or copied.
+     */
+    public void linkObject(String hash, File source) throws IOException {
+        if (hasObject(hash, source.length())) return;
+        File objectFile = getObjectFile(hash);
+        File tempFile = newTempFile(objectFile);
+        linkOrCopy(source, tempFile);
+        moveIntoPlace(tempFile, objectFile);
+    }
+
+    /**
+     * Adds an object from a file that was written for it, like a download into newTempFile(hash).
+     * The file is moved, not copied.
+     * @param hash of the file's content.
+     * @param tempFile with the content.
+     * @throws IOException if the file can't be moved.
+     */
+    public void moveObject(String hash, File tempFile) throws IOException {
+        moveIntoPlace(tempFile, getObjectFile(hash));
+    }
+
+    /**
+     * @param hash of an object to be added.
+     * @return a new file, in this store, into which the object can be written before moveObject.
+     * @throws IOException if the file can't be created.
+     */
+    public File newTempFile(String hash) throws IOException {
+        return newTempFile(getObjectFile(hash));
+    }
+
+    /**
+     * Makes a file with the object's content at the target path, by linking to the object if the
+     * file system allows, otherwise by copying it.
+     * @param hash of the object.
+     * @param target path for the file. Replaced if it exists.
+     * @throws IOException if there's no such object, or it can't be linked or copied.
+     */
+    public void materializeObject(String hash, File target) throws IOException {
+        File objectFile = getObjectFile(hash);
+        if (!objectFile.isFile()) {
+            throw new FileNotFoundException("No object " + hash + " in " + root);
+        }
+        Files.deleteIfExists(target.toPath());
+        linkOrCopy(objectFile, target);
+    }
+
+    /**
+     * Deletes the objects that the manifest doesn't use, and any left-over temporary files.
+     * @param manifest of the content to keep.
+     */
+    public void retainOnly(ContentManifest manifest) {
+        Set<String> hashes = manifest.getEntries().stream()
+            .map(e -> e.hash)
+            .collect(Collectors.toSet());
+        File[] prefixDirs = new File(root, OBJECTS_DIR).listFiles(File::isDirectory);
+        if (prefixDirs == null) return;
+        for (File prefixDir : prefixDirs) {
+            File[] objectFiles = prefixDir.listFiles(f -> !hashes.contains(f.getName()));
+            if (objectFiles == null) continue;
+            for (File objectFile : objectFiles) {
+                //noinspection ResultOfMethodCallIgnored
+                objectFile.delete();
+            }
+        }
+    }
+
+    private static File newTempFile(File finalFile) throws IOException {
+        File dir = finalFile.getParentFile();
+        if (!dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+        return File.createTempFile(finalFile.getName() + '.', ".tmp", dir);
+    }
+
+    private static void linkOrCopy(File source, File target) throws IOException {
+        try {
+            Files.deleteIfExists(target.toPath());
+            Files.createLink(target.toPath(), source.toPath());
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            // Different volumes, or a file system without hard links (like FAT).
+            Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void moveIntoPlace(File tempFile, File finalFile) throws IOException {
+        try {
+            Files.move(tempFile.toPath(), finalFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException | FileAlreadyExistsException e) {
+            Files.move(tempFile.toPath(), finalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
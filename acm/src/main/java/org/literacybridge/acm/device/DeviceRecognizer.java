@@ -1,7 +1,15 @@
 package org.literacybridge.acm.device;
 
 import java.io.File;
+import java.util.Collection;
 
 public abstract class DeviceRecognizer {
   public abstract DeviceInfo identifyDevice(File pathToDevice);
+
+  /**
+   * Forgets anything remembered about paths other than these, the ones currently present.
+   * For recognizers that cache their results.
+   */
+  public void retainOnly(Collection<File> pathsToDevices) {
+  }
 }
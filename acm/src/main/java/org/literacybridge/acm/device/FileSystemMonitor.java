@@ -2,10 +2,10 @@ package org.literacybridge.acm.device;
 
 import java.io.File;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.literacybridge.acm.core.MessageBus;
-import org.literacybridge.acm.utils.OsUtils;
 
 public class FileSystemMonitor extends Thread {
   private static final int DEFAULT_SLEEP_TIME = 3000; // 3 secs
@@ -36,53 +36,54 @@ public class FileSystemMonitor extends Thread {
 
   @Override
   public void run() {
-    while (true) {
-      File[] roots;
-      if (OsUtils.WINDOWS) {
-        roots = File.listRoots();
-      } else if (OsUtils.MAC_OS) {
-        roots = new File("/Volumes").listFiles();
-      } else {
-        // TODO: support linux
-        roots = null;
-      }
-      Set<DeviceInfo> currentDevices = new HashSet<DeviceInfo>();
-      for (File root : roots) {
-        // check if this is a supported device
-        if (root.isDirectory()) {
-          DeviceInfo device = checkForDevice(root);
-          if (device != null) {
-            currentDevices.add(device);
+    // Only polls where the platform can't tell us about new mounts.
+    MountDetector mountDetector = MountDetector.forPlatform(DEFAULT_SLEEP_TIME);
+    try {
+      while (true) {
+        List<File> roots = mountDetector.getRoots();
+        Set<DeviceInfo> currentDevices = new HashSet<DeviceInfo>();
+        for (File root : roots) {
+          // check if this is a supported device
+          if (root.isDirectory()) {
+            DeviceInfo device = checkForDevice(root);
+            if (device != null) {
+              currentDevices.add(device);
+            }
           }
         }
-      }
-
-      int newDevices = 0;
-      for (DeviceInfo device : currentDevices) {
-        if (!this.connectedDevices.contains(device)) {
-          MessageBus.getInstance()
-              .sendMessage(new DeviceConnectEvent.ConnectEvent(device));
-          newDevices++;
+        for (DeviceRecognizer r : this.deviceRecognizers) {
+          r.retainOnly(roots);
         }
-      }
 
-      if (this.connectedDevices.size() != currentDevices.size() - newDevices) {
-        // we need to determine which devices were disconnected
-        for (DeviceInfo device : this.connectedDevices) {
-          if (!currentDevices.contains(device)) {
+        int newDevices = 0;
+        for (DeviceInfo device : currentDevices) {
+          if (!this.connectedDevices.contains(device)) {
             MessageBus.getInstance()
-                .sendMessage(new DeviceConnectEvent.DisconnectEvent(device));
+                .sendMessage(new DeviceConnectEvent.ConnectEvent(device));
+            newDevices++;
           }
         }
-      }
 
-      this.connectedDevices = currentDevices;
+        if (this.connectedDevices.size() != currentDevices.size() - newDevices) {
+          // we need to determine which devices were disconnected
+          for (DeviceInfo device : this.connectedDevices) {
+            if (!currentDevices.contains(device)) {
+              MessageBus.getInstance()
+                  .sendMessage(new DeviceConnectEvent.DisconnectEvent(device));
+            }
+          }
+        }
 
-      try {
-        sleep(DEFAULT_SLEEP_TIME);
-      } catch (InterruptedException e) {
-        throw new RuntimeException(e);
+        this.connectedDevices = currentDevices;
+
+        try {
+          mountDetector.awaitChange();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
       }
+    } finally {
+      mountDetector.close();
     }
   }
 }
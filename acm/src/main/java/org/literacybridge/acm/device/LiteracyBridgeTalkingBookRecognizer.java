@@ -4,16 +4,63 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class LiteracyBridgeTalkingBookRecognizer extends DeviceRecognizer {
+  /**
+   * What was found at a path, and the state of the files it was found from.
+   */
+  private static class Recognized {
+    final long stamp;
+    final DeviceInfo info;
+
+    Recognized(long stamp, DeviceInfo info) {
+      this.stamp = stamp;
+      this.info = info;
+    }
+  }
+
+  // The config file is only read again if it, or the root, changes.
+  private final Map<File, Recognized> recognized = new ConcurrentHashMap<>();
 
   @Override
   public DeviceInfo identifyDevice(File pathToDevice) {
     File systemPath = new File(pathToDevice, DeviceContents.SYSTEM_SUBFOLDER);
+    File configFile = new File(systemPath, DeviceContents.CONFIG_FILE);
+    long stamp = stampOf(pathToDevice, configFile);
+    Recognized previous = recognized.get(pathToDevice);
+    if (previous != null && previous.stamp == stamp) {
+      return previous.info;
+    }
+    DeviceInfo info = readDevice(pathToDevice, systemPath, configFile);
+    recognized.put(pathToDevice, new Recognized(stamp, info));
+    return info;
+  }
+
+  @Override
+  public void retainOnly(Collection<File> pathsToDevices) {
+    Set<File> present = new HashSet<>(pathsToDevices);
+    recognized.keySet().retainAll(present);
+  }
+
+  /**
+   * A value that changes when a different device is mounted at the path, or when the config
+   * file is changed. All zero if nothing is there.
+   */
+  private static long stampOf(File pathToDevice, File configFile) {
+    long stamp = pathToDevice.lastModified();
+    stamp = stamp * 31 + configFile.lastModified();
+    return stamp * 31 + configFile.length();
+  }
+
+  private DeviceInfo readDevice(File pathToDevice, File systemPath, File configFile) {
     if (!systemPath.exists()) {
       return null;
     }
-    File configFile = new File(systemPath, DeviceContents.CONFIG_FILE);
     if (!configFile.exists()) {
       return null;
     }
@@ -0,0 +1,156 @@
+package org.literacybridge.acm.device;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.literacybridge.acm.utils.OsUtils;
+
+/**
+ * Finds the places where a device might be mounted, and says when that may have changed, so
+ * that a monitor needn't rescan all the roots on a short fixed schedule.
+ *
+ * Use forPlatform() to get the best detector for the running OS. On Linux that watches the
+ * mount directories with a WatchService; elsewhere (and on Linux if the WatchService can't be
+ * used) it polls.
+ */
+public abstract class MountDetector {
+  private static final Logger LOG = Logger.getLogger(MountDetector.class.getName());
+
+  private final Supplier<List<File>> rootLister;
+  private final Object lock = new Object();
+  private volatile boolean wakeupRequested;
+
+  MountDetector(Supplier<List<File>> rootLister) {
+    this.rootLister = rootLister;
+  }
+
+  /**
+   * @return the places where a device might currently be mounted.
+   */
+  public List<File> getRoots() {
+    return rootLister.get();
+  }
+
+  /**
+   * Waits until the roots may have changed, or until a rescan is due anyway, or until
+   * wakeup() is called. The caller should then call getRoots() and look for changes.
+   *
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public abstract void awaitChange() throws InterruptedException;
+
+  /**
+   * Makes a pending (or the next) awaitChange() return at once, as when the caller wants a
+   * fresh scan.
+   */
+  public void wakeup() {
+    synchronized (lock) {
+      wakeupRequested = true;
+      lock.notifyAll();
+    }
+  }
+
+  /**
+   * Waits up to the given time, returning early if wakeup() is called.
+   */
+  void pause(long millis) throws InterruptedException {
+    synchronized (lock) {
+      if (!wakeupRequested) {
+        lock.wait(millis);
+      }
+      wakeupRequested = false;
+    }
+  }
+
+  /**
+   * @return true (once) if wakeup() was called since the last check.
+   */
+  boolean takeWakeup() {
+    synchronized (lock) {
+      boolean requested = wakeupRequested;
+      wakeupRequested = false;
+      return requested;
+    }
+  }
+
+  /**
+   * Releases any resources held by the detector.
+   */
+  public void close() {
+  }
+
+  /**
+   * Gets a detector for the running OS.
+   *
+   * @param pollMillis how often to rescan, if the detector has to poll.
+   * @return the detector.
+   */
+  public static MountDetector forPlatform(long pollMillis) {
+    if (OsUtils.WINDOWS) {
+      // Drive letters can't be watched.
+      return new PollingMountDetector(() -> Arrays.asList(File.listRoots()), pollMillis);
+    } else if (OsUtils.MAC_OS) {
+      // The JDK's WatchService on MacOS is itself a poller, and slower than ours.
+      List<File> mountDirs = Arrays.asList(new File("/Volumes"));
+      return new PollingMountDetector(() -> childrenOf(mountDirs), pollMillis);
+    } else if (OsUtils.LINUX) {
+      List<File> mountDirs = linuxMountDirs();
+      try {
+        return new WatchingMountDetector(mountDirs, WatchingMountDetector.RESCAN_MILLIS);
+      } catch (IOException e) {
+        LOG.log(Level.INFO, "Can't watch mount directories; polling instead", e);
+        return new PollingMountDetector(() -> childrenOf(mountDirs), pollMillis);
+      }
+    }
+    return new PollingMountDetector(ArrayList::new, pollMillis);
+  }
+
+  /**
+   * The directories in which removable media are mounted by the common Linux desktops.
+   */
+  private static List<File> linuxMountDirs() {
+    String user = System.getProperty("user.name");
+    List<File> mountDirs = new ArrayList<>();
+    mountDirs.add(new File("/media"));
+    mountDirs.add(new File("/run/media"));
+    if (user != null) {
+      mountDirs.add(new File("/media", user));
+      mountDirs.add(new File("/run/media", user));
+    }
+    mountDirs.add(new File("/mnt"));
+    return mountDirs;
+  }
+
+  /**
+   * The directories within the mount directories, not counting the mount directories
+   * themselves (/media/${user} is in /media).
+   *
+   * @param mountDirs to be listed.
+   * @return the sub-directories, which are potential mount points.
+   */
+  static List<File> childrenOf(List<File> mountDirs) {
+    Set<File> excluded = new HashSet<>();
+    for (File mountDir : mountDirs) {
+      excluded.add(mountDir.getAbsoluteFile());
+    }
+    List<File> roots = new ArrayList<>();
+    for (File mountDir : mountDirs) {
+      File[] children = mountDir.listFiles(File::isDirectory);
+      if (children == null) continue;
+      for (File child : children) {
+        if (!excluded.contains(child.getAbsoluteFile())) {
+          roots.add(child);
+        }
+      }
+    }
+    return roots;
+  }
+}
@@ -0,0 +1,23 @@
+package org.literacybridge.acm.device;
+
+import java.io.File;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * A MountDetector that simply asks for a rescan at a fixed interval. For platforms without a
+ * useful way to be told of new mounts.
+ */
+class PollingMountDetector extends MountDetector {
+  private final long pollMillis;
+
+  PollingMountDetector(Supplier<List<File>> rootLister, long pollMillis) {
+    super(rootLister);
+    this.pollMillis = pollMillis;
+  }
+
+  @Override
+  public void awaitChange() throws InterruptedException {
+    pause(pollMillis);
+  }
+}
@@ -0,0 +1,131 @@
+package org.literacybridge.acm.device;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+
+/**
+ * A MountDetector that watches the mount directories, and asks for a rescan only when
+ * something is created or deleted in one of them.
+ *
+ * Mounting usually takes several steps (make the mount point, mount, maybe rename), so events
+ * are collected until things have been quiet for a moment. The directory appears before the
+ * file system is mounted on it, and that isn't reported, so there's a second rescan shortly
+ * after every change, and a slow periodic rescan in case anything else was missed.
+ */
+class WatchingMountDetector extends MountDetector {
+  private static final Logger LOG = Logger.getLogger(WatchingMountDetector.class.getName());
+
+  static final long RESCAN_MILLIS = 10_000;
+  static final long DEBOUNCE_MILLIS = 250;
+  // Longest we'll keep collecting events, if they never stop.
+  static final long MAX_DEBOUNCE_MILLIS = 2_000;
+  static final long SETTLE_MILLIS = 1_000;
+  // How often a wait checks for wakeup(); the WatchService can't be woken.
+  private static final long WAKEUP_CHECK_MILLIS = 100;
+
+  private final List<File> mountDirs;
+  private final long rescanMillis;
+  private final WatchService watchService;
+  private final Map<WatchKey, Path> watched = new HashMap<>();
+  private boolean settling;
+
+  /**
+   * @param mountDirs    the directories to watch. Those that don't exist yet are watched once
+   *                     they do.
+   * @param rescanMillis how often to ask for a rescan when nothing has happened.
+   * @throws IOException if no directory can be watched.
+   */
+  WatchingMountDetector(List<File> mountDirs, long rescanMillis) throws IOException {
+    super(() -> childrenOf(mountDirs));
+    this.mountDirs = mountDirs;
+    this.rescanMillis = rescanMillis;
+    this.watchService = FileSystems.getDefault().newWatchService();
+    register();
+    if (watched.isEmpty()) {
+      watchService.close();
+      throw new IOException("None of the mount directories can be watched: " + mountDirs);
+    }
+  }
+
+  @Override
+  public void awaitChange() throws InterruptedException {
+    long timeout = settling ? SETTLE_MILLIS : rescanMillis;
+    settling = false;
+    WatchKey key = poll(timeout);
+    if (key == null) {
+      // Timed out, or woken; rescan anyway.
+      register();
+      return;
+    }
+    long deadline = System.currentTimeMillis() + MAX_DEBOUNCE_MILLIS;
+    while (key != null) {
+      drain(key);
+      if (System.currentTimeMillis() >= deadline) break;
+      key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+    settling = true;
+    // A mount directory may have just been created (/run/media/${user} on the first mount).
+    register();
+  }
+
+  @Override
+  public void close() {
+    try {
+      watchService.close();
+    } catch (IOException e) {
+      // ignore
+    }
+  }
+
+  /**
+   * Waits for a key, checking every so often whether wakeup() was called.
+   */
+  private WatchKey poll(long timeoutMillis) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    long remaining = timeoutMillis;
+    while (remaining > 0) {
+      if (takeWakeup()) return null;
+      WatchKey key = watchService.poll(Math.min(remaining, WAKEUP_CHECK_MILLIS), TimeUnit.MILLISECONDS);
+      if (key != null) return key;
+      remaining = deadline - System.currentTimeMillis();
+    }
+    return null;
+  }
+
+  private void drain(WatchKey key) {
+    // The events themselves don't matter; the caller rescans. An OVERFLOW means the same.
+    key.pollEvents();
+    if (!key.reset()) {
+      // The watched directory is gone.
+      watched.remove(key);
+    }
+  }
+
+  /**
+   * Watches any of the mount directories not already being watched.
+   */
+  private void register() {
+    for (File mountDir : mountDirs) {
+      Path path = mountDir.toPath().toAbsolutePath();
+      if (!mountDir.isDirectory() || watched.containsValue(path)) continue;
+      try {
+        watched.put(path.register(watchService, ENTRY_CREATE, ENTRY_DELETE), path);
+      } catch (IOException e) {
+        LOG.log(Level.FINE, "Can't watch " + path, e);
+      }
+    }
+  }
+}
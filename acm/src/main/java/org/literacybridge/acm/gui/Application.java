@@ -14,6 +14,7 @@ import org.literacybridge.acm.config.PathsProvider;
 import org.literacybridge.acm.device.FileSystemMonitor;
 import org.literacybridge.acm.device.LiteracyBridgeTalkingBookRecognizer;
 import org.literacybridge.acm.gui.MainWindow.MainView;
+import org.literacybridge.acm.gui.MainWindow.SidebarView;
 import org.literacybridge.acm.gui.MainWindow.ToolbarView;
 import org.literacybridge.acm.gui.dialogs.AcmCheckoutTest;
 import org.literacybridge.acm.gui.dialogs.LafTester;
@@ -21,7 +22,9 @@ import org.literacybridge.acm.gui.dialogs.S3SyncDialog;
 import org.literacybridge.acm.gui.playerAPI.SimpleSoundPlayer;
 import org.literacybridge.acm.gui.resourcebundle.LabelProvider;
 import org.literacybridge.acm.gui.util.FilterState;
-import org.literacybridge.acm.gui.util.SimpleMessageService;
+import org.literacybridge.acm.store.SearchResult;
+import org.literacybridge.acm.store.Taxonomy;
+import org.literacybridge.acm.gui.util.EventBus;
 import org.literacybridge.acm.utils.LogHelper;
 import org.literacybridge.acm.utils.OsUtils;
 import org.literacybridge.acm.utils.SwingUtils;
@@ -90,14 +93,21 @@ public class Application extends JXFrame {
   }
 
   // message pump
-  private static final SimpleMessageService simpleMessageService = new SimpleMessageService();
+  private static final EventBus eventBus = new EventBus();
+  static {
+      // Each of these describes a whole new state (or only that something changed), so only the
+      // latest of a burst needs to be delivered.
+      eventBus.setCoalesced(SearchResult.class);
+      eventBus.setCoalesced(SidebarView.PlaylistsChanged.class);
+      eventBus.setCoalesced(Taxonomy.CategoryVisibilitiesUpdated.class);
+  }
 
   private Color backgroundColor;
   private final ACMStatusBar statusBar;
   private final BackgroundTaskManager taskManager;
 
-  public static SimpleMessageService getMessageService() {
-    return simpleMessageService;
+  public static EventBus getMessageService() {
+    return eventBus;
   }
 
   // file system monitor for the audio devices
@@ -198,6 +208,7 @@ public class Application extends JXFrame {
           splashScreen.setProgressLabel("Shutting down...", SplashScreen.SPLASH_OPTIONS.ALWAYS_ON_TOP);
           splashScreen.makeNonTransparent();
           application.setVisible(false);
+          LOG.log(Level.INFO, "Event bus: " + eventBus.getStats());
           try {
               ACMConfiguration.DB_CLOSE_DISPOSITION disposition = ACMConfiguration.DB_CLOSE_DISPOSITION.COMMIT;
 
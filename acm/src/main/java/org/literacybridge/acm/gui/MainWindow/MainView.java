@@ -56,13 +56,13 @@ public class MainView extends ACMContainer {
 
     add(BorderLayout.CENTER, sp);
 
-    Application.getMessageService().pumpMessage(result);
+    Application.getMessageService().publish(result);
   }
 
   public static void updateDataRequestResult() {
     final MetadataStore store = ACMConfiguration.getInstance().getCurrentDB()
         .getMetadataStore();
     SearchResult result = store.search("", null);
-    Application.getMessageService().pumpMessage(result);
+    Application.getMessageService().publish(result);
   }
 }
@@ -126,7 +126,7 @@ class PlaylistPopupMenu extends JPopupMenu {
                     }
                 }
             }  finally {
-                Application.getMessageService().pumpMessage(new PlaylistsChanged());
+                Application.getMessageService().publish(new PlaylistsChanged());
                 Application.getFilterState().setSelectedPlaylist(null);
                 Application.getFilterState().updateResult(true);
             }
@@ -149,7 +149,7 @@ class PlaylistPopupMenu extends JPopupMenu {
                 ACMConfiguration.getInstance().getCurrentDB().getMetadataStore()
                     .commit(selectedPlaylist.getPlaylist());
 
-                Application.getMessageService().pumpMessage(new PlaylistsChanged());
+                Application.getMessageService().publish(new PlaylistsChanged());
             } catch (Exception ex) {
                 LOG.log(Level.WARNING,
                     "Unable to rename playlist " + selectedPlaylist.toString());
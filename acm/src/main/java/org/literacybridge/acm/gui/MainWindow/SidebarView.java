@@ -17,6 +17,7 @@ import org.literacybridge.acm.gui.dialogs.audioItemImportDialog.AudioItemImportD
 import org.literacybridge.acm.gui.messages.AudioItemTableSortOrderMessage;
 import org.literacybridge.acm.gui.resourcebundle.LabelProvider;
 import org.literacybridge.acm.gui.util.ACMContainer;
+import org.literacybridge.acm.gui.util.EventBus;
 import org.literacybridge.acm.gui.util.UIUtils;
 import org.literacybridge.acm.gui.util.language.LanguageUtil;
 import org.literacybridge.acm.gui.util.language.UILanguageChanged;
@@ -53,15 +54,13 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Observable;
-import java.util.Observer;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
-public class SidebarView extends ACMContainer implements Observer {
+public class SidebarView extends ACMContainer {
     private static final Logger LOG = Logger
         .getLogger(SidebarView.class.getName());
 
@@ -134,7 +133,12 @@ public class SidebarView extends ACMContainer implements Observer {
         // init controls with default language
         updateTreeNodes();
         updatePlaylistTable();
-        Application.getMessageService().addObserver(this);
+        EventBus bus = Application.getMessageService();
+        bus.subscribe(UILanguageChanged.class, EventBus.Delivery.EDT, message -> updateTreeNodes());
+        bus.subscribe(SearchResult.class, EventBus.Delivery.EDT, this::onSearchResult);
+        bus.subscribe(PlaylistsChanged.class, EventBus.Delivery.EDT, message -> updatePlaylistTable());
+        bus.subscribe(Taxonomy.CategoryVisibilitiesUpdated.class, EventBus.Delivery.EDT,
+            message -> fillCategories());
     }
 
     private void createTasks() {
@@ -538,7 +542,7 @@ public class SidebarView extends ACMContainer implements Observer {
             // created on the fly, like ex.
             // popup menus
             Application.getMessageService()
-                .pumpMessage(new UILanguageChanged(newLocale, currLocale));
+                .publish(new UILanguageChanged(newLocale, currLocale));
             currLocale = newLocale;
         });
         optionComponent.add(userLanguages);
@@ -617,7 +621,7 @@ public class SidebarView extends ACMContainer implements Observer {
             }
             clearTreeSelections();
             Application
-                .getMessageService().pumpMessage(new AudioItemTableSortOrderMessage(
+                .getMessageService().publish(new AudioItemTableSortOrderMessage(
                 LabelProvider.getLabel(LabelProvider.AUDIO_ITEM_TABLE_COLUMN_PLAYLIST_ORDER),
                 SortOrder.ASCENDING));
         });
@@ -895,7 +899,7 @@ public class SidebarView extends ACMContainer implements Observer {
                 Playlist playlist = store.newPlaylist(playlistName);
                 try {
                     store.commit(playlist);
-                    Application.getMessageService().pumpMessage(new PlaylistsChanged());
+                    Application.getMessageService().publish(new PlaylistsChanged());
                 } catch (IOException e) {
                     LOG.log(Level.WARNING, "Unable to create playlist with name " + playlistName, e);
                 }
@@ -921,25 +925,10 @@ public class SidebarView extends ACMContainer implements Observer {
         }
     }
 
-    @Override
-    public void update(Observable o, Object arg) {
-        if (arg instanceof UILanguageChanged) {
-            updateTreeNodes();
-        }
-
-        if (arg instanceof SearchResult) {
-            result = (SearchResult) arg;
-            updateTreeNodes();
-            updatePlaylistTable();
-        }
-
-        if (arg instanceof PlaylistsChanged) {
-            updatePlaylistTable();
-        }
-
-        if (arg instanceof Taxonomy.CategoryVisibilitiesUpdated) {
-            fillCategories();
-        }
+    private void onSearchResult(SearchResult searchResult) {
+        result = searchResult;
+        updateTreeNodes();
+        updatePlaylistTable();
     }
 
     private boolean clearingSelections = false;
@@ -14,6 +14,7 @@ import org.literacybridge.acm.gui.playerAPI.PlayerStateDetails;
 import org.literacybridge.acm.gui.playerAPI.SimpleSoundPlayer;
 import org.literacybridge.acm.gui.resourcebundle.LabelProvider;
 import org.literacybridge.acm.gui.settings.AcmSettingsDialog;
+import org.literacybridge.acm.gui.util.EventBus;
 import org.literacybridge.acm.repository.AudioItemRepository;
 import org.literacybridge.acm.repository.AudioItemRepository.AudioFormat;
 import org.literacybridge.acm.store.AudioItem;
@@ -43,7 +44,6 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.File;
 import java.io.IOException;
-import java.util.Observable;
 
 public class ToolbarView extends JToolBar {
 
@@ -112,7 +112,10 @@ public class ToolbarView extends JToolBar {
         addPositionSliderHandler();
         addSearchTFListener();
 
-        Application.getMessageService().addObserver(this::onApplicationUpdate);
+        EventBus bus = Application.getMessageService();
+        bus.subscribe(PlayAudioItemMessage.class, EventBus.Delivery.EDT, item -> play(item.getAudioItem()));
+        bus.subscribe(SearchRequestMessage.class, EventBus.Delivery.EDT,
+            message -> searchTF.setText(message.getSearchString()));
     }
 
     private void initPlayer() {
@@ -156,7 +159,7 @@ public class ToolbarView extends JToolBar {
             if (player == null) {
                 RequestAudioItemToPlayMessage msg = new RequestAudioItemToPlayMessage(
                         RequestAudioItemMessage.RequestType.Current);
-                Application.getMessageService().pumpMessage(msg);
+                Application.getMessageService().publish(msg);
             } else {
                 PlayerStateDetails psd = player.getPlayerStateDetails();
                 if (psd.getCurrentPlayerState().isPaused()) {
@@ -193,7 +196,7 @@ public class ToolbarView extends JToolBar {
             if (player != null) {
                 RequestAudioItemToPlayMessage msg = new RequestAudioItemToPlayMessage(
                         RequestAudioItemMessage.RequestType.Next);
-                Application.getMessageService().pumpMessage(msg);
+                Application.getMessageService().publish(msg);
             }
         });
 
@@ -201,7 +204,7 @@ public class ToolbarView extends JToolBar {
             if (player != null) {
                 RequestAudioItemToPlayMessage msg = new RequestAudioItemToPlayMessage(
                         RequestAudioItemMessage.RequestType.Previews);
-                Application.getMessageService().pumpMessage(msg);
+                Application.getMessageService().publish(msg);
             }
         });
     }
@@ -355,17 +358,6 @@ public class ToolbarView extends JToolBar {
         }
     }
 
-    private void onApplicationUpdate(Observable o, Object arg) {
-        // The player won't work unless we have or can get a .wav file. But if we can get a .wav file, the
-        // player works fine.
-        if (arg instanceof PlayAudioItemMessage) { // && OsUtils.WINDOWS) {
-            PlayAudioItemMessage item = (PlayAudioItemMessage) arg;
-            play(item.getAudioItem());
-        } else if (arg instanceof SearchRequestMessage) {
-            searchTF.setText(((SearchRequestMessage) arg).getSearchString());
-        }
-    }
-
     private void initComponents() {
         setPreferredSize(new Dimension(300, TOOLBAR_HEIGHT));
         // I (bill) think the toolbar looks better without this:
@@ -11,6 +11,7 @@ import org.literacybridge.acm.gui.util.AudioItemNode;
 import org.literacybridge.acm.gui.util.UIUtils;
 import org.literacybridge.acm.gui.util.language.LanguageUtil;
 import org.literacybridge.acm.repository.AudioItemRepository;
+import org.literacybridge.acm.repository.AudioItemRepository.AudioFileListener;
 import org.literacybridge.acm.repository.AudioItemRepository.AudioFormat;
 import org.literacybridge.acm.store.AudioItem;
 import org.literacybridge.acm.store.Committable;
@@ -19,18 +20,48 @@ import org.literacybridge.acm.store.MetadataStore;
 import org.literacybridge.acm.store.MetadataStore.DataChangeListener;
 import org.literacybridge.acm.store.Playlist;
 
+import javax.swing.SwingUtilities;
 import javax.swing.table.AbstractTableModel;
 import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.Deque;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The model of the audio items table. Values are cached per row. Values that are expensive
+ * to compute (the file date, categories and language) are computed by a background prefetcher,
+ * and the table shows an empty value until they arrive; rows that are painted before their
+ * values are known are moved to the front of the prefetcher's queue. A row's values are
+ * invalidated when the MetadataStore reports a change to the item, or the repository reports
+ * a change to its audio files.
+ *
+ * The rows are only touched on the EDT; the prefetcher hands its values back through invokeLater.
+ */
 public class AudioItemTableModel extends AbstractTableModel {
+  private static final Logger LOG = Logger.getLogger(AudioItemTableModel.class.getName());
+  // Only used on the prefetch thread.
   private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat(
       "yyyy-MM-dd");
+  // Shared by every instance of the model.
+  private static final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "audio-item-prefetch");
+      t.setDaemon(true);
+      return t;
+  });
+  // The most rows published to the table at once.
+  private static final int MAX_PUBLISH_BATCH = 200;
 
     public static final ColumnInfo<String> infoIconColumn = ColumnInfo.newColumnInfo("",
         25,
@@ -58,7 +89,7 @@ public class AudioItemTableModel extends AbstractTableModel {
         LabelProvider.AUDIO_ITEM_TABLE_COLUMN_CATEGORIES,
         ColumnInfo.WIDTH_NOT_SET,
         140,
-        new ValueProvider<String>(true) {
+        new ValueProvider<String>(true, true) {
             @Override
             protected AudioItemNode<String> getValue(AudioItem audioItem) {
                 String value = UIUtils.getCategoryNamesAsString(audioItem);
@@ -75,7 +106,7 @@ public class AudioItemTableModel extends AbstractTableModel {
     public static final ColumnInfo<String> languagesColumn = ColumnInfo.newColumnInfo(LabelProvider.AUDIO_ITEM_TABLE_COLUMN_LANGUAGE,
         ColumnInfo.WIDTH_NOT_SET,
         140,
-        new ValueProvider<String>(true) {
+        new ValueProvider<String>(true, true) {
             @Override
             protected AudioItemNode<String> getValue(AudioItem audioItem) {
                 Locale locale = AudioItemPropertiesModel.getLanguage(audioItem,
@@ -90,7 +121,7 @@ public class AudioItemTableModel extends AbstractTableModel {
         LabelProvider.AUDIO_ITEM_TABLE_COLUMN_DATE_FILE_MODIFIED,
         ColumnInfo.WIDTH_NOT_SET,
         140,
-        new ValueProvider<String>(true) {
+        new ValueProvider<String>(true, true) {
             @Override
             protected AudioItemNode<String> getValue(AudioItem audioItem) {
                 String value = "";
@@ -147,18 +178,22 @@ public class AudioItemTableModel extends AbstractTableModel {
             }
         }).setComparator(Comparator.comparingInt(AudioItemNode::getValue));
 
-    private final Map<String, Integer> uuidToRowIndexMap;
-  private final List<AudioItemNodeRow> rowIndexToIdMap;
+    private final Map<String, Integer> uuidToRowIndexMap = Maps.newHashMap();
+  private final List<AudioItemNodeRow> rowIndexToIdMap = Lists.newArrayList();
 
   private final ColumnInfo<?>[] columns;
   final int[] defaultHiddenColumns;
 
+  // Rows waiting for the prefetcher. Rows that have been painted are added to the front.
+  private final Deque<AudioItemNodeRow> prefetchQueue = new ConcurrentLinkedDeque<>();
+  private final AtomicBoolean prefetcherRunning = new AtomicBoolean();
+  // Rows whose values have been computed, waiting to be published on the EDT.
+  private final Queue<AudioItemNodeRow> prefetchedRows = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean publishScheduled = new AtomicBoolean();
+
   AudioItemTableModel() {
       MetadataStore store = ACMConfiguration.getInstance().getCurrentDB()
           .getMetadataStore();
-    this.uuidToRowIndexMap = Maps.newHashMap();
-    this.rowIndexToIdMap = Lists.newArrayList();
-
     columns = initializeColumnInfoArray(infoIconColumn, contentidColumn, titleColumn,
         durationColumn, categoriesColumn, sourceColumn, languagesColumn,
         dateFileModifiedColumn, /*correlationIdColumn,*/ sdgGoalsColumn,
@@ -171,40 +206,74 @@ public class AudioItemTableModel extends AbstractTableModel {
     }
 
     store.addDataChangeListener(storeChangedListener);
+    ACMConfiguration.getInstance().getCurrentDB().getRepository()
+        .addAudioFileListener(audioFileListener);
   }
 
-    private final DataChangeListener storeChangedListener = new DataChangeListener() {
-        @Override
-        public void dataChanged(List <MetadataStore.DataChangeEvent> events) {
-            if (events.size() > 1) {
-                // bulk update
-                fireTableDataChanged();
-            } else {
-                // optimized case for single row update
-                Committable item = events.get(0).getItem();
-                MetadataStore.DataChangeEventType eventType = events.get(0).getEventType();
-
-                if (item instanceof AudioItem) {
-                    AudioItem audioItem = (AudioItem) item;
-                    if (eventType == MetadataStore.DataChangeEventType.ITEM_ADDED) {
-                        int row = addNewAudioItem(audioItem);
-                        fireTableRowsInserted(row, row);
-                    } else {
-                        int row = uuidToRowIndexMap.get(audioItem.getId());
-
-                        if (eventType == MetadataStore.DataChangeEventType.ITEM_MODIFIED) {
-                            rowIndexToIdMap.set(row, convertToAudioItemNodeRow(audioItem));
-                            fireTableRowsUpdated(row, row);
-                        } else if (eventType == MetadataStore.DataChangeEventType.ITEM_DELETED) {
-                            removeAudioItem(audioItem);
-                            fireTableRowsDeleted(row, row);
-                        }
-                    }
+    /**
+     * Changes may be committed from any thread; they're applied to the model on the EDT.
+     */
+    private final DataChangeListener storeChangedListener = events -> runOnEdt(() -> {
+        if (events.size() > 1) {
+            // bulk update
+            for (MetadataStore.DataChangeEvent event : events) {
+                applyChange(event);
+            }
+            fireTableDataChanged();
+        } else {
+            // optimized case for single row update
+            int row = applyChange(events.get(0));
+            if (row >= 0) {
+                switch (events.get(0).getEventType()) {
+                case ITEM_ADDED:
+                    fireTableRowsInserted(row, row);
+                    break;
+                case ITEM_MODIFIED:
+                    fireTableRowsUpdated(row, row);
+                    break;
+                case ITEM_DELETED:
+                    fireTableRowsDeleted(row, row);
+                    break;
                 }
             }
         }
-    };
+    });
 
+    /**
+     * The file date depends on the audio files, which change without a change to the metadata.
+     */
+    private final AudioFileListener audioFileListener = audioItem -> runOnEdt(() -> {
+        Integer row = uuidToRowIndexMap.get(audioItem.getId());
+        if (row != null) {
+            replaceRow(row, rowIndexToIdMap.get(row).audioItem);
+            fireTableRowsUpdated(row, row);
+        }
+    });
+
+    /**
+     * Applies one change to the rows, without telling the table.
+     * @param event describing the change.
+     * @return the row that was affected, or -1 if none was.
+     */
+    private int applyChange(MetadataStore.DataChangeEvent event) {
+        Committable item = event.getItem();
+        if (!(item instanceof AudioItem)) {
+            return -1;
+        }
+        AudioItem audioItem = (AudioItem) item;
+        Integer row = uuidToRowIndexMap.get(audioItem.getId());
+        switch (event.getEventType()) {
+        case ITEM_ADDED:
+        case ITEM_MODIFIED:
+            return row != null ? replaceRow(row, audioItem) : addNewAudioItem(audioItem);
+        case ITEM_DELETED:
+            if (row != null) {
+                removeAudioItem(audioItem);
+            }
+            return row != null ? row : -1;
+        }
+        return -1;
+    }
 
   private ColumnInfo<?>[] initializeColumnInfoArray(ColumnInfo<?>... infos) {
     for (int columnIndex = 0; columnIndex < infos.length; columnIndex++) {
@@ -238,34 +307,63 @@ public class AudioItemTableModel extends AbstractTableModel {
 
   @Override
   public Object getValueAt(int rowIndex, int columnIndex) {
-    ColumnInfo<?> column = columns[columnIndex];
-    if (column.getValueProvider().isValueCachable()) {
-      return rowIndexToIdMap.get(rowIndex).columns[columnIndex];
-    } else {
-      AudioItem audioItem = rowIndexToIdMap.get(rowIndex).audioItem;
-      return column.getValueProvider().getValue(audioItem);
+    ValueProvider<?> valueProvider = columns[columnIndex].getValueProvider();
+    AudioItemNodeRow row = rowIndexToIdMap.get(rowIndex);
+    if (!valueProvider.isValueCachable()) {
+      return valueProvider.getValue(row.audioItem);
     }
+    if (valueProvider.isPrefetched() && !row.loaded) {
+      // Painted (or sorted) before the values are known. Fetch this row next.
+      requestPrefetch(row, true);
+    }
+    return row.columns[columnIndex];
   }
 
-    private AudioItemNodeRow convertToAudioItemNodeRow(AudioItem audioItem) {
+  /**
+   * Builds a row for the item. Cachable values are computed now, except for those that are
+   * prefetched, which are queued for the prefetcher.
+   * @param audioItem for the row.
+   * @param previous the row being replaced, if any. Its prefetched values are shown until the
+   *                 new ones are known.
+   * @return the new row.
+   */
+  private AudioItemNodeRow convertToAudioItemNodeRow(AudioItem audioItem, AudioItemNodeRow previous) {
     AudioItemNodeRow audioItemNodeRow = new AudioItemNodeRow(audioItem,
         columns.length);
 
     for (int columnIndex = 0; columnIndex < columns.length; columnIndex++) {
       ValueProvider<?> valueProvider = columns[columnIndex].getValueProvider();
-      if (valueProvider.isValueCachable()) {
+      if (valueProvider.isPrefetched()) {
+        audioItemNodeRow.columns[columnIndex] = previous != null
+            ? previous.columns[columnIndex]
+            : new AudioItemNode<>(audioItem, null);
+      } else if (valueProvider.isValueCachable()) {
         audioItemNodeRow.columns[columnIndex] = valueProvider
             .getValue(audioItem);
       }
     }
 
+    requestPrefetch(audioItemNodeRow, false);
     return audioItemNodeRow;
   }
 
   private int addNewAudioItem(AudioItem item) {
     int row = rowIndexToIdMap.size();
     uuidToRowIndexMap.put(item.getId(), row);
-    rowIndexToIdMap.add(convertToAudioItemNodeRow(item));
+    rowIndexToIdMap.add(convertToAudioItemNodeRow(item, null));
+    return row;
+  }
+
+  /**
+   * Replaces a row with a fresh one, invalidating its cached values.
+   * @param row to be replaced.
+   * @param audioItem for the row; may be a different instance than the one in the old row.
+   * @return the row.
+   */
+  private int replaceRow(int row, AudioItem audioItem) {
+    AudioItemNodeRow old = rowIndexToIdMap.get(row);
+    old.stale = true;
+    rowIndexToIdMap.set(row, convertToAudioItemNodeRow(audioItem, old));
     return row;
   }
 
@@ -282,16 +380,119 @@ public class AudioItemTableModel extends AbstractTableModel {
       }
     }
     uuidToRowIndexMap.remove(item.getId());
-    rowIndexToIdMap.remove(row);
+    rowIndexToIdMap.remove(row).stale = true;
   }
 
+    /**
+     * Queues a row for the prefetcher.
+     * @param row to be prefetched.
+     * @param urgent if true, the row goes to the front of the queue.
+     */
+    private void requestPrefetch(AudioItemNodeRow row, boolean urgent) {
+        if (urgent) {
+            // The same row is asked for once per prefetched column; only queue it once.
+            if (prefetchQueue.peekFirst() == row) {
+                return;
+            }
+            prefetchQueue.offerFirst(row);
+        } else {
+            prefetchQueue.offerLast(row);
+        }
+        if (prefetcherRunning.compareAndSet(false, true)) {
+            prefetchExecutor.execute(this::prefetch);
+        }
+    }
+
+    /**
+     * Runs on the prefetch thread, until the queue is empty. A row may be in the queue more than
+     * once; it is only computed the first time.
+     */
+    private void prefetch() {
+        do {
+            AudioItemNodeRow row;
+            while ((row = prefetchQueue.pollFirst()) != null) {
+                if (row.stale || row.fetched) {
+                    continue;
+                }
+                row.fetched = true;
+                AudioItemNode<?>[] values = new AudioItemNode<?>[columns.length];
+                try {
+                    for (int columnIndex = 0; columnIndex < columns.length; columnIndex++) {
+                        ValueProvider<?> valueProvider = columns[columnIndex].getValueProvider();
+                        if (valueProvider.isPrefetched()) {
+                            values[columnIndex] = valueProvider.getValue(row.audioItem);
+                        }
+                    }
+                } catch (Exception e) {
+                    // The row keeps its current values, until the item changes again.
+                    LOG.log(Level.WARNING, "Unable to get table values for " + row.audioItem.getId(), e);
+                    continue;
+                }
+                row.prefetchedValues = values;
+                prefetchedRows.add(row);
+                if (publishScheduled.compareAndSet(false, true)) {
+                    SwingUtilities.invokeLater(this::publishPrefetched);
+                }
+            }
+            prefetcherRunning.set(false);
+            // Something may have been queued after the last poll, but before the flag was cleared.
+        } while (!prefetchQueue.isEmpty() && prefetcherRunning.compareAndSet(false, true));
+    }
+
+    /**
+     * Runs on the EDT. Moves prefetched values into their rows, and tells the table about them.
+     */
+    private void publishPrefetched() {
+        publishScheduled.set(false);
+        int first = Integer.MAX_VALUE;
+        int last = -1;
+        AudioItemNodeRow row;
+        for (int n = 0; n < MAX_PUBLISH_BATCH && (row = prefetchedRows.poll()) != null; n++) {
+            Integer rowIndex = uuidToRowIndexMap.get(row.audioItem.getId());
+            if (row.stale || rowIndex == null || rowIndexToIdMap.get(rowIndex) != row) {
+                continue;
+            }
+            AudioItemNode<?>[] values = row.prefetchedValues;
+            for (int columnIndex = 0; columnIndex < columns.length; columnIndex++) {
+                if (values[columnIndex] != null) {
+                    row.columns[columnIndex] = values[columnIndex];
+                }
+            }
+            row.prefetchedValues = null;
+            row.loaded = true;
+            first = Math.min(first, rowIndex);
+            last = Math.max(last, rowIndex);
+        }
+        if (!prefetchedRows.isEmpty() && publishScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::publishPrefetched);
+        }
+        if (last >= 0) {
+            fireTableRowsUpdated(first, last);
+        }
+    }
+
+    private static void runOnEdt(Runnable runnable) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            runnable.run();
+        } else {
+            SwingUtilities.invokeLater(runnable);
+        }
+    }
+
   /**
    * One instance of this class represents one materialized table row in
-   * rowIndexToUuidMap.
+   * rowIndexToUuidMap. The columns are only touched on the EDT.
    */
   private static final class AudioItemNodeRow {
     final AudioItem audioItem;
     final AudioItemNode<?>[] columns;
+    // Set (on the EDT) once the prefetched values have been moved into the columns.
+    boolean loaded;
+    // Set when the row is replaced or removed; its values are no longer wanted.
+    volatile boolean stale;
+    // Only touched by the prefetcher thread.
+    boolean fetched;
+    volatile AudioItemNode<?>[] prefetchedValues;
 
     AudioItemNodeRow(AudioItem audioItem, int numColumns) {
       this.audioItem = audioItem;
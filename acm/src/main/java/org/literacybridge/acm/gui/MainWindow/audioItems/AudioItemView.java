@@ -15,7 +15,6 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Observer;
 import java.util.Set;
 
 import javax.swing.*;
@@ -37,6 +36,7 @@ import org.literacybridge.acm.gui.messages.RequestAudioItemMessage;
 import org.literacybridge.acm.gui.messages.RequestAudioItemToPlayMessage;
 import org.literacybridge.acm.gui.messages.RequestedAudioItemMessage;
 import org.literacybridge.acm.gui.util.AudioItemNode;
+import org.literacybridge.acm.gui.util.EventBus;
 import org.literacybridge.acm.gui.util.language.UILanguageChanged;
 import org.literacybridge.acm.store.AudioItem;
 import org.literacybridge.acm.store.Metadata;
@@ -117,7 +117,17 @@ public class AudioItemView extends Container {
   }
 
   private void addToMessageService() {
-    Application.getMessageService().addObserver(applicationMessageObserver);
+    EventBus bus = Application.getMessageService();
+    bus.subscribe(SearchResult.class, EventBus.Delivery.EDT, result -> {
+      currResult = result;
+      updateTable();
+    });
+    bus.subscribe(UILanguageChanged.class, EventBus.Delivery.EDT,
+        newLocale -> updateControlLanguage(newLocale.getNewLocale()));
+    bus.subscribe(AudioItemTableSortOrderMessage.class, EventBus.Delivery.EDT,
+        message -> audioItemTable.setSortOrder(message.getIdentifier(), message.getSortOrder()));
+    // Requests are answered before the requester's publish() returns.
+    bus.subscribe(RequestAudioItemMessage.class, EventBus.Delivery.IMMEDIATE, this::onRequestAudioItem);
   }
 
   private void createTable() {
@@ -187,53 +197,34 @@ public class AudioItemView extends Container {
   }
 
   /**
-   * Central message handler for the audio item view
+   * Answers a request for the current, next or previous audio item.
    */
-  private Observer applicationMessageObserver = (o, arg) -> {
-    if (arg instanceof SearchResult) {
-      currResult = (SearchResult) arg;
-      updateTable();
+  private void onRequestAudioItem(RequestAudioItemMessage requestAudioItemMessage) {
+    AudioItem audioItem = null;
+    switch (requestAudioItemMessage.getRequestType()) {
+    case Current:
+      audioItem = getCurrentAudioItem();
+      break;
+    case Next:
+      audioItem = getNextAudioItem();
+      break;
+    case Previews:
+      audioItem = getPreviousAudioItem();
+      break;
     }
 
-    if (arg instanceof UILanguageChanged) {
-      UILanguageChanged newLocale = (UILanguageChanged) arg;
-      updateControlLanguage(newLocale.getNewLocale());
-    }
-
-    if (arg instanceof AudioItemTableSortOrderMessage) {
-      AudioItemTableSortOrderMessage message = (AudioItemTableSortOrderMessage) arg;
-      audioItemTable.setSortOrder(message.getIdentifier(), message.getSortOrder());
-    }
+    if (audioItem != null) {
+      selectAudioItem(audioItem);
 
-    if (arg instanceof RequestAudioItemMessage) {
-      RequestAudioItemMessage requestAudioItemMessage = (RequestAudioItemMessage) arg;
-
-      AudioItem audioItem = null;
-      switch (requestAudioItemMessage.getRequestType()) {
-      case Current:
-        audioItem = getCurrentAudioItem();
-        break;
-      case Next:
-        audioItem = getNextAudioItem();
-        break;
-      case Previews:
-        audioItem = getPreviousAudioItem();
-        break;
-      }
-
-      if (audioItem != null) {
-        selectAudioItem(audioItem);
-
-        if (arg instanceof RequestAndSelectAudioItemMessage) {
-          RequestedAudioItemMessage newMsg = new RequestedAudioItemMessage(audioItem);
-          Application.getMessageService().pumpMessage(newMsg);
-        } else if (arg instanceof RequestAudioItemToPlayMessage) {
-          PlayAudioItemMessage newMsg = new PlayAudioItemMessage(audioItem);
-          Application.getMessageService().pumpMessage(newMsg);
-        }
+      if (requestAudioItemMessage instanceof RequestAndSelectAudioItemMessage) {
+        RequestedAudioItemMessage newMsg = new RequestedAudioItemMessage(audioItem);
+        Application.getMessageService().publish(newMsg);
+      } else if (requestAudioItemMessage instanceof RequestAudioItemToPlayMessage) {
+        PlayAudioItemMessage newMsg = new PlayAudioItemMessage(audioItem);
+        Application.getMessageService().publish(newMsg);
       }
     }
-  };
+  }
 
   private void updateControlLanguage(Locale newLocale) {
     for (ColumnInfo<?> columnInfo : tableModel.getColumnInfos()) {
@@ -27,7 +27,7 @@ public class AudioItemViewMouseListener extends MouseAdapter {
     if (e.getClickCount() == 2) {
       RequestAudioItemToPlayMessage msg = new RequestAudioItemToPlayMessage(
           RequestAudioItemMessage.RequestType.Current);
-      Application.getMessageService().pumpMessage(msg);
+      Application.getMessageService().publish(msg);
     }
   }
 
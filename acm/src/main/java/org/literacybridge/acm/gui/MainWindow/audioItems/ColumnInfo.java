@@ -101,27 +101,29 @@ public final class ColumnInfo<T> {
 
   public static abstract class ValueProvider<T> {
     // The AudioItemTableModel needs to know for each column if the value
-    // returned by the
-    // ValueProvider can be cashed until invalidated by a DataChangeEventType,
-    // or if
+    // returned by the ValueProvider can be cached until invalidated by a
+    // DataChangeEvent (or a change to the item's audio files), or if
     // ValueProvider#getValue() must be called every time.
-
-    /**
-     * BE: This "cache" is broken. Rather than lazy-populating the values, they're all simply
-     * pre-computed. There is no means to invalidate the cache when large-scale changes
-     * happen. So data is just "stale", not cached. :(
-     * I expect that ripping it out entirely would give the biggest perf boost.
-     * Sigh.
-     * Add it to the list.
-     */
     private final boolean valueCachable;
+    // Values that are expensive to compute, or that touch the file system, are
+    // computed by the table model's prefetcher, off the EDT.
+    private final boolean prefetched;
 
     public ValueProvider(boolean valueCachable) {
-      this.valueCachable = valueCachable;
+      this(valueCachable, false);
+    }
+
+    public ValueProvider(boolean valueCachable, boolean prefetched) {
+      this.valueCachable = valueCachable || prefetched;
+      this.prefetched = prefetched;
     }
 
     public boolean isValueCachable() {
-      return false;
+      return valueCachable;
+    }
+
+    public boolean isPrefetched() {
+      return prefetched;
     }
 
     protected abstract AudioItemNode<T> getValue(AudioItem audioItem);
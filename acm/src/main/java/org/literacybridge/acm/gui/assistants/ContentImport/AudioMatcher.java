@@ -5,6 +5,8 @@ import org.apache.commons.io.FilenameUtils;
 import org.literacybridge.acm.gui.assistants.Matcher.ImportableFile;
 import org.literacybridge.acm.gui.assistants.Matcher.Matcher;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.function.BiFunction;
 
@@ -75,4 +77,14 @@ class AudioMatcher extends Matcher<AudioTarget, ImportableFile, AudioMatchable>
             score = Math.max(score, fn.apply(left, right));
         return score;
     }
+
+    @Override
+    protected Collection<String> leftKeys(AudioMatchable l) {
+        return l.getLeft().getTitles();
+    }
+
+    @Override
+    protected Collection<String> rightKeys(AudioMatchable r) {
+        return Collections.singletonList(FilenameUtils.getBaseName(r.getRight().getFile().getName()));
+    }
 }
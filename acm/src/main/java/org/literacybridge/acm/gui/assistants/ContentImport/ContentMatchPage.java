@@ -197,13 +197,13 @@ public class ContentMatchPage extends
         if (progressing) {
             context.matcher.setData(titles, files, AudioMatchable::new);
 //            tableModel.setData(context.matcher.matchableItems);
-            context.matcher.autoMatch(context.fuzzyThreshold);
-            context.matcher.sortByProgramSpecification();
-        }
-        tableModel.fireTableDataChanged();
-        sizeColumns();
+            autoMatch(context.fuzzyThreshold, context.matcher::sortByProgramSpecification);
+        } else {
+            tableModel.fireTableDataChanged();
+            sizeColumns();
 
-        setComplete();
+            setComplete();
+        }
     }
 
     @Override
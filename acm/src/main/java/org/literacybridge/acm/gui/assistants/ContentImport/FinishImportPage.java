@@ -10,6 +10,7 @@ import org.literacybridge.acm.gui.assistants.Matcher.ImportableFile;
 import org.literacybridge.acm.gui.assistants.Matcher.Matcher;
 import org.literacybridge.acm.gui.assistants.common.AcmAssistantPage;
 import org.literacybridge.acm.gui.assistants.util.AudioUtils;
+import org.literacybridge.acm.gui.util.EventBus;
 import org.literacybridge.acm.gui.util.UIUtils;
 import org.literacybridge.acm.importexport.AudioImporter;
 import org.literacybridge.acm.store.AudioItem;
@@ -30,6 +31,7 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.event.ActionEvent;
 import java.io.File;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.time.LocalDateTime;
@@ -250,26 +252,38 @@ public class FinishImportPage extends ContentImportBase<ContentImportContext> {
         updateCount = 0;
         errorCount = 0;
         progressCount = 0;
-        // Look at all of the matches.
-        for (AudioMatchable matchableItem : matcher.matchableItems) {
-            if (matchableItem.getMatch().isMatch()) {
-                // If not already in the ACM DB, or the "update item" checkbox is on, do the import.
-                boolean okToImport = matchableItem.getLeft().isImportable();
-                if (okToImport) {
-                    importOneItem(matchableItem);
-                } else if (matchableItem.getLeft().hasAudioItem()
-                        && !matchableItem.getLeft().isPlaylist()) {
-                    ensureAudioInPlaylist(matchableItem.getLeft());
+        EventBus.Stats busStats = Application.getMessageService().getStats();
+        // Batch the imports, so the index is written once at the end, not once per item.
+        try {
+            MetadataStore.Batch batch = dbConfig.getMetadataStore().newBatch();
+            try {
+                // Look at all of the matches.
+                for (AudioMatchable matchableItem : matcher.matchableItems) {
+                    if (matchableItem.getMatch().isMatch()) {
+                        // If not already in the ACM DB, or the "update item" checkbox is on, do the import.
+                        boolean okToImport = matchableItem.getLeft().isImportable();
+                        if (okToImport) {
+                            importOneItem(matchableItem);
+                        } else if (matchableItem.getLeft().hasAudioItem()
+                                && !matchableItem.getLeft().isPlaylist()) {
+                            ensureAudioInPlaylist(matchableItem.getLeft());
+                        }
+                    } else if (matchableItem.getLeft() != null && matchableItem.getLeft().hasAudioItem()
+                            && !matchableItem.getLeft().isPlaylist()) {
+                        ensureAudioInPlaylist(matchableItem.getLeft());
+                    }
+                    UIUtils.setProgressBarValue(progressBar, ++progressCount);
                 }
-            } else if (matchableItem.getLeft() != null && matchableItem.getLeft().hasAudioItem()
-                    && !matchableItem.getLeft().isPlaylist()) {
-                ensureAudioInPlaylist(matchableItem.getLeft());
+            } finally {
+                batch.close();
             }
-            UIUtils.setProgressBarValue(progressBar, ++progressCount);
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Unable to write imported content to the index.", e);
         }
 
         // Refresh the content and playlist views.
         Application.getFilterState().updateResult(true);
+        LOG.log(Level.INFO, "Event bus during import: " + Application.getMessageService().getStats().since(busStats));
     }
 
     /**
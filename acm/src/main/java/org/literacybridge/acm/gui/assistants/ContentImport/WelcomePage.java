@@ -458,7 +458,7 @@ public class WelcomePage extends ContentImportBase<ContentImportContext> {
         }
 
         if (anyAdded) {
-            Application.getMessageService().pumpMessage(new SidebarView.PlaylistsChanged());
+            Application.getMessageService().publish(new SidebarView.PlaylistsChanged());
         }
     }
 
@@ -124,12 +124,13 @@ public class GreetingsMatchPage extends AbstractMatchPage<GreetingsImportContext
                 .collect(Collectors.toList());
 
             context.matcher.setData(recipients, files, GreetingMatchable::new);
-            context.matcher.autoMatch(60);
+            autoMatch(60, () -> {});
 
+        } else {
+            tableModel.fireTableDataChanged();
+            sizeColumns();
+            setComplete();
         }
-        tableModel.fireTableDataChanged();
-        sizeColumns();
-        setComplete();
     }
 
     @Override
@@ -7,6 +7,10 @@ import org.literacybridge.acm.gui.assistants.Matcher.ImportableFile;
 import org.literacybridge.acm.gui.assistants.Matcher.Matcher;
 import org.literacybridge.core.spec.RecipientList.RecipientAdapter;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.function.BiFunction;
 
 /**
@@ -16,17 +20,36 @@ public class GreetingsMatcher extends Matcher<GreetingTarget, GreetingFile, Gree
 
     @Override
     protected int scoreMatch(GreetingMatchable l, GreetingMatchable r, boolean tokens) {
-        RecipientAdapter recipient = l.getLeft().getRecipient();
         GreetingFile gf = r.getRight();
 
         // Which compare function are we using?
         BiFunction<String, String, Integer> fn = tokens ? FuzzySearch::tokenSortRatio : FuzzySearch::ratio;
 
         String fileName = gf.getTitle();
-        int score;
+        int score = 0;
+        for (String testName : namesFor(l.getLeft().getRecipient())) {
+            score = Math.max(score, fn.apply(testName, fileName));
+        }
+        return score;
+    }
+
+    @Override
+    protected Collection<String> leftKeys(GreetingMatchable l) {
+        return namesFor(l.getLeft().getRecipient());
+    }
 
+    @Override
+    protected Collection<String> rightKeys(GreetingMatchable r) {
+        return Collections.singletonList(r.getRight().getTitle());
+    }
+
+    /**
+     * The names a greeting for the recipient might have been given.
+     */
+    private static List<String> namesFor(RecipientAdapter recipient) {
+        List<String> names = new ArrayList<>();
         if (StringUtils.isEmpty(recipient.groupname) && StringUtils.isEmpty(recipient.agent)) {
-            score = fn.apply(recipient.communityname, fileName);
+            names.add(recipient.communityname);
         } else {
             // There is either a group name, or an agent name, or both. We will try combinations
             // of community name, group name, agent
@@ -34,30 +57,29 @@ public class GreetingsMatcher extends Matcher<GreetingTarget, GreetingFile, Gree
             if (StringUtils.isNotEmpty(recipient.groupname)) {
                 // There is a group name, and maybe/maybe not an agent.
                 testName.append(recipient.groupname);
-                score = fn.apply(testName.toString(), fileName);
+                names.add(testName.toString());
 
                 if (StringUtils.isNotEmpty(recipient.agent)) {
                     testName.append(' ').append(recipient.agent);
-                    score = Math.max(score, fn.apply(testName.toString(), fileName));
+                    names.add(testName.toString());
                 }
 
                 testName.delete(0, testName.length()).append(recipient.groupname).append(' ').append(recipient.communityname);
-                score = Math.max(score, fn.apply(testName.toString(), fileName));
+                names.add(testName.toString());
 
                 if (StringUtils.isNotEmpty(recipient.agent)) {
                     testName.append(' ').append(recipient.agent);
-                    score = Math.max(score, fn.apply(testName.toString(), fileName));
+                    names.add(testName.toString());
                 }
             } else {
                 // There is an agent, but no group name.
                 testName.append(recipient.agent);
-                score = fn.apply(testName.toString(), fileName);
+                names.add(testName.toString());
 
                 testName.delete(0, testName.length()).append(recipient.agent).append(' ').append(recipient.communityname);
-                score = Math.max(score, fn.apply(testName.toString(), fileName));
+                names.add(testName.toString());
             }
         }
-
-        return score;
+        return names;
     }
 }
@@ -0,0 +1,226 @@
+package org.literacybridge.acm.gui.assistants.Matcher;
+
+import me.xdrop.fuzzywuzzy.algorithms.DefaultStringProcessor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds, for a left item, the right items that could possibly score at least the threshold,
+ * so that the (expensive) fuzzy score needn't be computed for every pair.
+ *
+ * FuzzySearch.ratio(a, b) is round(100 * 2 * lcs / (len(a) + len(b))), where lcs is the length of
+ * the longest common subsequence. The lcs can be no longer than the number of characters the two
+ * strings have in common (counting repeats), so that gives an upper bound on the score that is
+ * cheap to compute. tokenSortRatio is the ratio of the processed and token-sorted strings, so the
+ * same bound applies to those. Since the bound is never less than the score, no pair that would
+ * score at least the threshold is ever left out.
+ *
+ * Pairs that pass that test are checked again with the actual lcs, computed with the
+ * bit-parallel algorithm of Allison and Dix (one step per character, for keys up to 64
+ * characters), which is much cheaper than FuzzySearch's own computation. Only the pairs that
+ * really could match are then scored by the matcher.
+ *
+ * The right items are indexed by the lengths of their keys; a pair can't reach the threshold
+ * unless the lengths are close enough, so most keys are never looked at.
+ */
+class CandidateIndex {
+    private static final DefaultStringProcessor PROCESSOR = new DefaultStringProcessor();
+
+    /**
+     * A string, as the score function sees it: its characters, and its characters sorted. Keys
+     * that fit in a long also have, for each distinct character, a mask of where it occurs.
+     */
+    static class Key {
+        final char[] chars;
+        final char[] sortedChars;
+        private char[] distinct;
+        private long[] masks;
+
+        Key(String string) {
+            chars = string.toCharArray();
+            sortedChars = chars.clone();
+            Arrays.sort(sortedChars);
+            if (chars.length <= Long.SIZE) {
+                int n = 0;
+                for (int ix = 0; ix < sortedChars.length; ix++) {
+                    if (ix == 0 || sortedChars[ix] != sortedChars[ix - 1]) n++;
+                }
+                distinct = new char[n];
+                masks = new long[n];
+                n = 0;
+                for (int ix = 0; ix < sortedChars.length; ix++) {
+                    if (ix == 0 || sortedChars[ix] != sortedChars[ix - 1]) distinct[n++] = sortedChars[ix];
+                }
+                for (int ix = 0; ix < chars.length; ix++) {
+                    masks[Arrays.binarySearch(distinct, chars[ix])] |= 1L << ix;
+                }
+            }
+        }
+
+        boolean hasMasks() {
+            return masks != null;
+        }
+
+        long maskOf(char c) {
+            int ix = Arrays.binarySearch(distinct, c);
+            return ix < 0 ? 0 : masks[ix];
+        }
+
+        int length() {
+            return sortedChars.length;
+        }
+    }
+
+    private static class Entry {
+        final int rightIndex;
+        final Key key;
+
+        Entry(int rightIndex, Key key) {
+            this.rightIndex = rightIndex;
+            this.key = key;
+        }
+    }
+
+    private final boolean tokens;
+    private final int size;
+    private final TreeMap<Integer, List<Entry>> byLength = new TreeMap<>();
+    // Right items without keys; they're candidates for everything.
+    private final BitSet unindexed = new BitSet();
+
+    /**
+     * @param rightKeys the strings each right item is scored by, or null for an item that can't
+     *                  be described that way.
+     * @param tokens    true for tokenSortRatio, false for ratio.
+     */
+    CandidateIndex(List<Collection<String>> rightKeys, boolean tokens) {
+        this.tokens = tokens;
+        this.size = rightKeys.size();
+        for (int ix = 0; ix < rightKeys.size(); ix++) {
+            Collection<String> keys = rightKeys.get(ix);
+            if (keys == null) {
+                unindexed.set(ix);
+                continue;
+            }
+            for (String string : keys) {
+                Key key = keyOf(string);
+                byLength.computeIfAbsent(key.length(), k -> new ArrayList<>()).add(new Entry(ix, key));
+            }
+        }
+    }
+
+    /**
+     * @param leftKeys  the strings the left item is scored by, or null if it can't be described
+     *                  that way.
+     * @param threshold the lowest interesting score.
+     * @return the indices of the right items that might score at least the threshold.
+     */
+    BitSet candidates(Collection<String> leftKeys, int threshold) {
+        BitSet result = (BitSet) unindexed.clone();
+        if (leftKeys == null) {
+            result.set(0, size);
+            return result;
+        }
+        for (String string : leftKeys) {
+            Key leftKey = keyOf(string);
+            for (Map.Entry<Integer, List<Entry>> lengthEntry : byLength.entrySet()) {
+                if (upperBound(leftKey.length(), lengthEntry.getKey(), Math.min(leftKey.length(),
+                    lengthEntry.getKey())) < threshold) {
+                    continue;
+                }
+                for (Entry entry : lengthEntry.getValue()) {
+                    if (!result.get(entry.rightIndex) && upperBound(leftKey, entry.key) >= threshold
+                        && ratio(leftKey, entry.key) >= threshold) {
+                        result.set(entry.rightIndex);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private Key keyOf(String string) {
+        return new Key(tokens ? tokenSorted(string) : string);
+    }
+
+    /**
+     * The string that tokenSortRatio actually compares: processed, split into tokens, sorted,
+     * and joined with single spaces.
+     */
+    static String tokenSorted(String string) {
+        List<String> tokens = Arrays.asList(PROCESSOR.process(string).split("\\s+"));
+        Collections.sort(tokens);
+        return String.join(" ", tokens).trim();
+    }
+
+    /**
+     * @return a score that FuzzySearch.ratio of the two keys' strings can't exceed.
+     */
+    static int upperBound(Key a, Key b) {
+        return upperBound(a.length(), b.length(), commonChars(a.sortedChars, b.sortedChars));
+    }
+
+    /**
+     * @return FuzzySearch.ratio of the two keys' strings, when b is short enough to compute it
+     * here, otherwise upperBound(a, b).
+     */
+    static int ratio(Key a, Key b) {
+        if (!b.hasMasks()) {
+            return upperBound(a, b);
+        }
+        return upperBound(a.length(), b.length(), lcs(a, b));
+    }
+
+    /**
+     * The length of the longest common subsequence, by the bit-parallel algorithm. Bit i of v is
+     * clear where the lcs of the part of a seen so far and b[0..i] gets longer.
+     */
+    private static int lcs(Key a, Key b) {
+        long v = ~0L;
+        for (char c : a.chars) {
+            long u = v & b.maskOf(c);
+            v = (v + u) | (v - u);
+        }
+        long lengthMask = b.length() == Long.SIZE ? ~0L : (1L << b.length()) - 1;
+        return Long.bitCount(~v & lengthMask);
+    }
+
+    /**
+     * The ratio's formula, given the lcs, or a number of common characters no less than the lcs.
+     */
+    private static int upperBound(int lengthA, int lengthB, int common) {
+        int lensum = lengthA + lengthB;
+        if (lensum == 0) {
+            // As FuzzySearch computes it, 0/0 rounds to 0.
+            return 0;
+        }
+        return (int) Math.round(100 * ((double) (2 * common) / (double) lensum));
+    }
+
+    /**
+     * @return the number of characters in common between two sorted arrays, counting repeats.
+     */
+    private static int commonChars(char[] a, char[] b) {
+        int common = 0;
+        int ia = 0;
+        int ib = 0;
+        while (ia < a.length && ib < b.length) {
+            if (a[ia] == b[ib]) {
+                common++;
+                ia++;
+                ib++;
+            } else if (a[ia] < b[ib]) {
+                ia++;
+            } else {
+                ib++;
+            }
+        }
+        return common;
+    }
+}
@@ -3,16 +3,37 @@ package org.literacybridge.acm.gui.assistants.Matcher;
 import me.xdrop.fuzzywuzzy.FuzzySearch;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class Matcher<L extends Target, R, T extends MatchableItem<L, R>> {
 
+    /**
+     * Receives the progress of autoMatch, and lets it be cancelled. Called from the threads
+     * doing the matching, not the thread that called autoMatch.
+     */
+    public interface Progress {
+        /**
+         * @param done  left items compared so far, in the current pass.
+         * @param total left items to be compared in the current pass.
+         */
+        void progress(int done, int total);
+
+        default boolean isCancelled() {
+            return false;
+        }
+    }
+
+    private static final Progress NO_PROGRESS = (done, total) -> {};
+
     public List<T> matchableItems = new ArrayList<>();
 
     public Matcher() {
@@ -46,10 +67,26 @@ public class Matcher<L extends Target, R, T extends MatchableItem<L, R>> {
 
     @SuppressWarnings("UnusedReturnValue")
     public MatchStats autoMatch(int threshold) {
+        return autoMatch(threshold, NO_PROGRESS);
+    }
+
+    /**
+     * Matches what can be matched automatically: exact matches, then fuzzy matches, then token
+     * matches, each at least as good as the threshold.
+     *
+     * If cancelled, the passes already finished keep their matches, and the rest are skipped.
+     *
+     * @param threshold The minimum acceptable fuzzy or token match.
+     * @param progress  Told of progress, and asked whether to cancel.
+     * @return MatchStats, describing the comparisons made and matches found.
+     */
+    public MatchStats autoMatch(int threshold, Progress progress) {
         MatchStats result = new MatchStats();
         result.add(findExactMatches());
-        result.add(findFuzzyMatches(threshold));
-        result.add(findTokenMatches(threshold));
+        result.add(findFuzzyMatches(threshold, progress));
+        if (!result.cancelled) {
+            result.add(findTokenMatches(threshold, progress));
+        }
         //context.matcher.sortByProgramSpecification();
         System.out.println(result.toString());
         return result;
@@ -81,16 +118,16 @@ public class Matcher<L extends Target, R, T extends MatchableItem<L, R>> {
         return result;
     }
 
-    private MatchStats findTokenMatches(int threshold) {
-        return fuzzyMatchWorker(threshold, true);
+    private MatchStats findTokenMatches(int threshold, Progress progress) {
+        return fuzzyMatchWorker(threshold, true, progress);
     }
 
-    private MatchStats findFuzzyMatches(int threshold) {
-        return fuzzyMatchWorker(threshold, false);
+    private MatchStats findFuzzyMatches(int threshold, Progress progress) {
+        return fuzzyMatchWorker(threshold, false, progress);
     }
 
-    private MatchStats fuzzyMatchWorker(int threshold, boolean tokens) {
-        MatchStats result = matrixMatch(threshold, tokens);
+    private MatchStats fuzzyMatchWorker(int threshold, boolean tokens, Progress progress) {
+        MatchStats result = matrixMatch(threshold, tokens, progress);
 
         squash();
 
@@ -111,6 +148,17 @@ public class Matcher<L extends Target, R, T extends MatchableItem<L, R>> {
         }
     }
 
+    /**
+     * Scores a possible match. Called from several threads at once.
+     *
+     * A subclass that overrides this must also override leftKeys() and rightKeys(), to describe
+     * the strings it compares (or to return null).
+     *
+     * @param l A left item.
+     * @param r A right item.
+     * @param tokens If true, perform a "tokenSortRatio" match, otherwise a "ratio" match.
+     * @return the score, 0 to 100.
+     */
     protected int scoreMatch(T l, T r, boolean tokens) {
         BiFunction<String,String,Integer> fn =
             tokens ? FuzzySearch::tokenSortRatio
@@ -123,6 +171,28 @@ public class Matcher<L extends Target, R, T extends MatchableItem<L, R>> {
         return score;
     }
 
+    /**
+     * The strings scoreMatch compares for a left item. The score must be the best of
+     * ratio(leftKey, rightKey) (or tokenSortRatio) over some of the pairs of the two items' keys;
+     * that lets pairs that can't reach the threshold be skipped without being scored.
+     *
+     * @param l A left item.
+     * @return its keys, or null to have it compared with every right item.
+     */
+    protected Collection<String> leftKeys(T l) {
+        return Collections.singletonList(l.getLeft().toString());
+    }
+
+    /**
+     * The strings scoreMatch compares for a right item. See leftKeys().
+     *
+     * @param r A right item.
+     * @return its keys, or null to have it compared with every left item.
+     */
+    protected Collection<String> rightKeys(T r) {
+        return Collections.singletonList(r.getRight().toString());
+    }
+
     /**
      * This keeps track of a comparison between a left item and a right item.
      */
@@ -139,18 +209,21 @@ public class Matcher<L extends Target, R, T extends MatchableItem<L, R>> {
     }
 
     /**
-     * Implements the fuzzy matching. Compares every unmatched Left with every unmatched Right.
-     * The results are sorted, with the best matches first. The best matches are then recorded
-     * (recording a match takes the Left and Right items out of consideration for less good
-     * matches). When the quality of matches becomes less than threshold, recording stops.
+     * Implements the fuzzy matching. Compares every unmatched Left with every unmatched Right
+     * that could possibly reach the threshold (see CandidateIndex), several Lefts at a time.
+     * The results are sorted, with the best matches first, ties in the order Left then Right.
+     * The best matches are then recorded (recording a match takes the Left and Right items out
+     * of consideration for less good matches). When the quality of matches becomes less than
+     * threshold, recording stops.
      *
      * The primary result is in side effects in the matchableItems list.
      *
      * @param threshold The minimum acceptable match.
      * @param tokens If true, perform a "tokenSortRatio" match, otherwise a "ratio" match.
+     * @param progress Told of progress, and asked whether to cancel.
      * @return MatchStats, describing hte comparisons made and matches found.
      */
-    private MatchStats matrixMatch(int threshold, boolean tokens) {
+    private MatchStats matrixMatch(int threshold, boolean tokens, Progress progress) {
         MatchStats result = new MatchStats();
         List<T> leftList = new ArrayList<>();
         List<T> rightList = new ArrayList<>();
@@ -160,16 +233,44 @@ public class Matcher<L extends Target, R, T extends MatchableItem<L, R>> {
         }
         // Anything?
         if (leftList.size() == 0 || rightList.size() == 0) return result;
-        // Perform all comparisons, then pick the best ones.
-        List<Comparison> comparisons = new ArrayList<>();
-        for (T matchableItemL : leftList) {
-            for (T matchableItemR : rightList) {
-                result.comparisons++;
-                int score = scoreMatch(matchableItemL, matchableItemR, tokens);
-                comparisons.add(new Comparison(matchableItemL, matchableItemR, score));
-            }
+        List<Collection<String>> rightKeys = rightList.stream()
+            .map(this::rightKeys)
+            .collect(Collectors.toList());
+        CandidateIndex index = new CandidateIndex(rightKeys, tokens);
+        AtomicInteger done = new AtomicInteger();
+        AtomicInteger scored = new AtomicInteger();
+        // Perform the comparisons, then pick the best ones. Only those good enough are kept;
+        // the others would never be recorded.
+        List<List<Comparison>> perLeft = IntStream.range(0, leftList.size())
+            .parallel()
+            .mapToObj(ix -> {
+                List<Comparison> found = new ArrayList<>();
+                if (progress.isCancelled()) return found;
+                T matchableItemL = leftList.get(ix);
+                BitSet candidates = index.candidates(leftKeys(matchableItemL), threshold);
+                for (int rx = candidates.nextSetBit(0); rx >= 0; rx = candidates.nextSetBit(rx + 1)) {
+                    T matchableItemR = rightList.get(rx);
+                    int score = scoreMatch(matchableItemL, matchableItemR, tokens);
+                    if (score >= threshold) {
+                        found.add(new Comparison(matchableItemL, matchableItemR, score));
+                    }
+                }
+                scored.addAndGet(candidates.cardinality());
+                progress.progress(done.incrementAndGet(), leftList.size());
+                return found;
+            })
+            .collect(Collectors.toList());
+        result.comparisons = scored.get();
+        result.skipped = leftList.size() * rightList.size() - scored.get();
+        if (progress.isCancelled()) {
+            result.cancelled = true;
+            return result;
         }
-        // Sort the best ones to the start of the list.
+        // The lists are in Left order, and each in Right order, so a stable sort puts the best
+        // ones first, and equal scores in the same order as comparing every pair would.
+        List<Comparison> comparisons = perLeft.stream()
+            .flatMap(List::stream)
+            .collect(Collectors.toList());
         comparisons.sort((a,b)->b.score-a.score);
         MATCH matchFlavor = tokens ? MATCH.TOKEN : MATCH.FUZZY;
         for (Comparison mc : comparisons) {
@@ -265,20 +366,28 @@ public class Matcher<L extends Target, R, T extends MatchableItem<L, R>> {
     public static class MatchStats {
         private long start = System.nanoTime();
         int comparisons;
+        // Pairs not compared, because they couldn't have been good enough.
+        int skipped;
         int matches;
+        boolean cancelled;
 
         public boolean matched() { return matches > 0; }
 
+        public boolean isCancelled() { return cancelled; }
+
         public MatchStats add(MatchStats other) {
             this.comparisons += other.comparisons;
+            this.skipped += other.skipped;
             this.matches += other.matches;
+            this.cancelled |= other.cancelled;
             this.start = Math.min(this.start, other.start);
             return this;
         }
 
         public String toString() {
             long uSec = (System.nanoTime() - this.start) / 1000;
-            return String.format("cmp:%d, match:%d, time:%,d \u03bcs", comparisons, matches, uSec);
+            return String.format("cmp:%d, skipped:%d, match:%d, time:%,d \u03bcs%s", comparisons, skipped,
+                matches, uSec, cancelled ? ", cancelled" : "");
         }
     }
 
@@ -112,12 +112,13 @@ public class PromptMatchPage extends
                 .collect(Collectors.toList());
 
             context.matcher.setData(prompts, files, PromptMatchable::new);
-            context.matcher.autoMatch(90);
+            autoMatch(90, () -> {});
 
+        } else {
+            promptMatchModel.fireTableDataChanged();
+            sizeColumns();
+            setComplete();
         }
-        promptMatchModel.fireTableDataChanged();
-        sizeColumns();
-        setComplete();
     }
 
     @Override
@@ -6,6 +6,11 @@ import org.apache.commons.lang3.StringUtils;
 import org.literacybridge.acm.gui.assistants.Matcher.ImportableFile;
 import org.literacybridge.acm.gui.assistants.Matcher.Matcher;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
 import java.util.function.BiFunction;
 import java.util.regex.Pattern;
 
@@ -53,4 +58,26 @@ public class PromptsMatcher extends Matcher<PromptTarget, ImportableFile, Prompt
         return score;
     }
 
+    @Override
+    protected Collection<String> leftKeys(PromptMatchable l) {
+        PromptTarget prompt = l.getLeft();
+        List<String> keys = new ArrayList<>(Arrays.asList(prompt.getPromptId(), prompt.getPromptFilename(),
+            prompt.getPromptText()));
+        keys.removeIf(Objects::isNull);
+        return keys;
+    }
+
+    @Override
+    protected Collection<String> rightKeys(PromptMatchable r) {
+        String fileName = FilenameUtils.removeExtension(r.getRight().getFile().getName());
+        List<String> keys = new ArrayList<>();
+        keys.add(fileName);
+        java.util.regex.Matcher matcher = promptPattern.matcher(fileName);
+        if (matcher.matches()) {
+            keys.add(matcher.group(1));
+            keys.add(matcher.group(2));
+        }
+        return keys;
+    }
+
 }
@@ -14,13 +14,16 @@ import javax.swing.DropMode;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
 import javax.swing.JLabel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.ListSelectionModel;
 import javax.swing.RowFilter;
+import javax.swing.SwingWorker;
 import javax.swing.TransferHandler;
 import javax.swing.table.TableRowSorter;
 import java.awt.Component;
+import java.awt.Cursor;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.event.ActionEvent;
@@ -83,6 +86,13 @@ public abstract class AbstractMatchPage<Context extends AbstractMatchPage.MatchC
     private JButton unMatch;
     private JButton manualMatch;
 
+    // Shown in place of the table while the automatic match runs.
+    private JScrollPane tableScrollPane;
+    private Box matchProgressBox;
+    private JProgressBar matchProgressBar;
+    private JButton cancelMatch;
+    private volatile boolean matchCancelled;
+
     protected AbstractMatchPage(PageHelper<Context> listener) {
         super(listener);
 
@@ -125,9 +135,11 @@ public abstract class AbstractMatchPage<Context extends AbstractMatchPage.MatchC
 
         gbc.fill = GridBagConstraints.BOTH;
         gbc.weighty = 1.0;
-        add(makeTable(), gbc);
+        tableScrollPane = makeTable();
+        add(tableScrollPane, gbc);
 
         gbc.weighty = 0;
+        add(makeMatchProgress(), gbc);
         add(makeManualMatchButtons(), gbc);
 
         // Absorb any extra space.
@@ -137,6 +149,58 @@ public abstract class AbstractMatchPage<Context extends AbstractMatchPage.MatchC
 
     }
 
+    /**
+     * Runs the matcher's automatic match in the background, showing its progress in place of the
+     * table, with a button to cancel it. The page isn't complete until the match finishes or is
+     * cancelled; then whenMatched is run, on the event thread, and the table is refreshed.
+     * @param threshold The minimum acceptable fuzzy or token match.
+     * @param whenMatched Run after the match, before the table is refreshed.
+     */
+    protected void autoMatch(int threshold, Runnable whenMatched) {
+        setComplete(false);
+        matchCancelled = false;
+        cancelMatch.setEnabled(true);
+        matchProgressBar.setValue(0);
+        tableScrollPane.setVisible(false);
+        matchProgressBox.setVisible(true);
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+
+        SwingWorker<Matcher.MatchStats, Void> worker = new SwingWorker<Matcher.MatchStats, Void>() {
+            @Override
+            protected Matcher.MatchStats doInBackground() {
+                return context.getMatcher().autoMatch(threshold, new Matcher.Progress() {
+                    @Override
+                    public void progress(int done, int total) {
+                        // Coalesced by the SwingWorker, so the event thread isn't flooded.
+                        setProgress(total == 0 ? 100 : done * 100 / total);
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return matchCancelled;
+                    }
+                });
+            }
+
+            @Override
+            protected void done() {
+                setCursor(Cursor.getDefaultCursor());
+                matchProgressBox.setVisible(false);
+                tableScrollPane.setVisible(true);
+                whenMatched.run();
+                tableModel.fireTableDataChanged();
+                sizeColumns();
+                setComplete();
+            }
+        };
+        worker.addPropertyChangeListener(ev -> {
+            if ("progress".equals(ev.getPropertyName())) {
+                matchProgressBar.setValue((Integer) ev.getNewValue());
+            }
+        });
+        worker.execute();
+    }
+
     private void onReplaceAll(ActionEvent actionEvent) {
         boolean updatedAny = false;
         boolean replace = replaceAll.isSelected();
@@ -220,6 +284,26 @@ public abstract class AbstractMatchPage<Context extends AbstractMatchPage.MatchC
         }
     };
 
+    private Box makeMatchProgress() {
+        matchProgressBar = new JProgressBar(0, 100);
+
+        cancelMatch = new JButton("Cancel");
+        cancelMatch.setToolTipText("Stop the automatic matching. Anything not yet matched can be matched manually.");
+        cancelMatch.addActionListener(ev -> {
+            matchCancelled = true;
+            cancelMatch.setEnabled(false);
+        });
+
+        matchProgressBox = Box.createHorizontalBox();
+        matchProgressBox.add(new JLabel("Matching files: "));
+        matchProgressBox.add(matchProgressBar);
+        matchProgressBox.add(Box.createHorizontalStrut(5));
+        matchProgressBox.add(cancelMatch);
+        matchProgressBox.setVisible(false);
+
+        return matchProgressBox;
+    }
+
     private Box makeManualMatchButtons() {
         // Control buttons
         unMatch = new JButton("Unmatch");
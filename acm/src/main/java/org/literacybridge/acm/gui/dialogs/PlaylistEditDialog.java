@@ -209,7 +209,7 @@ public final class PlaylistEditDialog extends JDialog {
                     // TODO: pop up a message suggesting abandoning changes.
                 }
             }
-            Application.getMessageService().pumpMessage(new SidebarView.PlaylistsChanged());
+            Application.getMessageService().publish(new SidebarView.PlaylistsChanged());
             Application.getFilterState().updateResult(true);
         }
 
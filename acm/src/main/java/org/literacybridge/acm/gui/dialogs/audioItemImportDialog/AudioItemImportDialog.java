@@ -146,17 +146,9 @@ public class AudioItemImportDialog extends JDialog {
             dialog = UIUtils.showDialog(parent,
                 new BusyDialog(LabelProvider.getLabel("IMPORTING_FILES"), parent, true));
             try {
-              int count = 0;
-              for (File file : files) {
-                try {
-                  AudioImporter.getInstance().importOrUpdateAudioItemFromFile(file, null);
-                } catch (Exception e) {
-                  LOG.log(Level.WARNING, "Importing file '" + file + "' failed.", e);
-                }
-                if (!onProgress(++count, files.size())) {
-                  break;
-                }
-              }
+              AudioImporter.getInstance().importOrUpdateAudioItemsFromFiles(files, null,
+                  this::onProgress,
+                  (file, e) -> LOG.log(Level.WARNING, "Importing file '" + file + "' failed.", e));
             } finally {
               UIUtils.hideDialog(dialog);
             }
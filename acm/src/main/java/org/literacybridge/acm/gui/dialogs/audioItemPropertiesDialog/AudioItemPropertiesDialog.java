@@ -11,6 +11,7 @@ import org.literacybridge.acm.gui.messages.RequestedAudioItemMessage;
 import org.literacybridge.acm.gui.resourcebundle.LabelProvider;
 import org.literacybridge.acm.gui.util.ACMDialog;
 import org.literacybridge.acm.gui.util.FocusTraversalOnArray;
+import org.literacybridge.acm.gui.util.EventBus;
 import org.literacybridge.acm.store.AudioItem;
 
 import javax.swing.Box;
@@ -26,7 +27,6 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.event.ActionEvent;
 import java.awt.event.ComponentEvent;
-import java.util.Observer;
 
 public class AudioItemPropertiesDialog extends ACMDialog {
 
@@ -36,6 +36,7 @@ public class AudioItemPropertiesDialog extends ACMDialog {
     private JButton backButton;
     private JButton nextButton;
     private JButton closeButton;
+    private EventBus.Subscription subscription;
 
     public AudioItemPropertiesDialog(JFrame parent, AudioItemView view,
             Iterable<String> audioItemList, AudioItem showItem) {
@@ -61,11 +62,19 @@ public class AudioItemPropertiesDialog extends ACMDialog {
         // show current item first
         RequestAndSelectAudioItemMessage msg = new RequestAndSelectAudioItemMessage(
                 RequestAudioItemMessage.RequestType.Current);
-        Application.getMessageService().pumpMessage(msg);
+        Application.getMessageService().publish(msg);
     }
 
     protected void addToMessageService() {
-        Application.getMessageService().addObserver(observer);
+        // The answers to our requests arrive before the request's publish() returns.
+        subscription = Application.getMessageService().subscribe(RequestedAudioItemMessage.class,
+            EventBus.Delivery.IMMEDIATE, msg -> showAudioItem(msg.getAudioItem()));
+        addComponentListener(new java.awt.event.ComponentAdapter() {
+            @Override
+            public void componentHidden(ComponentEvent e) {
+                subscription.close();
+            }
+        });
     }
 
     private void showAudioItem(AudioItem item) {
@@ -78,13 +87,13 @@ public class AudioItemPropertiesDialog extends ACMDialog {
     private void getNextItem(ActionEvent e) {
         RequestAndSelectAudioItemMessage msg = new RequestAndSelectAudioItemMessage(
                 RequestAudioItemMessage.RequestType.Next);
-        Application.getMessageService().pumpMessage(msg);
+        Application.getMessageService().publish(msg);
     }
 
     private void getPrevItem(ActionEvent e) {
         RequestAndSelectAudioItemMessage msg = new RequestAndSelectAudioItemMessage(
                 RequestAudioItemMessage.RequestType.Previews);
-        Application.getMessageService().pumpMessage(msg);
+        Application.getMessageService().publish(msg);
     }
 
     private void createNavButtons() {
@@ -159,10 +168,4 @@ public class AudioItemPropertiesDialog extends ACMDialog {
                 .getColumn(AudioItemPropertiesModel.EDIT_COL).setMaxWidth(25);
     }
 
-    private final Observer observer = (o, arg) -> {
-        if (arg instanceof RequestedAudioItemMessage) {
-            RequestedAudioItemMessage msg = (RequestedAudioItemMessage) arg;
-            showAudioItem(msg.getAudioItem());
-        }
-    };
 }
@@ -122,7 +122,7 @@ public class AudioItemPropertiesTable extends JXTable {
     Application.getFilterState().setSelectedPlaylist(null);
     Application.getFilterState().setFilterString(query);
     Application.getMessageService()
-        .pumpMessage(new SearchRequestMessage(query));
+        .publish(new SearchRequestMessage(query));
   }
 
   @SuppressWarnings("rawtypes")
@@ -0,0 +1,260 @@
+package org.literacybridge.acm.gui.util;
+
+import javax.swing.SwingUtilities;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The application's message bus. Handlers subscribe to a type of message (and its subtypes), and
+ * say on which thread they want the messages:
+ * - IMMEDIATE, on the publisher's thread, before publish() returns. For requests that expect
+ *   an answer, like RequestAudioItemMessage.
+ * - EDT, on the Swing event dispatch thread, shortly after the message is published.
+ * - BACKGROUND, on the bus's own thread, shortly after the message is published.
+ *
+ * Messages for the EDT and BACKGROUND are held for a short window (about one frame) before
+ * they're delivered. Message types registered with setCoalesced() are coalesced during that
+ * window: if another message of the same type is published before the first is delivered, only
+ * the later one is delivered. A burst of SearchResults during an import thus causes one refresh.
+ *
+ * The bus counts what it does; see getStats().
+ */
+public class EventBus {
+    private static final Logger LOG = Logger.getLogger(EventBus.class.getName());
+    static final long DEFAULT_WINDOW_MILLIS = 16;
+
+    public enum Delivery {IMMEDIATE, EDT, BACKGROUND}
+
+    /**
+     * Returned from subscribe(), to unsubscribe.
+     */
+    public interface Subscription extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Counts of messages published, delivered, and coalesced away, since the bus was created (or,
+     * from since(), between two snapshots).
+     */
+    public static class Stats {
+        public final long published;
+        public final long coalesced;
+        public final long dispatched;
+        public final Map<String, Long> coalescedByType;
+
+        Stats(long published, long coalesced, long dispatched, Map<String, Long> coalescedByType) {
+            this.published = published;
+            this.coalesced = coalesced;
+            this.dispatched = dispatched;
+            this.coalescedByType = coalescedByType;
+        }
+
+        /**
+         * @return the counts since an earlier snapshot.
+         */
+        public Stats since(Stats earlier) {
+            Map<String, Long> byType = new LinkedHashMap<>();
+            coalescedByType.forEach((k, v) -> {
+                long n = v - earlier.coalescedByType.getOrDefault(k, 0L);
+                if (n > 0) byType.put(k, n);
+            });
+            return new Stats(published - earlier.published, coalesced - earlier.coalesced,
+                dispatched - earlier.dispatched, Collections.unmodifiableMap(byType));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d published, %d coalesced, %d handler calls; coalesced by type: %s",
+                published, coalesced, dispatched, coalescedByType);
+        }
+    }
+
+    private class Handler<T> implements Subscription {
+        final Class<T> type;
+        final Delivery delivery;
+        final Consumer<? super T> consumer;
+
+        Handler(Class<T> type, Delivery delivery, Consumer<? super T> consumer) {
+            this.type = type;
+            this.delivery = delivery;
+            this.consumer = consumer;
+        }
+
+        void deliver(Object message) {
+            if (type.isInstance(message) && handlers.contains(this)) {
+                dispatched.incrementAndGet();
+                try {
+                    consumer.accept(type.cast(message));
+                } catch (Exception e) {
+                    LOG.log(Level.WARNING, "Exception handling " + message.getClass().getSimpleName(), e);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            handlers.remove(this);
+        }
+    }
+
+    /**
+     * Messages waiting to be delivered on one thread, in the order they were published. A
+     * coalesced message replaces an earlier one of the same type, and moves to the end.
+     */
+    private class PendingQueue {
+        final Delivery delivery;
+        // Keyed by the message class for coalesced messages, otherwise by a new Object.
+        private final Map<Object, Object> pending = new LinkedHashMap<>();
+        private boolean scheduled;
+
+        PendingQueue(Delivery delivery) {
+            this.delivery = delivery;
+        }
+
+        synchronized void add(Object message) {
+            Class<?> coalescedType = coalescedTypeOf(message.getClass());
+            if (coalescedType != null) {
+                if (pending.remove(coalescedType) != null) {
+                    coalesced.incrementAndGet();
+                    coalescedByType.computeIfAbsent(coalescedType.getSimpleName(), k -> new AtomicLong())
+                        .incrementAndGet();
+                }
+                pending.put(coalescedType, message);
+            } else {
+                pending.put(new Object(), message);
+            }
+            if (!scheduled) {
+                scheduled = true;
+                timer.schedule(this::flushOnThread, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void flushOnThread() {
+            if (delivery == Delivery.EDT) {
+                SwingUtilities.invokeLater(this::flush);
+            } else {
+                flush();
+            }
+        }
+
+        void flush() {
+            List<Object> messages;
+            synchronized (this) {
+                messages = new ArrayList<>(pending.values());
+                pending.clear();
+                scheduled = false;
+            }
+            for (Object message : messages) {
+                for (Handler<?> handler : handlers) {
+                    if (handler.delivery == delivery) {
+                        handler.deliver(message);
+                    }
+                }
+            }
+        }
+    }
+
+    private final List<Handler<?>> handlers = new CopyOnWriteArrayList<>();
+    private final Set<Class<?>> coalescedTypes = ConcurrentHashMap.newKeySet();
+    private final long windowMillis;
+    // Runs the windows, and the BACKGROUND deliveries.
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "event-bus");
+        t.setDaemon(true);
+        return t;
+    });
+    private final PendingQueue edtQueue = new PendingQueue(Delivery.EDT);
+    private final PendingQueue backgroundQueue = new PendingQueue(Delivery.BACKGROUND);
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong dispatched = new AtomicLong();
+    private final Map<String, AtomicLong> coalescedByType = new ConcurrentHashMap<>();
+
+    public EventBus() {
+        this(DEFAULT_WINDOW_MILLIS);
+    }
+
+    EventBus(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Subscribes to a type of message, and its subtypes.
+     * @param type of message.
+     * @param delivery the thread on which the handler is called.
+     * @param handler called with each message.
+     * @return a Subscription, to unsubscribe.
+     */
+    public <T> Subscription subscribe(Class<T> type, Delivery delivery, Consumer<? super T> handler) {
+        Handler<T> h = new Handler<>(type, delivery, handler);
+        handlers.add(h);
+        return h;
+    }
+
+    /**
+     * Only the latest of the messages of the given type (or its subtypes) published in a window is
+     * delivered to EDT and BACKGROUND subscribers. Suitable for messages that describe a whole new
+     * state, like a SearchResult, or that only say that something changed.
+     * @param type of message to be coalesced.
+     */
+    public void setCoalesced(Class<?> type) {
+        coalescedTypes.add(type);
+    }
+
+    /**
+     * Publishes a message to the subscribers for its type. IMMEDIATE subscribers are called
+     * before this returns.
+     * @param message to be published.
+     */
+    public void publish(Object message) {
+        published.incrementAndGet();
+        boolean forEdt = false;
+        boolean forBackground = false;
+        for (Handler<?> handler : handlers) {
+            if (!handler.type.isInstance(message)) continue;
+            switch (handler.delivery) {
+            case IMMEDIATE:
+                handler.deliver(message);
+                break;
+            case EDT:
+                forEdt = true;
+                break;
+            case BACKGROUND:
+                forBackground = true;
+                break;
+            }
+        }
+        if (forEdt) edtQueue.add(message);
+        if (forBackground) backgroundQueue.add(message);
+    }
+
+    public Stats getStats() {
+        Map<String, Long> byType = new LinkedHashMap<>();
+        coalescedByType.forEach((k, v) -> byType.put(k, v.get()));
+        return new Stats(published.get(), coalesced.get(), dispatched.get(), Collections.unmodifiableMap(byType));
+    }
+
+    private Class<?> coalescedTypeOf(Class<?> messageClass) {
+        for (Class<?> type : coalescedTypes) {
+            if (type.isAssignableFrom(messageClass)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -7,8 +7,6 @@ import org.literacybridge.acm.store.MetadataStore;
 import org.literacybridge.acm.store.Playlist;
 import org.literacybridge.acm.store.SearchResult;
 
-import javax.swing.SwingUtilities;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
@@ -80,18 +78,8 @@ public class FilterState {
             result = store.search(filterString, selectedPlaylist);
         }
 
-        // call UI back
-        Runnable updateUI = () -> Application.getMessageService().pumpMessage(result);
-
-        if (SwingUtilities.isEventDispatchThread()) {
-            updateUI.run();
-        } else {
-            try {
-                SwingUtilities.invokeAndWait(updateUI);
-            } catch (InterruptedException | InvocationTargetException e) {
-                e.printStackTrace();
-            }
-        }
+        // call UI back; the views are subscribed on the EDT.
+        Application.getMessageService().publish(result);
     }
 
     @Override
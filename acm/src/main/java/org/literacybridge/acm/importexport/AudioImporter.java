@@ -12,12 +12,21 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class AudioImporter {
@@ -164,6 +173,123 @@ public class AudioImporter {
         return importFileWithOptions(file, processor, null);
     }
 
+    /**
+     * Creates, but does not store, a new audio item for a file, with any metadata found in the file.
+     * The audio itself can then be added with the repository's addAudioItem.
+     * @param file The file to be imported.
+     * @return The new audio item, or null if the file's audio item is already in the database.
+     * @throws IOException If the file doesn't exist, or is a directory.
+     */
+    public AudioItem newAudioItemFromFile(File file) throws IOException {
+        if (!file.exists()) {
+            throw new FileNotFoundException(file.toString());
+        }
+        if (file.isDirectory()) {
+            throw new IllegalArgumentException(file.toString() + " is a directory.");
+        }
+        MetadataStore store = ACMConfiguration.getInstance().getCurrentDB().getMetadataStore();
+        AudioItem item = getImporter(file).createAudioItem();
+        return store.getAudioItem(item.getId()) == null ? item : null;
+    }
+
+    /**
+     * Imports or updates a group of audio files. The audio conversions run concurrently, on the
+     * repository's conversion threads. The processor and the metadata commits run on the calling
+     * thread, in the order of the files.
+     * @param files The files to be imported.
+     * @param processor An optional processor given an opportunity to modify each item post import.
+     * @param onProgress Optional, called with (n, of) as each file finishes. Return false to stop; any
+     *                   conversions already running will finish, but no further items are processed.
+     * @param onError Optional, called with any file that could not be imported, and the reason.
+     * @return The audio items that were imported or updated.
+     */
+    public List<AudioItem> importOrUpdateAudioItemsFromFiles(Collection<File> files,
+        AudioItemProcessor processor,
+        BiFunction<Integer, Integer, Boolean> onProgress,
+        BiConsumer<File, Exception> onError)
+    {
+        MetadataStore store = ACMConfiguration.getInstance().getCurrentDB().getMetadataStore();
+        AudioItemRepository.ConversionBatch conversions = ACMConfiguration.getInstance()
+            .getCurrentDB()
+            .getRepository()
+            .newConversionBatch();
+
+        // One batch for the whole import, so the index is written a few times, rather than once per file.
+        try {
+            MetadataStore.Batch batch = store.newBatch();
+            try {
+                // Determine new vs existing items serially; ids and the store aren't safe to share across threads.
+                Map<File, Future<AudioItem>> pending = new LinkedHashMap<>();
+                Map<File, Boolean> isUpdate = new HashMap<>();
+                for (File file : files) {
+                    try {
+                        if (!file.exists()) {
+                            throw new FileNotFoundException(file.toString());
+                        }
+                        if (file.isDirectory()) {
+                            throw new IllegalArgumentException(file.toString() + " is a directory.");
+                        }
+                        AudioItem item = null;
+                        String title = FilenameUtils.removeExtension(file.getName());
+                        int pos = title.indexOf(AudioExporter.AUDIOITEM_ID_SEPARATOR);
+                        if (pos != -1) {
+                            String id = title.substring(pos + AudioExporter.AUDIOITEM_ID_SEPARATOR.length());
+                            item = store.getAudioItem(id);
+                        }
+                        if (item != null) {
+                            pending.put(file, conversions.updateAudioItem(item, file));
+                            isUpdate.put(file, true);
+                        } else {
+                            AudioItem newItem = getImporter(file).createAudioItem();
+                            if (store.getAudioItem(newItem.getId()) != null) {
+                                System.out.printf("File '%s' is already in database; skipping%n", file.getName());
+                                continue;
+                            }
+                            System.out.printf("Importing file %s\n", file);
+                            pending.put(file, conversions.addAudioItem(newItem, file));
+                            isUpdate.put(file, false);
+                        }
+                    } catch (Exception e) {
+                        if (onError != null) onError.accept(file, e);
+                    }
+                }
+
+                List<AudioItem> result = new ArrayList<>();
+                int count = 0;
+                for (Map.Entry<File, Future<AudioItem>> entry : pending.entrySet()) {
+                    File file = entry.getKey();
+                    try {
+                        AudioItem item = entry.getValue().get();
+                        // let caller tweak audio item
+                        if (processor != null) {
+                            processor.process(item);
+                        }
+                        if (processor != null || isUpdate.get(file)) {
+                            store.commit(item);
+                        }
+                        result.add(item);
+                    } catch (ExecutionException e) {
+                        if (onError != null) onError.accept(file, e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    } catch (Exception e) {
+                        if (onError != null) onError.accept(file, e);
+                    }
+                    if (onProgress != null && !onProgress.apply(++count, pending.size())) {
+                        break;
+                    }
+                }
+                return result;
+            } finally {
+                batch.close();
+            }
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Unable to write imported audio items to the index.", e);
+            return new ArrayList<>();
+        }
+    }
+
     /**
      * Don't import anything, but read metadata from an existing file.
      * @param file A file.
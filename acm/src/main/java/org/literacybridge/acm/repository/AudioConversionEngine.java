@@ -0,0 +1,254 @@
+package org.literacybridge.acm.repository;
+
+import org.apache.commons.io.FileUtils;
+import org.literacybridge.acm.audioconverter.converters.BaseAudioConverter.ConversionException;
+import org.literacybridge.acm.repository.AudioItemRepository.UnsupportedFormatException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs audio conversions on a bounded pool of worker threads.
+ *
+ * The external converters (ffmpeg, the A18 batch converter) are single threaded processes, so a
+ * large import or deployment build is bound by how many of them we run at once. This engine runs
+ * up to 'threads' of them concurrently, while making sure that no two threads ever work on the
+ * same key (an audio item id, or a target file) at the same time.
+ *
+ * Each thread that converts through the engine gets its own temporary directory, because the
+ * converters name their intermediate files after the source file, and two different sources
+ * (eg, "0.wav" prompt files for two languages) could otherwise collide.
+ */
+public class AudioConversionEngine {
+    private static final Logger LOG = Logger.getLogger(AudioConversionEngine.class.getName());
+    private static final File TMP_DIR = new File(System.getProperty("java.io.tmpdir"));
+
+    /**
+     * A unit of conversion work. Like a Callable, but with the checked exceptions of the repository.
+     * @param <T> The type of the result, usually the File that was created.
+     */
+    public interface ConversionTask<T> {
+        T call() throws IOException, ConversionException, UnsupportedFormatException;
+    }
+
+    private final int threads;
+    private final ExecutorService executor;
+    private final Map<String, KeyLock> locks = new ConcurrentHashMap<>();
+    private final ThreadLocal<File> threadTmpDir = ThreadLocal.withInitial(AudioConversionEngine::makeThreadTmpDir);
+
+    public AudioConversionEngine(int threads) {
+        this.threads = Math.max(1, threads);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread t = new Thread(r, "audio-conversion-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Submits a task to the worker pool.
+     * @param task to be run.
+     * @param <T> type of the task's result.
+     * @return a future that completes with the task's result, or exceptionally with the task's exception.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Runs the task on the calling thread, while holding the lock for the given key. Locks are
+     * re-entrant, so a task may call back into the repository for the same key.
+     * @param key to be locked, like an audio item id or a target file path.
+     * @param task to be run.
+     * @param <T> type of the task's result.
+     * @return the task's result.
+     */
+    public <T> T withLock(String key, ConversionTask<T> task)
+        throws IOException, ConversionException, UnsupportedFormatException
+    {
+        KeyLock keyLock = acquire(key);
+        try {
+            return task.call();
+        } finally {
+            release(key, keyLock);
+        }
+    }
+
+    /**
+     * Like withLock, for work that throws no checked exceptions.
+     * @param key to be locked.
+     * @param runnable to be run.
+     */
+    public void runWithLock(String key, Runnable runnable) {
+        KeyLock keyLock = acquire(key);
+        try {
+            runnable.run();
+        } finally {
+            release(key, keyLock);
+        }
+    }
+
+    /**
+     * Like runWithLock, but doesn't wait if the key is already locked.
+     * @param key to be locked.
+     * @param runnable to be run.
+     * @return true if the runnable was run, false if the key was locked by another thread.
+     */
+    public boolean tryRunWithLock(String key, Runnable runnable) {
+        KeyLock keyLock = register(key);
+        if (!keyLock.lock.tryLock()) {
+            unregister(key);
+            return false;
+        }
+        try {
+            runnable.run();
+        } finally {
+            release(key, keyLock);
+        }
+        return true;
+    }
+
+    private KeyLock acquire(String key) {
+        KeyLock keyLock = register(key);
+        keyLock.lock.lock();
+        return keyLock;
+    }
+
+    private void release(String key, KeyLock keyLock) {
+        keyLock.lock.unlock();
+        unregister(key);
+    }
+
+    private KeyLock register(String key) {
+        return locks.compute(key, (k, v) -> {
+            if (v == null) v = new KeyLock();
+            v.users++;
+            return v;
+        });
+    }
+
+    private void unregister(String key) {
+        // Forget the lock when nobody else is waiting for it, so the map doesn't grow without bound.
+        locks.computeIfPresent(key, (k, v) -> --v.users == 0 ? null : v);
+    }
+
+    /**
+     * A temporary directory private to the calling thread.
+     * @return the directory.
+     */
+    public File getTmpDir() {
+        return threadTmpDir.get();
+    }
+
+    /**
+     * Creates a new batch, into which many conversions can be submitted, and then awaited together.
+     * @return the new batch.
+     */
+    public Batch newBatch() {
+        return new Batch();
+    }
+
+    /**
+     * A group of conversions that are submitted together, and awaited together. Tasks with the
+     * same key are only submitted once; the second submission shares the first one's future.
+     */
+    public class Batch {
+        private final Map<String, CompletableFuture<?>> futures = new LinkedHashMap<>();
+
+        private Batch() {
+        }
+
+        @SuppressWarnings("unchecked")
+        public synchronized <T> Future<T> submit(String key, Callable<T> task) {
+            return (Future<T>) futures.computeIfAbsent(key, k -> AudioConversionEngine.this.submit(task));
+        }
+
+        public synchronized int size() {
+            return futures.size();
+        }
+
+        /**
+         * Waits for every task in the batch to finish. If any task failed, throws the first failure,
+         * in submission order, but only after all of the tasks are done.
+         */
+        public void await() throws IOException, ConversionException, UnsupportedFormatException {
+            List<CompletableFuture<?>> pending;
+            synchronized (this) {
+                pending = new ArrayList<>(futures.values());
+            }
+            Throwable firstFailure = null;
+            for (CompletableFuture<?> future : pending) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (firstFailure == null) firstFailure = e.getCause();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for audio conversions.", e);
+                }
+            }
+            if (firstFailure != null) {
+                rethrow(firstFailure);
+            }
+        }
+    }
+
+    /**
+     * Unwraps an exception from a conversion task, and re-throws it as the checked exception it was.
+     * Any other checked exception is wrapped in an IOException.
+     * @param t the exception.
+     */
+    static void rethrow(Throwable t) throws IOException, ConversionException, UnsupportedFormatException {
+        if (t instanceof IOException) throw (IOException) t;
+        if (t instanceof ConversionException) throw (ConversionException) t;
+        if (t instanceof UnsupportedFormatException) throw (UnsupportedFormatException) t;
+        if (t instanceof RuntimeException) throw (RuntimeException) t;
+        if (t instanceof Error) throw (Error) t;
+        throw new IOException(t);
+    }
+
+    private static File makeThreadTmpDir() {
+        try {
+            File dir = Files.createTempDirectory(TMP_DIR.toPath(), "acm-convert-").toFile();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> FileUtils.deleteQuietly(dir)));
+            return dir;
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to create conversion temp directory; using shared temp directory.", e);
+            return TMP_DIR;
+        }
+    }
+
+    private static class KeyLock {
+        final ReentrantLock lock = new ReentrantLock();
+        int users = 0;
+    }
+}
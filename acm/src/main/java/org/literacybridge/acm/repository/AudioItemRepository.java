@@ -10,6 +10,7 @@ import org.literacybridge.acm.store.AudioItem;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.Future;
 
 public interface AudioItemRepository {
     void addAudioItem(AudioItem audioItem, File externalFile)
@@ -93,6 +94,49 @@ public interface AudioItemRepository {
                                                                                                                           BaseAudioConverter.ConversionException,
                                                                                                                           IOException;
 
+    /**
+     * Starts a new batch of conversions. Work submitted to the batch runs concurrently on the
+     * repository's conversion threads; call await() to wait for all of it to finish.
+     * @return the new batch.
+     */
+    ConversionBatch newConversionBatch();
+
+    /**
+     * Adds a listener to be told when an audio item's files are added, replaced or deleted.
+     * Listeners are called on the thread that made the change, which may not be the EDT.
+     * @param listener to be added.
+     */
+    void addAudioFileListener(AudioFileListener listener);
+
+    void removeAudioFileListener(AudioFileListener listener);
+
+    interface AudioFileListener {
+        void audioFilesChanged(AudioItem audioItem);
+    }
+
+    /**
+     * A group of imports and exports that run concurrently. Each method returns immediately with a
+     * Future; the results (or failures) are available from that Future, and await() waits for all of
+     * them. Submitting the same target file twice to one batch performs the export only once.
+     */
+    interface ConversionBatch {
+        Future<AudioItem> addAudioItem(AudioItem audioItem, File externalFile);
+
+        Future<AudioItem> updateAudioItem(AudioItem audioItem, File externalFile);
+
+        Future<File> getAudioFile(AudioItem audioItem, AudioFormat format);
+
+        Future<File> exportAudioFileWithFormat(AudioItem audioItem, File targetFile, AudioFormat targetFormat);
+
+        Future<File> exportFileWithFormat(File sourceFile, File targetFile, AudioFormat targetFormat);
+
+        /**
+         * Waits for everything submitted to the batch to finish. If anything failed, throws the first
+         * failure (in submission order), after everything has finished.
+         */
+        void await() throws IOException, BaseAudioConverter.ConversionException, UnsupportedFormatException;
+    }
+
     /**
      * An enum of all supported audio formats.
      */
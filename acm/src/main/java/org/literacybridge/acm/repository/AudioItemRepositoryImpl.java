@@ -3,6 +3,7 @@ package org.literacybridge.acm.repository;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.apache.commons.io.FilenameUtils;
+import org.literacybridge.acm.audioconverter.api.ConversionCache;
 import org.literacybridge.acm.audioconverter.api.ExternalConverter;
 import org.literacybridge.acm.audioconverter.converters.BaseAudioConverter;
 import org.literacybridge.acm.audioconverter.converters.BaseAudioConverter.ConversionException;
@@ -10,6 +11,7 @@ import org.literacybridge.acm.audioconverter.converters.BaseAudioConverter.Conve
 import org.literacybridge.acm.audioconverter.converters.BaseAudioConverter.ConversionSourceMissingException;
 import org.literacybridge.acm.audioconverter.converters.FFMpegConverter;
 import org.literacybridge.acm.config.ACMConfiguration;
+import org.literacybridge.acm.config.AmplioHome;
 import org.literacybridge.acm.config.DBConfiguration;
 import org.literacybridge.acm.importexport.AudioExporter;
 import org.literacybridge.acm.store.AudioItem;
@@ -20,6 +22,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
 import java.util.function.BiFunction;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
@@ -31,20 +35,41 @@ import static org.literacybridge.acm.Constants.CUSTOM_GREETING;
  * This repository manages all audio files associated with the audio items that
  * the ACM stores. Metadata of the audio items is stored separately, not in this
  * repository.
+ *
+ * Conversions run on the caller's thread, or on the conversion engine's threads when submitted
+ * through a ConversionBatch. Rather than one lock for the whole repository, work is locked per
+ * audio item (or per target file, for prompts and greetings), so that different items can be
+ * converted at the same time.
  */
 public class AudioItemRepositoryImpl implements AudioItemRepository {
-    private final static File TMP_DIR = new File(System.getProperty("java.io.tmpdir"));
     private final static Pattern categoryPattern = Pattern.compile("^\\$?\\d+(-\\d+)+$");
 
     public static AudioItemRepositoryImpl buildAudioItemRepository(DBConfiguration dbConfiguration) throws IOException {
         CachingRepository cachingRepository = new CachingRepository(dbConfiguration);
-        return new AudioItemRepositoryImpl(cachingRepository);
+        AudioConversionEngine engine = new AudioConversionEngine(dbConfiguration.getConversionThreads());
+        // Cached files live in a directory named for their audio item; don't collect one while
+        // the item is locked for a conversion.
+        cachingRepository.setEvictionGuard((file, deletion) ->
+            engine.tryRunWithLock(file.getParentFile().getName(), deletion));
+        // The conversion cache is shared by all programs, so that common audio is only converted once.
+        ConversionCache conversionCache = ConversionCache.getInstance(
+            new File(AmplioHome.getCachesDir(), "conversions"),
+            dbConfiguration.getConversionCacheSizeInBytes());
+        return new AudioItemRepositoryImpl(cachingRepository, engine, new ExternalConverter(conversionCache));
     }
 
     private final CachingRepository audioFileRepository;
+    private final AudioConversionEngine conversionEngine;
+    private final ExternalConverter externalConverter;
+    private final List<AudioFileListener> audioFileListeners = new CopyOnWriteArrayList<>();
 
-    private AudioItemRepositoryImpl(CachingRepository audioFileRepository) {
+    private AudioItemRepositoryImpl(CachingRepository audioFileRepository,
+        AudioConversionEngine conversionEngine,
+        ExternalConverter externalConverter)
+    {
         this.audioFileRepository = audioFileRepository;
+        this.conversionEngine = conversionEngine;
+        this.externalConverter = externalConverter;
     }
 
     private static final Map<String, AudioFormat> EXTENSION_TO_FORMAT = Maps.newHashMap();
@@ -54,13 +79,11 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
         }
     }
 
-    private final ExternalConverter externalConverter = new ExternalConverter();
-
     /**
      * Returns true, if this audio item is stored in any supported format in this
      * repository.
      */
-    private synchronized boolean hasAudioItem(AudioItem audioItem) {
+    private boolean hasAudioItem(AudioItem audioItem) {
         for (AudioFormat format : AudioFormat.values()) {
             if (findAudioFileWithFormat(audioItem, format) != null) {
                 return true;
@@ -78,12 +101,19 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
      * times.
      */
     @Override
-    public synchronized void addAudioItem(AudioItem audioItem, File externalFile)
+    public void addAudioItem(AudioItem audioItem, File externalFile)
             throws UnsupportedFormatException, IOException, DuplicateItemException, ConversionException {
-        if (hasAudioItem(audioItem)) {
+        boolean added = conversionEngine.withLock(audioItem.getId(), () -> {
+            if (hasAudioItem(audioItem)) {
+                return false;
+            }
+            storeAudioFile(audioItem, externalFile);
+            return true;
+        });
+        if (!added) {
             throw new DuplicateItemException(String.format("Audio item %s already exists for language %s", audioItem.getTitle(), audioItem.getLanguageCode()));
         }
-        storeAudioFile(audioItem, externalFile);
+        fireAudioFilesChanged(audioItem);
     }
 
     /**
@@ -94,11 +124,23 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
      * into all formats that were previously stored for that audio item.
      */
     @Override
-    public synchronized void updateAudioItem(AudioItem audioItem, File externalFile)
+    public void updateAudioItem(AudioItem audioItem, File externalFile)
             throws ConversionException, IOException, UnsupportedFormatException
     {
         ensureKnownFormat(externalFile);
+        conversionEngine.withLock(audioItem.getId(), () -> {
+            replaceAudioItem(audioItem, externalFile);
+            return audioItem;
+        });
+        fireAudioFilesChanged(audioItem);
+    }
 
+    /**
+     * Replaces the audio files of an item with a new file. Must be called with the item locked.
+     */
+    private void replaceAudioItem(AudioItem audioItem, File externalFile)
+            throws ConversionException, IOException, UnsupportedFormatException
+    {
         // Determine in which formats the item is currently stored
         Set<AudioFormat> existingFormats = Sets.newHashSet();
         for (AudioFormat format : AudioFormat.values()) {
@@ -123,7 +165,7 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
      * Store a new File as an audioItem in the repository. The AudioItem may or may
      * not already exist.
      */
-    private synchronized void storeAudioFile(AudioItem audioItem, File externalFile)
+    private void storeAudioFile(AudioItem audioItem, File externalFile)
             throws UnsupportedFormatException, IOException, ConversionException {
         AudioFormat format = ensureKnownFormat(externalFile);
 
@@ -140,7 +182,7 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
             if (isForceWavConversion && format == AudioFormat.WAV) {
                 FFMpegConverter wavToWav = new FFMpegConverter();
                 ConversionResult wavToWavResult = wavToWav.doConvertFile(externalFile,
-                        toFile.getParentFile(), toFile, TMP_DIR, new HashMap<>());
+                        toFile.getParentFile(), toFile, conversionEngine.getTmpDir(), new HashMap<>());
             } else {
                 IOUtils.copy(externalFile, toFile);
             }
@@ -162,7 +204,7 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
      * repository;
      */
     @Override
-    public synchronized File findAudioFileWithFormat(AudioItem audioItem, AudioFormat format) {
+    public File findAudioFileWithFormat(AudioItem audioItem, AudioFormat format) {
         File file = resolveFile(audioItem, format, false);
         return file.exists() ? file : null;
     }
@@ -177,23 +219,26 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
      * @throws ConversionException If an error occurs while converting.
      */
     @Override
-    public synchronized File getAudioFile(AudioItem audioItem, AudioFormat format) throws
-                                                                                   IOException,
-                                                                                   ConversionException,
-                                                                                   UnsupportedFormatException {
-        File file = resolveFile(audioItem, format, false);
-        if (file == null || !file.exists()) {
-            file = convertAudioItem(audioItem, format);
-        }
-        return file;
+    public File getAudioFile(AudioItem audioItem, AudioFormat format) throws
+                                                                      IOException,
+                                                                      ConversionException,
+                                                                      UnsupportedFormatException {
+        return conversionEngine.withLock(audioItem.getId(), () -> {
+            File file = resolveFile(audioItem, format, false);
+            if (file == null || !file.exists()) {
+                file = convertAudioItem(audioItem, format);
+            }
+            return file;
+        });
     }
 
     /**
      * Converts the audio item into the specified targetFormat and returns a
-     * handle to the newly created file. The new file will be within the repository.
+     * handle to the newly created file. The new file will be within the repository. Must be called
+     * with the item locked.
      * @return the converted file.
      */
-    private synchronized File convertAudioItem(AudioItem audioItem, AudioFormat targetFormat)
+    private File convertAudioItem(AudioItem audioItem, AudioFormat targetFormat)
         throws ConversionException, IOException, UnsupportedFormatException {
 
         File targetFile = resolveFile(audioItem, targetFormat, true);
@@ -220,7 +265,7 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
      * @param targetFile to be exported to.
      * @throws ConversionSourceMissingException if no appropriate source file can be found in the repository.
      */
-    private synchronized void convertAudioItem(AudioItem audioItem, File targetFile) throws
+    private void convertAudioItem(AudioItem audioItem, File targetFile) throws
                                                                                      ConversionException,
                                                                                      UnsupportedFormatException {
         File sourceFile = resolveFile(audioItem, AudioFormat.WAV, false);
@@ -245,19 +290,19 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
      * @param sourceFile to be converted.
      * @param targetFile to be converted to.
      */
-    private synchronized void convertFile(File sourceFile, File targetFile) throws
-                                                                            ConversionException,
-                                                                            UnsupportedFormatException {
+    private void convertFile(File sourceFile, File targetFile) throws
+                                                               ConversionException,
+                                                               UnsupportedFormatException {
         if (audioFileRepository.isSandboxedFile(targetFile)) {
             throw new ConversionException("Target file should have been sandboxed.");
         }
         AudioFormat targetFormat = ensureKnownFormat(targetFile);
         externalConverter.convert(sourceFile, targetFile,
-            TMP_DIR,
+            conversionEngine.getTmpDir(),
             targetFormat.getAudioConversionFormat(), false);
     }
 
-    private synchronized File convertFile(Object source, BiFunction<Object, AudioFormat, File> sourceFileFinder, AudioFormat targetFormat, File targetDirectory) throws ConversionException {
+    private File convertFile(Object source, BiFunction<Object, AudioFormat, File> sourceFileFinder, AudioFormat targetFormat, File targetDirectory) throws ConversionException {
         File sourceFile = sourceFileFinder.apply(source, AudioFormat.WAV);
         if (sourceFile == null) {
             // no WAV, try any other format
@@ -278,9 +323,17 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
             throw new ConversionException("Target file should have been sandboxed.");
         }
         IOUtils.ensureDirectoryExists(targetFile);
-        externalConverter.convert(sourceFile, targetFile,
-                TMP_DIR,
-                targetFormat.getAudioConversionFormat(), false);
+        File finalSourceFile = sourceFile;
+        try {
+            conversionEngine.withLock(targetFile.getAbsolutePath(), () -> {
+                externalConverter.convert(finalSourceFile, targetFile,
+                    conversionEngine.getTmpDir(),
+                    targetFormat.getAudioConversionFormat(), false);
+                return targetFile;
+            });
+        } catch (IOException | UnsupportedFormatException e) {
+            throw new ConversionException(e.getMessage());
+        }
 
         return targetFile;
     }
@@ -289,8 +342,25 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
      * Deletes all files associated with an audioitem from the repository.
      */
     @Override
-    public synchronized void deleteAudioItem(AudioItem audioItem) {
-          audioFileRepository.delete(audioItem.getId());
+    public void deleteAudioItem(AudioItem audioItem) {
+        conversionEngine.runWithLock(audioItem.getId(), () -> audioFileRepository.delete(audioItem.getId()));
+        fireAudioFilesChanged(audioItem);
+    }
+
+    @Override
+    public void addAudioFileListener(AudioFileListener listener) {
+        audioFileListeners.add(listener);
+    }
+
+    @Override
+    public void removeAudioFileListener(AudioFileListener listener) {
+        audioFileListeners.remove(listener);
+    }
+
+    private void fireAudioFilesChanged(AudioItem audioItem) {
+        for (AudioFileListener listener : audioFileListeners) {
+            listener.audioFilesChanged(audioItem);
+        }
     }
 
     @Override
@@ -313,10 +383,10 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
      * @throws BaseAudioConverter.ConversionException If an existing file can't be converted to the desired format.
      */
     @Override
-    public synchronized File exportAudioFileWithFormat(AudioItem audioItem, File targetFile, AudioFormat targetFormat) throws
-                                                                                                                       IOException,
-                                                                                                                       ConversionException,
-                                                                                                                       UnsupportedFormatException {
+    public File exportAudioFileWithFormat(AudioItem audioItem, File targetFile, AudioFormat targetFormat) throws
+                                                                                                          IOException,
+                                                                                                          ConversionException,
+                                                                                                          UnsupportedFormatException {
         String defaultExtension = targetFormat.getFileExtension();
         String givenExtension = FilenameUtils.getExtension(targetFile.getName());
         if (!defaultExtension.equalsIgnoreCase(givenExtension)) {
@@ -516,6 +586,64 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
         }
     }
 
+    @Override
+    public ConversionBatch newConversionBatch() {
+        return new ConversionBatchImpl(conversionEngine.newBatch());
+    }
+
+    /**
+     * Submits repository operations to a conversion engine batch. Imports are keyed by the audio
+     * item, exports by the target file.
+     */
+    private class ConversionBatchImpl implements ConversionBatch {
+        private final AudioConversionEngine.Batch batch;
+
+        ConversionBatchImpl(AudioConversionEngine.Batch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public Future<AudioItem> addAudioItem(AudioItem audioItem, File externalFile) {
+            return batch.submit("add:" + audioItem.getId(), () -> {
+                AudioItemRepositoryImpl.this.addAudioItem(audioItem, externalFile);
+                return audioItem;
+            });
+        }
+
+        @Override
+        public Future<AudioItem> updateAudioItem(AudioItem audioItem, File externalFile) {
+            return batch.submit("update:" + audioItem.getId(), () -> {
+                AudioItemRepositoryImpl.this.updateAudioItem(audioItem, externalFile);
+                return audioItem;
+            });
+        }
+
+        @Override
+        public Future<File> getAudioFile(AudioItem audioItem, AudioFormat format) {
+            return batch.submit("get:" + audioItem.getId() + '.' + format.getFileExtension(),
+                () -> AudioItemRepositoryImpl.this.getAudioFile(audioItem, format));
+        }
+
+        @Override
+        public Future<File> exportAudioFileWithFormat(AudioItem audioItem, File targetFile, AudioFormat targetFormat) {
+            return batch.submit("export:" + targetFile.getAbsolutePath(),
+                () -> AudioItemRepositoryImpl.this.exportAudioFileWithFormat(audioItem, targetFile, targetFormat));
+        }
+
+        @Override
+        public Future<File> exportFileWithFormat(File sourceFile, File targetFile, AudioFormat targetFormat) {
+            return batch.submit("export:" + targetFile.getAbsolutePath(), () -> {
+                AudioItemRepositoryImpl.this.exportFileWithFormat(sourceFile, targetFile, targetFormat);
+                return targetFile;
+            });
+        }
+
+        @Override
+        public void await() throws IOException, ConversionException, UnsupportedFormatException {
+            batch.await();
+        }
+    }
+
     /**
      * Returns a handle to the audio file in the given format. Does not guarantee
      * that the file exists.
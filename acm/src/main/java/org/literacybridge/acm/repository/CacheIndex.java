@@ -0,0 +1,387 @@
+package org.literacybridge.acm.repository;
+
+import org.literacybridge.acm.utils.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A persistent index of the files in a cache directory, with their sizes and last access times.
+ *
+ * The index is kept in a journal file in the cache directory. Every change appends a line:
+ *     A	{relative path}	{size}	{last access}
+ *     D	{relative path}
+ * and when the journal grows to several times the number of entries, it is rewritten as a
+ * snapshot. Touching a file that is already indexed, with the same size, only changes its access
+ * time; those changes are kept in memory and written by flushTouches(), so that reading a cached
+ * file doesn't write to the journal. If the journal is missing or can't be parsed, the index is rebuilt by walking the
+ * cache directory, once.
+ *
+ * Entries are kept in a map by path, and in a tree ordered by last access time, so that inserts,
+ * touches, and removing the least recently used entry are all O(log n).
+ */
+class CacheIndex {
+    private static final Logger LOG = Logger.getLogger(CacheIndex.class.getName());
+    static final String JOURNAL_FILE_NAME = ".cache-index.journal";
+    private static final String JOURNAL_HEADER = "cache-index 1";
+    // A size for entries whose files have been resolved for writing, but not yet written.
+    private static final long PENDING = -1;
+
+    /**
+     * Guards the deletion of a cached file that might be in use.
+     */
+    interface EvictionGuard {
+        /**
+         * Runs the deletion, unless the file is in use.
+         * @param file to be deleted.
+         * @param deletion deletes the file.
+         * @return true if the deletion was run, false if the file is in use.
+         */
+        boolean runIfUnused(File file, Runnable deletion);
+    }
+
+    static final EvictionGuard UNGUARDED = (file, deletion) -> {
+        deletion.run();
+        return true;
+    };
+
+    private final File root;
+    private final File journalFile;
+    private final FilenameFilter filter;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final TreeSet<Entry> byAge = new TreeSet<>(
+        Comparator.comparingLong((Entry e) -> e.lastAccess).thenComparing(e -> e.path));
+    // Entries whose access times have changed since they were last written to the journal.
+    private final Set<Entry> touched = new HashSet<>();
+    private long sizeInBytes = 0;
+    private int journalLines = 0;
+    private Writer journal;
+
+    CacheIndex(File root, FilenameFilter filter) {
+        this.root = root;
+        this.journalFile = new File(root, JOURNAL_FILE_NAME);
+        this.filter = filter;
+        if (!load()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Total size of the indexed files, not counting files still being written.
+     */
+    synchronized long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Records that a file in the cache was accessed, or is about to be written. A file that doesn't
+     * exist yet is recorded as pending, and its size is learned later.
+     * @param file in the cache.
+     * @param writeAccess true if the file is about to be written.
+     */
+    synchronized void touch(File file, boolean writeAccess) {
+        if (!filter.accept(file.getParentFile(), file.getName())) return;
+        String path = relativePath(file);
+        if (path == null) return;
+        boolean exists = file.exists();
+        if (!exists && !writeAccess) {
+            // Somebody looking to see if the file is here. It isn't.
+            if (entries.containsKey(path)) remove(path);
+            return;
+        }
+        long size = exists ? file.length() : PENDING;
+        Entry entry = entries.get(path);
+        if (entry != null && entry.size == size) {
+            byAge.remove(entry);
+            entry.lastAccess = System.currentTimeMillis();
+            byAge.add(entry);
+            touched.add(entry);
+            return;
+        }
+        put(path, size, System.currentTimeMillis());
+    }
+
+    /**
+     * The number of entries whose access times haven't been written to the journal.
+     */
+    synchronized int touchesPending() {
+        return touched.size();
+    }
+
+    /**
+     * Writes the access times that have changed since the last flush to the journal.
+     */
+    synchronized void flushTouches() {
+        if (touched.isEmpty()) return;
+        List<Entry> toWrite = new ArrayList<>(touched);
+        touched.clear();
+        for (Entry entry : toWrite) {
+            append(String.format("A\t%s\t%d\t%d", entry.path, entry.size, entry.lastAccess), false);
+        }
+        flushJournal();
+    }
+
+    /**
+     * Forgets every entry under the given directory, which has been deleted.
+     * @param dir that was deleted.
+     */
+    synchronized void removeDirectory(File dir) {
+        String prefix = relativePath(dir);
+        if (prefix == null) return;
+        List<String> paths = new ArrayList<>();
+        for (String path : entries.keySet()) {
+            if (path.startsWith(prefix + '/')) paths.add(path);
+        }
+        paths.forEach(this::remove);
+    }
+
+    /**
+     * Resolves the sizes of files that were pending when they were touched.
+     */
+    synchronized void resolvePending() {
+        List<Entry> pending = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.size == PENDING) pending.add(entry);
+        }
+        for (Entry entry : pending) {
+            File file = new File(root, entry.path);
+            if (file.exists()) {
+                put(entry.path, file.length(), entry.lastAccess);
+            } else if (System.currentTimeMillis() - entry.lastAccess > 60 * 60 * 1000) {
+                // Never written. Give up on it.
+                remove(entry.path);
+            }
+        }
+    }
+
+    synchronized long evictOldest() {
+        return evictOldest(UNGUARDED);
+    }
+
+    /**
+     * Deletes the least recently used file that isn't in use, unless it is the only one left.
+     * @param guard decides whether a file is in use, and holds it while it is deleted.
+     * @return the number of bytes freed, or -1 if nothing could be evicted.
+     */
+    synchronized long evictOldest(EvictionGuard guard) {
+        for (Entry entry : byAge) {
+            if (entry == byAge.last()) break;
+            if (entry.size == PENDING) continue;
+            File file = new File(root, entry.path);
+            boolean[] deleted = {false};
+            if (!guard.runIfUnused(file, () -> deleted[0] = !file.exists() || file.delete())) {
+                // In use; it can't be the least recently used for long.
+                continue;
+            }
+            remove(entry.path);
+            if (!deleted[0]) {
+                LOG.warning(String.format("Unable to delete cached file %s", file));
+                return 0;
+            }
+            return entry.size;
+        }
+        return -1;
+    }
+
+    synchronized void close() {
+        flushTouches();
+        closeJournal();
+    }
+
+    private void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException ignored) {
+            }
+            journal = null;
+        }
+    }
+
+    private void put(String path, long size, long lastAccess) {
+        Entry entry = entries.get(path);
+        if (entry != null) {
+            byAge.remove(entry);
+            if (entry.size != PENDING) sizeInBytes -= entry.size;
+        } else {
+            entry = new Entry(path);
+            entries.put(path, entry);
+        }
+        entry.size = size;
+        entry.lastAccess = lastAccess;
+        byAge.add(entry);
+        touched.remove(entry);
+        if (size != PENDING) sizeInBytes += size;
+        append(String.format("A\t%s\t%d\t%d", path, size, lastAccess), true);
+    }
+
+    private void remove(String path) {
+        Entry entry = entries.remove(path);
+        if (entry != null) {
+            byAge.remove(entry);
+            touched.remove(entry);
+            if (entry.size != PENDING) sizeInBytes -= entry.size;
+            append("D\t" + path, true);
+        }
+    }
+
+    private String relativePath(File file) {
+        String rootPath = root.getAbsolutePath() + File.separator;
+        String filePath = file.getAbsolutePath();
+        if (!filePath.startsWith(rootPath)) return null;
+        return filePath.substring(rootPath.length()).replace(File.separatorChar, '/');
+    }
+
+    private void append(String line, boolean flush) {
+        try {
+            if (journal == null) {
+                boolean isNew = !journalFile.exists();
+                journal = new BufferedWriter(new FileWriter(journalFile, true));
+                if (isNew) {
+                    journal.write(JOURNAL_HEADER);
+                    journal.write('\n');
+                }
+            }
+            journal.write(line);
+            journal.write('\n');
+            if (flush) journal.flush();
+            journalLines++;
+        } catch (IOException e) {
+            // The in-memory index is still correct. A damaged journal is rebuilt on the next start.
+            LOG.log(Level.WARNING, "Unable to write cache index journal.", e);
+        }
+        if (journalLines > 2 * entries.size() + 1000) {
+            writeSnapshot();
+        }
+    }
+
+    private void flushJournal() {
+        if (journal == null) return;
+        try {
+            journal.flush();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to write cache index journal.", e);
+        }
+    }
+
+    /**
+     * Replays the journal.
+     * @return true if the journal was read successfully, false if it must be rebuilt.
+     */
+    private boolean load() {
+        if (!journalFile.exists()) return false;
+        try (BufferedReader reader = new BufferedReader(new FileReader(journalFile))) {
+            if (!JOURNAL_HEADER.equals(reader.readLine())) return false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t");
+                if (parts[0].equals("A") && parts.length == 4) {
+                    Entry entry = entries.computeIfAbsent(parts[1], Entry::new);
+                    byAge.remove(entry);
+                    if (entry.size > 0) sizeInBytes -= entry.size;
+                    entry.size = Long.parseLong(parts[2]);
+                    entry.lastAccess = Long.parseLong(parts[3]);
+                    byAge.add(entry);
+                    if (entry.size != PENDING) sizeInBytes += entry.size;
+                } else if (parts[0].equals("D") && parts.length == 2) {
+                    Entry entry = entries.remove(parts[1]);
+                    if (entry != null) {
+                        byAge.remove(entry);
+                        if (entry.size != PENDING) sizeInBytes -= entry.size;
+                    }
+                } else {
+                    throw new IOException("Malformed journal line: " + line);
+                }
+                journalLines++;
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOG.log(Level.WARNING, "Cache index journal is damaged; rebuilding.", e);
+            entries.clear();
+            byAge.clear();
+            sizeInBytes = 0;
+            journalLines = 0;
+            return false;
+        }
+    }
+
+    /**
+     * Rebuilds the index from the files in the cache directory.
+     */
+    private void rebuild() {
+        long startTime = System.currentTimeMillis();
+        if (root.isDirectory()) {
+            IOUtils.visitFiles(root, filter, file -> {
+                String path = relativePath(file);
+                if (path != null) {
+                    Entry entry = new Entry(path);
+                    entry.size = file.length();
+                    entry.lastAccess = file.lastModified();
+                    entries.put(path, entry);
+                    byAge.add(entry);
+                    sizeInBytes += entry.size;
+                }
+                return true;
+            });
+        }
+        writeSnapshot();
+        LOG.info(String.format("Rebuilt cache index for %s: %d files, %d bytes in %d ms", root,
+            entries.size(), sizeInBytes, System.currentTimeMillis() - startTime));
+    }
+
+    /**
+     * Rewrites the journal as one line per entry.
+     */
+    private void writeSnapshot() {
+        closeJournal();
+        if (!root.exists()) return;
+        File tmpFile = new File(root, JOURNAL_FILE_NAME + ".tmp");
+        try {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(tmpFile))) {
+                writer.write(JOURNAL_HEADER);
+                writer.write('\n');
+                for (Entry entry : byAge) {
+                    writer.write(String.format("A\t%s\t%d\t%d\n", entry.path, entry.size, entry.lastAccess));
+                }
+            }
+            Files.move(tmpFile.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            journalLines = entries.size();
+            touched.clear();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to write cache index snapshot.", e);
+        }
+    }
+
+    private static class Entry {
+        final String path;
+        long size;
+        long lastAccess;
+
+        Entry(String path) {
+            this.path = path;
+        }
+    }
+}
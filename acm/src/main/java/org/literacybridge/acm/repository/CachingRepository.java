@@ -51,6 +51,13 @@ class CachingRepository implements FileRepositoryInterface {
         localCacheRepository.setupWavCaching(gcQuery);
     }
 
+    /**
+     * Sets the guard that keeps the local cache's collector from deleting files in use.
+     */
+    void setEvictionGuard(CacheIndex.EvictionGuard evictionGuard) {
+        localCacheRepository.setEvictionGuard(evictionGuard);
+    }
+
     private boolean isNativeFormat(AudioFormat format) {
         return nativeFormats.contains(format);
     }
@@ -1,21 +1,21 @@
 package org.literacybridge.acm.repository;
 
-import com.google.common.collect.Lists;
-import org.apache.commons.lang3.mutable.MutableLong;
 import org.literacybridge.acm.config.ACMConfiguration;
 import org.literacybridge.acm.gui.Application;
 import org.literacybridge.acm.gui.BackgroundTaskManager;
 import org.literacybridge.acm.store.AudioItem;
-import org.literacybridge.acm.utils.IOUtils;
 
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
+import java.util.logging.Logger;
 
 public class GarbageCollectedFileSystemRepository extends FileSystemRepository {
     private final FileSystemGarbageCollector garbageCollector;
@@ -26,6 +26,7 @@ public class GarbageCollectedFileSystemRepository extends FileSystemRepository {
         String wavExt = "." + AudioItemRepository.AudioFormat.WAV.getFileExtension();
 
         this.garbageCollector = new FileSystemGarbageCollector(
+            baseDir,
             cacheSizeInBytes,
             (file, name) -> name.toLowerCase().endsWith(wavExt));
     }
@@ -36,32 +37,61 @@ public class GarbageCollectedFileSystemRepository extends FileSystemRepository {
         }
         FileSystemGarbageCollector.GCInfo gcInfo = getGcInfo();
 
+        boolean autoCollect = true;
         if (gcInfo.isGcRecommended()) {
             long sizeMB = gcInfo.getCurrentSizeInBytes() / 1024 / 1024;
             if (!caching.hasUncachedA18Files()) {
                 if (gcQuery.test(sizeMB)) {
                     gc();
+                } else {
+                    // The user wants to keep the files, so don't collect them behind their back.
+                    autoCollect = false;
                 }
             }
         }
+        garbageCollector.setAutoCollect(autoCollect);
 
         if (ACMConfiguration.getInstance().getCurrentDB().isShouldPreCacheWav()) {
             caching.cacheNewA18Files();
         }
     }
 
+    /**
+     * Resolves the file, and records the access in the cache index, so that the least recently
+     * used files are the first to be collected.
+     */
+    @Override
+    public File resolveFile(AudioItem audioItem, AudioItemRepository.AudioFormat format, boolean writeAccess) {
+        File file = super.resolveFile(audioItem, format, writeAccess);
+        garbageCollector.touch(file, writeAccess);
+        return file;
+    }
+
+    @Override
+    public void delete(String id) {
+        super.delete(id);
+        garbageCollector.deleted(resolveDirectory(id));
+    }
+
+    /**
+     * Sets the guard that keeps the collector from deleting files that are being converted.
+     * @param evictionGuard runs a deletion unless the file is in use.
+     */
+    void setEvictionGuard(CacheIndex.EvictionGuard evictionGuard) {
+        garbageCollector.setEvictionGuard(evictionGuard);
+    }
 
     public FileSystemGarbageCollector.GCInfo getGcInfo() throws IOException {
         if (garbageCollector == null) {
             return new FileSystemGarbageCollector.GCInfo(false, 0, 0);
         }
 
-        return garbageCollector.getGcInfo(baseDir);
+        return garbageCollector.getGcInfo();
     }
 
     public void gc() throws IOException {
         if (garbageCollector != null) {
-            garbageCollector.gc(baseDir);
+            garbageCollector.gc();
         }
     }
 
@@ -147,60 +177,126 @@ public class GarbageCollectedFileSystemRepository extends FileSystemRepository {
 
     /**
      * A helper to remove old .wav files to free up disk space.
+     *
+     * The sizes and last access times of the files are kept in a CacheIndex, so neither measuring
+     * the cache nor collecting it needs to walk the cache directory. When auto-collection is on,
+     * any access that takes the cache over its limit schedules a collection on a background thread,
+     * which evicts least recently used files until the cache fits again. Files that are in use,
+     * according to the eviction guard, are skipped.
+     *
+     * Access times are written to the index's journal by the background pass, at most once a
+     * minute, and at shutdown.
      */
     static class FileSystemGarbageCollector {
+        private static final Logger LOG = Logger.getLogger(FileSystemGarbageCollector.class.getName());
+        private static final long TOUCH_FLUSH_INTERVAL_MS = 60 * 1000;
+        private static final ExecutorService collector = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "wav-cache-gc");
+            t.setDaemon(true);
+            return t;
+        });
+
         private final long maxSizeInBytes;
         private final FilenameFilter filesToDelete;
-
-        FileSystemGarbageCollector(long maxSizeInBytes, FilenameFilter filesToDelete) {
+        private final File repositoryRoot;
+        private CacheIndex index;
+        private volatile boolean autoCollect = false;
+        private volatile CacheIndex.EvictionGuard evictionGuard = CacheIndex.UNGUARDED;
+        private final AtomicBoolean collectionScheduled = new AtomicBoolean();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        private volatile long lastFlush = System.currentTimeMillis();
+
+        FileSystemGarbageCollector(File repositoryRoot, long maxSizeInBytes, FilenameFilter filesToDelete) {
+            this.repositoryRoot = repositoryRoot;
             this.maxSizeInBytes = maxSizeInBytes;
             this.filesToDelete = filesToDelete;
         }
 
-        private long calculateCurrentSizeInBytes(File repositoryRoot) throws IOException
-        {
-            final MutableLong sizeInBytes = new MutableLong();
-            IOUtils.visitFiles(repositoryRoot, filesToDelete, file -> {
-                sizeInBytes.add(file.length());
-                return true;
-            });
-            return sizeInBytes.longValue();
+        /**
+         * The index is opened on first use, so that the (rare) rebuild happens off the constructor.
+         */
+        private synchronized CacheIndex getIndex() {
+            if (index == null) {
+                CacheIndex newIndex = new CacheIndex(repositoryRoot, filesToDelete);
+                Runtime.getRuntime().addShutdownHook(new Thread(newIndex::close));
+                index = newIndex;
+            }
+            return index;
+        }
+
+        void setAutoCollect(boolean autoCollect) {
+            this.autoCollect = autoCollect;
+            collectInBackground();
         }
 
-        GCInfo getGcInfo(File repositoryRoot) throws IOException {
-            long currentSize = calculateCurrentSizeInBytes(repositoryRoot);
+        void setEvictionGuard(CacheIndex.EvictionGuard evictionGuard) {
+            this.evictionGuard = evictionGuard;
+        }
+
+        void touch(File file, boolean writeAccess) {
+            CacheIndex index = getIndex();
+            index.touch(file, writeAccess);
+            // A new file's size isn't known until it has been written, so check again later.
+            if (writeAccess || index.getSizeInBytes() > maxSizeInBytes) {
+                collectInBackground();
+            }
+            if (System.currentTimeMillis() - lastFlush > TOUCH_FLUSH_INTERVAL_MS && index.touchesPending() > 0) {
+                flushInBackground();
+            }
+        }
+
+        void deleted(File dir) {
+            getIndex().removeDirectory(dir);
+        }
+
+        GCInfo getGcInfo() {
+            CacheIndex index = getIndex();
+            index.resolvePending();
+            long currentSize = index.getSizeInBytes();
             return new GCInfo(currentSize > maxSizeInBytes,
                 currentSize,
                 maxSizeInBytes);
         }
 
-        void gc(File repositoryRoot) throws IOException {
-            GCInfo gcInfo = getGcInfo(repositoryRoot);
-            long sizeInBytes = gcInfo.getCurrentSizeInBytes();
+        /**
+         * Deletes the least recently used files until the cache fits. Never deletes the most
+         * recently used file.
+         */
+        void gc() {
+            CacheIndex index = getIndex();
+            index.resolvePending();
+            long evicted = 0;
+            while (index.getSizeInBytes() > maxSizeInBytes) {
+                long freed = index.evictOldest(evictionGuard);
+                if (freed < 0) break;
+                evicted += freed;
+            }
+            if (evicted > 0) {
+                LOG.info(String.format("Collected %d bytes from %s", evicted, repositoryRoot));
+            }
+        }
 
-            if (gcInfo.isGcRecommended()) {
-                // Get a filtered list of files in the repository subject to collection.
-                final List<File> allFiles = Lists.newArrayList();
-                IOUtils.visitFiles(repositoryRoot, filesToDelete, file -> {
-                    allFiles.add(file);
-                    return true;
+        /**
+         * Schedules a background pass that learns the sizes of newly written files, and collects
+         * if the cache is too big. Requests made while a pass is already scheduled are coalesced.
+         */
+        private void collectInBackground() {
+            if (!autoCollect) return;
+            if (collectionScheduled.compareAndSet(false, true)) {
+                collector.execute(() -> {
+                    collectionScheduled.set(false);
+                    gc();
                 });
-                // Sort by oldest to newest.
-                allFiles.sort((f1, f2) -> Long.compare(f1.lastModified(), f2.lastModified()));
-
-                // Delete the oldest files until we've freed enough. Do not delete the most recent
-                // file (though the next-most-recent may be from the same operation at the same time?)
-                for (int i = 0; i < allFiles.size() - 1; i++) {
-                    File file = allFiles.get(i);
-                    long size = file.length();
-                    if (file.delete()) {
-                        sizeInBytes -= size;
-                        if (sizeInBytes <= maxSizeInBytes) {
-                            break;
-                        }
-                    }
+            }
+        }
 
-                }
+        private void flushInBackground() {
+            if (flushScheduled.compareAndSet(false, true)) {
+                collector.execute(() -> {
+                    flushScheduled.set(false);
+                    lastFlush = System.currentTimeMillis();
+                    getIndex().flushTouches();
+                });
             }
         }
 
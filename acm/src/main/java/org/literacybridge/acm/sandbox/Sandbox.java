@@ -8,22 +8,54 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
-import java.util.function.Predicate;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Sandboxes changes to the files in a directory: changes are made in a shadow directory, and
+ * applied to the real directory by commit(), or thrown away by discard().
+ *
+ * The queue of pending operations is kept in an append-only journal (see SandboxJournal), so that
+ * it survives a crash, and so that a commit that was interrupted is finished when the sandbox is
+ * next opened.
+ *
+ * exists() and listPaths() are answered from an index of the queue and of the base directory's
+ * listings. The base directory may be changed by others (it is synced with the cloud), so a
+ * listing is re-used only while its directory's modification time is unchanged.
+ */
 public class Sandbox {
     private static final Logger LOG = Logger.getLogger(Sandbox.class.getName());
     private static final String DATA_DIR = "data";
+    // The work queue as saved by earlier versions, read only to migrate it to the journal.
     private static final String WORK_QUEUE_DATA = "workqueue.data";
+    private static final String WORK_QUEUE_JOURNAL = "workqueue.journal";
+
+    private static final int COMMIT_THREADS = 8;
+    // A listing taken this soon after its directory changed may have missed a change in the
+    // same clock tick, so it isn't trusted.
+    private static final long RACY_LISTING_MILLIS = 2000;
+    private static final Path ROOT = Paths.get("");
 
     private final File baseDir;
     // Directory with control files and data
@@ -32,69 +64,224 @@ public class Sandbox {
     private final File shadowData;
 
     private final Map<Path, FileOp> workQueue = new LinkedHashMap<>();
+    private final SandboxJournal journal;
+    // If a commit was started, the indices (in the queue's order) of the operations it has applied.
+    private Set<Integer> applied = null;
+    // For tests: the commit fails, as with an I/O error, instead of applying the operation with this index.
+    int failCommitAt = -1;
+
+    // Index of the queue: files (and their directories) in the shadow directory, by parent.
+    private final Map<Path, Set<Path>> shadowChildren = new HashMap<>();
+    // Index of the queue: paths that something will be moved to, by parent.
+    private final Map<Path, Set<Path>> movedIn = new HashMap<>();
+    // Listings of directories in the base directory.
+    private final Map<Path, Listing> baseListings = new HashMap<>();
+    private final boolean caseInsensitive;
 
     public Sandbox(File baseDir, File shadowDir) {
         this.baseDir = baseDir;
         this.shadowDir = shadowDir;
         this.shadowData = new File(shadowDir, DATA_DIR);
+        this.journal = new SandboxJournal(new File(shadowDir, WORK_QUEUE_JOURNAL));
+        this.caseInsensitive = isCaseInsensitive(baseDir);
         restoreWorkQueue();
+        if (applied != null) {
+            LOG.log(Level.WARNING, String.format("Finishing interrupted commit of %d items.", workQueue.size()));
+            try {
+                commit();
+            } catch (RuntimeException e) {
+                // Still hasChanges(); the next commit() will try again.
+                LOG.log(Level.SEVERE, "Unable to finish interrupted commit", e);
+            }
+        }
     }
 
     /**
-     * Write the work queue to disk so that we can resume later. This is to handle cases where the application
-     * crashes, etc.
+     * When relaunched after a crash, this is used to recover the previous state. The journal is
+     * rewritten, without the superseded records.
      */
-    private void persistWorkQueue() {
-        File qFile = new File(shadowDir, WORK_QUEUE_DATA);
-        if (!qFile.getParentFile().exists()) {
-            qFile.getParentFile().mkdirs();
-        }
-        try (FileOutputStream fos = new FileOutputStream(qFile);
-             ObjectOutputStream os = new ObjectOutputStream(fos))
-        {
-            os.writeInt(workQueue.size());
-            for (Map.Entry<Path,FileOp> e : workQueue.entrySet()) {
-                os.writeChar(e.getValue().getId());
-                os.writeObject(e.getKey().toString());
-                if (e.getValue() instanceof MoveOp) {
-                    os.writeObject(((MoveOp)e.getValue()).fromPath.toString());
+    private void restoreWorkQueue() {
+        SandboxJournal.State state;
+        File legacyFile = new File(shadowDir, WORK_QUEUE_DATA);
+        if (journal.getFile().exists()) {
+            state = journal.read();
+        } else if (legacyFile.exists()) {
+            state = readLegacyWorkQueue(legacyFile);
+        } else {
+            return;
+        }
+        LOG.log(Level.INFO, String.format("Found work queue with %d items.", state.workQueue.size()));
+        state.workQueue.forEach((path, op) -> {
+            workQueue.put(path, op);
+            index(path, op);
+        });
+        if (state.committing) {
+            applied = Collections.synchronizedSet(new HashSet<>(state.applied));
+        }
+        try {
+            journal.rewrite(workQueue, state.committing, state.applied);
+            //noinspection ResultOfMethodCallIgnored
+            legacyFile.delete();
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Unable to rewrite sandbox journal", e);
+        }
+    }
+
+    /**
+     * Reads the work queue as it was written (all at once, with an ObjectOutputStream) before
+     * there was a journal.
+     */
+    private SandboxJournal.State readLegacyWorkQueue(File qFile) {
+        SandboxJournal.State state = new SandboxJournal.State();
+        try (FileInputStream fis = new FileInputStream(qFile);
+             ObjectInputStream is = new ObjectInputStream(fis)) {
+            int size = is.readInt();
+            for (int i=0; i<size; i++) {
+                char ch = is.readChar();
+                String strKey = (String)is.readObject();
+                Path pKey = baseDir.toPath().relativize(baseDir.toPath().resolve(strKey));
+                Path pValue = null;
+                if (ch == 'M') {
+                    String strValue = (String) is.readObject();
+                    pValue = baseDir.toPath().relativize(baseDir.toPath().resolve(strValue));
                 }
+                FileOp op = FileOp.of(ch, pValue);
+                if (op != null) state.workQueue.put(pKey, op);
             }
+        } catch (IOException | ClassNotFoundException e) {
+            LOG.log(Level.WARNING, "Error reading work queue " + qFile, e);
+        }
+        return state;
+    }
+
+    /**
+     * Queues an operation for a path, replacing any that was queued for it. The path goes to the
+     * end of the queue, unless inPlace, in which case it keeps its place if it had one.
+     */
+    private void queue(Path path, FileOp op, boolean inPlace) {
+        FileOp old = inPlace ? workQueue.put(path, op) : workQueue.remove(path);
+        unindex(path, old);
+        if (!inPlace) workQueue.put(path, op);
+        index(path, op);
+        try {
+            if (journal.put(path, op, !inPlace, workQueue.size())) compactJournal();
         } catch (IOException e) {
-            e.printStackTrace();
+            LOG.log(Level.SEVERE, "Unable to write sandbox journal", e);
+        }
+    }
+
+    private void queue(Path path, FileOp op) {
+        queue(path, op, false);
+    }
+
+    private void unqueue(Path path) {
+        FileOp old = workQueue.remove(path);
+        if (old == null) return;
+        unindex(path, old);
+        try {
+            if (journal.remove(path, workQueue.size())) compactJournal();
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Unable to write sandbox journal", e);
+        }
+    }
+
+    private void compactJournal() throws IOException {
+        journal.rewrite(workQueue, false, Collections.emptySet());
+    }
+
+    private void index(Path path, FileOp op) {
+        if (op instanceof AddOp) {
+            // The file, and the directories that contain it, are in the shadow directory.
+            Path child = path;
+            for (Path parent = parentOf(child); ; child = parent, parent = parentOf(child)) {
+                boolean added = shadowChildren.computeIfAbsent(parent, k -> new HashSet<>()).add(child);
+                if (!added || parent == ROOT) break;
+            }
+        } else if (op instanceof MoveOp) {
+            movedIn.computeIfAbsent(parentOf(path), k -> new HashSet<>()).add(path);
         }
     }
 
+    private void unindex(Path path, FileOp op) {
+        // The shadow file is gone, but (as in the file system) its directories remain.
+        if (op instanceof AddOp) {
+            Set<Path> children = shadowChildren.get(parentOf(path));
+            if (children != null) children.remove(path);
+        } else if (op instanceof MoveOp) {
+            Set<Path> children = movedIn.get(parentOf(path));
+            if (children != null) children.remove(path);
+        }
+    }
+
+    private static Path parentOf(Path path) {
+        Path parent = path.getParent();
+        return parent == null ? ROOT : parent;
+    }
+
     /**
-     * When relaunched after a crash, this is used to recover the previous state.
+     * The children of a directory in the base directory, from the last listing of the directory,
+     * if it hasn't changed since.
      */
-    private void restoreWorkQueue() {
-        File qFile = new File(shadowDir, WORK_QUEUE_DATA);
-        if (qFile.exists()) {
-            try (FileInputStream fis = new FileInputStream(qFile);
-                 ObjectInputStream is = new ObjectInputStream(fis)) {
-                int size = is.readInt();
-                System.out.printf("Found work queue with %d items.\n", size);
-                for (int i=0; i<size; i++) {
-                    char ch = is.readChar();
-                    String strKey = (String)is.readObject();
-                    Path pKey = baseDir.toPath().relativize(baseDir.toPath().resolve(strKey));
-                    switch (ch) {
-                        case 'D': workQueue.put(pKey, new DeleteOp()); break;
-                        case 'A': workQueue.put(pKey, new AddOp()); break;
-                        case 'O': workQueue.put(pKey, new MovedOutOp()); break;
-                        case 'K': workQueue.put(pKey, new MkDirOp()); break;
-                        case 'L': workQueue.put(pKey, new RmDirOp()); break;
-                        case 'M': String strValue = (String)is.readObject();
-                            Path pValue = baseDir.toPath().relativize(baseDir.toPath().resolve(strValue));
-                            workQueue.put(pKey, new MoveOp(pValue));
-                            break;
-                    }
-                }
-            } catch (IOException | ClassNotFoundException e) {
-                e.printStackTrace();
+    private Listing baseListing(Path relativeDir) {
+        File dir = baseDir.toPath().resolve(relativeDir).toFile();
+        long lastModified = dir.lastModified();
+        Listing listing = baseListings.get(relativeDir);
+        if (listing != null && listing.isCurrent(lastModified)) {
+            return listing;
+        }
+        listing = new Listing(lastModified);
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Path relativeChild = baseDir.toPath().relativize(file.toPath());
+                listing.children.put(key(relativeChild), relativeChild);
             }
         }
+        baseListings.put(relativeDir, listing);
+        return listing;
+    }
+
+    private boolean baseExists(Path relativePath) {
+        if (relativePath.toString().isEmpty()) return baseDir.exists();
+        return baseListing(parentOf(relativePath)).children.containsKey(key(relativePath));
+    }
+
+    private String key(Path relativePath) {
+        String key = relativePath.toString();
+        return caseInsensitive ? key.toLowerCase(Locale.ROOT) : key;
+    }
+
+    /**
+     * Whether the file system holding the directory ignores case in names, so that the index
+     * matches names the way File.exists() would.
+     */
+    private static boolean isCaseInsensitive(File dir) {
+        File absolute = dir.getAbsoluteFile();
+        String name = absolute.getName();
+        String upper = name.toUpperCase(Locale.ROOT);
+        String other = upper.equals(name) ? name.toLowerCase(Locale.ROOT) : upper;
+        if (!other.equals(name) && absolute.exists()) {
+            return new File(absolute.getParentFile(), other).exists();
+        }
+        String os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+        return os.startsWith("windows") || os.startsWith("mac");
+    }
+
+    /**
+     * A directory listing, and the directory's modification time when it was listed.
+     */
+    private static class Listing {
+        final long lastModified;
+        final long listedAt = System.currentTimeMillis();
+        final Map<String, Path> children = new HashMap<>();
+
+        Listing(long lastModified) {
+            this.lastModified = lastModified;
+        }
+
+        boolean isCurrent(long lastModified) {
+            return lastModified == this.lastModified && listedAt - lastModified > RACY_LISTING_MILLIS;
+        }
     }
 
     /**
@@ -108,75 +295,240 @@ public class Sandbox {
 
     public void discard() {
         workQueue.clear();
+        applied = null;
+        shadowChildren.clear();
+        movedIn.clear();
+        baseListings.clear();
+        journal.close();
         FileUtils.deleteQuietly(this.shadowDir);
     }
 
-    public void commit() {
-        commit(x -> {}, x -> {});
+    public boolean commit() {
+        return commit(x -> {}, x -> {});
     }
 
     /**
      * Commits the work queue items from sandbox to base.
      *
+     * The queue is applied in steps. Each operation goes in the step after the last one with an
+     * operation on the same path, a path that contains it, or a path that it contains; the
+     * operations in a step are therefore independent, and are applied in parallel, grouped by
+     * directory. As each operation is applied it is recorded in the journal, so if the commit is
+     * interrupted, the rest of it can be applied later. If it fails, or is interrupted, the journal
+     * is kept, and the rest is applied when the sandbox is next opened (or by the next commit()).
+     * If the start of the commit can't be recorded in the journal, nothing is applied.
+     *
      * @param writtenFileHandler callback for each file added or updated.
      * @param removedFileHandler callback for each file removed.
+     * @return true if the whole queue was applied, false if the commit failed or was interrupted.
      */
-    public void commit(Consumer<File> writtenFileHandler, Consumer<File> removedFileHandler) {
-        System.out.printf("\nCommitting %d items:\n", workQueue.size());
-        for (Map.Entry<Path, FileOp> e : workQueue.entrySet()) {
-            if (e.getValue() instanceof DeleteOp) {
-                // The file was deleted in the sandbox; delete in the base.
-                File f = baseDir.toPath().resolve(e.getKey()).toFile();
-                boolean ok = f.delete();
-                removedFileHandler.accept(f);
-                System.out.printf("delete: %s - [%s]\n", e.getKey(), ok?"ok":"error");
-
-            } else if (e.getValue() instanceof AddOp) {
-                // The file was added or updated in the sandbox; make the same change in the base.
-                File moveTo = baseDir.toPath().resolve(e.getKey()).toFile();
-                File moveFrom = shadowData.toPath().resolve(e.getKey()).toFile();
-                File toParent = moveTo.getParentFile();
-                if (!toParent.exists()) toParent.mkdirs();
-                if (moveTo.exists()) moveTo.delete();
-                boolean ok = moveFrom.renameTo(moveTo);
-                writtenFileHandler.accept(moveTo);
-                System.out.printf("   add: %s + from: %s [%s]\n", moveTo.getAbsolutePath(), moveFrom.getAbsolutePath(), ok?"ok":"error");
-
-            } else if (e.getValue() instanceof MoveOp) {
-                // The file was renamed (or moved) in the sandbox; do the same in the base, OR the file didn't
-                // exist in the sandbox proper, but was requested to be renamed in the base; do that now.
-                File moveTo = baseDir.toPath().resolve(e.getKey()).toFile();
-                Path moveFromPath = ((MoveOp) e.getValue()).fromPath;
-                File moveFrom = baseDir.toPath().resolve(moveFromPath).toFile();
-                File toParent = moveTo.getParentFile();
-                if (!toParent.exists()) toParent.mkdirs();
-                if (moveTo.exists()) moveTo.delete();
-                boolean ok = moveFrom.renameTo(moveTo);
-                writtenFileHandler.accept(moveTo);
-                System.out.printf("  move: %s + from %s [%s]\n", moveTo.getAbsolutePath(), moveFrom.getAbsolutePath(), ok?"ok":"error");
-
-            } else if (e.getValue() instanceof MovedOutOp) {
-                // This file had no corresponding sandbox copy, and was requested for rename. The new name had
-                // a MoveOp. This file has been renamed elsewhere, so notify the handler that it no longer exists
-                // as its original name.
-                File movedFromFile = baseDir.toPath().resolve(e.getKey()).toFile();
-                boolean ok = !movedFromFile.exists();
-                removedFileHandler.accept(movedFromFile);
-                System.out.printf(" moved: %s - [%s]\n", e.getKey(), ok?"ok":"error");
-
-            } else if (e.getValue() instanceof MkDirOp) {
-                File newDir = baseDir.toPath().resolve(e.getKey()).toFile();
-                boolean ok = newDir.exists() || newDir.mkdirs();
-                System.out.printf(" mkdir: %s [%s]\n", newDir.getAbsolutePath(), ok?"ok":"error");
-
-            } else if (e.getValue() instanceof RmDirOp ) {
-                File oldDir = baseDir.toPath().resolve(e.getKey()).toFile();
-                boolean ok = !oldDir.exists() || oldDir.delete();
-                System.out.printf(" rmdir: %s [%s]\n", oldDir.getAbsolutePath(), ok?"ok":"error");
+    public boolean commit(Consumer<File> writtenFileHandler, Consumer<File> removedFileHandler) {
+        List<Map.Entry<Path, FileOp>> ops = new ArrayList<>(workQueue.entrySet());
+        if (applied == null) {
+            try {
+                journal.commitStarted();
+            } catch (IOException e) {
+                // Without the journal, a partial commit couldn't be finished exactly, so don't start one.
+                LOG.log(Level.SEVERE, "Unable to write sandbox journal; nothing committed.", e);
+                return false;
+            }
+            applied = Collections.synchronizedSet(new HashSet<>());
+        }
+        List<List<Integer>> steps = planCommit(ops);
+        LOG.log(Level.INFO, String.format("Committing %d items (%d already applied) in %d steps.",
+            ops.size(), applied.size(), steps.size()));
+        long startTime = System.currentTimeMillis();
+        int errors = 0;
+
+        ExecutorService executor = null;
+        try {
+            for (List<Integer> step : steps) {
+                // Group the operations not yet applied by directory.
+                Map<Path, List<Integer>> byDirectory = new LinkedHashMap<>();
+                for (int index : step) {
+                    if (applied.contains(index)) continue;
+                    byDirectory.computeIfAbsent(parentOf(ops.get(index).getKey()), k -> new ArrayList<>()).add(index);
+                }
+                if (byDirectory.isEmpty()) continue;
+
+                boolean[] results = new boolean[ops.size()];
+                if (byDirectory.size() == 1) {
+                    applyAll(ops, byDirectory.values().iterator().next(), results);
+                } else {
+                    if (executor == null) executor = newCommitExecutor();
+                    List<Future<?>> futures = new ArrayList<>();
+                    for (List<Integer> indices : byDirectory.values()) {
+                        futures.add(executor.submit(() -> applyAll(ops, indices, results)));
+                    }
+                    for (Future<?> future : futures) {
+                        future.get();
+                    }
+                }
+                journal.sync();
 
+                // Notify on this thread, in queue order.
+                for (List<Integer> indices : byDirectory.values()) {
+                    for (int index : indices) {
+                        if (!results[index]) errors++;
+                        notify(ops.get(index), writtenFileHandler, removedFileHandler);
+                    }
+                }
             }
+        } catch (IOException | ExecutionException e) {
+            // The journal is kept, so that the rest of the commit is applied when the sandbox is next opened.
+            LOG.log(Level.SEVERE, "Commit failed; it will be finished the next time the sandbox is opened.", e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.log(Level.SEVERE, "Commit interrupted; it will be finished the next time the sandbox is opened.", e);
+            return false;
+        } finally {
+            if (executor != null) executor.shutdownNow();
         }
+        LOG.log(errors == 0 ? Level.INFO : Level.WARNING, String.format("Committed %d items in %d ms, %d errors.",
+            ops.size(), System.currentTimeMillis() - startTime, errors));
         discard();
+        return true;
+    }
+
+    /**
+     * Divides the queue into steps that must be applied in order, the operations of each step
+     * being independent of one another.
+     *
+     * @param ops the queue.
+     * @return the steps, each a list of indices into ops, in queue order.
+     */
+    static List<List<Integer>> planCommit(List<Map.Entry<Path, FileOp>> ops) {
+        List<List<Integer>> steps = new ArrayList<>();
+        // The last step with an operation on the path.
+        Map<Path, Integer> stepAt = new HashMap<>();
+        // The last step with an operation on the path or anything under it.
+        Map<Path, Integer> stepUnder = new HashMap<>();
+        for (int index = 0; index < ops.size(); index++) {
+            Path key = ops.get(index).getKey();
+            FileOp op = ops.get(index).getValue();
+            List<Path> paths = op instanceof MoveOp ? Arrays.asList(key, ((MoveOp) op).fromPath)
+                                                    : Collections.singletonList(key);
+            int step = 0;
+            for (Path path : paths) {
+                step = Math.max(step, stepUnder.getOrDefault(path, -1) + 1);
+                for (Path parent = path.getParent(); parent != null; parent = parent.getParent()) {
+                    step = Math.max(step, stepAt.getOrDefault(parent, -1) + 1);
+                }
+            }
+            if (step == steps.size()) steps.add(new ArrayList<>());
+            steps.get(step).add(index);
+            for (Path path : paths) {
+                stepAt.merge(path, step, Math::max);
+                for (Path p = path; p != null; p = p.getParent()) {
+                    stepUnder.merge(p, step, Math::max);
+                }
+            }
+        }
+        return steps;
+    }
+
+    private static ExecutorService newCommitExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(COMMIT_THREADS, r -> {
+            Thread t = new Thread(r, "sandbox-commit-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Applies some operations, all on files in one directory, and records them in the journal.
+     */
+    private Void applyAll(List<Map.Entry<Path, FileOp>> ops, List<Integer> indices, boolean[] results) throws IOException {
+        boolean madeDirectory = false;
+        for (int index : indices) {
+            Path key = ops.get(index).getKey();
+            FileOp op = ops.get(index).getValue();
+            if (index == failCommitAt) throw new IOException("Simulated failure applying " + key);
+            if (!madeDirectory && (op instanceof AddOp || op instanceof MoveOp)) {
+                File toParent = baseDir.toPath().resolve(key).toFile().getParentFile();
+                if (!toParent.exists()) toParent.mkdirs();
+                madeDirectory = true;
+            }
+            results[index] = apply(key, op);
+            journal.applied(index);
+            applied.add(index);
+        }
+        return null;
+    }
+
+    /**
+     * Applies one operation to the base directory. Applying an operation a second time (because a
+     * commit was interrupted before the operation was recorded as applied) does no harm.
+     *
+     * @return true if it worked.
+     */
+    private boolean apply(Path key, FileOp op) {
+        boolean ok;
+        String verb;
+        if (op instanceof DeleteOp) {
+            // The file was deleted in the sandbox; delete in the base.
+            File f = baseDir.toPath().resolve(key).toFile();
+            ok = !f.exists() || f.delete();
+            verb = "delete";
+
+        } else if (op instanceof AddOp) {
+            // The file was added or updated in the sandbox; make the same change in the base. If there
+            // is no sandbox file, it was already moved.
+            File moveTo = baseDir.toPath().resolve(key).toFile();
+            File moveFrom = shadowData.toPath().resolve(key).toFile();
+            ok = moveFrom.exists() ? replace(moveFrom, moveTo) : moveTo.exists();
+            verb = "add";
+
+        } else if (op instanceof MoveOp) {
+            // The file was renamed (or moved) in the sandbox; do the same in the base, OR the file didn't
+            // exist in the sandbox proper, but was requested to be renamed in the base; do that now.
+            File moveTo = baseDir.toPath().resolve(key).toFile();
+            File moveFrom = baseDir.toPath().resolve(((MoveOp) op).fromPath).toFile();
+            ok = moveFrom.exists() ? replace(moveFrom, moveTo) : moveTo.exists();
+            verb = "move";
+
+        } else if (op instanceof MovedOutOp) {
+            // This file had no corresponding sandbox copy, and was requested for rename. The new name had
+            // a MoveOp. This file has been renamed elsewhere; the handler is told that it no longer exists
+            // as its original name.
+            ok = !baseDir.toPath().resolve(key).toFile().exists();
+            verb = "moved";
+
+        } else if (op instanceof MkDirOp) {
+            File newDir = baseDir.toPath().resolve(key).toFile();
+            ok = newDir.exists() || newDir.mkdirs();
+            verb = "mkdir";
+
+        } else {
+            File oldDir = baseDir.toPath().resolve(key).toFile();
+            ok = !oldDir.exists() || oldDir.delete();
+            verb = "rmdir";
+        }
+        LOG.log(ok ? Level.FINE : Level.WARNING, String.format("%6s: %s [%s]", verb, key, ok ? "ok" : "error"));
+        return ok;
+    }
+
+    private static boolean replace(File from, File to) {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void notify(Map.Entry<Path, FileOp> entry, Consumer<File> writtenFileHandler,
+        Consumer<File> removedFileHandler)
+    {
+        File file = baseDir.toPath().resolve(entry.getKey()).toFile();
+        FileOp op = entry.getValue();
+        if (op instanceof AddOp || op instanceof MoveOp) {
+            writtenFileHandler.accept(file);
+        } else if (op instanceof DeleteOp || op instanceof MovedOutOp) {
+            removedFileHandler.accept(file);
+        }
     }
 
     public boolean exists(File file) {
@@ -186,16 +538,16 @@ public class Sandbox {
     public boolean exists(Path path) {
         ensureValidPath(path);
         Path relativePath = path.isAbsolute() ? baseDir.toPath().relativize(path) : path;
-        // If there is a shadow file, the file will continue to exist.
-        if (shadowData.toPath().resolve(relativePath).toFile().exists()) return true;
         // Check for any operation that affects this path...
         FileOp op = workQueue.get(relativePath);
-        // Maybe something will be renamed to this path.
-        if (op instanceof MoveOp) return true;
+        // If there is a shadow file, or something will be renamed to this path, it will exist.
+        if (op instanceof AddOp || op instanceof MoveOp) return true;
+        // A directory in the shadow directory.
+        if (shadowChildren.containsKey(relativePath)) return true;
         // No shadow file; if it has been deleted, it won't exist.
         if (op instanceof DeleteOp || op instanceof MovedOutOp) return false;
         // No shadow file, not explicitly deleted. Does the base file exist?
-        return (baseDir.toPath().resolve(relativePath).toFile()).exists();
+        return baseExists(relativePath);
     }
 
     public boolean isDirectory(File file) {
@@ -226,10 +578,8 @@ public class Sandbox {
         File shadowFile = shadowData.toPath().resolve(relativePath).toFile();
         if (shadowFile.exists()) shadowFile.delete();
 
-        // Check for any operation that affects this path...
-        workQueue.remove(relativePath);
-        workQueue.put(relativePath, new DeleteOp());
-        persistWorkQueue();
+        // Replaces any operation that affects this path.
+        queue(relativePath, new DeleteOp());
     }
 
     /**
@@ -245,51 +595,27 @@ public class Sandbox {
         ensureValidPath(path);
         // The path for which caller wants the children, relative to the base path being sandboxed.
         Path relativePath = path.isAbsolute() ? baseDir.toPath().relativize(path) : path;
-        // The directory in the sandbox that corresponds to the real directory.
-        File shadowFile = shadowData.toPath().resolve(relativePath).toFile();
-        // The real directory for which the caller wants the children.
-        File baseFile = baseDir.toPath().resolve(relativePath).toFile();
         // The queued operation, if any, for the relative path.
         FileOp op = workQueue.get(relativePath);
-        File[] files = null;
+        Path listedPath = null;
         // Is the base itself scheduled for deletion or renaming?
         if (op instanceof MoveOp) {
-            Path otherPath = ((MoveOp) op).fromPath;
-            File otherFile = baseDir.toPath().resolve(otherPath).toFile();
-            files = otherFile.listFiles();
+            listedPath = ((MoveOp) op).fromPath;
         } else if (!(op instanceof DeleteOp || op instanceof MovedOutOp)) {
-            files = baseFile.listFiles();
+            listedPath = relativePath;
         }
         // Files in the base that aren't scheduled for deletion.
-        if (files != null) {
-            for (File file : files) {
-                Path relativeSub = baseDir.toPath().relativize(file.toPath());
-                // If it isn't scheduled for deletion add it to the list.
+        if (listedPath != null) {
+            for (Path relativeSub : baseListing(listedPath).children.values()) {
                 op = workQueue.get(relativeSub);
                 if (!(op instanceof DeleteOp || op instanceof MovedOutOp)) {
                     result.add(relativeSub);
                 }
             }
         }
-        // Is anything being moved in? (Adds will have physical files in the sandbox, so no need to look for them.)
-        // Note that files in the root won't have a parent (because they're relative), so the "is this one of the
-        // ones we want" has to be different for root vs sub-directories.
-        Predicate<Path> isAtPath = relativePath.toString().equals("")
-                                   ? path1 -> path1.getParent() == null
-                                   : path2 -> path2.getParent().toString().equals(relativePath.toString());
-
-        workQueue.entrySet().stream()
-            .filter(e->e.getValue() instanceof MoveOp)
-            .map(Map.Entry::getKey)
-            .filter(isAtPath)
-            .forEach(result::add);
-        // Add things in the shadow directory.
-        files = shadowFile.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                result.add(shadowData.toPath().relativize(file.toPath()));
-            }
-        }
+        // Anything being moved in, and things in the shadow directory.
+        result.addAll(movedIn.getOrDefault(relativePath, Collections.emptySet()));
+        result.addAll(shadowChildren.getOrDefault(relativePath, Collections.emptySet()));
         return result;
     }
 
@@ -379,11 +705,8 @@ public class Sandbox {
 
         if (!noTrack) {
             // **** State tracking ****
-            // Check for any operation that affects this path...
-            workQueue.remove(relativePath);
-            // Remember that we added it.
-            workQueue.put(relativePath, new AddOp());
-            persistWorkQueue();
+            // Remember that we added it, replacing any operation that affects this path.
+            queue(relativePath, new AddOp());
         }
         File outputFile = shadowedPath.toFile();
         File parent = outputFile.getParentFile();
@@ -420,13 +743,7 @@ public class Sandbox {
         ensureValidPath(path);
         Path relativePath = path.isAbsolute() ? baseDir.toPath().relativize(path) : path;
 
-        // **** State tracking ****
-        // Check for any operation that affects this path...
-        workQueue.remove(relativePath);
-        // Remember that we added it.
-        workQueue.put(relativePath, new AddOp());
-        persistWorkQueue();
-
+        // outputFile() remembers that we added it.
         File outputFile = outputFile(relativePath);
         File parent = outputFile.getParentFile();
         if (!parent.exists()) parent.mkdirs();
@@ -463,26 +780,22 @@ public class Sandbox {
                 if (shadowedToFile.exists()) shadowedToFile.delete();
                 if (shadowedFromFile.renameTo(shadowedToFile)) {
                     result = true;
-                    workQueue.remove(relativeToPath);
-                    workQueue.put(relativeToPath, new AddOp());
-                    workQueue.remove(relativeFromPath);
+                    queue(relativeToPath, new AddOp());
                     if (baseFromFile.exists()) {
-                        workQueue.put(relativeFromPath, new DeleteOp());
+                        queue(relativeFromPath, new DeleteOp());
+                    } else {
+                        unqueue(relativeFromPath);
                     }
-                    persistWorkQueue();
                 }
             } else if (baseFromFile.exists()) {
                 if (baseFromFile.isDirectory()) {
                     throw new IllegalArgumentException("Argument to moveFile must not be a directory: "+baseFromFile.getAbsolutePath());
                 }
                 result = true; // we're assuming the rename will work in the future.
-                workQueue.remove(relativeToPath);
-                workQueue.put(relativeToPath, new MoveOp(relativeFromPath));
-                workQueue.remove(relativeFromPath);
+                queue(relativeToPath, new MoveOp(relativeFromPath));
                 // If we don't put another file here, we'll need to let the handlers know that this file no
                 // longer exists.
-                workQueue.put(relativeFromPath, new MovedOutOp());
-                persistWorkQueue();
+                queue(relativeFromPath, new MovedOutOp());
             }
         } else {
             // Moving an external file into the sandboxed files.
@@ -498,9 +811,7 @@ public class Sandbox {
             if (shadowedToFile.exists()) shadowedToFile.delete();
             if (fromFile.renameTo(shadowedToFile)) {
                 result = true;
-                workQueue.remove(relativeToPath);
-                workQueue.put(relativeToPath, new AddOp());
-                persistWorkQueue();
+                queue(relativeToPath, new AddOp());
             }
         }
         return result;
@@ -521,7 +832,7 @@ public class Sandbox {
         Path relativeToRoot = to.isAbsolute() ? baseDir.toPath().relativize(to) : to;
         File shadowedToFile = shadowData.toPath().resolve(relativeToRoot).toFile();
         Path relativeFromRoot = from.isAbsolute() ? baseDir.toPath().relativize(from) : from;
-        workQueue.put(relativeToRoot, new MkDirOp());
+        queue(relativeToRoot, new MkDirOp(), true);
         // Move the children individually.
         Collection<Path> children = listPaths(from);
         for (Path relativeFromChild : children) {
@@ -533,7 +844,7 @@ public class Sandbox {
                 ok &= moveFile(relativeFromChild, relativeToChild);
             }
         }
-        workQueue.put(relativeFromRoot, new RmDirOp());
+        queue(relativeFromRoot, new RmDirOp(), true);
         return ok;
     }
 
@@ -564,6 +875,23 @@ public class Sandbox {
     // File operation & sequencing support
     abstract static class FileOp {
         abstract char getId();
+
+        /**
+         * @param id of the operation, from getId().
+         * @param fromPath for a MoveOp, the path being moved.
+         * @return the operation, or null if the id isn't known.
+         */
+        static FileOp of(char id, Path fromPath) {
+            switch (id) {
+                case 'D': return new DeleteOp();
+                case 'A': return new AddOp();
+                case 'O': return new MovedOutOp();
+                case 'K': return new MkDirOp();
+                case 'L': return new RmDirOp();
+                case 'M': return new MoveOp(fromPath);
+                default: return null;
+            }
+        }
     }
 
     static class DeleteOp extends FileOp {
@@ -0,0 +1,244 @@
+package org.literacybridge.acm.sandbox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The Sandbox's work queue, on disk, as an append-only journal. Each change to the queue appends
+ * one small record, so recording an operation doesn't depend on how many are already queued.
+ * Replaying the records rebuilds the queue, in the same order.
+ *
+ * A commit appends a record when it starts, and one as each operation is applied, so that a commit
+ * that was interrupted can be finished without applying anything twice.
+ *
+ * When the journal is mostly superseded records, it is rewritten with just the current queue.
+ */
+class SandboxJournal {
+    private static final Logger LOG = Logger.getLogger(SandboxJournal.class.getName());
+
+    private static final int MAGIC = 0x53424a31; // "SBJ1"
+
+    // Record types.
+    private static final byte PUT_LAST = 'R';   // remove, then put: the path goes to the end.
+    private static final byte PUT = 'P';        // put: the path keeps its place, if it had one.
+    private static final byte REMOVE = 'X';
+    private static final byte COMMIT_STARTED = 'C';
+    private static final byte APPLIED = 'F';    // one operation of the commit was applied.
+
+    // Don't rewrite a journal smaller than this, nor one that is mostly current.
+    private static final int MIN_RECORDS_TO_COMPACT = 1024;
+    private static final int COMPACT_RATIO = 4;
+
+    /**
+     * What the journal says: the queue, and how far along a commit is, if one was started.
+     */
+    static class State {
+        final Map<Path, Sandbox.FileOp> workQueue = new LinkedHashMap<>();
+        boolean committing = false;
+        final Set<Integer> applied = new HashSet<>();
+    }
+
+    private final File file;
+    private FileOutputStream fileStream;
+    private DataOutputStream out;
+    private int records;
+
+    SandboxJournal(File file) {
+        this.file = file;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Reads the journal. A record that was only partly written, because of a crash, is ignored,
+     * as is anything after it.
+     * @return the state, empty if there is no journal.
+     */
+    State read() {
+        State state = new State();
+        if (!file.exists()) return state;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                LOG.log(Level.WARNING, "Not a sandbox journal: " + file);
+                return state;
+            }
+            while (true) {
+                byte type = in.readByte();
+                switch (type) {
+                    case PUT_LAST:
+                    case PUT: {
+                        char id = in.readChar();
+                        Path path = Paths.get(in.readUTF());
+                        Sandbox.FileOp op = Sandbox.FileOp.of(id, id == 'M' ? Paths.get(in.readUTF()) : null);
+                        if (op == null) throw new IOException("Unknown operation " + id);
+                        if (type == PUT_LAST) state.workQueue.remove(path);
+                        state.workQueue.put(path, op);
+                        break;
+                    }
+                    case REMOVE:
+                        state.workQueue.remove(Paths.get(in.readUTF()));
+                        break;
+                    case COMMIT_STARTED:
+                        state.committing = true;
+                        break;
+                    case APPLIED:
+                        state.applied.add(in.readInt());
+                        break;
+                    default:
+                        throw new IOException("Unknown journal record " + type);
+                }
+                records++;
+            }
+        } catch (EOFException e) {
+            // The end, or a partial record.
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Error reading sandbox journal " + file, e);
+        }
+        return state;
+    }
+
+    /**
+     * Replaces the journal with one that has just the given state.
+     */
+    void rewrite(Map<Path, Sandbox.FileOp> workQueue, boolean committing, Set<Integer> applied) throws IOException {
+        close();
+        File dir = file.getParentFile();
+        if (!dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+        File tempFile = File.createTempFile(file.getName() + '.', ".tmp", dir);
+        records = 0;
+        try (FileOutputStream fos = new FileOutputStream(tempFile);
+             DataOutputStream tempOut = new DataOutputStream(new BufferedOutputStream(fos))) {
+            tempOut.writeInt(MAGIC);
+            for (Map.Entry<Path, Sandbox.FileOp> e : workQueue.entrySet()) {
+                writePut(tempOut, PUT_LAST, e.getKey(), e.getValue());
+            }
+            if (committing) {
+                tempOut.writeByte(COMMIT_STARTED);
+                records++;
+                for (int index : applied) {
+                    tempOut.writeByte(APPLIED);
+                    tempOut.writeInt(index);
+                    records++;
+                }
+            }
+            tempOut.flush();
+            fos.getFD().sync();
+        }
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Records that an operation was queued for the path.
+     * @param toEnd if true, the path goes to the end of the queue, otherwise it keeps its place.
+     * @return true if the journal should now be compacted.
+     */
+    boolean put(Path path, Sandbox.FileOp op, boolean toEnd, int queueSize) throws IOException {
+        writePut(output(), toEnd ? PUT_LAST : PUT, path, op);
+        out.flush();
+        return shouldCompact(queueSize);
+    }
+
+    boolean remove(Path path, int queueSize) throws IOException {
+        output().writeByte(REMOVE);
+        out.writeUTF(path.toString());
+        records++;
+        out.flush();
+        return shouldCompact(queueSize);
+    }
+
+    void commitStarted() throws IOException {
+        output().writeByte(COMMIT_STARTED);
+        records++;
+        sync();
+    }
+
+    /**
+     * Records that the operation with the given index (in the queue's order) has been applied.
+     * Called from the commit's worker threads.
+     */
+    synchronized void applied(int index) throws IOException {
+        output().writeByte(APPLIED);
+        out.writeInt(index);
+        records++;
+        out.flush();
+    }
+
+    /**
+     * Flushes the journal to the disk.
+     */
+    synchronized void sync() throws IOException {
+        if (out != null) {
+            out.flush();
+            fileStream.getFD().sync();
+        }
+    }
+
+    void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // Nothing more to do.
+            }
+            out = null;
+            fileStream = null;
+        }
+    }
+
+    private boolean shouldCompact(int queueSize) {
+        return records > MIN_RECORDS_TO_COMPACT && records > COMPACT_RATIO * queueSize;
+    }
+
+    private DataOutputStream output() throws IOException {
+        if (out == null) {
+            File dir = file.getParentFile();
+            if (!dir.mkdirs() && !dir.isDirectory()) {
+                throw new IOException("Unable to create directory " + dir);
+            }
+            boolean isNew = !file.exists() || file.length() == 0;
+            fileStream = new FileOutputStream(file, true);
+            out = new DataOutputStream(new BufferedOutputStream(fileStream));
+            if (isNew) {
+                out.writeInt(MAGIC);
+                records = 0;
+            }
+        }
+        return out;
+    }
+
+    private void writePut(DataOutputStream stream, byte type, Path path, Sandbox.FileOp op) throws IOException {
+        stream.writeByte(type);
+        stream.writeChar(op.getId());
+        stream.writeUTF(path.toString());
+        if (op instanceof Sandbox.MoveOp) {
+            stream.writeUTF(((Sandbox.MoveOp) op).fromPath.toString());
+        }
+        records++;
+    }
+}
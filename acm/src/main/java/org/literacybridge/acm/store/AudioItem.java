@@ -136,7 +136,7 @@ public class AudioItem extends Committable {
       t.getIndex().deleteAudioItem(id, t);
       return false;
     } else {
-      return t.getIndex().updateAudioItem(this, t.getWriter());
+      return t.getIndex().updateAudioItem(this, t);
     }
   }
 
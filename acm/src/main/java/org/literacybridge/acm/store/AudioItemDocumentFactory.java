@@ -19,6 +19,7 @@ import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
@@ -41,6 +42,20 @@ public class AudioItemDocumentFactory {
       .add(MetadataSpecification.LB_TIMING)
       .add(MetadataSpecification.LB_BENEFICIARY).build();
 
+  private final boolean compactMetadata;
+
+  public AudioItemDocumentFactory() {
+    this(false);
+  }
+
+  /**
+   * @param compactMetadata If true, the stored metadata is written in the compact version 2
+   *                        encoding, which ACMs that predate it can't read. If false, version 1.
+   */
+  public AudioItemDocumentFactory(boolean compactMetadata) {
+    this.compactMetadata = compactMetadata;
+  }
+
   public Document createLuceneDocument(AudioItem audioItem) throws IOException {
     Document doc = new Document();
     Metadata metadata = audioItem.getMetadata();
@@ -54,6 +69,9 @@ public class AudioItemDocumentFactory {
 
     doc.add(new StringField(AudioItemIndex.UID_FIELD, audioItem.getId(),
         Store.YES));
+    // So that searches can get the id of a hit without reading its stored fields.
+    doc.add(new SortedDocValuesField(AudioItemIndex.UID_DOC_VALUES_FIELD,
+        new BytesRef(audioItem.getId())));
     for (Category category : audioItem.getCategoryList()) {
       doc.add(new StringField(AudioItemIndex.CATEGORIES_FIELD,
           category.getId(), Store.YES));
@@ -86,13 +104,19 @@ public class AudioItemDocumentFactory {
     }
 
     LBMetadataSerializer serializer = new LBMetadataSerializer();
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    DataOutputStream out = new DataOutputStream(baos);
-    serializer.serialize(Lists.newArrayList(audioItem.getCategoryList()),
-        metadata, out);
-    out.flush();
-    doc.add(
-        new StoredField(AudioItemIndex.RAW_METADATA_FIELD, baos.toByteArray()));
+    if (compactMetadata) {
+      byte[] rawMetadata = serializer.encode(
+          Lists.newArrayList(audioItem.getCategoryList()), metadata);
+      doc.add(new StoredField(AudioItemIndex.RAW_METADATA_FIELD, rawMetadata));
+    } else {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(baos);
+      serializer.serialize(Lists.newArrayList(audioItem.getCategoryList()),
+          metadata, out);
+      out.flush();
+      doc.add(new StoredField(AudioItemIndex.RAW_METADATA_FIELD,
+          baos.toByteArray()));
+    }
 
     return doc;
   }
@@ -19,7 +19,9 @@ import org.apache.lucene.facet.FacetsConfig;
 import org.apache.lucene.facet.LabelAndValue;
 import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
 import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
@@ -28,6 +30,7 @@ import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
@@ -44,22 +47,27 @@ import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class AudioItemIndex {
@@ -68,6 +76,8 @@ public class AudioItemIndex {
 
   public static final String TEXT_FIELD = "text";
   public static final String UID_FIELD = "uid";
+  // The uid again, as doc values. Indexes from before this was added are upgraded when loaded.
+  public static final String UID_DOC_VALUES_FIELD = "uid_dv";
   public static final String CATEGORIES_FIELD = "categories";
   public static final String CATEGORIES_FACET_FIELD = "categories_facet";
   public static final String PLAYLISTS_FIELD = "playlists";
@@ -80,13 +90,75 @@ public class AudioItemIndex {
   public static final String PLAYLIST_NAMES_COMMIT_DATA = "playlist_names";
   public static final String MAX_PLAYLIST_UID_COMMIT_DATA = "max_playlist_uuid";
 
-  private AudioItemDocumentFactory factory = new AudioItemDocumentFactory();
+  // When only the id of a document is needed, don't decode the rest of its stored fields.
+  private static final Set<String> UID_ONLY = Collections.singleton(UID_FIELD);
+
+  // Even in the middle of a batch, commit to disk at least this often.
+  static final int BATCH_COMMIT_INTERVAL = 1000;
+
+  private static final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "index-refresh");
+    t.setDaemon(true);
+    return t;
+  });
+
+  /**
+   * A change to the index, recorded by a transaction, and applied to the writer only if the
+   * whole transaction succeeds.
+   */
+  interface IndexOperation {
+    void apply(IndexWriter writer) throws IOException;
+  }
+
+  /**
+   * A transaction's changes, kept until they are committed to disk.
+   */
+  private static class AppliedTransaction {
+    final List<IndexOperation> operations;
+    final Map<String, String> commitData;
+
+    AppliedTransaction(List<IndexOperation> operations, Map<String, String> commitData) {
+      // The transaction clears its own list if it is rolled back.
+      this.operations = new ArrayList<>(operations);
+      this.commitData = commitData;
+    }
+
+    void apply(IndexWriter writer) throws IOException {
+      for (IndexOperation operation : operations) {
+        operation.apply(writer);
+      }
+      if (commitData != null) {
+        writer.setCommitData(commitData);
+      }
+    }
+  }
+
+  private volatile AudioItemDocumentFactory factory = new AudioItemDocumentFactory();
   private final Directory dir;
-  private SearcherManager searcherManager;
+  // Searches the latest commit until the writer is opened, then near-real-time from the writer.
+  private volatile SearcherManager searcherManager;
+
+  // Opened on the first write, and kept open until close().
+  private IndexWriter writer;
+  private int batchDepth = 0;
+  // The transactions applied since the last commit. If a later transaction fails part way
+  // through, the writer is rolled back to the last commit and these are applied again, so that
+  // only the failed transaction's changes are lost.
+  private final List<AppliedTransaction> uncommitted = new ArrayList<>();
+  // Set if the batch's earlier transactions couldn't be applied again after a failure. Every
+  // later transaction in the batch fails, as does the end of the batch.
+  private IOException batchFailure;
+  // Incremented by every transaction; readers refresh when they're behind.
+  private final AtomicLong changeGeneration = new AtomicLong();
+  private final AtomicLong refreshedGeneration = new AtomicLong();
 
   private final FacetsConfig facetsConfig;
+  // Building the facet state builds the global ordinals, so keep it for as long as the reader.
+  private volatile FacetState facetState;
   private final QueryAnalyzer queryAnalyzer;
   private final Taxonomy taxonomy;
+  // Shared by every load, so that its interned categories and values are too.
+  private final LBMetadataSerializer serializer = new LBMetadataSerializer();
 
   private int currentMaxPlaylistUuid;
 
@@ -101,30 +173,199 @@ public class AudioItemIndex {
 
     queryAnalyzer = new QueryAnalyzer();
     searcherManager = new SearcherManager(dir, new SearcherFactory());
-    readPlaylistNames();
+    readPlaylistNames(null);
   }
 
   private final String generateNewPlaylistUuid() {
     return Integer.toString(currentMaxPlaylistUuid++);
   }
 
-  private final IndexWriter newWriter(OpenMode openMode) throws IOException {
-    IndexWriterConfig config = new IndexWriterConfig(
-        new AudioItemDocumentFactory.PrefixAnalyzer());
-    config.setOpenMode(openMode);
-    return new IndexWriter(dir, config) {
-      @Override
-      public void close() throws IOException {
-        super.close();
-        if (searcherManager != null) {
-          searcherManager.maybeRefreshBlocking();
+  private synchronized IndexWriter getWriter() throws IOException {
+    if (writer == null) {
+      IndexWriterConfig config = new IndexWriterConfig(
+          new AudioItemDocumentFactory.PrefixAnalyzer());
+      config.setOpenMode(OpenMode.APPEND);
+      writer = new IndexWriter(dir, config);
+      replaceSearcherManager(new SearcherManager(writer, true, new SearcherFactory()));
+    }
+    return writer;
+  }
+
+  private void replaceSearcherManager(SearcherManager newSearcherManager)
+      throws IOException {
+    SearcherManager oldSearcherManager = searcherManager;
+    searcherManager = newSearcherManager;
+    refreshedGeneration.set(changeGeneration.get());
+    if (oldSearcherManager != null) {
+      // Searchers already acquired from the old manager stay valid until released.
+      oldSearcherManager.close();
+    }
+  }
+
+  public Transaction newTransaction(MetadataStore store) throws IOException {
+    return new Transaction(store, this);
+  }
+
+  /**
+   * Applies the transaction's changes to the writer. Outside of a batch, the changes are
+   * committed to disk, and the searcher refreshed, before returning. Inside a batch, the commit
+   * is deferred to the end of the batch, and the searcher is refreshed in the background.
+   * Either way, subsequent reads see the changes.
+   */
+  synchronized void commitTransaction(Transaction t) throws IOException {
+    if (batchFailure != null) {
+      throw new IOException("An earlier failure in this batch lost its changes.", batchFailure);
+    }
+    IndexWriter writer = getWriter();
+    AppliedTransaction applied = new AppliedTransaction(t.getOperations(), t.getCommitData());
+    try {
+      applied.apply(writer);
+      uncommitted.add(applied);
+      if (batchDepth == 0 || uncommitted.size() >= BATCH_COMMIT_INTERVAL) {
+        writer.commit();
+        uncommitted.clear();
+      }
+    } catch (IOException | RuntimeException e) {
+      uncommitted.remove(applied);
+      IOException lost = recoverWriter();
+      if (lost != null && batchDepth > 0) {
+        batchFailure = lost;
+      }
+      throw e;
+    }
+    changeGeneration.incrementAndGet();
+    if (batchDepth == 0) {
+      ensureFresh();
+    } else {
+      refresher.execute(() -> {
+        try {
+          ensureFresh();
+        } catch (IOException | AlreadyClosedException e) {
+          LOG.log(Level.FINE, "Background index refresh failed.", e);
+        }
+      });
+    }
+  }
+
+  /**
+   * After a failure part way through applying a transaction, rolls the writer back to the last
+   * commit, which throws away the failed transaction's partial changes. Then applies and commits
+   * the transactions that had succeeded since the last commit.
+   *
+   * @return null if the earlier transactions were kept, otherwise the reason they were lost.
+   */
+  private IOException recoverWriter() throws IOException {
+    try {
+      writer.rollback();
+    } catch (IOException | RuntimeException e) {
+      LOG.log(Level.WARNING, "Index writer rollback failed.", e);
+    }
+    writer = null;
+    IOException lost = null;
+    if (!uncommitted.isEmpty()) {
+      try {
+        IndexWriter writer = getWriter();
+        for (AppliedTransaction applied : uncommitted) {
+          applied.apply(writer);
+        }
+        writer.commit();
+        LOG.info(String.format("Re-applied %d uncommitted transactions after a failure.", uncommitted.size()));
+      } catch (IOException | RuntimeException e) {
+        LOG.log(Level.SEVERE, String.format("Unable to re-apply %d uncommitted transactions; they are lost.",
+            uncommitted.size()), e);
+        lost = e instanceof IOException ? (IOException) e : new IOException(e);
+        if (writer != null) {
+          try {
+            writer.rollback();
+          } catch (IOException | RuntimeException e2) {
+            LOG.log(Level.WARNING, "Index writer rollback failed.", e2);
+          }
+          writer = null;
         }
       }
-    };
+      uncommitted.clear();
+    }
+    if (writer == null) {
+      replaceSearcherManager(new SearcherManager(dir, new SearcherFactory()));
+    }
+    changeGeneration.incrementAndGet();
+    return lost;
   }
 
-  public Transaction newTransaction(MetadataStore store) throws IOException {
-    return new Transaction(store, this, newWriter(OpenMode.APPEND));
+  /**
+   * Starts a batch. Until the matching endBatch, transactions (from any thread) are visible to
+   * searches as soon as they complete, but are only committed to disk periodically.
+   */
+  synchronized void beginBatch() {
+    batchDepth++;
+  }
+
+  synchronized void endBatch() throws IOException {
+    if (batchDepth == 0) {
+      throw new IllegalStateException("endBatch without beginBatch");
+    }
+    if (--batchDepth > 0) {
+      return;
+    }
+    IOException failure = batchFailure;
+    batchFailure = null;
+    if (writer != null && !uncommitted.isEmpty()) {
+      try {
+        writer.commit();
+        uncommitted.clear();
+      } catch (IOException | RuntimeException e) {
+        IOException lost = recoverWriter();
+        if (lost != null) {
+          throw lost;
+        }
+        throw e;
+      }
+    }
+    if (failure != null) {
+      throw new IOException("Changes made earlier in the batch were lost.", failure);
+    }
+  }
+
+  /**
+   * Commits anything outstanding and closes the writer. The index is still usable; the writer
+   * is re-opened by the next transaction.
+   */
+  synchronized void close() throws IOException {
+    if (writer != null) {
+      if (!uncommitted.isEmpty()) {
+        writer.commit();
+        uncommitted.clear();
+      }
+      writer.close();
+      writer = null;
+      replaceSearcherManager(new SearcherManager(dir, new SearcherFactory()));
+    }
+  }
+
+  /**
+   * Makes sure the searcher reflects every completed transaction.
+   */
+  private void ensureFresh() throws IOException {
+    long generation = changeGeneration.get();
+    if (refreshedGeneration.get() < generation) {
+      searcherManager.maybeRefreshBlocking();
+      refreshedGeneration.accumulateAndGet(generation, Math::max);
+    }
+  }
+
+  private IndexSearcher acquireSearcher() throws IOException {
+    ensureFresh();
+    while (true) {
+      SearcherManager manager = searcherManager;
+      try {
+        return manager.acquire();
+      } catch (AlreadyClosedException e) {
+        // The writer was opened or closed while we were acquiring; try the new manager.
+        if (manager == searcherManager) {
+          throw e;
+        }
+      }
+    }
   }
 
   public static boolean indexExists(File path) throws IOException {
@@ -158,36 +399,112 @@ public class AudioItemIndex {
     return new AudioItemIndex(dir, taxonomy);
   }
 
-  public static AudioItemIndex load(File path, Taxonomy taxonomy)
+  /**
+   * Opens an existing index.
+   *
+   * @param writable true if the index may be re-indexed with the current document schema. False
+   *                 for a read-only or sandboxed database, whose changes would be thrown away;
+   *                 documents of an older schema are then read through the stored fields.
+   */
+  public static AudioItemIndex load(File path, Taxonomy taxonomy, boolean writable)
       throws IOException {
     if (!indexExists(path)) {
       throw new IOException("Index does not exist in " + path);
     }
 
-    return new AudioItemIndex(FSDirectory.open(path.toPath()), taxonomy);
+    AudioItemIndex index = new AudioItemIndex(FSDirectory.open(path.toPath()), taxonomy);
+    if (writable && index.needsReindex()) {
+      long startTime = System.currentTimeMillis();
+      int count = index.reindex();
+      LOG.info(String.format("Re-indexed %d audio items in %d ms.", count,
+          System.currentTimeMillis() - startTime));
+    }
+    return index;
+  }
+
+  /**
+   * @param compactMetadata If true, audio items written from now on store their metadata in the
+   *                        compact version 2 encoding, which ACMs that predate it can't read.
+   */
+  public void setCompactMetadata(boolean compactMetadata) {
+    factory = new AudioItemDocumentFactory(compactMetadata);
   }
 
-  public boolean updateAudioItem(AudioItem audioItem, IndexWriter writer)
+  /**
+   * @return true if any audio item was indexed without the uid doc values, as by older versions.
+   */
+  boolean needsReindex() throws IOException {
+    final IndexSearcher searcher = acquireSearcher();
+    try {
+      for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+        LeafReader leafReader = leaf.reader();
+        Bits liveDocs = leafReader.getLiveDocs();
+        Bits docsWithUid = DocValues.getDocsWithField(leafReader, UID_DOC_VALUES_FIELD);
+        for (int docId = 0; docId < leafReader.maxDoc(); docId++) {
+          if ((liveDocs == null || liveDocs.get(docId)) && !docsWithUid.get(docId)) {
+            return true;
+          }
+        }
+      }
+      return false;
+    } finally {
+      searcherManager.release(searcher);
+    }
+  }
+
+  /**
+   * Re-creates the document of every audio item, with the current document schema, and commits.
+   * The audio items are rebuilt from their stored metadata and the playlist postings, which is
+   * everything the documents are made from.
+   *
+   * @return the number of audio items re-indexed.
+   */
+  synchronized int reindex() throws IOException {
+    Map<String, AudioItem> audioItems = Maps.newLinkedHashMap();
+    for (AudioItem audioItem : getAudioItems()) {
+      audioItems.put(audioItem.getId(), audioItem);
+    }
+    for (Playlist playlist : getPlaylists()) {
+      for (String uid : playlist.getAudioItemList()) {
+        AudioItem audioItem = audioItems.get(uid);
+        if (audioItem != null) {
+          audioItem.addPlaylist(playlist);
+        }
+      }
+    }
+
+    IndexWriter writer = getWriter();
+    try {
+      for (AudioItem audioItem : audioItems.values()) {
+        writer.updateDocument(new Term(UID_FIELD, audioItem.getId()),
+            facetsConfig.build(factory.createLuceneDocument(audioItem)));
+      }
+      writer.commit();
+      uncommitted.clear();
+    } catch (IOException | RuntimeException e) {
+      recoverWriter();
+      throw e;
+    }
+    changeGeneration.incrementAndGet();
+    ensureFresh();
+    return audioItems.size();
+  }
+
+  public boolean updateAudioItem(AudioItem audioItem, Transaction t)
       throws IOException {
     Document oldDoc = getDocument(audioItem.getId());
-
+    // The document's token streams can only be read once, so it is built each time the operation
+    // is applied: once normally, again if the operation has to be re-applied after a failure.
     if (oldDoc == null) {
-      addAudioItem(audioItem, writer);
+      t.addOperation(writer -> writer.addDocument(facetsConfig.build(factory.createLuceneDocument(audioItem))));
       return true;
     } else {
-      Document doc = factory.createLuceneDocument(audioItem);
-      writer.updateDocument(new Term(UID_FIELD, audioItem.getId()),
-          facetsConfig.build(doc));
+      Term term = new Term(UID_FIELD, audioItem.getId());
+      t.addOperation(writer -> writer.updateDocument(term, facetsConfig.build(factory.createLuceneDocument(audioItem))));
       return false;
     }
   }
 
-  private void addAudioItem(AudioItem audioItem, IndexWriter writer)
-      throws IOException {
-    Document doc = factory.createLuceneDocument(audioItem);
-    writer.addDocument(facetsConfig.build(doc));
-  }
-
   private void addTextQuery(BooleanQuery.Builder bq, String filterString)
       throws IOException {
     if (filterString == null || filterString.isEmpty()) {
@@ -207,10 +524,21 @@ public class AudioItemIndex {
     }
   }
 
-  private Map<String, Playlist.Builder> readPlaylistNames() throws IOException {
+  /**
+   * The playlist names are kept in the commit data. Reads the latest: the transaction's own
+   * changes, if any, else the writer's pending commit data, else the last commit on disk.
+   */
+  private Map<String, Playlist.Builder> readPlaylistNames(Transaction t) throws IOException {
     Map<String, Playlist.Builder> playlists = Maps.newHashMap();
-    SegmentInfos infos = SegmentInfos.readLatestCommit(dir);
-    Map<String, String> commitData = infos.getUserData();
+    Map<String, String> commitData;
+    if (t != null && t.getCommitData() != null) {
+      commitData = t.getCommitData();
+    } else {
+      synchronized (this) {
+        commitData = writer != null ? writer.getCommitData()
+            : SegmentInfos.readLatestCommit(dir).getUserData();
+      }
+    }
     if (!commitData.isEmpty()) {
       String playlistNames = commitData.get(PLAYLIST_NAMES_COMMIT_DATA);
       this.currentMaxPlaylistUuid = Math.max(currentMaxPlaylistUuid,
@@ -227,7 +555,7 @@ public class AudioItemIndex {
   }
 
   private void storePlaylistNames(Iterable<Playlist> playlists,
-      IndexWriter writer) throws IOException {
+      Transaction t) throws IOException {
     StringBuilder builder = new StringBuilder();
     for (Playlist playlist : playlists) {
       builder.append(playlist.getId());
@@ -243,11 +571,11 @@ public class AudioItemIndex {
     commitData.put(PLAYLIST_NAMES_COMMIT_DATA, builder.toString());
     commitData.put(MAX_PLAYLIST_UID_COMMIT_DATA,
         Integer.toString(currentMaxPlaylistUuid));
-    writer.setCommitData(commitData);
+    t.setCommitData(commitData);
   }
 
   public void deletePlaylist(String uuid, Transaction t) throws IOException {
-    Map<String, Playlist.Builder> playlists = readPlaylistNames();
+    Map<String, Playlist.Builder> playlists = readPlaylistNames(t);
     playlists.remove(uuid);
     storePlaylistNames(Iterables.transform(playlists.values(),
         new Function<Playlist.Builder, Playlist>() {
@@ -255,7 +583,7 @@ public class AudioItemIndex {
           public Playlist apply(Playlist.Builder builder) {
             return builder.build();
           }
-        }), t.getWriter());
+        }), t);
   }
 
   public Playlist newPlaylist(String name) {
@@ -266,20 +594,20 @@ public class AudioItemIndex {
 
   public boolean updatePlaylistName(Playlist playlist, Transaction t)
       throws IOException {
-    Map<String, Playlist.Builder> playlists = readPlaylistNames();
+    Map<String, Playlist.Builder> playlists = readPlaylistNames(t);
     Playlist.Builder removed = playlists.remove(playlist.getId());
     List<Playlist> updatedPlaylists = Lists.newLinkedList();
     for (Playlist.Builder p : playlists.values()) {
       updatedPlaylists.add(p.build());
     }
     updatedPlaylists.add(playlist);
-    storePlaylistNames(updatedPlaylists, t.getWriter());
+    storePlaylistNames(updatedPlaylists, t);
     return removed == null;
   }
 
   public Iterable<Playlist> getPlaylists() throws IOException {
-    final Map<String, Playlist.Builder> playlists = readPlaylistNames();
-    final IndexSearcher searcher = searcherManager.acquire();
+    final Map<String, Playlist.Builder> playlists = readPlaylistNames(null);
+    final IndexSearcher searcher = acquireSearcher();
     try {
       IndexReader reader = searcher.getIndexReader();
       TermsEnum termsEnum = null;
@@ -319,7 +647,7 @@ public class AudioItemIndex {
 
   private Playlist getPlaylist(final String uuid, final Playlist playlist)
       throws IOException {
-    final IndexSearcher searcher = searcherManager.acquire();
+    final IndexSearcher searcher = acquireSearcher();
     try {
       final Playlist.Builder builder = Playlist.builder();
       builder.withId(uuid);
@@ -347,6 +675,7 @@ public class AudioItemIndex {
     PostingsEnum postingsEnum = leafReader.postings(
         new Term(PLAYLISTS_FIELD, playlistUuid), PostingsEnum.PAYLOADS);
     if (postingsEnum != null) {
+      UidReader uidReader = new UidReader(leafReader);
       while (postingsEnum.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
         // important: Lucene applies deletes of documents to posting lists
         // lazily when it
@@ -358,9 +687,8 @@ public class AudioItemIndex {
           BytesRef payload = postingsEnum.getPayload();
           int playlistPos = PayloadHelper.decodeInt(payload.bytes,
               payload.offset);
-          AudioItem audioItem = loadAudioItem(
-              leafReader.document(postingsEnum.docID()));
-          playlistBuilder.addAudioItem(audioItem.getId(), playlistPos);
+          String uid = uidReader.get(postingsEnum.docID());
+          playlistBuilder.addAudioItem(uid, playlistPos);
         }
       }
     }
@@ -373,7 +701,7 @@ public class AudioItemIndex {
 
   public Collection<AudioItem> getAudioItems() throws IOException {
     final List<AudioItem> results = Lists.newArrayList();
-    final IndexSearcher searcher = searcherManager.acquire();
+    final IndexSearcher searcher = acquireSearcher();
     try {
       searcher.search(new MatchAllDocsQuery(), new Collector() {
         @Override
@@ -403,15 +731,52 @@ public class AudioItemIndex {
     }
   }
 
+  /**
+   * Gets the ids of all of the audio items in the index, without reading their stored metadata.
+   * @return the ids.
+   */
+  public List<String> getAudioItemIds() throws IOException {
+    final List<String> results = Lists.newArrayList();
+    final IndexSearcher searcher = acquireSearcher();
+    try {
+      for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+        LeafReader leafReader = leaf.reader();
+        Terms terms = leafReader.terms(UID_FIELD);
+        if (terms == null) {
+          continue;
+        }
+        // As in loadPlaylistFromPostingList, deleted documents may still be in the postings.
+        Bits liveDocs = leafReader.getLiveDocs();
+        TermsEnum termsEnum = terms.iterator();
+        PostingsEnum postingsEnum = null;
+        BytesRef term;
+        while ((term = termsEnum.next()) != null) {
+          postingsEnum = termsEnum.postings(postingsEnum, PostingsEnum.NONE);
+          int docId;
+          while ((docId = postingsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+            if (liveDocs == null || liveDocs.get(docId)) {
+              results.add(term.utf8ToString());
+              break;
+            }
+          }
+        }
+      }
+      return results;
+    } finally {
+      searcherManager.release(searcher);
+    }
+  }
+
   public void deleteAudioItem(final String uuid, Transaction t)
       throws IOException {
-    t.getWriter().deleteDocuments(new Term(UID_FIELD, uuid));
+    Term term = new Term(UID_FIELD, uuid);
+    t.addOperation(writer -> writer.deleteDocuments(term));
   }
 
   private Document getDocument(final String uuid) throws IOException {
     final AtomicReference<Document> result = new AtomicReference<Document>();
 
-    final IndexSearcher searcher = searcherManager.acquire();
+    final IndexSearcher searcher = acquireSearcher();
     try {
       searcher.search(new TermQuery(new Term(UID_FIELD, uuid)),
           new Collector() {
@@ -460,12 +825,11 @@ public class AudioItemIndex {
 
   private void loadAudioItem(Document doc, AudioItem audioItem)
       throws IOException {
-    LBMetadataSerializer deserializer = new LBMetadataSerializer();
-    Set<Category> categories = new HashSet<Category>();
+    List<Category> categories = Lists.newArrayList();
+    // The stored field's bytes belong to this document, so the metadata can keep them.
     BytesRef ref = doc.getBinaryValue(RAW_METADATA_FIELD);
-    deserializer.deserialize(audioItem.getMetadata(), taxonomy, categories,
-        new DataInputStream(
-            new ByteArrayInputStream(ref.bytes, ref.offset, ref.length)));
+    serializer.decode(ref.bytes, ref.offset, ref.length, audioItem.getMetadata(), taxonomy,
+        categories);
 
     for (Category category : categories) {
       // When loading categories, we only want to add the leaves, because:
@@ -525,13 +889,14 @@ public class AudioItemIndex {
   private SearchResult search(Query query) throws IOException {
     final FacetsCollector facetsCollector = new FacetsCollector();
     final Set<String> results = Sets.newHashSet();
-    final IndexSearcher searcher = searcherManager.acquire();
+    final IndexSearcher searcher = acquireSearcher();
     try {
       Collector collector = MultiCollector.wrap(facetsCollector,
           new Collector() {
             @Override
             public LeafCollector getLeafCollector(
                 final LeafReaderContext context) throws IOException {
+              final UidReader uidReader = new UidReader(context.reader());
               return new LeafCollector() {
                 @Override
                 public void setScorer(Scorer scorer) throws IOException {
@@ -539,8 +904,7 @@ public class AudioItemIndex {
 
                 @Override
                 public void collect(int docId) throws IOException {
-                  Document doc = context.reader().document(docId);
-                  results.add(doc.get(UID_FIELD));
+                  results.add(uidReader.get(docId));
                 }
               };
             }
@@ -559,8 +923,7 @@ public class AudioItemIndex {
 
       try {
         SortedSetDocValuesFacetCounts facetCounts = new SortedSetDocValuesFacetCounts(
-            new DefaultSortedSetDocValuesReaderState(searcher.getIndexReader()),
-            facetsCollector);
+            getFacetState(searcher.getIndexReader()), facetsCollector);
         List<FacetResult> facetResults = facetCounts.getAllDims(1000);
         for (FacetResult r : facetResults) {
           if (r.dim.equals(CATEGORIES_FACET_FIELD)) {
@@ -596,6 +959,52 @@ public class AudioItemIndex {
     }
   }
 
+  /**
+   * @return the facet state for the reader, built only if the reader has changed since the last search.
+   */
+  private SortedSetDocValuesReaderState getFacetState(IndexReader reader) throws IOException {
+    FacetState state = facetState;
+    if (state == null || state.reader != reader) {
+      state = new FacetState(reader, new DefaultSortedSetDocValuesReaderState(reader));
+      facetState = state;
+    }
+    return state.state;
+  }
+
+  private static class FacetState {
+    final IndexReader reader;
+    final SortedSetDocValuesReaderState state;
+
+    FacetState(IndexReader reader, SortedSetDocValuesReaderState state) {
+      this.reader = reader;
+      this.state = state;
+    }
+  }
+
+  /**
+   * Gets the ids of documents in one segment, from the uid doc values. Documents without them, not
+   * yet re-indexed, fall back to the stored field.
+   */
+  private static class UidReader {
+    private final LeafReader reader;
+    private final SortedDocValues uids;
+
+    UidReader(LeafReader reader) throws IOException {
+      this.reader = reader;
+      this.uids = reader.getSortedDocValues(UID_DOC_VALUES_FIELD);
+    }
+
+    String get(int docId) throws IOException {
+      if (uids != null) {
+        int ord = uids.getOrd(docId);
+        if (ord >= 0) {
+          return uids.lookupOrd(ord).utf8ToString();
+        }
+      }
+      return reader.document(docId, UID_ONLY).get(UID_FIELD);
+    }
+  }
+
   public static class QueryAnalyzer extends Analyzer {
     @Override
     protected TokenStreamComponents createComponents(String field) {
@@ -63,7 +63,7 @@ public class LBMetadataIDs {
 
   public static final ImmutableBiMap<String, MetadataField<?>> NameToFieldMap = FieldToNameMap.inverse();
 
-  public static final ImmutableMap<MetadataField<?>, Class> FieldToValueClassMap = new ImmutableMap.Builder<MetadataField<?>, Class>()
+  public static final ImmutableMap<MetadataField<?>, Class<?>> FieldToValueClassMap = new ImmutableMap.Builder<MetadataField<?>, Class<?>>()
           .put(DC_TITLE, String.class)
           .put(DC_PUBLISHER, String.class)
           .put(DC_IDENTIFIER, String.class)
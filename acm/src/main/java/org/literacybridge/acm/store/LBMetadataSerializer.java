@@ -1,15 +1,26 @@
 package org.literacybridge.acm.store;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.google.common.collect.ImmutableSet;
+import org.apache.lucene.util.BytesRef;
 import org.literacybridge.acm.utils.IOUtils;
 
+import static org.literacybridge.acm.store.MetadataSpecification.*;
+
 /**
  * Literacy bridge uses a backwards- and forwards-compatible metadata
  * serialization format. Besides compatibility the primary goal of this format
@@ -34,12 +45,44 @@ import org.literacybridge.acm.utils.IOUtils;
  *
  * All known fields are decoded individually.
  *
+ * Version 2 is a more compact encoding, used for the metadata stored in the
+ * index when the program's COMPACT_METADATA property is set. Version 1 remains
+ * the default, and the format of the metadata appended to .a18 files.
+ * A version 2 encoding is:
+ * byte    2 (a version 1 encoding starts with the little-endian int 1)
+ * varint  number of fields
+ * then for each field:
+ * varint  field id (CATEGORY_FIELD_ID for the categories)
+ * varint  length of the field's value, in bytes
+ *         the value: UTF-8 for strings and language codes, a zig-zag varint for
+ *         integers, and for the categories a varint count followed by a varint
+ *         length and the UTF-8 bytes of each category id.
+ *
+ * Version 2 is decoded straight from the stored bytes. The categories are decoded
+ * right away, but the other fields only when they are first asked for, so that
+ * showing an audio item's title doesn't cost decoding its notes. Category ids and
+ * the values of the fields that have few distinct values, like the language, are
+ * interned, so that the thousands of items that share a value share its object.
  */
 public class LBMetadataSerializer {
   public static final int METADATA_VERSION_1 = 1;
+  public static final int METADATA_VERSION_2 = 2;
 
+  // The version of the metadata appended to .a18 files, which other programs read.
   public static final int METADATA_VERSION_CURRENT = METADATA_VERSION_1;
 
+  // Fields whose values are interned when decoded; each has few distinct values.
+  private static final Set<MetadataField<?>> INTERNED_FIELDS = ImmutableSet.of(DC_PUBLISHER,
+      DC_SOURCE, DC_LANGUAGE, DTB_REVISION, LB_MESSAGE_FORMAT, LB_TARGET_AUDIENCE,
+      LB_PRIMARY_SPEAKER, LB_BENEFICIARY, LB_STATUS, LB_SDG_GOALS, LB_SDG_TARGETS);
+  // Beyond this many values in one field, stop interning new ones.
+  private static final int MAX_INTERNED_VALUES = 1000;
+
+  // Interned categories and field values, by their encoded bytes.
+  private final Map<BytesRef, Category> internedCategories = new ConcurrentHashMap<>();
+  private final Map<MetadataField<?>, Map<BytesRef, Object>> internedValues = new ConcurrentHashMap<>();
+  private Taxonomy internedTaxonomy;
+
   public void deserialize(Metadata metadata, Taxonomy taxonomy,
       Collection<Category> categories, DataInput in) throws IOException {
     // first read the metadata version and number of field infos in the header
@@ -146,4 +189,289 @@ public class LBMetadataSerializer {
       }
     }
   }
+
+  /**
+   * Encodes the categories and metadata in version 2.
+   * @param categories of the audio item.
+   * @param metadata of the audio item.
+   * @return the encoding.
+   * @throws IOException if the metadata can't be encoded.
+   */
+  public byte[] encode(Collection<Category> categories, Metadata metadata) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(METADATA_VERSION_2);
+    ByteArrayOutputStream value = new ByteArrayOutputStream();
+    int numberOfFields = 1;
+    Iterator<MetadataField<?>> it = metadata.getFieldsIterator();
+    while (it.hasNext()) {
+      MetadataField<?> field = it.next();
+      if (LBMetadataIDs.FieldToIDMap.containsKey(field) && metadata.getMetadataValue(field) != null) {
+        numberOfFields++;
+      }
+    }
+    writeVInt(out, numberOfFields);
+
+    // first encode categories
+    int numCategories = categories == null ? 0 : categories.size();
+    writeVInt(value, numCategories);
+    if (categories != null) {
+      for (Category category : categories) {
+        writeBytes(value, category.getId().getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    writeVInt(out, LBMetadataIDs.CATEGORY_FIELD_ID);
+    writeBytes(out, value.toByteArray());
+
+    it = metadata.getFieldsIterator();
+    while (it.hasNext()) {
+      MetadataField<?> field = it.next();
+      MetadataValue<?> fieldValue = metadata.getMetadataValue(field);
+      if (LBMetadataIDs.FieldToIDMap.containsKey(field) && fieldValue != null) {
+        writeVInt(out, LBMetadataIDs.FieldToIDMap.get(field));
+        writeBytes(out, encodeValue(fieldValue.getValue()));
+      }
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Decodes metadata in either version. Version 2 metadata is decoded in place, and if the
+   * metadata object is empty, its fields are decoded only as they are needed; the caller must not
+   * change the bytes afterwards. Any damage is found here, not when the fields are decoded.
+   * @param bytes holding the encoding.
+   * @param offset of the encoding in bytes.
+   * @param length of the encoding.
+   * @param metadata receives the fields.
+   * @param taxonomy in which to look up the categories.
+   * @param categories receives the categories.
+   * @throws IOException if the encoding is damaged.
+   */
+  public void decode(byte[] bytes, int offset, int length, Metadata metadata, Taxonomy taxonomy,
+      Collection<Category> categories) throws IOException {
+    if (length == 0 || bytes[offset] != METADATA_VERSION_2) {
+      deserialize(metadata, taxonomy, categories,
+          new DataInputStream(new ByteArrayInputStream(bytes, offset, length)));
+      return;
+    }
+
+    Cursor cursor = new Cursor(bytes, offset + 1, offset + length);
+    int numberOfFields = cursor.readVInt();
+    int[] fieldIds = new int[numberOfFields];
+    int[] offsets = new int[numberOfFields];
+    int[] lengths = new int[numberOfFields];
+    int numberKept = 0;
+    for (int i = 0; i < numberOfFields; i++) {
+      int fieldId = cursor.readVInt();
+      int fieldLength = cursor.readVInt();
+      int fieldOffset = cursor.skip(fieldLength);
+      if (fieldId == LBMetadataIDs.CATEGORY_FIELD_ID) {
+        decodeCategories(taxonomy, categories, new Cursor(bytes, fieldOffset, fieldOffset + fieldLength));
+      } else if (LBMetadataIDs.FieldToIDMap.inverse().containsKey(fieldId)) {
+        // Unknown fields were written by a newer version; skip them.
+        MetadataField<?> field = LBMetadataIDs.FieldToIDMap.inverse().get(fieldId);
+        if (LBMetadataIDs.FieldToValueClassMap.get(field) == Integer.class) {
+          // The only values whose decoding can fail; check them now rather than when they're used.
+          new Cursor(bytes, fieldOffset, fieldOffset + fieldLength).readVInt();
+        }
+        fieldIds[numberKept] = fieldId;
+        offsets[numberKept] = fieldOffset;
+        lengths[numberKept] = fieldLength;
+        numberKept++;
+      }
+    }
+    EncodedFields encoded = new EncodedFields(bytes, Arrays.copyOf(fieldIds, numberKept),
+        Arrays.copyOf(offsets, numberKept), Arrays.copyOf(lengths, numberKept));
+    if (metadata.size() == 0) {
+      metadata.setEncodedFields(encoded);
+    } else {
+      // Decoding into existing metadata replaces only the fields that are present.
+      encoded.decodeAll(metadata);
+    }
+  }
+
+  private void decodeCategories(Taxonomy taxonomy, Collection<Category> categories, Cursor cursor)
+      throws IOException {
+    synchronized (internedCategories) {
+      if (internedTaxonomy != taxonomy) {
+        internedCategories.clear();
+        internedTaxonomy = taxonomy;
+      }
+    }
+    int numValues = cursor.readVInt();
+    for (int i = 0; i < numValues; i++) {
+      int length = cursor.readVInt();
+      int offset = cursor.skip(length);
+      BytesRef key = new BytesRef(cursor.bytes, offset, length);
+      Category category = internedCategories.get(key);
+      if (category == null) {
+        category = taxonomy.getCategory(key.utf8ToString());
+        if (category == null) continue;
+        internedCategories.put(BytesRef.deepCopyOf(key), category);
+      }
+      categories.add(category);
+    }
+  }
+
+  private byte[] encodeValue(Object value) {
+    if (value instanceof Integer) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(5);
+      int i = (Integer) value;
+      writeVInt(out, (i << 1) ^ (i >> 31));
+      return out.toByteArray();
+    }
+    // Strings, and language codes as their string form.
+    return value.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private Object decodeValue(MetadataField<?> field, byte[] bytes, int offset, int length)
+      throws IOException {
+    Map<BytesRef, Object> interned = null;
+    BytesRef key = null;
+    if (INTERNED_FIELDS.contains(field)) {
+      interned = internedValues.computeIfAbsent(field, f -> new ConcurrentHashMap<>());
+      key = new BytesRef(bytes, offset, length);
+      Object value = interned.get(key);
+      if (value != null) return value;
+    }
+
+    Object value;
+    Class<?> valueClass = LBMetadataIDs.FieldToValueClassMap.get(field);
+    if (valueClass == Integer.class) {
+      int zigZag = new Cursor(bytes, offset, offset + length).readVInt();
+      value = (zigZag >>> 1) ^ -(zigZag & 1);
+    } else if (valueClass == RFC3066LanguageCode.class) {
+      value = new RFC3066LanguageCode(new String(bytes, offset, length, StandardCharsets.UTF_8));
+    } else {
+      value = new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+
+    if (interned != null && interned.size() < MAX_INTERNED_VALUES) {
+      interned.put(BytesRef.deepCopyOf(key), value);
+    }
+    return value;
+  }
+
+  private static void writeVInt(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7f) != 0) {
+      out.write((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  private static void writeBytes(ByteArrayOutputStream out, byte[] bytes) {
+    writeVInt(out, bytes.length);
+    out.write(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Reads varints from a range of a byte array.
+   */
+  private static class Cursor {
+    final byte[] bytes;
+    int position;
+    final int end;
+
+    Cursor(byte[] bytes, int position, int end) {
+      this.bytes = bytes;
+      this.position = position;
+      this.end = end;
+    }
+
+    int readVInt() throws IOException {
+      int value = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+        if (position >= end) {
+          throw new IOException("Truncated metadata");
+        }
+        byte b = bytes[position++];
+        value |= (b & 0x7f) << shift;
+        if (b >= 0) return value;
+      }
+      throw new IOException("Malformed metadata varint");
+    }
+
+    /**
+     * Skips over length bytes.
+     * @return the position of the first byte skipped.
+     */
+    int skip(int length) throws IOException {
+      if (length < 0 || length > end - position) {
+        throw new IOException("Truncated metadata");
+      }
+      int start = position;
+      position += length;
+      return start;
+    }
+  }
+
+  /**
+   * The not yet decoded fields of a version 2 encoding, held by a Metadata until they're needed.
+   */
+  final class EncodedFields {
+    private final byte[] bytes;
+    private final int[] fieldIds;
+    private final int[] offsets;
+    private final int[] lengths;
+
+    private EncodedFields(byte[] bytes, int[] fieldIds, int[] offsets, int[] lengths) {
+      this.bytes = bytes;
+      this.fieldIds = fieldIds;
+      this.offsets = offsets;
+      this.lengths = lengths;
+    }
+
+    int size() {
+      return fieldIds.length;
+    }
+
+    boolean contains(MetadataField<?> field) {
+      return indexOf(field) >= 0;
+    }
+
+    /**
+     * @return the field's value, or null if the field isn't in the encoding.
+     */
+    @SuppressWarnings("unchecked")
+    <T> MetadataValue<T> decode(MetadataField<T> field) {
+      int ix = indexOf(field);
+      return ix < 0 ? null : (MetadataValue<T>) decode(ix);
+    }
+
+    /**
+     * Puts every field into the metadata, in the order in which they were encoded.
+     */
+    void decodeAll(Metadata metadata) {
+      for (int ix = 0; ix < fieldIds.length; ix++) {
+        putValue(metadata, LBMetadataIDs.FieldToIDMap.inverse().get(fieldIds[ix]), decode(ix));
+      }
+    }
+
+    MetadataField<?> fieldAt(int ix) {
+      return LBMetadataIDs.FieldToIDMap.inverse().get(fieldIds[ix]);
+    }
+
+    MetadataValue<?> decode(int ix) {
+      try {
+        return new MetadataValue<>(decodeValue(fieldAt(ix), bytes, offsets[ix], lengths[ix]));
+      } catch (IOException e) {
+        // decode() checked the field boundaries and the integers, so this can't happen.
+        throw new IllegalStateException(e);
+      }
+    }
+
+    private int indexOf(MetadataField<?> field) {
+      Integer id = LBMetadataIDs.FieldToIDMap.get(field);
+      if (id == null) return -1;
+      for (int ix = 0; ix < fieldIds.length; ix++) {
+        if (fieldIds[ix] == id) return ix;
+      }
+      return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void putValue(Metadata metadata, MetadataField<T> field, MetadataValue<?> value) {
+      metadata.putMetadataField(field, (MetadataValue<T>) value);
+    }
+  }
 }
@@ -1,14 +1,25 @@
 package org.literacybridge.acm.store;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.AbstractCollection;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -17,35 +28,97 @@ public class LuceneMetadataStore extends MetadataStore {
   private static final Logger LOG = Logger
       .getLogger(LuceneMetadataStore.class.getName());
 
+  /**
+   * In lazy mode, how many of the most recently used audio items are held strongly. Others are
+   * held only by soft references, and are re-read from the index if they've been reclaimed.
+   */
+  public static final int LAZY_CACHE_SIZE = 2000;
+
   private final AudioItemIndex index;
   private final Map<String, Playlist> playlistCache;
   private final Map<String, AudioItem> audioItemCache;
 
+  // Lazy mode only.
+  private final boolean lazy;
+  private final Set<String> audioItemIds;
+  private final Map<String, AudioItemReference> softCache;
+  private final ReferenceQueue<AudioItem> reclaimedItems;
+  private Map<String, List<Playlist>> playlistMembership;
+
   private AtomicReference<Transaction> activeTransaction = new AtomicReference<Transaction>();
 
   public LuceneMetadataStore(Taxonomy taxonomy, File indexDirectory)
       throws IOException {
+    this(taxonomy, indexDirectory, false);
+  }
+
+  /**
+   * Opens (or creates) the metadata store in the given directory.
+   *
+   * @param taxonomy The program's taxonomy.
+   * @param indexDirectory Directory of the Lucene index.
+   * @param lazy If false, every audio item is read and deserialized up front. If true, only the
+   *             audio item ids are read, and items are materialized from the index as they are
+   *             needed. An item is never materialized twice while anybody holds a reference to it.
+   */
+  public LuceneMetadataStore(Taxonomy taxonomy, File indexDirectory, boolean lazy)
+      throws IOException {
+    this(taxonomy, indexDirectory, lazy, true);
+  }
+
+  /**
+   * Opens (or creates) the metadata store in the given directory.
+   *
+   * @param taxonomy The program's taxonomy.
+   * @param indexDirectory Directory of the Lucene index.
+   * @param lazy See {@link #LuceneMetadataStore(Taxonomy, File, boolean)}.
+   * @param writable If true, an index written by an older version is re-indexed when it is opened.
+   *                 If false, as for a read-only or sandboxed database, it is used as it is.
+   */
+  public LuceneMetadataStore(Taxonomy taxonomy, File indexDirectory, boolean lazy, boolean writable)
+      throws IOException {
     super(taxonomy);
     // initialize Lucene index
     if (!AudioItemIndex.indexExists(indexDirectory)) {
       this.index = AudioItemIndex.newIndex(indexDirectory, taxonomy);
     } else {
-      this.index = AudioItemIndex.load(indexDirectory, taxonomy);
+      this.index = AudioItemIndex.load(indexDirectory, taxonomy, writable);
     }
 
+    this.lazy = lazy;
     this.playlistCache = Maps.newLinkedHashMap();
-    this.audioItemCache = Maps.newLinkedHashMap();
+    if (lazy) {
+      this.audioItemCache = new LinkedHashMap<String, AudioItem>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AudioItem> eldest) {
+          return size() > LAZY_CACHE_SIZE;
+        }
+      };
+      this.audioItemIds = Sets.newLinkedHashSet();
+      this.softCache = Maps.newHashMap();
+      this.reclaimedItems = new ReferenceQueue<>();
+    } else {
+      this.audioItemCache = Maps.newLinkedHashMap();
+      this.audioItemIds = null;
+      this.softCache = null;
+      this.reclaimedItems = null;
+    }
 
     // fill caches
     try {
-      Iterable<AudioItem> audioItems = index.getAudioItems();
-      for (AudioItem audioItem : audioItems) {
-        audioItemCache.put(audioItem.getId(), audioItem);
+      if (lazy) {
+        audioItemIds.addAll(index.getAudioItemIds());
+      } else {
+        Iterable<AudioItem> audioItems = index.getAudioItems();
+        for (AudioItem audioItem : audioItems) {
+          audioItemCache.put(audioItem.getId(), audioItem);
+        }
       }
 
       Iterable<Playlist> playlists = index.getPlaylists();
       for (Playlist playlist : playlists) {
         playlistCache.put(playlist.getId(), playlist);
+        if (lazy) continue;
         for (String uid : playlist.getAudioItemList()) {
           AudioItem audioItem = audioItemCache.get(uid);
           if (audioItem != null) {
@@ -71,13 +144,14 @@ public class LuceneMetadataStore extends MetadataStore {
             } else {
               playlistCache.put(playlist.getId(), playlist);
             }
+            playlistsChanged();
           }
           if (item instanceof AudioItem) {
             AudioItem audioItem = (AudioItem) item;
             if (event.getEventType() == DataChangeEventType.ITEM_DELETED) {
-              audioItemCache.remove(audioItem.getId());
+              removeCachedAudioItem(audioItem.getId());
             } else {
-              audioItemCache.put(audioItem.getId(), audioItem);
+              cacheAudioItem(audioItem);
             }
           }
         }
@@ -85,14 +159,146 @@ public class LuceneMetadataStore extends MetadataStore {
     });
   }
 
+  /**
+   * See {@link AudioItemIndex#setCompactMetadata(boolean)}.
+   */
+  public void setCompactMetadata(boolean compactMetadata) {
+    index.setCompactMetadata(compactMetadata);
+  }
+
+  public boolean isLazy() {
+    return lazy;
+  }
+
+  /**
+   * May be called from any thread; importers look up items on their own threads while the
+   * committing thread updates the cache.
+   */
   @Override
   public AudioItem getAudioItem(String uid) {
-    return audioItemCache.get(uid);
+    synchronized (this) {
+      AudioItem audioItem = audioItemCache.get(uid);
+      if (audioItem != null || !lazy) {
+        return audioItem;
+      }
+      purgeReclaimedItems();
+      AudioItemReference ref = softCache.get(uid);
+      audioItem = ref == null ? null : ref.get();
+      if (audioItem == null) {
+        if (!audioItemIds.contains(uid)) {
+          return null;
+        }
+        try {
+          audioItem = index.getAudioItem(uid);
+        } catch (IOException e) {
+          LOG.log(Level.SEVERE, "IOException while reading audio item " + uid, e);
+          return null;
+        }
+        if (audioItem == null) {
+          return null;
+        }
+        for (Playlist playlist : getPlaylistMembership().getOrDefault(uid, Collections.emptyList())) {
+          audioItem.addPlaylist(playlist);
+        }
+        softCache.put(uid, new AudioItemReference(audioItem, reclaimedItems));
+      }
+      audioItemCache.put(uid, audioItem);
+      return audioItem;
+    }
   }
 
   @Override
   public Collection<AudioItem> getAudioItems() {
-    return audioItemCache.values();
+    if (!lazy) {
+      return audioItemCache.values();
+    }
+    // A view over the ids, materializing each item as the iterator reaches it.
+    return new AbstractCollection<AudioItem>() {
+      @Override
+      public Iterator<AudioItem> iterator() {
+        final List<String> ids;
+        synchronized (LuceneMetadataStore.this) {
+          ids = Lists.newArrayList(audioItemIds);
+        }
+        return ids.stream()
+            .map(LuceneMetadataStore.this::getAudioItem)
+            .filter(Objects::nonNull)
+            .iterator();
+      }
+
+      @Override
+      public int size() {
+        synchronized (LuceneMetadataStore.this) {
+          return audioItemIds.size();
+        }
+      }
+    };
+  }
+
+  private void cacheAudioItem(AudioItem audioItem) {
+    synchronized (this) {
+      if (!lazy) {
+        audioItemCache.put(audioItem.getId(), audioItem);
+        return;
+      }
+      audioItemIds.add(audioItem.getId());
+      audioItemCache.put(audioItem.getId(), audioItem);
+      softCache.put(audioItem.getId(), new AudioItemReference(audioItem, reclaimedItems));
+    }
+  }
+
+  private void removeCachedAudioItem(String uid) {
+    synchronized (this) {
+      if (!lazy) {
+        audioItemCache.remove(uid);
+        return;
+      }
+      audioItemIds.remove(uid);
+      audioItemCache.remove(uid);
+      softCache.remove(uid);
+    }
+  }
+
+  private synchronized void playlistsChanged() {
+    playlistMembership = null;
+  }
+
+  /**
+   * Which playlists contain each audio item, according to the committed playlists. Built on
+   * demand, and discarded whenever a playlist is committed.
+   */
+  private synchronized Map<String, List<Playlist>> getPlaylistMembership() {
+    if (playlistMembership == null) {
+      playlistMembership = Maps.newHashMap();
+      for (Playlist playlist : playlistCache.values()) {
+        for (String uid : playlist.getAudioItemList()) {
+          playlistMembership.computeIfAbsent(uid, k -> Lists.newArrayList()).add(playlist);
+        }
+      }
+    }
+    return playlistMembership;
+  }
+
+  /**
+   * Forget the soft references whose audio items have been reclaimed by the garbage collector.
+   */
+  private void purgeReclaimedItems() {
+    Reference<? extends AudioItem> ref;
+    while ((ref = reclaimedItems.poll()) != null) {
+      String uid = ((AudioItemReference) ref).uid;
+      if (softCache.get(uid) == ref) {
+        softCache.remove(uid);
+      }
+    }
+  }
+
+  private static class AudioItemReference extends SoftReference<AudioItem> {
+    final String uid;
+
+    AudioItemReference(AudioItem audioItem, ReferenceQueue<AudioItem> queue) {
+      super(audioItem, queue);
+      this.uid = audioItem.getId();
+    }
   }
 
   @Override
@@ -158,6 +364,21 @@ public class LuceneMetadataStore extends MetadataStore {
     }
   }
 
+  @Override
+  protected void beginBatch() {
+    index.beginBatch();
+  }
+
+  @Override
+  protected void endBatch() throws IOException {
+    index.endBatch();
+  }
+
+  @Override
+  public void close() throws IOException {
+    index.close();
+  }
+
   @Override
   public void deleteAudioItem(String uuid) {
     final AudioItem item = getAudioItem(uuid);
@@ -12,24 +12,31 @@ import static org.literacybridge.acm.store.LBMetadataIDs.FieldToIDMap;
 
 public class Metadata {
   private Map<MetadataField<?>, MetadataValue<?>> fields;
+  // Fields still in their serialized form, decoded individually when asked for. Anything
+  // that needs all of the fields decodes them all.
+  private volatile LBMetadataSerializer.EncodedFields encodedFields;
 
   public Metadata() {
     this.fields = new LinkedHashMap<>();
   }
 
   public Set<Map.Entry<MetadataField<?>, MetadataValue<?>>> entrySet() {
+    decodeAll();
     return fields.entrySet();
   }
 
   public Set<MetadataField<?>> keySet() {
+    decodeAll();
     return fields.keySet();
   }
 
   public int size() {
+    decodeAll();
     return this.fields.size();
   }
 
   void clear() {
+    this.encodedFields = null;
     this.fields.clear();
   }
 
@@ -37,10 +44,14 @@ public class Metadata {
   }
 
   Iterator<MetadataField<?>> getFieldsIterator() {
+    decodeAll();
     return this.fields.keySet().iterator();
   }
 
   public boolean containsField(MetadataField<?> field) {
+    if (this.encodedFields != null) {
+      return containsEncoded(field);
+    }
     return this.fields.containsKey(field);
   }
 
@@ -49,14 +60,68 @@ public class Metadata {
       return;
     }
 
+    decodeAll();
     this.fields.put(field, value);
   }
 
   @SuppressWarnings("unchecked")
   public <F> MetadataValue<F> getMetadataValue(MetadataField<F> field) {
+    if (this.encodedFields != null) {
+      return decode(field);
+    }
     return (MetadataValue<F>) this.fields.get(field);
   }
 
+  /**
+   * Gives the metadata fields that are decoded only when they're needed. The metadata must
+   * be empty.
+   */
+  void setEncodedFields(LBMetadataSerializer.EncodedFields encodedFields) {
+    this.fields.clear();
+    this.encodedFields = encodedFields;
+  }
+
+  private synchronized boolean containsEncoded(MetadataField<?> field) {
+    LBMetadataSerializer.EncodedFields encoded = this.encodedFields;
+    return this.fields.containsKey(field) || (encoded != null && encoded.contains(field));
+  }
+
+  private synchronized <F> MetadataValue<F> decode(MetadataField<F> field) {
+    @SuppressWarnings("unchecked")
+    MetadataValue<F> value = (MetadataValue<F>) this.fields.get(field);
+    if (value == null && this.encodedFields != null) {
+      value = this.encodedFields.decode(field);
+      if (value != null) {
+        this.fields.put(field, value);
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Decodes any fields not yet decoded, keeping the order in which they were encoded.
+   */
+  private void decodeAll() {
+    if (this.encodedFields != null) {
+      decodeRemaining();
+    }
+  }
+
+  private synchronized void decodeRemaining() {
+    LBMetadataSerializer.EncodedFields encoded = this.encodedFields;
+    if (encoded == null) {
+      return;
+    }
+    Map<MetadataField<?>, MetadataValue<?>> decoded = new LinkedHashMap<>();
+    for (int ix = 0; ix < encoded.size(); ix++) {
+      MetadataField<?> field = encoded.fieldAt(ix);
+      MetadataValue<?> value = this.fields.get(field);
+      decoded.put(field, value != null ? value : encoded.decode(ix));
+    }
+    this.fields = decoded;
+    this.encodedFields = null;
+  }
+
   /**
    * Gets a metadata value as a string.
    * @param field The metadata field to retrieve.
@@ -91,6 +156,7 @@ public class Metadata {
    */
   @SuppressWarnings("unchecked")
   public <F, T> void put(MetadataField<F> field, T value) {
+    decodeAll();
     try {
 
       // Because Java generic are by erasure, we only need the non-generic constructor. There
@@ -131,6 +197,8 @@ public class Metadata {
     Set<String> ignored = Arrays.stream(ignoring)
                                 .map(MetadataField::getName)
                                 .collect(Collectors.toSet());
+    decodeAll();
+    otherMetadata.decodeAll();
     for (MetadataField<?> field : otherMetadata.fields.keySet()) {
       if (!ignored.contains(field.getName()) && (replaceExisting || !this.containsField(field))) {
         this.fields.put(field, otherMetadata.fields.get(field));
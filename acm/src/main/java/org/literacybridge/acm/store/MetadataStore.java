@@ -72,7 +72,11 @@ public abstract class MetadataStore {
 
   public abstract SearchResult search(String searchFilter, Playlist selectedPlaylist);
 
-  public final void commit(Committable... objects) throws IOException {
+  /**
+   * Commits the objects in a single transaction. Synchronized because transactions may not be
+   * nested, and imports may commit from several conversion threads at once.
+   */
+  public final synchronized void commit(Committable... objects) throws IOException {
     for (Committable c : objects) {
       c.ensureIsCommittable();
     }
@@ -82,6 +86,56 @@ public abstract class MetadataStore {
     t.commit();
   }
 
+  /**
+   * Starts a batch of updates. Until the batch is closed, committed changes are immediately
+   * visible, but are only written to disk periodically, rather than once per commit. Use for
+   * bulk imports:
+   *
+   *   MetadataStore.Batch batch = store.newBatch();
+   *   try {
+   *     for (...) { store.commit(item); }
+   *   } finally {
+   *     batch.close();
+   *   }
+   *
+   * Batches may be nested; changes are written when the outermost batch is closed. If a commit
+   * fails part way through, only its own changes are lost; if the batch's earlier changes can't
+   * be kept either, every later commit in the batch fails, as does closing it.
+   * @return the batch, to be closed when the updates are finished.
+   */
+  public final Batch newBatch() {
+    beginBatch();
+    return new Batch();
+  }
+
+  protected void beginBatch() {
+  }
+
+  protected void endBatch() throws IOException {
+  }
+
+  /**
+   * Writes any outstanding changes, and releases resources held open for writing. The store
+   * remains usable.
+   */
+  public void close() throws IOException {
+  }
+
+  public final class Batch implements AutoCloseable {
+    private boolean closed = false;
+
+    private Batch() {
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        endBatch();
+      }
+    }
+  }
+
   public static class DataChangeEvent {
     private final Committable item;
     private final DataChangeEventType eventType;
@@ -107,7 +107,7 @@ public class Taxonomy implements Cloneable {
       }
     }
     if (changed) {
-      Application.getMessageService().pumpMessage(new CategoryVisibilitiesUpdated());
+      Application.getMessageService().publish(new CategoryVisibilitiesUpdated());
     }
   }
 
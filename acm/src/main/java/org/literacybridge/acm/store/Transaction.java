@@ -2,26 +2,31 @@ package org.literacybridge.acm.store;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
-import org.apache.lucene.index.IndexWriter;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+/**
+ * A set of objects to be committed together. As the objects commit, they record their changes
+ * to the index in the transaction; the changes are applied to the index only if every object
+ * commits successfully.
+ */
 public class Transaction {
   private final Set<Committable> objects;
   private final AudioItemIndex index;
-  private final IndexWriter writer;
   private final MetadataStore store;
+  private final List<AudioItemIndex.IndexOperation> operations;
+  private Map<String, String> commitData;
 
   private boolean active;
 
-  public Transaction(MetadataStore store, AudioItemIndex index,
-      IndexWriter writer) throws IOException {
+  public Transaction(MetadataStore store, AudioItemIndex index) throws IOException {
     this.store = store;
     this.index = index;
-    this.writer = writer;
     this.objects = Sets.newLinkedHashSet();
+    this.operations = Lists.newArrayList();
     this.active = true;
   }
 
@@ -59,7 +64,7 @@ public class Transaction {
       if (success) {
         boolean success2 = false;
         try {
-          writer.close();
+          index.commitTransaction(this);
           success2 = true;
         } finally {
           if (success2) {
@@ -82,7 +87,9 @@ public class Transaction {
   public final void rollback() throws IOException {
     boolean success = false;
     try {
-      writer.rollback();
+      // Nothing has been applied to the index yet; just forget the changes.
+      operations.clear();
+      commitData = null;
       success = true;
     } finally {
       if (success) {
@@ -132,7 +139,19 @@ public class Transaction {
     return index;
   }
 
-  public IndexWriter getWriter() {
-    return writer;
+  void addOperation(AudioItemIndex.IndexOperation operation) {
+    operations.add(operation);
+  }
+
+  List<AudioItemIndex.IndexOperation> getOperations() {
+    return operations;
+  }
+
+  Map<String, String> getCommitData() {
+    return commitData;
+  }
+
+  void setCommitData(Map<String, String> commitData) {
+    this.commitData = commitData;
   }
 }
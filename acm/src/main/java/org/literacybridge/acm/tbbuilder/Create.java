@@ -195,6 +195,8 @@ class Create {
             }
         }
 
+        // Playlist content is converted concurrently; wait for it after all the lists are processed.
+        AudioItemRepository.ConversionBatch conversions = repository.newConversionBatch();
         File[] listFiles = stagedListsDir.listFiles();
         //noinspection ConstantConditions
         for (File listFile : listFiles) {
@@ -209,9 +211,10 @@ class Create {
                 listFile.delete();
                 hasIntro = true;
             } else {
-                exportContentForPlaylist(pi.name, listFile, shadowAudioFilesDir, stagedAudioDir, pi.audioFormat);
+                exportContentForPlaylist(pi.name, listFile, shadowAudioFilesDir, stagedAudioDir, pi.audioFormat, conversions);
             }
         }
+        conversions.await();
 
         if (exportedCategories == null) {
             throw new IllegalStateException("Missing _activeLists.txt file");
@@ -515,13 +518,15 @@ class Create {
      * @param targetDirectory The ultimate destination directory of the file. A 0-byte marker file is written
      *                        there at this time, filled in with the actual content at deployment time.
      * @param audioFormat The needed AudioFormat
+     * @param conversions Batch to which the audio exports are submitted.
      * @throws Exception if a file can't be read or written.
      */
     private void exportContentForPlaylist(
             String contentPackage, File list,
             File shadowDirectory,
             File targetDirectory,
-            AudioItemRepository.AudioFormat audioFormat)
+            AudioItemRepository.AudioFormat audioFormat,
+            AudioItemRepository.ConversionBatch conversions)
             throws Exception {
         builderContext.reportStatus("  Exporting list %n" + list);
         String[] csvColumns = new String[5];
@@ -549,7 +554,7 @@ class Create {
                     exportFile = new File(targetDirectory, filename);
                 }
                 if (!exportFile.exists()) {
-                    repository.exportAudioFileWithFormat(audioItem,
+                    conversions.exportAudioFileWithFormat(audioItem,
                             exportFile,
                             audioFormat);
                 }
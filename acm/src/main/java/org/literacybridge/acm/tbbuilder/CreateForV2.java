@@ -10,6 +10,8 @@ import org.literacybridge.acm.deployment.DeploymentInfo;
 import org.literacybridge.acm.deployment.DeploymentInfo.PackageInfo;
 import org.literacybridge.acm.deployment.DeploymentInfo.PackageInfo.PlaylistInfo;
 import org.literacybridge.acm.deployment.DeploymentInfo.PromptInfo;
+import org.literacybridge.core.fs.FsFile;
+import org.literacybridge.core.tbloader.ContentManifest;
 import org.literacybridge.core.tbloader.PackagesData;
 import org.literacybridge.core.tbloader.PackagesData.PackageData;
 import org.literacybridge.core.tbloader.PackagesData.PackageData.PlaylistData;
@@ -27,6 +29,12 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.BiConsumer;
 
 import static org.literacybridge.acm.Constants.CUSTOM_GREETING;
@@ -49,6 +57,9 @@ DEMO/content/DEMO-21-1/images/DEMO-1-en-c/
 ├── firmware.v2
 ├── recipients
 ├── shaodowFiles
+├── manifests.v2
+│   ├── DEMO-1-en.txt               <<-- path, size, and hash of every file in the image
+│   . . .
 ├── images.v2
 │   ├── DEMO-1-en
 │   │   ├── content
@@ -125,6 +136,12 @@ class CreateForV2 extends CreateFromDeploymentInfo {
     private final AudioItemRepository.AudioFormat audioFormat = AudioItemRepository.AudioFormat.WAV;
     private final PackagesData allPackagesData;
     private final File imagesDir;
+    // Message exports for all of the images are converted concurrently, and awaited before the images are
+    // finished. Images built concurrently share the batch, so a shadow file is exported only once.
+    private final AudioItemRepository.ConversionBatch conversions;
+    // Shadow files exported outside of the conversion batch, by the first image to need each one. The other
+    // images wait for the same export, and see whether it failed.
+    private final Map<File, CompletableFuture<Void>> sharedExports = new ConcurrentHashMap<>();
 
     public static final List<String> requiredFirmwareFiles = Arrays.asList("TBookRev2b.hex", "firmware_built.txt");
     public static final List<String> requiredCSMFiles = Arrays.asList("control_def.txt", "csm_data.txt");
@@ -154,6 +171,7 @@ class CreateForV2 extends CreateFromDeploymentInfo {
         super(tbBuilder, builderContext, deploymentInfo);
         allPackagesData = new PackagesData(builderContext.deploymentName);
         imagesDir = new File(builderContext.stagedDeploymentDir, "images.v2");
+        conversions = repository.newConversionBatch();
     }
 
 
@@ -175,7 +193,93 @@ class CreateForV2 extends CreateFromDeploymentInfo {
      */
     @Override
     protected void addImageForPackage(PackageInfo packageInfo) throws Exception {
-        new ImageCreator(packageInfo).addImage();
+        ImageCreator imageCreator = new ImageCreator(packageInfo);
+        imageCreator.addImage();
+        conversions.await();
+        imageCreator.finishImage();
+    }
+
+    /**
+     * Adds the images for all of the packages, several at once. The result is the same as adding
+     * them one at a time: each image is written only by its own creator, shared shadow files are
+     * exported once, and the merged package data is assembled in package order.
+     *
+     * @throws Exception if an image can't be created. If several fail, the first, in package order.
+     */
+    @Override
+    protected void addImagesForPackages() throws Exception {
+        List<ImageCreator> imageCreators = new ArrayList<>();
+        for (PackageInfo packageInfo : deploymentInfo.getPackages()) {
+            imageCreators.add(new ImageCreator(packageInfo));
+        }
+        int threads = Math.max(1, Math.min(builderContext.imageThreads, imageCreators.size()));
+        long startTime = System.currentTimeMillis();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (ImageCreator imageCreator : imageCreators) {
+                futures.add(executor.submit(() -> {
+                    imageCreator.addImage();
+                    return null;
+                }));
+            }
+            Exception firstFailure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (firstFailure == null) {
+                        firstFailure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                }
+            }
+            if (firstFailure != null) {
+                throw firstFailure;
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        conversions.await();
+        for (ImageCreator imageCreator : imageCreators) {
+            imageCreator.finishImage();
+        }
+        builderContext.reportStatus("%nCreated %d image(s) with %d thread(s) in %d ms.%n", imageCreators.size(),
+            threads, System.currentTimeMillis() - startTime);
+    }
+
+    private interface Export {
+        void export(File exportFile) throws Exception;
+    }
+
+    /**
+     * Exports a shared file, for exports that aren't done through the conversion batch. The first image
+     * to need the file exports it, unless it already exists; any other image waits for that export.
+     *
+     * @param exportFile the file to be exported.
+     * @param export     exports the file, given the file.
+     * @throws Exception if the export failed, whichever image did it.
+     */
+    private void exportShared(File exportFile, Export export) throws Exception {
+        CompletableFuture<Void> ours = new CompletableFuture<>();
+        CompletableFuture<Void> shared = sharedExports.putIfAbsent(exportFile, ours);
+        if (shared == null) {
+            shared = ours;
+            try {
+                if (!exportFile.exists()) {
+                    export.export(exportFile);
+                }
+                ours.complete(null);
+            } catch (Exception ex) {
+                ours.completeExceptionally(ex);
+            }
+        }
+        try {
+            shared.get();
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+        }
     }
 
     @Override
@@ -327,6 +431,8 @@ class CreateForV2 extends CreateFromDeploymentInfo {
 
         /**
          * This is the main worker for adding the content, prompts, firmware, and miscelaneous files to an image.
+         * Audio exports are submitted to the conversion batch; finishImage() completes the image once they are done.
+         * May run concurrently with the creators of other images.
          *
          * @throws Exception if something goes wrong.
          */
@@ -343,7 +449,8 @@ class CreateForV2 extends CreateFromDeploymentInfo {
             }
             if (builderContext.deDuplicateAudio) {
                 for (File f : new File[]{shadowMessagesDir, shadowPromptsDir}) {
-                    if (!f.exists() && !f.mkdirs()) {
+                    // Another image may create the shared directory at the same time.
+                    if (!f.mkdirs() && !f.isDirectory()) {
                         throw (new TBBuilder.TBBuilderException(String.format("Unable to create directory: %s%n", f)));
                     }
                 }
@@ -360,7 +467,6 @@ class CreateForV2 extends CreateFromDeploymentInfo {
                 addTutorialToImage(packageData);
             }
 
-            allPackagesData.addPackagesData(packagesData);
             File of = new File(contentDir, PackagesData.PACKAGES_DATA_TXT);
             try (FileOutputStream fos = new FileOutputStream(of)) {
                 packagesData.exportPackageDataFile(fos, getPackageName(packageInfo));
@@ -372,6 +478,33 @@ class CreateForV2 extends CreateFromDeploymentInfo {
                     packageInfo.getLanguageCode()));
         }
 
+        /**
+         * Completes the image after all of its audio has been exported. Called for the images in package order.
+         *
+         * @throws IOException if the image's manifest can't be written.
+         */
+        void finishImage() throws IOException {
+            allPackagesData.addPackagesData(packagesData);
+            writeManifest();
+        }
+
+        /**
+         * Writes the image's manifest, so the TB-Loader can copy only what changed since a Talking Book's
+         * last update. Must follow the export of all the image's files.
+         *
+         * @throws IOException if a file can't be read, or the manifest can't be written.
+         */
+        private void writeManifest() throws IOException {
+            File manifestsDir = new File(builderContext.stagedDeploymentDir, ContentManifest.MANIFESTS_DIR);
+            if (!manifestsDir.exists() && !manifestsDir.mkdirs()) {
+                throw new IOException(String.format("Unable to create directory: %s", manifestsDir));
+            }
+            FsFile shadowDir = builderContext.deDuplicateAudio ? new FsFile(builderContext.stagedShadowDir) : null;
+            ContentManifest manifest = ContentManifest.forImage(new FsFile(imageDir), shadowDir,
+                Collections.singleton("content/" + PackagesData.PACKAGES_DATA_TXT));
+            manifest.write(new FsFile(new File(manifestsDir, getPackageName(packageInfo) + ".txt")));
+        }
+
         private Path makePath(File file) {
             return imageDir.toPath().relativize(file.toPath());
         }
@@ -403,7 +536,7 @@ class CreateForV2 extends CreateFromDeploymentInfo {
                 // Export the audio file.
                 File exportFile = determineShadowFile(messagesDir, filename, shadowMessagesDir);
                 if (!exportFile.exists()) {
-                    repository.exportAudioFileWithFormat(audioItem, exportFile, getAudioFormat());
+                    conversions.exportAudioFileWithFormat(audioItem, exportFile, getAudioFormat());
                 }
                 // Add audio item to the package_data.txt.
                 Path exportPath = makePath(new File(messagesDir, filename));
@@ -445,7 +578,7 @@ class CreateForV2 extends CreateFromDeploymentInfo {
                 // Export the audio file.
                 File exportFile = determineShadowFile(messagesDir, filename, shadowMessagesDir);
                 if (!exportFile.exists()) {
-                    repository.exportAudioFileWithFormat(audioItem, exportFile, getAudioFormat());
+                    conversions.exportAudioFileWithFormat(audioItem, exportFile, getAudioFormat());
                 }
                 // Add audio item to the package_data.txt.
                 Path exportPath = makePath(new File(messagesDir, filename));
@@ -481,20 +614,19 @@ class CreateForV2 extends CreateFromDeploymentInfo {
                 String promptFilename = promptInfo.audioItem.getId() + '.' + getAudioFormat().getFileExtension();
                 exportFile = determineShadowFile(messagesDir, promptFilename, shadowMessagesDir);
                 if (!exportFile.exists()) {
-                    repository.exportAudioFileWithFormat(promptInfo.audioItem, exportFile, getAudioFormat());
+                    conversions.exportAudioFileWithFormat(promptInfo.audioItem, exportFile, getAudioFormat());
                 }
             } else {
                 // export from languages/{language}/cat/{categoryId} to promptsDir
                 String promptFilename = categoryId + '.' + getAudioFormat().getFileExtension();
                 exportFile = determineShadowFile(promptsDir, promptFilename, shadowPromptsDir);
                 if (!exportFile.getParentFile().exists()) exportFile.getParentFile().mkdirs();
-                if (!exportFile.exists()) {
-                    try {
-                        repository.exportFileWithFormat(promptInfo.audioFile, exportFile, getAudioFormat());
-                    } catch (Exception ex) {
-                        // Keep going after failing to export a prompt.
-                        builderContext.logException(ex);
-                    }
+                try {
+                    exportShared(exportFile,
+                        file -> repository.exportFileWithFormat(promptInfo.audioFile, file, getAudioFormat()));
+                } catch (Exception ex) {
+                    // Keep going after failing to export a prompt.
+                    builderContext.logException(ex);
                 }
             }
             withPrompt.accept(title, makePath(exportFile));
@@ -508,14 +640,13 @@ class CreateForV2 extends CreateFromDeploymentInfo {
 
                 File exportFile = determineShadowFile(promptsDir, promptFilename, shadowPromptsDir);
                 if (!exportFile.getParentFile().exists()) exportFile.getParentFile().mkdirs();
-                if (!exportFile.exists()) {
-                    try {
-                        repository.exportSystemPromptFileWithFormat(prompt, exportFile, packageInfo.getLanguageCode(),
-                            getAudioFormat());
-                    } catch (Exception ex) {
-                        // Keep going after failing to export a prompt.
-                        builderContext.logException(ex);
-                    }
+                try {
+                    exportShared(exportFile,
+                        file -> repository.exportSystemPromptFileWithFormat(prompt, file,
+                            packageInfo.getLanguageCode(), getAudioFormat()));
+                } catch (Exception ex) {
+                    // Keep going after failing to export a prompt.
+                    builderContext.logException(ex);
                 }
             }
         }
@@ -572,13 +703,12 @@ class CreateForV2 extends CreateFromDeploymentInfo {
                 File sourcePromptFile = new File(sourceLanguageDir, tutorialFilename);
                 File exportFile = determineShadowFile(promptsDir, promptFilename, shadowPromptsDir);
                 if (!exportFile.getParentFile().exists()) exportFile.getParentFile().mkdirs();
-                if (!exportFile.exists()) {
-                    try {
-                        repository.exportFileWithFormat(sourcePromptFile, exportFile, getAudioFormat());
-                    } catch (Exception ex) {
-                        // Keep going after failing to export a prompt.
-                        builderContext.logException(ex);
-                    }
+                try {
+                    exportShared(exportFile,
+                        file -> repository.exportFileWithFormat(sourcePromptFile, file, getAudioFormat()));
+                } catch (Exception ex) {
+                    // Keep going after failing to export a prompt.
+                    builderContext.logException(ex);
                 }
                 // Add audio item to the package_data.txt.
                 Path exportPath = makePath(new File(promptsDir, promptFilename));
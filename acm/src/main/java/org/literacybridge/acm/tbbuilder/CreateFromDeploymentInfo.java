@@ -59,14 +59,23 @@ public abstract class CreateFromDeploymentInfo {
     void go() throws Exception {
         createBaseDeployment();
 
-        for (DeploymentInfo.PackageInfo packageInfo : deploymentInfo.getPackages()) {
-            addImageForPackage(packageInfo);
-        }
+        addImagesForPackages();
         finalizeDeployment();
 
         exportMetadata();
     }
 
+    /**
+     * Adds the images for all of the packages in the Deployment, one after another.
+     *
+     * @throws Exception if an image can't be created.
+     */
+    protected void addImagesForPackages() throws Exception {
+        for (DeploymentInfo.PackageInfo packageInfo : deploymentInfo.getPackages()) {
+            addImageForPackage(packageInfo);
+        }
+    }
+
     abstract protected void addImageForPackage(DeploymentInfo.PackageInfo packageInfo) throws Exception;
     protected void finalizeDeployment() throws Exception {}
 
@@ -5,6 +5,8 @@ import com.opencsv.CSVWriterBuilder;
 import com.opencsv.ICSVWriter;
 import org.apache.commons.io.FileUtils;
 import org.literacybridge.acm.Constants;
+import org.literacybridge.acm.deployment.ContentAddressedDeployments;
+import org.literacybridge.acm.deployment.DirectoryContentStore;
 import org.literacybridge.acm.tbloader.TBLoader;
 import org.literacybridge.acm.tools.DBExporter;
 import org.literacybridge.core.fs.ZipUnzip;
@@ -41,7 +43,8 @@ class Publish {
 
     /**
      * Zips up a Deployment, and places it in a {Home}/{ACM-NAME}/TB-Loaders/published/{Deployment}-{counter}
-     * directory. Creates a marker file named {Deployment}-{counter}.rev
+     * directory, along with a content manifest; the files themselves are added to
+     * {Home}/{ACM-NAME}/TB-Loaders/objects. Creates a marker file named {Deployment}-{counter}.rev
      *
      * @param deploymentList List of deployments. Effectively, always exactly one.
      * @throws Exception if a file can't be read.
@@ -84,6 +87,11 @@ class Publish {
         ZipUnzip.zip(localContent,
                 new File(publishDistributionDir, "content-" + zipSuffix), true,
                 deployments.toArray(new String[0]));
+        // The same content, as a manifest and content-addressed objects. A TB-Loader that has an
+        // earlier revision only needs to fetch the files that changed. The .zip is still made, for
+        // TB-Loaders that don't know about manifests.
+        ContentAddressedDeployments.publish(localContent, deployments, publishDistributionName,
+                new DirectoryContentStore(builderContext.sourceTbLoadersDir));
 
         // merge csv files
         File stagedMetadata = new File(builderContext.stagingDir, "metadata");
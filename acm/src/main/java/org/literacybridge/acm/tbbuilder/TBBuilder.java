@@ -64,6 +64,8 @@ public class TBBuilder {
     static class BuilderContext {
         static DateFormat ISO8601time = new SimpleDateFormat("HHmmss.SSS'Z'", Locale.US); // Quoted "Z" to indicate UTC, no timezone offset
         static { ISO8601time.setTimeZone(TBLoaderConstants.UTC); }
+        // Image creation mostly waits on audio conversions, which have their own threads.
+        static final int DEFAULT_IMAGE_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
 
         final DBConfiguration dbConfig;
 
@@ -86,6 +88,8 @@ public class TBBuilder {
         final File stagedProgramspecDir;  // {stagedDeploymentDir}/programspec
 
         final boolean deDuplicateAudio;
+        // How many package images to create at once.
+        int imageThreads = DEFAULT_IMAGE_THREADS;
 
         final public Consumer<Exception> exceptionLogger;
         void logException(Exception ex) { exceptionLogger.accept(ex); }
@@ -99,6 +103,7 @@ public class TBBuilder {
         }
         BuilderContext(String prefix, BuilderContext other) {
             this(prefix, other.buildTimestamp, ACMConfiguration.getInstance().getDbConfiguration(other.project), other.deploymentNo, other.deploymentName, other.statusWriter, other.exceptionLogger);
+            this.imageThreads = other.imageThreads;
         }
         private BuilderContext(String prefix, String timeString, DBConfiguration dbConfig, int deploymentNo, String deploymentName, Consumer<String> statusWriter, Consumer<Exception> exceptionLogger) {
             this.dbConfig = dbConfig;
@@ -155,6 +160,12 @@ public class TBBuilder {
         }
         return versions;
     }
+    /**
+     * @param imageThreads how many package images to create at once. 1 creates them one at a time.
+     */
+    public void setImageThreads(int imageThreads) {
+        builderContext.imageThreads = Math.max(1, imageThreads);
+    }
     public File getStagedProgramspecDir() {
         return builderContext.stagedProgramspecDir;
     }
@@ -5,16 +5,23 @@ import org.apache.commons.lang3.StringUtils;
 import org.literacybridge.acm.cloud.Authenticator;
 import org.literacybridge.acm.cloud.ProjectsHelper;
 import org.literacybridge.acm.cloud.ProjectsHelper.DeploymentInfo;
+import org.literacybridge.acm.cloud.S3ContentStore;
 import org.literacybridge.acm.config.ACMConfiguration;
 import org.literacybridge.acm.config.DBConfiguration;
 import org.literacybridge.acm.config.PathsProvider;
+import org.literacybridge.acm.deployment.ContentAddressedDeployments;
+import org.literacybridge.acm.deployment.ContentStore;
+import org.literacybridge.acm.deployment.DirectoryContentStore;
 import org.literacybridge.acm.utils.IOUtils;
-import org.literacybridge.core.fs.ZipUnzip;
+import org.literacybridge.core.fs.StreamingUnzip;
 import org.literacybridge.core.spec.ProgramSpec;
+import org.literacybridge.core.tbloader.ContentManifest;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -22,6 +29,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.stream.Collectors;
@@ -33,6 +41,8 @@ import static org.literacybridge.core.tbloader.TBLoaderConstants.UNPUBLISHED_REV
 
 class DeploymentsManager {
     private static final Logger LOG = Logger.getLogger(DeploymentsManager.class.getName());
+    // A deployment .zip is extracted into {localProjectDir}/.incoming-{versionMarker}, then swapped in.
+    private static final String INCOMING_DIR_PREFIX = ".incoming-";
     private final String project;
     private final File localProjectDir;
 
@@ -254,13 +264,13 @@ class DeploymentsManager {
     }
 
     /**
-     * Retrieves the Deployment from the given directory.
+     * Retrieves the Deployment from the given directory. The old local content is cleared once
+     * the new content is at hand.
      * @param desiredDeployment Name of desired Deployment
      * @throws IOException if the Deployment can't be unzipped.
      */
     void getDeployment(String desiredDeployment, BiConsumer<Long, Long> progressHandler) throws IOException {
-        clearLocalDeployments();
-        availableDeployments.fetchDeployment(desiredDeployment, localProjectDir, progressHandler);
+        availableDeployments.fetchDeployment(desiredDeployment, localProjectDir, this::clearLocalDeployments, progressHandler);
     }
 
     /**
@@ -344,8 +354,17 @@ class DeploymentsManager {
         String getCurrentRevId();
         String getCurrentDeployment();
 
+        /**
+         * Fetches a Deployment into the local project directory.
+         * @param desiredDeployment Name of desired Deployment.
+         * @param localProjectDir where the Deployment goes.
+         * @param clearLocalContent to be called just before the new content replaces the old.
+         * @param progressHandler optional, called with (bytes received, bytes expected).
+         * @throws IOException if the Deployment can't be fetched.
+         */
         void fetchDeployment(String desiredDeployment,
             File localProjectDir,
+            Runnable clearLocalContent,
             BiConsumer<Long, Long> progressHandler) throws IOException;
 
         /**
@@ -371,10 +390,12 @@ class DeploymentsManager {
         File publishedDir = new File(tbLoadersDir, "published");
         if (!publishedDir.isDirectory()) return result;
 
-        // Get the directories that are deployments; they contain a same-named .zip file.
+        // Get the directories that are deployments; they contain a same-named .zip file, or a
+        // content manifest.
         File[] publishedDeployments = publishedDir.listFiles(file -> file.isDirectory() &&
              new File(file, "content-" + file.getName() + ".zip").exists() ||
-                new File(file, file.getName() + ".zip").exists());
+                new File(file, file.getName() + ".zip").exists() ||
+                new File(file, DirectoryContentStore.manifestName(file.getName())).exists());
 
         // Find the highest revision of every deployment found.
         Map<String,String> highestRevisions = new HashMap<>();
@@ -435,9 +456,10 @@ class DeploymentsManager {
         @Override
         public void fetchDeployment(String desiredDeployment,
             File localProjectDir,
+            Runnable clearLocalContent,
             BiConsumer<Long, Long> progressHandler)
         {
-
+            clearLocalContent.run();
         }
 
         @Override
@@ -495,42 +517,142 @@ class DeploymentsManager {
         }
 
         @Override
-        public void fetchDeployment(String desiredDeployment, File localProjectDir, BiConsumer<Long, Long> progressHandler)
-            throws IOException
+        public void fetchDeployment(String desiredDeployment,
+            File localProjectDir,
+            Runnable clearLocalContent,
+            BiConsumer<Long, Long> progressHandler) throws IOException
         {
             DeploymentInfo di = deploymentsInfo.get(desiredDeployment);
 
             // If the deployment is already downloaded, with the other program data, use that.
             File zipFile = null;
             Map<String,File> localPublishedDeployments = getLocalPublishedDeployments(project);
-            if (localPublishedDeployments.containsKey(desiredDeployment)) {
-                File publishedDir = localPublishedDeployments.get(desiredDeployment);
+            File publishedDir = localPublishedDeployments.get(desiredDeployment);
+            if (publishedDir != null) {
+                // The program's TB-Loaders directory.
+                DirectoryContentStore publishedStore = new DirectoryContentStore(publishedDir.getParentFile().getParentFile());
+                if (fetchContentAddressed(publishedStore, publishedDir.getName(), localProjectDir,
+                    clearLocalContent, progressHandler)) {
+                    writeRevFile(di, localProjectDir);
+                    return;
+                }
                 zipFile = new File(publishedDir, "content-"+publishedDir.getName()+".zip");
                 if (!zipFile.exists()) zipFile = new File(publishedDir, publishedDir.getName()+".zip");
             }
-            if (zipFile == null || !zipFile.exists()) {
-                File tempDir = Files.createTempDirectory("tbloader-tmp").toFile();
-                File tempFile = new File(tempDir, di.getFileName());
-                Authenticator authInstance = Authenticator.getInstance();
-                ProjectsHelper projectsHelper = authInstance.getProjectsHelper();
-                projectsHelper.downloadDeployment(di,
-                    tempFile,
-                    progressHandler/*(p,t)->{System.out.printf("%d/%d\n",p,t);}*/);
-                zipFile = tempFile;
+            if ((zipFile == null || !zipFile.exists()) && di.hasManifest()) {
+                if (fetchContentAddressed(new S3ContentStore(project), di.getVersionMarker(), localProjectDir,
+                    clearLocalContent, progressHandler)) {
+                    writeRevFile(di, localProjectDir);
+                    return;
+                }
+            }
+            // Extract the .zip as it is read, into a directory of its own, and swap that in at the end.
+            StreamingUnzip.Source source;
+            String zipId;
+            long zipSize;
+            if (zipFile != null && zipFile.exists()) {
+                source = StreamingUnzip.fileSource(zipFile);
+                zipId = zipFile.getAbsolutePath() + '|' + zipFile.length() + '|' + zipFile.lastModified();
+                zipSize = zipFile.length();
+            } else {
+                ProjectsHelper projectsHelper = Authenticator.getInstance().getProjectsHelper();
+                source = offset -> projectsHelper.openDeployment(di, offset);
+                zipId = di.getKey() + '|' + di.geteTag();
+                zipSize = di.getSize();
             }
+            File incomingDir = new File(localProjectDir, INCOMING_DIR_PREFIX + di.getVersionMarker());
+            deleteOtherIncomingDirs(localProjectDir, incomingDir);
+            new StreamingUnzip.Builder()
+                .withId(zipId)
+                .withTotalSize(zipSize)
+                .withListener((current, total) -> {
+                    if (progressHandler != null) progressHandler.accept(current, total);
+                    return true;
+                })
+                .build()
+                .unzip(source, incomingDir);
+
+            clearLocalContent.run();
+            swapIn(incomingDir, localProjectDir);
+
+            writeRevFile(di, localProjectDir);
+        }
 
-            //    7z x -y -o"%userprofile%\LiteracyBridge\TB-Loaders\%project%" "..\ACM-%project%\TB-Loaders\published\%latestUpdate%\content-%latestUpdate%.zip"
-            ZipUnzip.unzip(zipFile, localProjectDir);
+        /**
+         * Moves the extracted directories (like "content") into the local project directory,
+         * replacing any there, then removes the now-empty incoming directory. Each is moved with
+         * a rename, so it appears complete or not at all; the .rev file is written after.
+         */
+        private void swapIn(File incomingDir, File localProjectDir) throws IOException {
+            File[] children = incomingDir.listFiles(f -> !f.getName().equals(StreamingUnzip.PROGRESS_FILE_NAME));
+            if (children != null) {
+                for (File child : children) {
+                    File target = new File(localProjectDir, child.getName());
+                    IOUtils.deleteRecursive(target);
+                    try {
+                        Files.move(child.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    } catch (AtomicMoveNotSupportedException e) {
+                        Files.move(child.toPath(), target.toPath());
+                    }
+                }
+            }
+            IOUtils.deleteRecursive(incomingDir);
+        }
 
+        /**
+         * A partial extraction of some other revision won't be resumed; reclaim the space.
+         */
+        private void deleteOtherIncomingDirs(File localProjectDir, File incomingDir) {
+            File[] others = localProjectDir.listFiles(f -> f.isDirectory()
+                && f.getName().startsWith(INCOMING_DIR_PREFIX) && !f.equals(incomingDir));
+            if (others != null) {
+                Arrays.stream(others).forEach(IOUtils::deleteRecursive);
+            }
+        }
+
+        /**
+         * Fetches a Deployment published as a manifest and objects. Only the objects that are
+         * neither in the local object store nor in the current local content are downloaded.
+         * @return true if fetched, false if the revision has no manifest, or its objects couldn't
+         * all be fetched, so the caller should fall back to the .zip. The local content is only
+         * cleared once all the objects are here, so it's untouched when this returns false.
+         * @throws IOException if the local content can't be re-created from the objects.
+         */
+        private boolean fetchContentAddressed(ContentStore source,
+            String versionMarker,
+            File localProjectDir,
+            Runnable clearLocalContent,
+            BiConsumer<Long, Long> progressHandler) throws IOException
+        {
+            DirectoryContentStore cache = new DirectoryContentStore(localProjectDir);
+            ContentManifest manifest;
+            try {
+                manifest = source.getManifest(versionMarker);
+                if (manifest == null) return false;
+                int adopted = ContentAddressedDeployments.adopt(manifest, localProjectDir, cache);
+                long downloaded = ContentAddressedDeployments.fetchMissing(manifest, source, cache, progressHandler);
+                LOG.info(String.format("Fetching %s: %d files reused, %d of %d bytes downloaded.",
+                    versionMarker, adopted, downloaded, manifest.getTotalSize()));
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, String.format("Could not fetch %s by manifest, falling back to .zip", versionMarker), e);
+                return false;
+            }
+            clearLocalContent.run();
+            ContentAddressedDeployments.materialize(manifest, cache, localProjectDir);
+            // Keep only what the next revision might share with this one.
+            cache.retainOnly(manifest);
+            return true;
+        }
+
+        private void writeRevFile(DeploymentInfo di, File localProjectDir) throws IOException {
             // Leave a marker to indicate what is here.
             String revFileName = di.getVersionMarker() + ".rev";
             File revFile = new File(localProjectDir, revFileName);
             if (!revFile.createNewFile()) {
                 LOG.warning(String.format("Could not create file '%s'", revFile.getAbsolutePath()));
             }
-
         }
-        
+
         @Override
         public Map<String, String> getDeploymentDescriptions() {
             Map<String,String> result = new LinkedHashMap<>();
@@ -1,5 +1,6 @@
 package org.literacybridge.acm.tbloader;
 
+import org.literacybridge.acm.device.MountDetector;
 import org.literacybridge.acm.gui.util.UIUtils;
 import org.literacybridge.acm.utils.OsUtils;
 
@@ -8,8 +9,10 @@ import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
@@ -21,12 +24,19 @@ import java.util.stream.Collectors;
 
 /**
  * Monitors the file system roots for something that seems to be a Talking Book.
+ *
+ * The roots are only rescanned when the MountDetector says they may have changed; on Linux that's
+ * when a mount directory changes, elsewhere it's every MILLIS_BETWEEN_SCANS. The (slow) filter
+ * is only applied to roots not seen before.
  */
 class FsRootMonitor extends Thread {
     private static final Logger LOG = Logger.getLogger(FsRootMonitor.class.getName());
     public static final int MILLIS_BETWEEN_SCANS = 500;
 
     private final FileSystemView fsView = FileSystemView.getFileSystemView();
+    private final MountDetector mountDetector = MountDetector.forPlatform(MILLIS_BETWEEN_SCANS);
+    // Results of the filter, by path and size. Cleared when the filter changes.
+    private final Map<String, Boolean> filterResults = new HashMap<>();
     private boolean enabled = true;
     Set<String> oldList = new HashSet<>();
 
@@ -40,7 +50,7 @@ class FsRootMonitor extends Thread {
         if (OsUtils.WINDOWS) {
             filterParams.allowing("USB Drive", "Lecteur USB");
         }
-        this.filter = this::rootsFilter;
+        this.filter = this::cachedRootsFilter;
         this.rootsHandler = rootsHandler;
         this.setDaemon(true);
     }
@@ -50,41 +60,41 @@ class FsRootMonitor extends Thread {
     }
 
     public void setFilterParams(FilterParams filterParams) {
-        this.filterParams = filterParams;
+        synchronized (this) {
+            this.filterParams = filterParams;
+            filterResults.clear();
+        }
         refresh();
     }
 
     public void setEnabled(boolean enabled) {
         this.enabled = enabled;
+        if (enabled) {
+            mountDetector.wakeup();
+        }
     }
 
     public void refresh() {
         refreshRequested.set(true);
+        mountDetector.wakeup();
     }
 
     /**
      * Gets the file system objects that might be TalkingBooks. On Windows, a Talking Book will be
-     * a file system root. On MacOS, it will be a subdirectory of /Volumes.
+     * a file system root. On MacOS, it will be a subdirectory of /Volumes. On Linux, it will be a
+     * subdirectory of /media/${user} or similar.
      *
+     * @param candidates the places where anything is mounted.
      * @return The potential Talking Book objects.
      */
-    private List<File> getRoots() {
+    private List<File> getRoots(List<File> candidates) {
         List<File> roots = new ArrayList<>();
-        if (OsUtils.WINDOWS) {
-            for (File root : File.listRoots()) {
-                if (root.getAbsoluteFile().toString().compareTo("D:") >= 0
-                    && root.listFiles() != null && (filter == null || filter.test(root))) {
-                    roots.add(root);
-                }
+        for (File root : candidates) {
+            if (OsUtils.WINDOWS && root.getAbsoluteFile().toString().compareTo("D:") < 0) {
+                continue;
             }
-        } else if (OsUtils.MAC_OS) {
-            File[] macDrives = new File("/Volumes").listFiles();
-            if (macDrives != null) {
-                for (File r : macDrives) {
-                    if (r.listFiles() != null && (filter == null || filter.test(r))) {
-                        roots.add(r);
-                    }
-                }
+            if (root.listFiles() != null && (filter == null || filter.test(root))) {
+                roots.add(root);
             }
         }
         return roots;
@@ -95,11 +105,15 @@ class FsRootMonitor extends Thread {
      * of any changes.
      */
     private synchronized void updateRoots() throws InterruptedException, InvocationTargetException {
-        List<File> roots = getRoots();
+        List<File> candidates = mountDetector.getRoots();
+        List<File> roots = getRoots(candidates);
         boolean needRefresh = refreshRequested.getAndSet(false);
         if (needRefresh) {
             oldList.clear();
         }
+        // Forget the filter results for anything no longer mounted.
+        Set<String> present = candidates.stream().map(File::getAbsolutePath).collect(Collectors.toSet());
+        filterResults.keySet().removeIf(k -> !present.contains(k.substring(0, k.lastIndexOf('|'))));
 
         needRefresh = needRefresh || oldList.size() != roots.size();
         if (!needRefresh) {
@@ -138,8 +152,7 @@ class FsRootMonitor extends Thread {
                 if (enabled) {
                     updateRoots();
                 }
-                //noinspection BusyWait
-                sleep(MILLIS_BETWEEN_SCANS);
+                mountDetector.awaitChange();
             } catch (InterruptedException | InvocationTargetException e) {
 //                e.printStackTrace();
             }
@@ -149,6 +162,16 @@ class FsRootMonitor extends Thread {
     private final Pattern parallelsWinDrive = Pattern.compile("(?i)\\[[A-Z]] Windows.*");
     private FilterParams filterParams;
 
+    /**
+     * The filter asks the OS for the display name and type, which can be slow (especially on
+     * Windows), so the answer is remembered for as long as the root stays mounted. The size is
+     * part of the key in case a different device is mounted in the same place.
+     */
+    private boolean cachedRootsFilter(File root) {
+        String key = root.getAbsolutePath() + '|' + root.getTotalSpace();
+        return filterResults.computeIfAbsent(key, k -> rootsFilter(root));
+    }
+
     private boolean rootsFilter(File root) {
         try {
             String label = fsView.getSystemDisplayName(root);
@@ -0,0 +1,215 @@
+package org.literacybridge.acm.tbloader;
+
+import org.kohsuke.args4j.Argument;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.literacybridge.acm.utils.LogHelper;
+import org.literacybridge.core.fs.FsFile;
+import org.literacybridge.core.tbdevice.TbDeviceInfo;
+import org.literacybridge.core.tbloader.DeploymentInfo;
+import org.literacybridge.core.tbloader.ProgressListener;
+import org.literacybridge.core.tbloader.TBLoaderConfig;
+import org.literacybridge.core.tbloader.TBLoaderConstants;
+import org.literacybridge.core.tbloader.TBLoaderScheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Loads one deployment onto several Talking Books at once, without the TB-Loader GUI.
+ *
+ * java -cp acm.jar:lib/* org.literacybridge.acm.tbloader.MultiDeviceLoader \
+ *     --deployment-dir ~/Amplio/TB-Loaders/DEMO/content/DEMO-20-1 --project DEMO --deployment DEMO-20-1 \
+ *     --package DEMO-20-1-en --community demo-seattle /Volumes/TB1 /Volumes/TB2 ...
+ */
+public class MultiDeviceLoader {
+    private final Params params;
+
+    public static void main(String[] args) throws IOException {
+        new LogHelper().inDirectory("logs").withName("MultiDeviceLoader.log").initialize();
+        Params params = new Params();
+        CmdLineParser parser = new CmdLineParser(params);
+        try {
+            parser.parseArgument(args);
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage());
+            printUsage(parser);
+            System.exit(1);
+        }
+
+        boolean success = new MultiDeviceLoader(params).run();
+        System.exit(success ? 0 : 4);
+    }
+
+    private MultiDeviceLoader(Params params) {
+        this.params = params;
+    }
+
+    /**
+     * Finds the Talking Books, updates them all, and prints a report.
+     * @return true if every Talking Book was updated.
+     */
+    private boolean run() {
+        File deploymentDir = new File(params.deploymentDir);
+        if (!deploymentDir.isDirectory()) {
+            System.err.printf("Deployment directory does not exist: %s\n", deploymentDir);
+            return false;
+        }
+
+        String srnPrefix = params.srnPrefix != null ? params.srnPrefix : TBLoaderConstants.NEW_TB_SRN_PREFIX;
+        List<TBLoaderScheduler.DeviceUpdate> updates = new ArrayList<>();
+        boolean ok = true;
+        for (String root : params.devices) {
+            TbDeviceInfo tbDevice = TbDeviceInfo.getDeviceInfoFor(new FsFile(new File(root)), null,
+                srnPrefix, TbDeviceInfo.DEVICE_VERSION.NONE);
+            String srn = tbDevice.getSerialNumber();
+            // Allocating serial numbers needs the GUI's TB-Loader id bookkeeping; do those one at a time there.
+            if (srn == null || srn.equalsIgnoreCase(TBLoaderConstants.NEED_SERIAL_NUMBER) ||
+                !tbDevice.isSerialNumberFormatGood(srn) || tbDevice.newSerialNumberNeeded()) {
+                System.err.printf("%s needs a new serial number; update it with the TB-Loader.\n", root);
+                ok = false;
+                continue;
+            }
+            DeploymentInfo newDeploymentInfo = new DeploymentInfo.DeploymentInfoBuilder()
+                .withSerialNumber(srn)
+                .withNewSerialNumber(false)
+                .withProjectName(params.project)
+                .withDeploymentName(params.deployment)
+                .withPackageNames(params.packages)
+                .withUpdateDirectory(null)
+                .withUpdateTimestamp(new Date().toString())
+                .withFirmwareRevision(params.firmware)
+                .withCommunity(params.community)
+                .withRecipientid(params.recipientid)
+                .asTestDeployment(params.testDeployment)
+                .build();
+            updates.add(new TBLoaderScheduler.DeviceUpdate(tbDevice,
+                tbDevice.createDeploymentInfo(params.project), newDeploymentInfo));
+        }
+        if (updates.isEmpty()) {
+            System.err.println("No Talking Books to update.");
+            return false;
+        }
+
+        TBLoaderConfig.Builder configBuilder = new TBLoaderConfig.Builder()
+            .withTbLoaderId(params.tbcdid)
+            .withCollectedDataDirectory(new FsFile(new File(params.collectedDir)))
+            .withTempDirectory(new FsFile(new File(params.tempDir)))
+            .withUserEmail(params.user)
+            .withUserName(params.user);
+        if (params.softwareDir != null) {
+            configBuilder.withFileSystemUtilities(new CommandLineUtils(new File(params.softwareDir)));
+        }
+
+        TBLoaderScheduler scheduler = new TBLoaderScheduler.Builder()
+            .withTbLoaderConfig(configBuilder.build())
+            .withDeploymentDirectory(new FsFile(deploymentDir))
+            .withThreads(params.threads)
+            .withCacheSize(params.cacheMegabytes * 1024L * 1024L)
+            .withLocation(params.location)
+            .withAcceptableFirmware(params.firmware)
+            .withProgressListenerFactory(ConsoleProgress::new)
+            .build();
+        TBLoaderScheduler.Summary summary = scheduler.updateAll(updates);
+
+        System.out.println();
+        summary.format().forEach(System.out::println);
+        return ok && summary.getSuccessCount() == summary.results.size();
+    }
+
+    private static void printUsage(CmdLineParser parser) {
+        System.err.println(String.format("java -cp acm.jar:lib/* %s ", MultiDeviceLoader.class.getName()));
+        parser.printUsage(System.err);
+    }
+
+    /**
+     * Prints each device's steps, prefixed with the device name. Details are too chatty for
+     * several devices at once, and go only to the log.
+     */
+    private static class ConsoleProgress extends ProgressListener {
+        private final String deviceName;
+
+        ConsoleProgress(String deviceName) {
+            this.deviceName = deviceName;
+        }
+
+        @Override
+        public void step(Steps step) {
+            System.out.printf("%s: %s\n", deviceName, step.description);
+        }
+
+        @Override
+        public void detail(String value) {
+        }
+
+        @Override
+        public void log(String value) {
+            System.out.printf("%s: %s\n", deviceName, value);
+        }
+
+        @Override
+        public void log(boolean append, String value) {
+            log(value);
+        }
+    }
+
+    private static final class Params {
+        @Option(name = "--deployment-dir", aliases = "-d", required = true, usage = "Directory with the deployment content, like TB-Loaders/{program}/content/{deployment}.", metaVar = "DIR")
+        String deploymentDir;
+
+        @Option(name = "--project", aliases = "-p", required = true, usage = "Program (project) id.", metaVar = "PROJECT")
+        String project;
+
+        @Option(name = "--deployment", required = true, usage = "Deployment name.", metaVar = "DEPLOYMENT")
+        String deployment;
+
+        @Option(name = "--package", required = true, usage = "Package(s) to load, in order.", metaVar = "PACKAGE")
+        List<String> packages;
+
+        @Option(name = "--community", aliases = "-c", required = true, usage = "Community (recipient directory) for the Talking Books.", metaVar = "COMMUNITY")
+        String community;
+
+        @Option(name = "--recipientid", usage = "Recipient id for the Talking Books.", metaVar = "ID")
+        String recipientid;
+
+        @Option(name = "--firmware", usage = "Firmware version in the deployment.", metaVar = "VERSION")
+        String firmware = "(No firmware)";
+
+        @Option(name = "--test", usage = "Mark the deployment as a test deployment.")
+        boolean testDeployment = false;
+
+        @Option(name = "--tbcdid", required = true, usage = "TB-Loader id, in hex.", metaVar = "ID")
+        String tbcdid;
+
+        @Option(name = "--user", usage = "User name or email, recorded in the statistics.", metaVar = "USER")
+        String user = System.getProperty("user.name");
+
+        @Option(name = "--location", usage = "Where the Talking Books are being updated, default 'Other'.", metaVar = "LOCATION")
+        String location = "Other";
+
+        @Option(name = "--srn-prefix", usage = "Serial number prefix, default 'C-'.", metaVar = "SRN_PREFIX")
+        String srnPrefix = null;
+
+        @Option(name = "--temp", usage = "Directory for temporary files; each device gets a subdirectory.", metaVar = "DIR")
+        String tempDir = new File(System.getProperty("java.io.tmpdir"), "tbloader").getPath();
+
+        @Option(name = "--collected", usage = "Directory for collected statistics; each device gets a subdirectory.", metaVar = "DIR")
+        String collectedDir = "collected-data";
+
+        @Option(name = "--software", usage = "Directory with the disk utilities, to check and relabel Talking Books.", metaVar = "DIR")
+        String softwareDir;
+
+        @Option(name = "--threads", aliases = "-t", usage = "Most Talking Books to update at once, default all of them.", metaVar = "N")
+        int threads = 0;
+
+        @Option(name = "--cache", usage = "Megabytes of deployment content to hold in memory, default 512.", metaVar = "MB")
+        long cacheMegabytes = 512;
+
+        @Argument(metaVar = "TB_ROOT", required = true, usage = "Roots of the Talking Books to update.")
+        List<String> devices;
+    }
+}
@@ -0,0 +1,226 @@
+package org.literacybridge.acm.tbloader;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Uploads the files in an UploadQueue, several at a time. Files larger than the multipart
+ * threshold are sent in parts, and the parts already sent are remembered in the queue's index,
+ * so an interrupted upload continues where it left off, even after a restart.
+ *
+ * After a failure, the uploader waits before trying again, twice as long after each consecutive
+ * failure (up to a limit), and with some jitter; a success resets the wait. So a short window of
+ * connectivity is used at once, and a long outage doesn't cause a flood of failing requests.
+ * A file that fails also waits, in the same way, before it is tried again, while other files are
+ * uploaded; so one file that can't be uploaded doesn't stop the others.
+ */
+class QueueUploader {
+    private static final Logger LOG = Logger.getLogger(QueueUploader.class.getName());
+
+    // S3's smallest part is 5 MB, except for the last.
+    static final long DEFAULT_PART_SIZE = 5L * 1024 * 1024;
+    static final long MIN_BACKOFF_MILLIS = 1_000;
+    static final long MAX_BACKOFF_MILLIS = 5 * 60_000;
+    // How long to wait when there's nothing to do, or no connection.
+    static final long IDLE_MILLIS = 10_000;
+    // When stopping once the queue is empty, a file is tried this many times; any still failing
+    // are left for the next run.
+    static final int MAX_TRIES_WHEN_STOPPING = 3;
+
+    private final UploadQueue queue;
+    private final UploadTransport transport;
+    private final int maxConcurrent;
+    private final long partSize;
+    private final Consumer<StatisticsUploader.UploadStatus> statusListener;
+    private boolean deleteWithoutUploading = false;
+
+    private final Object lock = new Object();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    // After a failure, no upload is started before this time.
+    private final AtomicLong resumeAt = new AtomicLong();
+    // Wakes the uploader early, when files are added.
+    private volatile boolean wakeup;
+    private long idleMillis = IDLE_MILLIS;
+    private long minBackoffMillis = MIN_BACKOFF_MILLIS;
+
+    QueueUploader(UploadQueue queue, UploadTransport transport, int maxConcurrent, long partSize,
+        Consumer<StatisticsUploader.UploadStatus> statusListener)
+    {
+        this.queue = queue;
+        this.transport = transport;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.partSize = partSize;
+        this.statusListener = statusListener;
+    }
+
+    /**
+     * Files are removed from the queue without being uploaded, as when uploads are suppressed
+     * by configuration.
+     */
+    QueueUploader withDeleteWithoutUploading(boolean deleteWithoutUploading) {
+        this.deleteWithoutUploading = deleteWithoutUploading;
+        return this;
+    }
+
+    QueueUploader withDelays(long idleMillis, long minBackoffMillis) {
+        this.idleMillis = idleMillis;
+        this.minBackoffMillis = minBackoffMillis;
+        return this;
+    }
+
+    /**
+     * Lets the uploader know that files were added, so it needn't wait out an idle delay.
+     */
+    void wakeup() {
+        synchronized (lock) {
+            wakeup = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Uploads until cancelled, or, if stopWhenEmpty, until the queue is empty.
+     * @param cancelled polled between uploads.
+     * @param stopWhenEmpty if true, returns once nothing is left to upload, or what is left has
+     *                      failed MAX_TRIES_WHEN_STOPPING times.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    void run(BooleanSupplier cancelled, boolean stopWhenEmpty) throws InterruptedException {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(maxConcurrent, r -> {
+            Thread t = new Thread(r, "statistics-upload-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        Semaphore slots = new Semaphore(maxConcurrent);
+        int maxFailures = stopWhenEmpty ? MAX_TRIES_WHEN_STOPPING : Integer.MAX_VALUE;
+        try {
+            while (!cancelled.getAsBoolean()) {
+                statusListener.accept(queue.getStatus());
+                if (!transport.isOnline() && !deleteWithoutUploading) {
+                    if (stopWhenEmpty) return;
+                    pause(idleMillis);
+                    continue;
+                }
+                long backoff = resumeAt.get() - System.currentTimeMillis();
+                if (backoff > 0) {
+                    pause(backoff);
+                    continue;
+                }
+                slots.acquire();
+                UploadQueue.Entry entry = queue.take(maxFailures);
+                if (entry == null) {
+                    slots.release();
+                    boolean uploading = slots.availablePermits() < maxConcurrent;
+                    long nextRetry = queue.nextRetryTime(maxFailures);
+                    if (stopWhenEmpty && !uploading && nextRetry == Long.MAX_VALUE) {
+                        return;
+                    }
+                    // Nothing ready. Wait for an upload to finish, a file to be added, or a file's
+                    // retry to come due.
+                    pause(Math.max(1, Math.min(idleMillis, nextRetry - System.currentTimeMillis())));
+                    continue;
+                }
+                executor.execute(() -> {
+                    try {
+                        upload(entry);
+                    } finally {
+                        slots.release();
+                        wakeup();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            statusListener.accept(queue.getStatus());
+        }
+    }
+
+    private void upload(UploadQueue.Entry entry) {
+        try {
+            if (deleteWithoutUploading) {
+                LOG.log(Level.INFO, "Upload suppressed by config; deleting " + entry.key);
+            } else if (entry.size > partSize) {
+                uploadMultipart(entry);
+            } else {
+                transport.putObject(entry.key, entry.file);
+            }
+            queue.remove(entry);
+            consecutiveFailures.set(0);
+            resumeAt.set(0);
+        } catch (IOException e) {
+            int failures = consecutiveFailures.incrementAndGet();
+            LOG.log(Level.INFO, String.format("Upload of %s failed (%d in a row)", entry.key, failures), e);
+            failed(entry, failures);
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Unexpected failure uploading " + entry.key, e);
+            failed(entry, consecutiveFailures.incrementAndGet());
+        }
+    }
+
+    /**
+     * Puts off the next upload, and the next try of this file, after a failure.
+     * @param failures the number of uploads in a row that have failed.
+     */
+    private void failed(UploadQueue.Entry entry, int failures) {
+        resumeAt.set(System.currentTimeMillis() + backoffMillis(failures));
+        queue.fail(entry, backoffMillis(entry.failures + 1));
+    }
+
+    private void uploadMultipart(UploadQueue.Entry entry) throws IOException {
+        try {
+            continueMultipart(entry);
+        } catch (UploadTransport.UploadExpiredException e) {
+            // Start again, from the first part.
+            LOG.log(Level.INFO, "Restarting expired upload of " + entry.key);
+            queue.startMultipart(entry, null);
+            continueMultipart(entry);
+        }
+    }
+
+    private void continueMultipart(UploadQueue.Entry entry) throws IOException {
+        if (entry.uploadId == null) {
+            queue.startMultipart(entry, transport.createMultipartUpload(entry.key));
+        }
+        int numParts = (int) ((entry.size + partSize - 1) / partSize);
+        for (int part = entry.partTags.size(); part < numParts; part++) {
+            long offset = part * partSize;
+            long length = Math.min(partSize, entry.size - offset);
+            String tag = transport.uploadPart(entry.key, entry.uploadId, part + 1, entry.file, offset, length);
+            queue.addPart(entry, tag);
+        }
+        transport.completeMultipartUpload(entry.key, entry.uploadId, entry.partTags);
+    }
+
+    /**
+     * @param failures the number of failures in a row.
+     * @return how long to wait before the next try.
+     */
+    private long backoffMillis(int failures) {
+        if (failures == 0) return 0;
+        long delay = minBackoffMillis << Math.min(failures - 1, 20);
+        delay = Math.min(delay, MAX_BACKOFF_MILLIS);
+        // Up to 25% jitter, so that several TB-Loaders that lost the same connection don't all return at once.
+        return delay + ThreadLocalRandom.current().nextLong(delay / 4 + 1);
+    }
+
+    private void pause(long millis) throws InterruptedException {
+        synchronized (lock) {
+            if (!wakeup) {
+                lock.wait(millis);
+            }
+            wakeup = false;
+        }
+    }
+}
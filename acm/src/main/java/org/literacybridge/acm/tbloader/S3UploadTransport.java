@@ -0,0 +1,129 @@
+package org.literacybridge.acm.tbloader;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.google.common.collect.ImmutableSet;
+import org.literacybridge.acm.cloud.Authenticator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uploads to an S3 bucket, with the credentials of the signed-in user.
+ *
+ * When a request fails because the session's credentials have expired, the session is refreshed,
+ * but only once for all of the requests that failed with the same credentials.
+ */
+class S3UploadTransport implements UploadTransport {
+    // Errors that new credentials may cure.
+    private static final Set<String> SESSION_ERROR_CODES = ImmutableSet.of("ExpiredToken", "InvalidToken",
+        "TokenRefreshRequired", "InvalidAccessKeyId");
+
+    private final String bucket;
+    // Counts the refreshes, so that a failure with credentials already replaced doesn't refresh again.
+    private final AtomicInteger session = new AtomicInteger();
+
+    S3UploadTransport(String bucket) {
+        this.bucket = bucket;
+    }
+
+    @Override
+    public boolean isOnline() {
+        return Authenticator.getInstance().isOnline() && Authenticator.getInstance().isAuthenticated();
+    }
+
+    @Override
+    public void putObject(String key, File file) throws IOException {
+        int requestSession = session.get();
+        try {
+            getS3Client().putObject(new PutObjectRequest(bucket, key, file));
+        } catch (RuntimeException e) {
+            throw failed("upload " + key, e, requestSession);
+        }
+    }
+
+    @Override
+    public String createMultipartUpload(String key) throws IOException {
+        int requestSession = session.get();
+        try {
+            return getS3Client().initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key)).getUploadId();
+        } catch (RuntimeException e) {
+            throw failed("start upload of " + key, e, requestSession);
+        }
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, File file, long offset, long length)
+        throws IOException
+    {
+        int requestSession = session.get();
+        try {
+            UploadPartRequest request = new UploadPartRequest()
+                .withBucketName(bucket)
+                .withKey(key)
+                .withUploadId(uploadId)
+                .withPartNumber(partNumber)
+                .withFile(file)
+                .withFileOffset(offset)
+                .withPartSize(length);
+            return getS3Client().uploadPart(request).getETag();
+        } catch (RuntimeException e) {
+            throw failed("upload part " + partNumber + " of " + key, e, requestSession);
+        }
+    }
+
+    @Override
+    public void completeMultipartUpload(String key, String uploadId, List<String> partTags) throws IOException {
+        List<PartETag> eTags = new ArrayList<>();
+        for (int i = 0; i < partTags.size(); i++) {
+            eTags.add(new PartETag(i + 1, partTags.get(i)));
+        }
+        int requestSession = session.get();
+        try {
+            getS3Client().completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, eTags));
+        } catch (RuntimeException e) {
+            throw failed("complete upload of " + key, e, requestSession);
+        }
+    }
+
+    private AmazonS3 getS3Client() throws IOException {
+        if (!Authenticator.getInstance().isAuthenticated()) {
+            throw new IOException("Not signed in");
+        }
+        return Authenticator.getInstance().getAwsInterface().getS3Client();
+    }
+
+    /**
+     * @param requestSession the value of session when the failed request was made.
+     * @return the exception to be thrown for the failure.
+     */
+    private IOException failed(String what, RuntimeException e, int requestSession) {
+        String errorCode = e instanceof AmazonS3Exception ? ((AmazonS3Exception) e).getErrorCode() : null;
+        if ("NoSuchUpload".equals(errorCode)) {
+            return new UploadExpiredException("Unable to " + what, e);
+        }
+        if (SESSION_ERROR_CODES.contains(errorCode)) {
+            refreshSession(requestSession);
+        }
+        return new IOException("Unable to " + what, e);
+    }
+
+    /**
+     * Refreshes the session, unless another failed request already has.
+     */
+    private synchronized void refreshSession(int requestSession) {
+        if (session.get() == requestSession) {
+            Authenticator.getInstance().getAwsInterface().refreshSession();
+            session.incrementAndGet();
+        }
+    }
+}
@@ -82,6 +82,7 @@ public class TBLoader extends JFrame {
         private boolean allowPackageChoice = false;
         private boolean suppressDosTools = false;
         private boolean offerTbV2FirmwareWithStats = false;
+        private boolean backgroundZip = false;
 
         public boolean hasTbV2Devices() { return hasTbV2Devices; }
         public boolean hasDfuSupport() { return hasDfuSupport; }
@@ -89,6 +90,7 @@ public class TBLoader extends JFrame {
         public boolean allowPackageChoice() { return allowPackageChoice; }
         public boolean isSuppressDosTools() { return suppressDosTools; }
         public boolean offerTbV2FirmwareWithStats() { return offerTbV2FirmwareWithStats; }
+        public boolean isBackgroundZip() { return backgroundZip; }
     }
     final TbLoaderConfig tbLoaderConfig = new TbLoaderConfig();
 
@@ -208,6 +210,8 @@ public class TBLoader extends JFrame {
     private DeploymentChooser deploymentChooser;
     private FsRootMonitor fsRootMonitor;
     private StatisticsUploader statisticsUploader;
+    // This station's Talking Books share the temp directory, so they share a zipper.
+    private final TBLoaderCore.BackgroundZipper backgroundZipper = new TBLoaderCore.BackgroundZipper("tbdata-zip");
 
     ProgramSpec getProgramSpec() {
         assert(programSpec != null);
@@ -223,8 +227,16 @@ public class TBLoader extends JFrame {
     }
 
     static class WindowEventHandler extends WindowAdapter {
+        private final TBLoaderCore.BackgroundZipper backgroundZipper;
+
+        WindowEventHandler(TBLoaderCore.BackgroundZipper backgroundZipper) {
+            this.backgroundZipper = backgroundZipper;
+        }
+
         @Override
         public void windowClosing(WindowEvent evt) {
+            // Don't lose a Talking Book's data that is still being zipped.
+            backgroundZipper.await();
             OperationLog.log("TbLoaderShutdown").finish();
             LOG.log(Level.INFO, "closing app");
             System.exit(0);
@@ -276,7 +288,7 @@ public class TBLoader extends JFrame {
 
         OsUtils.enableOSXQuitStrategy();
         setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
-        this.addWindowListener(new WindowEventHandler());
+        this.addWindowListener(new WindowEventHandler(backgroundZipper));
         this.backgroundColor = getBackground();
         SwingUtils.setLookAndFeel("seaglass");
 
@@ -558,6 +570,9 @@ public class TBLoader extends JFrame {
                 } catch(Exception ignored) { }
             }
 
+            // Zip the collected data after the Talking Book is released, so it can be unplugged sooner.
+            valStr = dbConfig.getProperty("BACKGROUND_ZIP", "FALSE");
+            this.tbLoaderConfig.backgroundZip = Boolean.parseBoolean(valStr);
             valStr = dbConfig.getProperty("TEST_DEPLOYMENT_STRATEGY");
             if (valStr != null) {
                 try {
@@ -727,6 +742,8 @@ public class TBLoader extends JFrame {
      * @return the new TBLoaderConfig.
      */
     private TBLoaderConfig getTbLoaderConfig() {
+        // The previous Talking Book's data may still be zipping into the work directory.
+        backgroundZipper.await();
         commandLineUtils = new CommandLineUtils(softwareDir);
         String collectionTimestamp = ISO8601.format(new Date());
         File collectedDataDirectory = new File(collectionWorkDir, collectionTimestamp);
@@ -743,6 +760,15 @@ public class TBLoader extends JFrame {
         return builder.build();
     }
 
+    /**
+     * Queues the collected data for upload. With background zips, the data may not be zipped yet,
+     * so it is queued after the zip is written.
+     */
+    private void enqueueCollectedData() {
+        String keyPrefix = getUploadKeyPrefix(currentTbDevice);
+        backgroundZipper.runAfter(() -> statisticsUploader.zipAndEnqueue(collectionWorkDir, keyPrefix));
+    }
+
     /**
      * Update the status line for pending uploads. If no pending uploads, hides the status
      * line.
@@ -1243,6 +1269,7 @@ public class TBLoader extends JFrame {
                     .withOldDeploymentInfo(oldDeploymentInfo)
 //                    .withLocation(currentLocationChooser.getSelectedItem().toString())
                     .withRefreshFirmware(false)
+                    .withBackgroundZipper(TBLoader.this.tbLoaderConfig.isBackgroundZip() ? backgroundZipper : null)
                     .withStatsOnly()
                     .withProgressListener(tbLoaderPanel.getProgressDisplayManager())
                     .build();
@@ -1267,7 +1294,7 @@ public class TBLoader extends JFrame {
                     endTitle = "Failure";
                 }
                 onCopyFinished(endMsg, endTitle);
-                statisticsUploader.zipAndEnqueue(collectionWorkDir, getUploadKeyPrefix(currentTbDevice));
+                enqueueCollectedData();
             }
         }
 
@@ -1361,6 +1388,7 @@ public class TBLoader extends JFrame {
                     .withAcceptableFirmware(acceptableFirmwareVersions)
 //                    .withLocation(currentLocationChooser.getSelectedItem().toString())
                     .withRefreshFirmware(tbLoaderPanel.isForceFirmware())
+                    .withBackgroundZipper(TBLoader.this.tbLoaderConfig.isBackgroundZip() ? backgroundZipper : null)
                     .withProgressListener(tbLoaderPanel.getProgressDisplayManager())
                     .build();
                 result = tbLoader.update();
@@ -1441,7 +1469,7 @@ public class TBLoader extends JFrame {
                     }
                 }
                 onCopyFinished(endMsg, endTitle, endMessageType);
-                statisticsUploader.zipAndEnqueue(collectionWorkDir, getUploadKeyPrefix(currentTbDevice));
+                enqueueCollectedData();
             }
 
         }
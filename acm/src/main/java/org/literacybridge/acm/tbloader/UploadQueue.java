@@ -0,0 +1,340 @@
+package org.literacybridge.acm.tbloader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The files waiting in the upload queue directory, with an index kept beside the directory so
+ * that the directory needn't be scanned over and over.
+ *
+ * The key of a file is its path relative to the queue directory, with '/' separators; given a
+ * file collected-data/tbcd000c/20220110T085217.123Z.zip in the queue, it's uploaded to
+ * collected-data/tbcd000c/20220110T085217.123Z.zip in the bucket.
+ *
+ * The index holds one line per file, and the progress of multipart uploads, so that they can
+ * resume after the TB-Loader is restarted:
+ * # upload queue 2
+ * F ${size} ${key}
+ * M ${uploadId} ${tag1},${tag2},... ${key}    # parts uploaded so far, for a file listed above
+ * Changes are appended to the index as they happen, and a later line for a file replaces or adds
+ * to what the earlier ones said:
+ * P ${tag} ${key}                             # one more part uploaded
+ * X ${key}                                    # the file is gone from the queue
+ * The whole index is only rewritten when the queue is loaded, and when most of the index has
+ * been superseded. An uploadId or list of tags of "-" means none.
+ *
+ * The directory is scanned once, when the queue is loaded, in case files were put there some
+ * other way (or by an older TB-Loader). After that, files are added with add().
+ *
+ * A file whose upload fails isn't tried again until a delay, chosen by the uploader, has passed,
+ * so that one file that can't be uploaded doesn't hold up the others.
+ */
+class UploadQueue {
+    private static final Logger LOG = Logger.getLogger(UploadQueue.class.getName());
+    private static final String HEADER = "# upload queue 2";
+    // Indices of version 1 have only F and M lines.
+    private static final String HEADER_1 = "# upload queue 1";
+    // Rewrite the index when it has more than this many lines, and most of them are superseded.
+    private static final int MIN_RECORDS_TO_COMPACT = 1024;
+
+    /**
+     * One file in the queue.
+     */
+    static class Entry {
+        final String key;
+        final File file;
+        final long size;
+        // For multipart uploads.
+        String uploadId;
+        final List<String> partTags = new ArrayList<>();
+        // True while being uploaded.
+        boolean busy;
+        // Consecutive failed uploads, and when the file may be tried again.
+        int failures;
+        long retryAfter;
+
+        Entry(String key, File file, long size) {
+            this.key = key;
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    private final File queueDir;
+    private final File indexFile;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    // Lines in the index file, including those superseded by later ones.
+    private int indexRecords = 0;
+
+    UploadQueue(File queueDir) {
+        this.queueDir = queueDir;
+        this.indexFile = new File(queueDir.getParentFile(), queueDir.getName() + ".index");
+    }
+
+    /**
+     * Reads the index, and reconciles it with the files actually in the queue directory.
+     */
+    synchronized void load() {
+        entries.clear();
+        if (indexFile.exists()) {
+            try {
+                readIndex();
+            } catch (IOException e) {
+                // The multipart uploads will be started again, but nothing is lost.
+                LOG.log(Level.WARNING, "Ignoring unreadable upload queue index " + indexFile, e);
+                entries.clear();
+            }
+        }
+        Map<String, Entry> previous = new LinkedHashMap<>(entries);
+        entries.clear();
+        List<File> files = new ArrayList<>();
+        addFiles(queueDir, files, true);
+        for (File file : files) {
+            String key = keyOf(file);
+            Entry entry = previous.get(key);
+            if (entry == null || entry.size != file.length()) {
+                entry = new Entry(key, file, file.length());
+            }
+            entries.put(key, entry);
+        }
+        save();
+    }
+
+    /**
+     * Adds a file, already in the queue directory, to the queue.
+     * @param file to be added.
+     */
+    synchronized void add(File file) {
+        String key = keyOf(file);
+        if (!entries.containsKey(key)) {
+            Entry entry = new Entry(key, file, file.length());
+            entries.put(key, entry);
+            append("F " + entry.size + ' ' + key);
+        }
+    }
+
+    /**
+     * Takes the next file to be uploaded: the smallest that isn't already being uploaded, or
+     * waiting to be retried. Files that have failed come after those that haven't.
+     * @return the entry, or null if nothing is ready.
+     */
+    synchronized Entry take() {
+        return take(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Takes the next file to be uploaded, as take(), of those that have failed fewer times than
+     * the given limit.
+     * @param maxFailures files that have failed this many times aren't taken.
+     * @return the entry, or null if nothing is ready.
+     */
+    synchronized Entry take(int maxFailures) {
+        long now = System.currentTimeMillis();
+        Entry next = entries.values().stream()
+            .filter(e -> !e.busy && e.failures < maxFailures && e.retryAfter <= now)
+            .min(Comparator.<Entry>comparingInt(e -> e.failures).thenComparingLong(e -> e.size))
+            .orElse(null);
+        if (next != null) {
+            next.busy = true;
+        }
+        return next;
+    }
+
+    /**
+     * When the next file that's waiting to be retried may be taken.
+     * @param maxFailures files that have failed this many times aren't counted.
+     * @return the time, or Long.MAX_VALUE if no file (not already being uploaded) may be taken.
+     */
+    synchronized long nextRetryTime(int maxFailures) {
+        return entries.values().stream()
+            .filter(e -> !e.busy && e.failures < maxFailures)
+            .mapToLong(e -> e.retryAfter)
+            .min()
+            .orElse(Long.MAX_VALUE);
+    }
+
+    /**
+     * The file was uploaded (or is otherwise no longer wanted); delete it.
+     */
+    synchronized void remove(Entry entry) {
+        entries.remove(entry.key);
+        if (entry.file.exists() && !entry.file.delete()) {
+            LOG.log(Level.WARNING, "Unable to delete uploaded file " + entry.file);
+        }
+        // Tidy up the directory, as the old scanning did.
+        File dir = entry.file.getParentFile();
+        while (dir != null && !dir.equals(queueDir) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+        append("X " + entry.key);
+    }
+
+    /**
+     * The upload failed, or was interrupted; it may be tried again once the delay has passed.
+     * @param retryDelayMillis how long to wait before trying the file again.
+     */
+    synchronized void fail(Entry entry, long retryDelayMillis) {
+        entry.failures++;
+        entry.retryAfter = System.currentTimeMillis() + retryDelayMillis;
+        entry.busy = false;
+    }
+
+    /**
+     * Records the start of a multipart upload, forgetting any earlier one.
+     */
+    synchronized void startMultipart(Entry entry, String uploadId) {
+        entry.uploadId = uploadId;
+        entry.partTags.clear();
+        append("M " + (uploadId == null ? "-" : uploadId) + " - " + entry.key);
+    }
+
+    /**
+     * Records a part of a multipart upload as sent.
+     */
+    synchronized void addPart(Entry entry, String partTag) {
+        entry.partTags.add(partTag);
+        append("P " + partTag + ' ' + entry.key);
+    }
+
+    synchronized StatisticsUploader.UploadStatus getStatus() {
+        long bytes = 0;
+        for (Entry entry : entries.values()) {
+            bytes += entry.size;
+        }
+        return new StatisticsUploader.UploadStatus(entries.size(), bytes);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private String keyOf(File file) {
+        String key = queueDir.toPath().toAbsolutePath().relativize(file.toPath().toAbsolutePath()).toString();
+        return key.replace('\\', '/');
+    }
+
+    private void readIndex() throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new FileInputStream(indexFile), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if (!HEADER.equals(line) && !HEADER_1.equals(line)) {
+                throw new IOException("Not an upload queue index");
+            }
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                String[] parts = line.split(" ", line.startsWith("M ") ? 4 : line.startsWith("X ") ? 2 : 3);
+                String key = parts[parts.length - 1];
+                Entry entry = entries.get(key);
+                if (parts[0].equals("F") && parts.length == 3) {
+                    entries.put(key, new Entry(key, new File(queueDir, key), Long.parseLong(parts[1])));
+                } else if (parts[0].equals("X") && parts.length == 2) {
+                    entries.remove(key);
+                } else if (parts.length < 3 || !parts[0].equals("M") && !parts[0].equals("P")) {
+                    throw new IOException("Malformed upload queue line: " + line);
+                } else if (entry == null) {
+                    // The file was removed.
+                } else if (parts[0].equals("M") && parts.length == 4) {
+                    entry.uploadId = parts[1].equals("-") ? null : parts[1];
+                    entry.partTags.clear();
+                    if (!parts[2].equals("-")) {
+                        entry.partTags.addAll(Arrays.asList(parts[2].split(",")));
+                    }
+                } else if (parts[0].equals("P")) {
+                    entry.partTags.add(parts[1]);
+                } else {
+                    throw new IOException("Malformed upload queue line: " + line);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Writes the index, under a temporary name first, so that a crash never leaves half an index.
+     */
+    private void save() {
+        File partial = new File(indexFile.getParentFile(), indexFile.getName() + ".partial");
+        try {
+            try (PrintWriter writer = new PrintWriter(
+                new OutputStreamWriter(new FileOutputStream(partial), StandardCharsets.UTF_8))) {
+                writer.print(HEADER + "\n");
+                for (Entry entry : entries.values()) {
+                    writer.print("F " + entry.size + ' ' + entry.key + '\n');
+                }
+                for (Entry entry : entries.values()) {
+                    if (entry.uploadId != null) {
+                        String tags = entry.partTags.isEmpty() ? "-" : String.join(",", entry.partTags);
+                        writer.print("M " + entry.uploadId + ' ' + tags + ' ' + entry.key + '\n');
+                    }
+                }
+            }
+            Files.move(partial.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            indexRecords = 0;
+            for (Entry entry : entries.values()) {
+                indexRecords += entry.uploadId != null ? 2 : 1;
+            }
+        } catch (IOException e) {
+            // The index will be rebuilt from the directory next time.
+            LOG.log(Level.WARNING, "Unable to write upload queue index " + indexFile, e);
+        }
+    }
+
+    /**
+     * Appends a line to the index, or rewrites the index if it is mostly superseded lines.
+     */
+    private void append(String record) {
+        indexRecords++;
+        if (!indexFile.exists() || indexRecords > MIN_RECORDS_TO_COMPACT && indexRecords > 4 * entries.size()) {
+            save();
+            return;
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(indexFile, true), StandardCharsets.UTF_8)) {
+            writer.write(record + '\n');
+        } catch (IOException e) {
+            // The index will be rebuilt from the directory next time.
+            LOG.log(Level.WARNING, "Unable to append to upload queue index " + indexFile, e);
+        }
+    }
+
+    /**
+     * Helper for recursively getting the files in a directory.
+     *
+     * @param file        a file to be added, or a directory to be scanned recursively.
+     * @param list        of files to be appended to.
+     * @param removeEmpty if true, rmdir empty directories.
+     */
+    private static void addFiles(File file, List<File> list, boolean removeEmpty) {
+        if (!file.exists()) return;
+        if (file.isDirectory()) {
+            File[] dirList = file.listFiles();
+            if (dirList == null) return;
+            if (dirList.length == 0 && removeEmpty) {
+                file.delete();
+            } else {
+                for (File f : dirList)
+                    addFiles(f, list, removeEmpty);
+            }
+        } else {
+            list.add(file);
+        }
+    }
+}
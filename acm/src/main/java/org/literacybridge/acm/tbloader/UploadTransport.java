@@ -0,0 +1,60 @@
+package org.literacybridge.acm.tbloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Where the statistics uploader sends files. The real one is S3UploadTransport; tests use a stand-in.
+ *
+ * Large files are sent as multipart uploads, whose parts may be sent over several sessions: the
+ * upload id and the tags of the parts already sent are kept in the upload queue's index.
+ */
+interface UploadTransport {
+    /**
+     * @return true if it's worth trying to upload now.
+     */
+    boolean isOnline();
+
+    void putObject(String key, File file) throws IOException;
+
+    /**
+     * Starts a multipart upload.
+     * @param key of the object to be created.
+     * @return the id of the upload.
+     */
+    String createMultipartUpload(String key) throws IOException;
+
+    /**
+     * Uploads one part of a multipart upload.
+     * @param key of the object.
+     * @param uploadId from createMultipartUpload.
+     * @param partNumber of the part, starting at 1.
+     * @param file containing the part.
+     * @param offset of the part in the file.
+     * @param length of the part.
+     * @return the part's tag, needed to complete the upload.
+     * @throws UploadExpiredException if the upload is no longer known, and must be started again.
+     */
+    String uploadPart(String key, String uploadId, int partNumber, File file, long offset, long length)
+        throws IOException;
+
+    /**
+     * Completes a multipart upload.
+     * @param partTags the tags of the parts, in order.
+     * @throws UploadExpiredException if the upload is no longer known, and must be started again.
+     */
+    void completeMultipartUpload(String key, String uploadId, List<String> partTags) throws IOException;
+
+    /**
+     * Thrown when a multipart upload has been forgotten by the server, as when it was abandoned
+     * for too long.
+     */
+    class UploadExpiredException extends IOException {
+        private static final long serialVersionUID = -6849247185019585120L;
+
+        UploadExpiredException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -7,8 +7,10 @@ import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 import org.literacybridge.acm.Constants;
 import org.literacybridge.acm.config.ACMConfiguration;
+import org.literacybridge.acm.config.DBConfiguration;
 import org.literacybridge.acm.gui.CommandLineParams;
 import org.literacybridge.acm.importexport.AudioImporter;
+import org.literacybridge.acm.repository.AudioItemRepository;
 import org.literacybridge.acm.store.AudioItem;
 import org.literacybridge.acm.store.Metadata;
 import org.literacybridge.acm.store.MetadataSpecification;
@@ -27,9 +29,15 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -47,6 +55,8 @@ public class FeedbackImporter {
   private static final Set<String> EXTENSIONS_TO_IMPORT = new HashSet<>(
           Collections.singletonList("a18"));
   private static final String FEEDBACK_IMPORT_REPORT = "feedbackImport.txt";
+  // Number of imported items to write to the metadata store in one transaction.
+  private static final int COMMIT_BATCH_SIZE = 100;
   private final Params params;
   // Cache for includelisted content updates (only includelisted updates are to be imported).
   private Map<String, Includelister> deploymentsIncludelistCache = new HashMap<>();
@@ -371,44 +381,205 @@ public class FeedbackImporter {
 
   /**
    * Imports a set of files into the currently opened Acm project.
+   *
+   * The import is a pipeline of stages, with bounded queues between them:
+   *  - read metadata: creates the audio items, one file at a time, on a thread of its own.
+   *  - convert: converts the audio to A18, on the repository's conversion threads.
+   *  - tweak: adjusts categories for the recording's duration.
+   *  - commit: writes the items to the metadata store, several at a time.
+   * Tweaks and commits happen on this thread, in the order of the files, so the results are the
+   * same as importing the files one at a time. Each group of items is written to disk by its own
+   * commit, so a file is only reported as imported once it is safely in the store.
+   *
    * @param filesToImport A Set<File> of files to import.
    * @return True if all imported with no error, False if one or more errors.
    */
   private ImportResults importFiles(Set<File> filesToImport) {
     ImportResults results = new ImportResults();
-    int count = 0;
-    // Array hack because the variable must final. Not the contents, though.
-    final ImportResults.TWEAKS[] tweaks = new ImportResults.TWEAKS[1];
+    List<File> files = new ArrayList<>(new TreeSet<>(filesToImport));
     Metadata metadata = new Metadata();
-    logger.info(String.format("      Importing %d files", filesToImport.size()));
+    logger.info(String.format("      Importing %d files", files.size()));
 
+    DBConfiguration dbConfig = ACMConfiguration.getInstance().getCurrentDB();
     AudioImporter importer = AudioImporter.getInstance();
-    MetadataStore store = ACMConfiguration.getInstance().getCurrentDB().getMetadataStore();
-
-    for (File file : filesToImport) {
+    MetadataStore store = dbConfig.getMetadataStore();
+    AudioItemRepository.ConversionBatch conversions = dbConfig.getRepository().newConversionBatch();
+
+    StageStats readStage = results.stage("read metadata");
+    StageStats convertStage = results.stage("convert");
+    StageStats tweakStage = results.stage("tweak");
+    StageStats commitStage = results.stage("commit");
+    long startTime = System.nanoTime();
+
+    // The queue bounds the number of conversions in progress, and so the number of items in memory.
+    BlockingQueue<PendingFile> converting = new ArrayBlockingQueue<>(2 * dbConfig.getConversionThreads());
+    Thread reader = new Thread(() -> {
       try {
+        for (File file : files) {
+          PendingFile pending = new PendingFile(file);
+          long stageStart = System.nanoTime();
+          try {
+            pending.item = importer.newAudioItemFromFile(file);
+            if (pending.item != null) {
+              pending.conversion = conversions.addAudioItem(pending.item, file);
+            }
+          } catch (Exception e) {
+            pending.error = e;
+          }
+          readStage.finished(stageStart);
+          converting.put(pending);
+        }
+        converting.put(PendingFile.END);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, "feedback-read-metadata");
+    reader.setDaemon(true);
+    reader.start();
+
+    List<PendingFile> toCommit = new ArrayList<>();
+    int count = 0;
+    try {
+      PendingFile pending;
+      while ((pending = converting.take()) != PendingFile.END) {
+        File file = pending.file;
         if (params.verbose) {
-          System.out.printf("Importing %d of %d: %s%n", ++count, filesToImport.size(), file.getName());
-          logger.info(String.format("        Importing %d of %d: %s", ++count, filesToImport.size(), file.getName()));
+          System.out.printf("Importing %d of %d: %s%n", ++count, files.size(), file.getName());
+          logger.info(String.format("        Importing %d of %d: %s", count, files.size(), file.getName()));
+        }
+        try {
+          if (pending.error != null) {
+            throw pending.error;
+          }
+          if (pending.item == null) {
+            // Already in the database. Nothing to commit, but reported in order with the others.
+            System.out.printf("File '%s' is already in database; skipping%n", file.getName());
+          } else {
+            try {
+              pending.conversion.get();
+            } catch (ExecutionException e) {
+              throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+            convertStage.finishedBy(startTime);
+
+            long stageStart = System.nanoTime();
+            pending.item.getMetadata().addValuesFromOtherWithExclusions(metadata);
+            pending.tweaks = adjustCategoriesForDuration(pending.item);
+            tweakStage.finished(stageStart);
+          }
+          toCommit.add(pending);
+        } catch (InterruptedException e) {
+          throw e;
+        } catch (Exception e) {
+          fileFailed(results, file, e);
+        }
+        if (toCommit.size() >= COMMIT_BATCH_SIZE) {
+          commitFiles(store, toCommit, results, commitStage);
         }
-        // Reset the value, because the lambda may not be called, if the file is already in DB.
-        tweaks[0] = ImportResults.TWEAKS.NO_CHANGE;
-        importer.importAudioItemFromFile(file,
-                            (item)->{
-                                item.getMetadata().addValuesFromOtherWithExclusions(metadata);
-                                tweaks[0] = adjustCategoriesForDuration(item);
-                            });
-        results.fileImported(file.getName(), tweaks[0]);
-      } catch (Exception e) {
-        System.err.printf("Failed to import '%s': %s%n", file.getName(), e.getMessage());
-        logger.info(String.format("Failed to import '%s': %s", file.getName(), e.getMessage()));
-        results.fileFailedToImport(file.getName());
       }
+      commitFiles(store, toCommit, results, commitStage);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      reader.interrupt();
     }
 
+    results.importNanos += System.nanoTime() - startTime;
     return results;
   }
 
+  /**
+   * Commits the pending items to the store in one transaction. If that fails, commits them one
+   * at a time, so that one bad item can't fail the others.
+   */
+  private static void commitFiles(MetadataStore store, List<PendingFile> toCommit,
+      ImportResults results, StageStats commitStage) {
+    if (toCommit.isEmpty()) return;
+    long stageStart = System.nanoTime();
+    AudioItem[] items = toCommit.stream()
+        .filter(p -> p.item != null)
+        .map(p -> p.item)
+        .toArray(AudioItem[]::new);
+    try {
+      store.commit(items);
+      for (PendingFile pending : toCommit) {
+        results.fileImported(pending.file.getName(), pending.tweaks);
+      }
+    } catch (Exception batchException) {
+      for (PendingFile pending : toCommit) {
+        try {
+          if (pending.item != null) store.commit(pending.item);
+          results.fileImported(pending.file.getName(), pending.tweaks);
+        } catch (Exception e) {
+          fileFailed(results, pending.file, e);
+        }
+      }
+    }
+    commitStage.finished(stageStart, items.length);
+    toCommit.clear();
+  }
+
+  private static void fileFailed(ImportResults results, File file, Exception e) {
+    System.err.printf("Failed to import '%s': %s%n", file.getName(), e.getMessage());
+    logger.info(String.format("Failed to import '%s': %s", file.getName(), e.getMessage()));
+    results.fileFailedToImport(file.getName());
+  }
+
+  /**
+   * A file making its way through the import pipeline.
+   */
+  private static class PendingFile {
+    // Marks the end of the files.
+    static final PendingFile END = new PendingFile(null);
+
+    final File file;
+    AudioItem item;
+    Future<AudioItem> conversion;
+    Exception error;
+    ImportResults.TWEAKS tweaks = ImportResults.TWEAKS.NO_CHANGE;
+
+    PendingFile(File file) {
+      this.file = file;
+    }
+  }
+
+  /**
+   * Timing for one stage of the import pipeline. The busy time is the time spent in the stage;
+   * for the convert stage, which runs on several threads, it is the time until the last
+   * conversion finished.
+   */
+  private static class StageStats {
+    final String name;
+    int files = 0;
+    long busyNanos = 0;
+
+    StageStats(String name) {
+      this.name = name;
+    }
+
+    synchronized void finished(long startNanos) {
+      finished(startNanos, 1);
+    }
+
+    synchronized void finished(long startNanos, int n) {
+      files += n;
+      busyNanos += System.nanoTime() - startNanos;
+    }
+
+    /**
+     * For stages running on several threads: a file finished, and the stage has been busy since
+     * the given time.
+     */
+    synchronized void finishedBy(long startNanos) {
+      files++;
+      busyNanos = Math.max(busyNanos, System.nanoTime() - startNanos);
+    }
+
+    synchronized void add(StageStats other) {
+      files += other.files;
+      busyNanos += other.busyNanos;
+    }
+  }
+
   /**
    * Given a directory, recursively find all importable files within it.
    * @param dir The directory to search.
@@ -488,6 +659,13 @@ public class FeedbackImporter {
     List<String> updatesFailedToImport = new ArrayList<>();
     List<String> projectsSkipped = new ArrayList<>();
     List<String> updatesSkipped = new ArrayList<>();
+    // Timing of the import pipeline's stages, in pipeline order.
+    Map<String, StageStats> stages = new LinkedHashMap<>();
+    long importNanos = 0;
+
+    StageStats stage(String name) {
+      return stages.computeIfAbsent(name, StageStats::new);
+    }
 
     void fileImported(String filename) {
       fileImported(filename, TWEAKS.NO_CHANGE);
@@ -538,6 +716,10 @@ public class FeedbackImporter {
       filesTooShort += moreResults.filesTooShort;
       filesTooLong += moreResults.filesTooLong;
       filesIndeterminate += moreResults.filesIndeterminate;
+      for (StageStats stats : moreResults.stages.values()) {
+        stage(stats.name).add(stats);
+      }
+      importNanos += moreResults.importNanos;
       return this;
     }
     public boolean isSuccess() {
@@ -615,6 +797,7 @@ public class FeedbackImporter {
         reportDetailLine("unknown project(s) skipped",
                 projectsSkipped);
         reportDetailLine("deferred update(s) skipped", updatesSkipped);
+        reportTiming();
         reportLine(String.format("  Return code: %d", getExitCode()));
         if (html) {
           ps.print("</ul>");
@@ -622,6 +805,22 @@ public class FeedbackImporter {
         ps.flush();
       }
 
+      /**
+       * Print the time spent in each stage of the import, and the files per second through it.
+       */
+      private void reportTiming() {
+        if (importNanos == 0) return;
+        List<String> details = new ArrayList<>();
+        for (StageStats stats : stages.values()) {
+          double seconds = stats.busyNanos / 1e9;
+          details.add(String.format("%-14s %5d file(s) %8.1f s %8.1f files/s", stats.name,
+              stats.files, seconds, seconds > 0 ? stats.files / seconds : 0));
+        }
+        double seconds = importNanos / 1e9;
+        reportDetailLine(String.format("import stage(s), %.1f s, %.1f files/s overall", seconds,
+            seconds > 0 ? filesImported.size() / seconds : 0), details);
+      }
+
       /**
        * Print a report line with optional details. If html format, surround with
        * <li></li>, and place any details in a <ul></ul>
@@ -0,0 +1,117 @@
+package org.literacybridge.acm.audioconverter.api;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConversionCacheTest {
+    private static final AudioConversionFormat MP3 = new MP3Format(128, 16000, 1);
+    private static final AudioConversionFormat WAV = new WAVFormat(128, 16000, 1);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testMissThenHit() throws IOException {
+        ConversionCache cache = new ConversionCache(tmp.newFolder("cache"), 1024 * 1024);
+        File source = file("source.wav", 1000, (byte) 1);
+        File converted = file("converted.mp3", 500, (byte) 2);
+
+        String key = cache.keyFor(source, MP3);
+        File target = new File(tmp.getRoot(), "target.mp3");
+        assertFalse(cache.restore(key, target));
+        cache.store(key, converted, 100);
+        assertTrue(cache.restore(key, target));
+        assertArrayEquals(Files.readAllBytes(converted.toPath()), Files.readAllBytes(target.toPath()));
+
+        ConversionCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.hits);
+        assertEquals(1, stats.misses);
+        assertEquals(500, stats.bytesSaved);
+        assertEquals(100, stats.millisSaved);
+    }
+
+    @Test
+    public void testKeyDependsOnContentAndFormat() throws IOException {
+        ConversionCache cache = new ConversionCache(tmp.newFolder("cache"), 1024 * 1024);
+        File a = file("a.wav", 1000, (byte) 1);
+        File sameAsA = file("b.wav", 1000, (byte) 1);
+        File different = file("c.wav", 1000, (byte) 3);
+
+        assertEquals(cache.keyFor(a, MP3), cache.keyFor(sameAsA, MP3));
+        assertNotEquals(cache.keyFor(a, MP3), cache.keyFor(different, MP3));
+        assertNotEquals(cache.keyFor(a, MP3), cache.keyFor(a, WAV));
+    }
+
+    @Test
+    public void testSurvivesRestart() throws IOException {
+        File cacheDir = tmp.newFolder("cache");
+        ConversionCache cache = new ConversionCache(cacheDir, 1024 * 1024);
+        File source = file("source.wav", 1000, (byte) 1);
+        String key = cache.keyFor(source, MP3);
+        cache.store(key, file("converted.mp3", 500, (byte) 2), 100);
+
+        ConversionCache reopened = new ConversionCache(cacheDir, 1024 * 1024);
+        assertTrue(reopened.restore(key, new File(tmp.getRoot(), "target.mp3")));
+        assertEquals(1, reopened.getStats().entries);
+    }
+
+    @Test
+    public void testEvictsCheapestPerByteFirst() throws IOException {
+        // Room for two 4K entries, but not three.
+        ConversionCache cache = new ConversionCache(tmp.newFolder("cache"), 10 * 1024);
+        String expensive = cache.keyFor(file("expensive.wav", 100, (byte) 1), MP3);
+        String cheap = cache.keyFor(file("cheap.wav", 100, (byte) 2), MP3);
+        String newest = cache.keyFor(file("newest.wav", 100, (byte) 3), MP3);
+
+        cache.store(expensive, file("expensive.mp3", 4096, (byte) 1), 5000);
+        cache.store(cheap, file("cheap.mp3", 4096, (byte) 2), 10);
+        cache.store(newest, file("newest.mp3", 4096, (byte) 3), 10);
+
+        File target = new File(tmp.getRoot(), "target.mp3");
+        assertTrue(cache.restore(expensive, target));
+        assertFalse(cache.restore(cheap, target));
+        assertTrue(cache.restore(newest, target));
+        assertEquals(1, cache.getStats().evictions);
+    }
+
+    @Test
+    public void testEvictionsSurviveRestart() throws IOException {
+        File cacheDir = tmp.newFolder("cache");
+        ConversionCache cache = new ConversionCache(cacheDir, 10 * 1024);
+        String expensive = cache.keyFor(file("expensive.wav", 100, (byte) 1), MP3);
+        String cheap = cache.keyFor(file("cheap.wav", 100, (byte) 2), MP3);
+        String newest = cache.keyFor(file("newest.wav", 100, (byte) 3), MP3);
+        cache.store(expensive, file("expensive.mp3", 4096, (byte) 1), 5000);
+        cache.store(cheap, file("cheap.mp3", 4096, (byte) 2), 10);
+        cache.store(newest, file("newest.mp3", 4096, (byte) 3), 10);
+
+        // Without saveIndex(): the appended records alone rebuild the index.
+        ConversionCache reopened = new ConversionCache(cacheDir, 10 * 1024);
+        assertEquals(2, reopened.getStats().entries);
+        assertEquals(8192, reopened.getStats().sizeInBytes);
+        File target = new File(tmp.getRoot(), "target.mp3");
+        assertTrue(reopened.restore(expensive, target));
+        assertFalse(reopened.restore(cheap, target));
+        assertTrue(reopened.restore(newest, target));
+    }
+
+    private File file(String name, int size, byte fill) throws IOException {
+        byte[] data = new byte[size];
+        Arrays.fill(data, fill);
+        File file = new File(tmp.getRoot(), name);
+        Files.write(file.toPath(), data);
+        return file;
+    }
+}
@@ -0,0 +1,75 @@
+package org.literacybridge.acm.config;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.core.fs.ZipUnzip;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DbMirrorCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCacheIsReused() throws IOException {
+        File zip = makeZip("db1.zip", "segment zero");
+        DbMirrorCache cache = new DbMirrorCache(folder.newFolder("cache"));
+
+        assertFalse(cache.mirror(zip, new File(folder.getRoot(), "temp1")));
+        File temp2 = new File(folder.getRoot(), "temp2");
+        assertTrue(cache.mirror(zip, temp2));
+        assertEquals("segment zero", read(new File(temp2, "index/_0.cfs")));
+
+        // Same content, with a new time, as when the file is synced again.
+        assertTrue(zip.setLastModified(zip.lastModified() - 60_000));
+        assertTrue(cache.mirror(zip, new File(folder.getRoot(), "temp3")));
+
+        // Deleting a file from the temporary directory, as Lucene does, leaves the cache alone.
+        assertTrue(new File(temp2, "index/_0.cfs").delete());
+        assertTrue(cache.mirror(zip, new File(folder.getRoot(), "temp4")));
+    }
+
+    @Test
+    public void testChangesAreDetected() throws IOException {
+        File cacheDir = folder.newFolder("cache");
+        DbMirrorCache cache = new DbMirrorCache(cacheDir);
+        File zip = makeZip("db1.zip", "segment zero");
+        cache.mirror(zip, new File(folder.getRoot(), "temp1"));
+
+        // A different zip.
+        File zip2 = makeZip("db2.zip", "segment one!");
+        assertFalse(cache.mirror(zip2, new File(folder.getRoot(), "temp2")));
+
+        // A damaged cache file.
+        write(new File(cacheDir, "dbmirror/index/_0.cfs"), "segment 0ne!");
+        File temp3 = new File(folder.getRoot(), "temp3");
+        assertFalse(cache.mirror(zip2, temp3));
+        assertEquals("segment one!", read(new File(temp3, "index/_0.cfs")));
+    }
+
+    private File makeZip(String name, String content) throws IOException {
+        File dbDir = folder.newFolder(name + "-src");
+        write(new File(dbDir, "index/_0.cfs"), content);
+        write(new File(dbDir, "index/segments_1"), "commit");
+        File zip = new File(folder.getRoot(), name);
+        ZipUnzip.zip(dbDir, zip);
+        return zip;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
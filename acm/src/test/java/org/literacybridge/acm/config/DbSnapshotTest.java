@@ -0,0 +1,102 @@
+package org.literacybridge.acm.config;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.acm.sandbox.Sandbox;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DbSnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File acmDir;
+    private Sandbox sandbox;
+    private DbSnapshot dbSnapshot;
+
+    @Before
+    public void setUp() throws IOException {
+        acmDir = folder.newFolder("ACM-TEST");
+        sandbox = new Sandbox(acmDir, folder.newFolder("sandbox"));
+        dbSnapshot = new DbSnapshot(sandbox, acmDir);
+    }
+
+    @Test
+    public void testSaveAndRestore() throws IOException {
+        File dbDir = folder.newFolder("db1");
+        write(new File(dbDir, "index/_0.cfs"), "segment zero");
+        write(new File(dbDir, "index/segments_1"), "commit one");
+        write(new File(dbDir, "index/write.lock"), "");
+
+        DbSnapshot.Stats saved = dbSnapshot.save(dbDir, "db1.snapshot", folder.newFile("record1.txt"));
+        assertEquals(3, saved.files);
+        assertEquals(3, saved.filesTransferred);
+        assertTrue(sandbox.exists(new File(acmDir, "db1.snapshot")));
+
+        File restoredDir = new File(folder.getRoot(), "restored");
+        DbSnapshot.Stats restored = dbSnapshot.restore("db1.snapshot", restoredDir, folder.newFile("record2.txt"));
+        assertEquals(3, restored.files);
+        assertEquals("segment zero", read(new File(restoredDir, "index/_0.cfs")));
+        assertEquals("commit one", read(new File(restoredDir, "index/segments_1")));
+        assertEquals("", read(new File(restoredDir, "index/write.lock")));
+    }
+
+    @Test
+    public void testOnlyChangesAreSaved() throws IOException {
+        File dbDir = folder.newFolder("db");
+        File record = new File(folder.getRoot(), "record.txt");
+        write(new File(dbDir, "index/_0.cfs"), "segment zero");
+        write(new File(dbDir, "index/segments_1"), "commit one");
+        dbSnapshot.save(dbDir, "db1.snapshot", record);
+
+        // Open it again, as the ACM does, and make a change: a new segment and commit point.
+        File dbDir2 = new File(folder.getRoot(), "db2");
+        dbSnapshot.restore("db1.snapshot", dbDir2, record);
+        write(new File(dbDir2, "index/_1.cfs"), "segment one");
+        write(new File(dbDir2, "index/segments_2"), "commit two");
+        assertTrue(new File(dbDir2, "index/segments_1").delete());
+
+        DbSnapshot.Stats saved = dbSnapshot.save(dbDir2, "db2.snapshot", record);
+        assertEquals(3, saved.files);
+        assertEquals(2, saved.filesTransferred);
+        assertEquals("segment one".length() + "commit two".length(), saved.bytesTransferred);
+
+        // Only db2 is kept; the segment for segments_1 is no longer used by anything.
+        assertEquals(1, dbSnapshot.deleteUnreferencedSegments(Collections.singletonList("db2.snapshot")));
+        File dbDir3 = new File(folder.getRoot(), "db3");
+        dbSnapshot.restore("db2.snapshot", dbDir3, record);
+        assertEquals("segment zero", read(new File(dbDir3, "index/_0.cfs")));
+        assertEquals("segment one", read(new File(dbDir3, "index/_1.cfs")));
+        assertFalse(new File(dbDir3, "index/segments_1").exists());
+    }
+
+    @Test(expected = IOException.class)
+    public void testDamagedSegment() throws IOException {
+        File dbDir = folder.newFolder("db");
+        write(new File(dbDir, "index/_0.cfs"), "segment zero");
+        dbSnapshot.save(dbDir, "db1.snapshot", new File(folder.getRoot(), "record.txt"));
+        for (File segment : sandbox.inputFile(new File(acmDir, DbSnapshot.SEGMENTS_DIR).toPath()).listFiles()) {
+            write(segment, "truncated");
+        }
+        dbSnapshot.restore("db1.snapshot", new File(folder.getRoot(), "restored"), new File(folder.getRoot(), "r.txt"));
+    }
+
+    private static void write(File file, String content) throws IOException {
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,200 @@
+package org.literacybridge.acm.deployment;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.core.tbloader.ContentManifest;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ContentAddressedDeploymentsTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final String DEPLOYMENT = "TEST-21-3";
+
+    /**
+     * The published store, counting what is fetched from it, as if it were the cloud.
+     */
+    private static class CountingStore extends DirectoryContentStore {
+        final List<String> fetched = Collections.synchronizedList(new ArrayList<>());
+
+        CountingStore(File root) {
+            super(root);
+        }
+
+        @Override
+        public void getObject(String hash, File target) throws IOException {
+            fetched.add(hash);
+            super.getObject(hash, target);
+        }
+    }
+
+    private final Random random = new Random(7);
+
+    private File stageContent(File stagingDir) throws IOException {
+        File contentDir = new File(stagingDir, "content");
+        File deploymentDir = new File(contentDir, DEPLOYMENT);
+        File audioDir = new File(deploymentDir, "messages/audio");
+        assertTrue(audioDir.mkdirs());
+        assertTrue(new File(deploymentDir, "images/empty").mkdirs());
+        for (int i = 0; i < 20; i++) {
+            write(new File(audioDir, "msg" + i + ".a18"), randomBytes(10000 + i));
+        }
+        // Two files with the same content are one object.
+        byte[] prompt = randomBytes(5000);
+        write(new File(deploymentDir, "images/1.a18"), prompt);
+        write(new File(deploymentDir, "images/2.a18"), prompt);
+        // Another deployment in the staging content isn't published.
+        File other = new File(contentDir, "OTHER-21-1");
+        assertTrue(other.mkdirs());
+        write(new File(other, "other.txt"), randomBytes(100));
+        return contentDir;
+    }
+
+    @Test
+    public void testPublishAndDeltaFetch() throws Exception {
+        File stagingDir = tmp.newFolder("staging");
+        File contentDir = stageContent(stagingDir);
+        CountingStore published = new CountingStore(tmp.newFolder("TB-Loaders"));
+
+        ContentManifest manifestA = ContentAddressedDeployments.publish(contentDir,
+            Collections.singletonList(DEPLOYMENT), DEPLOYMENT + "-a", published);
+        assertNotNull(published.getManifest(DEPLOYMENT + "-a"));
+        assertNull(published.getManifest(DEPLOYMENT + "-b"));
+        assertNull(manifestA.get("content/OTHER-21-1/other.txt"));
+        assertTrue(manifestA.get("content/" + DEPLOYMENT + "/images/empty/").isDirectory());
+
+        // First fetch: everything, but the duplicated prompt only once.
+        File localProjectDir = tmp.newFolder("local");
+        DirectoryContentStore cache = new DirectoryContentStore(localProjectDir);
+        fetch(published, DEPLOYMENT + "-a", localProjectDir, cache);
+        assertEquals(21, published.fetched.size());
+        assertSameTree(new File(contentDir, DEPLOYMENT), new File(localProjectDir, "content/" + DEPLOYMENT));
+        assertTrue(new File(localProjectDir, "content/" + DEPLOYMENT + "/images/empty").isDirectory());
+
+        // Revision b changes one message.
+        write(new File(contentDir, DEPLOYMENT + "/messages/audio/msg3.a18"), randomBytes(7777));
+        ContentAddressedDeployments.publish(contentDir, Collections.singletonList(DEPLOYMENT),
+            DEPLOYMENT + "-b", published);
+        published.fetched.clear();
+        fetch(published, DEPLOYMENT + "-b", localProjectDir, cache);
+        assertEquals(1, published.fetched.size());
+        assertSameTree(new File(contentDir, DEPLOYMENT), new File(localProjectDir, "content/" + DEPLOYMENT));
+    }
+
+    @Test
+    public void testAdoptsContentFromZip() throws Exception {
+        File stagingDir = tmp.newFolder("staging");
+        File contentDir = stageContent(stagingDir);
+        CountingStore published = new CountingStore(tmp.newFolder("TB-Loaders"));
+        ContentManifest manifest = ContentAddressedDeployments.publish(contentDir,
+            Collections.singletonList(DEPLOYMENT), DEPLOYMENT + "-a", published);
+
+        // Content installed from an old-style zip: the same files, with no local objects yet.
+        File localProjectDir = tmp.newFolder("local");
+        copyTree(new File(contentDir, DEPLOYMENT), new File(localProjectDir, "content/" + DEPLOYMENT));
+        write(new File(localProjectDir, "content/" + DEPLOYMENT + "/messages/audio/msg0.a18"), randomBytes(10000));
+        DirectoryContentStore cache = new DirectoryContentStore(localProjectDir);
+
+        assertEquals(20, ContentAddressedDeployments.adopt(manifest, localProjectDir, cache));
+        fetch(published, DEPLOYMENT + "-a", localProjectDir, cache);
+        // Only the file that differed is downloaded.
+        assertEquals(1, published.fetched.size());
+        assertSameTree(new File(contentDir, DEPLOYMENT), new File(localProjectDir, "content/" + DEPLOYMENT));
+    }
+
+    @Test
+    public void testCorruptObjectIsRejected() throws Exception {
+        File contentDir = stageContent(tmp.newFolder("staging"));
+        DirectoryContentStore published = new DirectoryContentStore(tmp.newFolder("TB-Loaders"));
+        ContentManifest manifest = ContentAddressedDeployments.publish(contentDir,
+            Collections.singletonList(DEPLOYMENT), DEPLOYMENT + "-a", published);
+        ContentManifest.Entry entry = manifest.get("content/" + DEPLOYMENT + "/messages/audio/msg5.a18");
+        byte[] corrupt = Files.readAllBytes(published.getObjectFile(entry.hash).toPath());
+        corrupt[100] ^= 1;
+        write(published.getObjectFile(entry.hash), corrupt);
+
+        DirectoryContentStore cache = new DirectoryContentStore(tmp.newFolder("local"));
+        try {
+            ContentAddressedDeployments.fetchMissing(manifest, published, cache, null);
+            fail("Expected the corrupt object to be rejected.");
+        } catch (IOException expected) {
+            // expected
+        }
+        assertFalse(cache.hasObject(entry.hash, entry.size));
+    }
+
+    private static void fetch(ContentStore source, String versionMarker, File localProjectDir,
+        DirectoryContentStore cache) throws IOException
+    {
+        ContentManifest manifest = source.getManifest(versionMarker);
+        ContentAddressedDeployments.adopt(manifest, localProjectDir, cache);
+        ContentAddressedDeployments.fetchMissing(manifest, source, cache, null);
+        deleteTree(new File(localProjectDir, "content"));
+        ContentAddressedDeployments.materialize(manifest, cache, localProjectDir);
+        cache.retainOnly(manifest);
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        Files.write(file.toPath(), bytes);
+    }
+
+    private static void assertSameTree(File expected, File actual) throws IOException {
+        String[] names = expected.list();
+        assertNotNull(names);
+        for (String name : names) {
+            File e = new File(expected, name);
+            File a = new File(actual, name);
+            if (e.isDirectory()) {
+                assertTrue(a.isDirectory());
+                assertSameTree(e, a);
+            } else {
+                assertArrayEquals(name, Files.readAllBytes(e.toPath()), Files.readAllBytes(a.toPath()));
+            }
+        }
+        assertEquals(names.length, actual.list().length);
+    }
+
+    private static void copyTree(File from, File to) throws IOException {
+        assertTrue(to.mkdirs());
+        for (File f : from.listFiles()) {
+            if (f.isDirectory()) {
+                copyTree(f, new File(to, f.getName()));
+            } else {
+                Files.copy(f.toPath(), new File(to, f.getName()).toPath());
+            }
+        }
+    }
+
+    private static void deleteTree(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                deleteTree(f);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        dir.delete();
+    }
+}
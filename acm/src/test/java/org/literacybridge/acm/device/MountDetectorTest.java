@@ -0,0 +1,147 @@
+package org.literacybridge.acm.device;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MountDetectorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWatchingSeesMount() throws Exception {
+        File media = folder.newFolder("media");
+        File userMedia = new File(media, "user");
+        assertTrue(userMedia.mkdir());
+        MountDetector detector = new WatchingMountDetector(Arrays.asList(media, userMedia), 60_000);
+        try {
+            assertEquals(Collections.emptyList(), detector.getRoots());
+
+            File device = new File(userMedia, "TB000123");
+            long start = System.currentTimeMillis();
+            Thread mounter = new Thread(() -> {
+                sleepQuietly(100);
+                assertTrue(device.mkdir());
+            });
+            mounter.start();
+            detector.awaitChange();
+            long elapsed = System.currentTimeMillis() - start;
+            mounter.join();
+
+            // Far sooner than the rescan, but not before the debounce.
+            assertTrue("took " + elapsed, elapsed < 10_000);
+            assertTrue("took " + elapsed, elapsed >= WatchingMountDetector.DEBOUNCE_MILLIS);
+            assertEquals(Collections.singletonList(device), detector.getRoots());
+
+            // The second, settling, rescan comes soon after.
+            start = System.currentTimeMillis();
+            detector.awaitChange();
+            elapsed = System.currentTimeMillis() - start;
+            assertTrue("took " + elapsed, elapsed < 10_000);
+
+            assertTrue(device.delete());
+            detector.awaitChange();
+            assertEquals(Collections.emptyList(), detector.getRoots());
+        } finally {
+            detector.close();
+        }
+    }
+
+    @Test
+    public void testWatchingNewMountDirectory() throws Exception {
+        File runMedia = folder.newFolder("run", "media");
+        File userMedia = new File(runMedia, "user");
+        MountDetector detector = new WatchingMountDetector(Arrays.asList(runMedia, userMedia), 60_000);
+        try {
+            // The user's directory is created on the first mount, and then watched.
+            assertTrue(userMedia.mkdir());
+            detector.awaitChange();
+            detector.awaitChange();
+            File device = new File(userMedia, "TB000123");
+            assertTrue(device.mkdir());
+            long start = System.currentTimeMillis();
+            detector.awaitChange();
+            assertTrue(System.currentTimeMillis() - start < 10_000);
+            assertEquals(Collections.singletonList(device), detector.getRoots());
+        } finally {
+            detector.close();
+        }
+    }
+
+    @Test
+    public void testWakeup() throws Exception {
+        File media = folder.newFolder("media");
+        MountDetector detector = new WatchingMountDetector(Collections.singletonList(media), 60_000);
+        try {
+            long start = System.currentTimeMillis();
+            new Thread(() -> {
+                sleepQuietly(100);
+                detector.wakeup();
+            }).start();
+            detector.awaitChange();
+            assertTrue(System.currentTimeMillis() - start < 10_000);
+        } finally {
+            detector.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNothingToWatch() throws Exception {
+        new WatchingMountDetector(Collections.singletonList(new File(folder.getRoot(), "missing")), 60_000);
+    }
+
+    @Test
+    public void testPolling() throws Exception {
+        File volumes = folder.newFolder("Volumes");
+        List<File> mountDirs = Collections.singletonList(volumes);
+        MountDetector detector = new PollingMountDetector(() -> MountDetector.childrenOf(mountDirs), 50);
+        File device = new File(volumes, "TB000123");
+        assertTrue(device.mkdir());
+        long start = System.currentTimeMillis();
+        detector.awaitChange();
+        assertTrue(System.currentTimeMillis() - start >= 40);
+        assertEquals(Collections.singletonList(device), detector.getRoots());
+    }
+
+    @Test
+    public void testRecognizerCachesByRoot() throws Exception {
+        File root = folder.newFolder("TB000123");
+        LiteracyBridgeTalkingBookRecognizer recognizer = new LiteracyBridgeTalkingBookRecognizer();
+        assertEquals(null, recognizer.identifyDevice(root));
+
+        File system = new File(root, DeviceContents.SYSTEM_SUBFOLDER);
+        assertTrue(system.mkdir());
+        File config = new File(system, DeviceContents.CONFIG_FILE);
+        Files.write(config.toPath(), "LB_TALKINGBOOK_VERSION=1\n".getBytes());
+        DeviceInfo info = recognizer.identifyDevice(root);
+        assertEquals(root, info.getPathToDevice());
+        // Unchanged, so the same answer.
+        assertTrue(info == recognizer.identifyDevice(root));
+
+        Files.write(config.toPath(), "SOMETHING_ELSE=1\n".getBytes());
+        assertEquals(null, recognizer.identifyDevice(root));
+
+        Files.write(config.toPath(), "LB_TALKINGBOOK_VERSION=2\n".getBytes());
+        info = recognizer.identifyDevice(root);
+        recognizer.retainOnly(Collections.emptyList());
+        assertTrue(info != recognizer.identifyDevice(root));
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.literacybridge.acm.gui.assistants.Matcher;
+
+import me.xdrop.fuzzywuzzy.FuzzySearch;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MatcherTest {
+    private static final String[] WORDS = {"health", "water", "farming", "malaria", "school",
+        "market", "cocoa", "rain", "family", "savings", "vaccine", "soil", "story", "song"};
+
+    private static class Title extends Target {
+        private final String title;
+
+        Title(String title) {
+            this.title = title;
+        }
+
+        @Override
+        public String toString() {
+            return title;
+        }
+    }
+
+    private static class Item extends MatchableItem<Title, String> {
+        Item(Title left, String right) {
+            super(left, right);
+        }
+    }
+
+    /**
+     * Compares every pair, as the matcher did before it had an index.
+     */
+    private static class ExhaustiveMatcher extends Matcher<Title, String, Item> {
+        @Override
+        protected Collection<String> leftKeys(Item l) {
+            return null;
+        }
+    }
+
+    @Test
+    public void testSameMatchesAsExhaustive() {
+        for (int seed = 1; seed <= 4; seed++) {
+            List<Title> titles = new ArrayList<>();
+            List<String> files = new ArrayList<>();
+            makeData(new Random(seed), 150, titles, files);
+            for (int threshold : new int[] {50, 60, 80, 90}) {
+                Matcher<Title, String, Item> indexed = new Matcher<>();
+                indexed.setData(titles, files, Item::new);
+                Matcher.MatchStats indexedStats = indexed.autoMatch(threshold);
+
+                Matcher<Title, String, Item> exhaustive = new ExhaustiveMatcher();
+                exhaustive.setData(titles, files, Item::new);
+                Matcher.MatchStats exhaustiveStats = exhaustive.autoMatch(threshold);
+
+                assertEquals(describe(exhaustive), describe(indexed));
+                assertEquals(exhaustiveStats.matches, indexedStats.matches);
+                assertTrue(indexedStats.comparisons < exhaustiveStats.comparisons);
+                assertEquals(exhaustiveStats.comparisons, indexedStats.comparisons + indexedStats.skipped);
+            }
+        }
+    }
+
+    @Test
+    public void testTiesResolvedInOrder() {
+        // Both files score the same against the title; the first (in sorted order) wins.
+        Matcher<Title, String, Item> matcher = new Matcher<>();
+        matcher.setData(Collections.singletonList(new Title("rain song")),
+            Arrays.asList("rain sung", "rain sang"), Item::new);
+        matcher.autoMatch(60);
+        List<String> matches = describe(matcher);
+        assertTrue(matches.toString(), matches.contains("rain song=rain sang FUZZY 89"));
+        assertTrue(matches.toString(), matches.contains("null=rain sung RIGHT_ONLY 0"));
+    }
+
+    @Test
+    public void testBoundsAndRatio() {
+        Random random = new Random(7);
+        for (int i = 0; i < 5_000; i++) {
+            String a = randomString(random);
+            String b = randomString(random);
+            CandidateIndex.Key keyA = new CandidateIndex.Key(a);
+            CandidateIndex.Key keyB = new CandidateIndex.Key(b);
+            assertTrue(a + " / " + b, CandidateIndex.upperBound(keyA, keyB) >= FuzzySearch.ratio(a, b));
+            if (b.length() <= Long.SIZE) {
+                assertEquals(a + " / " + b, FuzzySearch.ratio(a, b), CandidateIndex.ratio(keyA, keyB));
+            } else {
+                assertTrue(a + " / " + b, CandidateIndex.ratio(keyA, keyB) >= FuzzySearch.ratio(a, b));
+            }
+            // The token-sorted strings are what tokenSortRatio compares.
+            assertEquals(a + " / " + b, FuzzySearch.tokenSortRatio(a, b),
+                FuzzySearch.ratio(CandidateIndex.tokenSorted(a), CandidateIndex.tokenSorted(b)));
+        }
+    }
+
+    @Test
+    public void testProgressAndCancel() {
+        List<Title> titles = new ArrayList<>();
+        List<String> files = new ArrayList<>();
+        makeData(new Random(3), 200, titles, files);
+
+        AtomicInteger calls = new AtomicInteger();
+        Matcher<Title, String, Item> matcher = new Matcher<>();
+        matcher.setData(titles, files, Item::new);
+        Matcher.MatchStats stats = matcher.autoMatch(60, (done, total) -> {
+            assertTrue(done <= total);
+            calls.incrementAndGet();
+        });
+        assertFalse(stats.isCancelled());
+        assertTrue(calls.get() > 0);
+
+        matcher = new Matcher<>();
+        matcher.setData(titles, files, Item::new);
+        stats = matcher.autoMatch(60, new Matcher.Progress() {
+            @Override
+            public void progress(int done, int total) {
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return true;
+            }
+        });
+        assertTrue(stats.isCancelled());
+        // The exact matches are kept, but no fuzzy ones are made.
+        assertTrue(describe(matcher).stream().noneMatch(s -> s.contains("FUZZY") || s.contains("TOKEN")));
+        assertTrue(describe(matcher).stream().anyMatch(s -> s.contains("EXACT")));
+    }
+
+    private static List<String> describe(Matcher<Title, String, Item> matcher) {
+        return matcher.matchableItems.stream()
+            .map(i -> i.getLeft() + "=" + i.getRight() + " " + i.getMatch() + " " + i.getScore())
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Titles, and file names made from them as people do: some the same, some with different
+     * case and punctuation, some with words missing or reordered, and some unrelated.
+     */
+    private static void makeData(Random random, int n, List<Title> titles, List<String> files) {
+        Set<String> titleSet = new LinkedHashSet<>();
+        while (titleSet.size() < n) {
+            titleSet.add(words(random, 3) + ' ' + random.nextInt(20));
+        }
+        Set<String> fileSet = new LinkedHashSet<>();
+        for (String title : titleSet) {
+            titles.add(new Title(title));
+            String[] words = title.split(" ");
+            switch (random.nextInt(5)) {
+            case 0:
+                fileSet.add(title);
+                break;
+            case 1:
+                fileSet.add(title.toUpperCase().replace(' ', '_'));
+                break;
+            case 2:
+                fileSet.add(title.substring(title.indexOf(' ') + 1));
+                break;
+            case 3:
+                fileSet.add(words[words.length - 1] + ' ' + String.join(" ", Arrays.copyOf(words, words.length - 1)));
+                break;
+            default:
+                fileSet.add(words(random, 4));
+                break;
+            }
+        }
+        files.addAll(fileSet);
+    }
+
+    private static String words(Random random, int n) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            if (i > 0) result.append(' ');
+            result.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return result.toString();
+    }
+
+    private static String randomString(Random random) {
+        String alphabet = "aabcde  _-,.XY\u00e9";
+        char[] chars = new char[random.nextInt(70)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return new String(chars);
+    }
+}
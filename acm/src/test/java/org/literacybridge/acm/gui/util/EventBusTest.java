@@ -0,0 +1,108 @@
+package org.literacybridge.acm.gui.util;
+
+import org.junit.Test;
+
+import javax.swing.SwingUtilities;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventBusTest {
+    private static class Changed {
+        final int n;
+
+        Changed(int n) {
+            this.n = n;
+        }
+    }
+
+    private static class Request {
+    }
+
+    private static class SpecialRequest extends Request {
+    }
+
+    private final EventBus bus = new EventBus(50);
+
+    @Test
+    public void testImmediateDeliveryToSubtypes() {
+        List<Object> received = new ArrayList<>();
+        bus.subscribe(Request.class, EventBus.Delivery.IMMEDIATE, received::add);
+        bus.subscribe(SpecialRequest.class, EventBus.Delivery.IMMEDIATE, received::add);
+
+        bus.publish(new Request());
+        assertEquals(1, received.size());
+        bus.publish(new SpecialRequest());
+        assertEquals(3, received.size());
+        bus.publish("not a request");
+        assertEquals(3, received.size());
+    }
+
+    @Test
+    public void testCoalescedOnEdt() throws Exception {
+        bus.setCoalesced(Changed.class);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        List<Boolean> onEdt = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(1);
+        bus.subscribe(Changed.class, EventBus.Delivery.EDT, changed -> {
+            received.add(changed.n);
+            onEdt.add(SwingUtilities.isEventDispatchThread());
+            if (changed.n == 499) latch.countDown();
+        });
+
+        for (int i = 0; i < 500; i++) {
+            bus.publish(new Changed(i));
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        // Delivery can begin before the last is published, but there must be far fewer than 500.
+        assertTrue(received.size() < 500);
+        assertEquals(499, (int) received.get(received.size() - 1));
+        assertFalse(onEdt.contains(false));
+
+        EventBus.Stats stats = bus.getStats();
+        assertEquals(500, stats.published);
+        assertEquals(500, stats.coalesced + received.size());
+        assertEquals(received.size(), stats.dispatched);
+        assertEquals(stats.coalesced, (long) stats.coalescedByType.get("Changed"));
+    }
+
+    @Test
+    public void testOrderKeptInBackground() throws Exception {
+        List<Object> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(3);
+        bus.subscribe(Object.class, EventBus.Delivery.BACKGROUND, message -> {
+            assertFalse(SwingUtilities.isEventDispatchThread());
+            received.add(message);
+            latch.countDown();
+        });
+
+        bus.publish("one");
+        bus.publish("two");
+        bus.publish("three");
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(3, received.size());
+        assertEquals("one", received.get(0));
+        assertEquals("three", received.get(2));
+    }
+
+    @Test
+    public void testUnsubscribe() {
+        List<Object> received = new ArrayList<>();
+        EventBus.Subscription subscription = bus.subscribe(Request.class, EventBus.Delivery.IMMEDIATE, received::add);
+        bus.publish(new Request());
+        subscription.close();
+        bus.publish(new Request());
+        assertEquals(1, received.size());
+
+        EventBus.Stats before = bus.getStats();
+        bus.publish(new Request());
+        assertEquals(1, bus.getStats().since(before).published);
+        assertEquals(0, bus.getStats().since(before).dispatched);
+    }
+}
@@ -0,0 +1,144 @@
+package org.literacybridge.acm.repository;
+
+import org.junit.Test;
+import org.literacybridge.acm.audioconverter.converters.BaseAudioConverter.ConversionException;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AudioConversionEngineTest {
+
+    @Test
+    public void testSameKeyIsSerialized() throws Exception {
+        AudioConversionEngine engine = new AudioConversionEngine(4);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        AudioConversionEngine.Batch batch = engine.newBatch();
+        for (int i = 0; i < 8; i++) {
+            batch.submit("task-" + i, () -> engine.withLock("item", () -> {
+                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                pause();
+                active.decrementAndGet();
+                return null;
+            }));
+        }
+        batch.await();
+        assertEquals("Only one thread at a time should hold a key", 1, maxActive.get());
+    }
+
+    @Test
+    public void testDifferentKeysRunConcurrently() throws Exception {
+        AudioConversionEngine engine = new AudioConversionEngine(2);
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        AudioConversionEngine.Batch batch = engine.newBatch();
+        for (String key : new String[]{"a", "b"}) {
+            batch.submit(key, () -> engine.withLock(key, () -> {
+                bothStarted.countDown();
+                awaitQuietly(bothStarted);
+                return null;
+            }));
+        }
+        batch.await();
+        assertEquals("Both items should have been converted at the same time", 0, bothStarted.getCount());
+    }
+
+    @Test
+    public void testTryLockSkipsLockedKeys() throws Exception {
+        AudioConversionEngine engine = new AudioConversionEngine(2);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        Future<Object> holder = engine.submit(() -> engine.withLock("item", () -> {
+            locked.countDown();
+            awaitQuietly(done);
+            return null;
+        }));
+        awaitQuietly(locked);
+        AtomicInteger runs = new AtomicInteger();
+        assertFalse(engine.tryRunWithLock("item", runs::incrementAndGet));
+        assertTrue(engine.tryRunWithLock("other", runs::incrementAndGet));
+        done.countDown();
+        holder.get(5, TimeUnit.SECONDS);
+        assertTrue(engine.tryRunWithLock("item", runs::incrementAndGet));
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void testBatchDeduplicatesKeys() throws Exception {
+        AudioConversionEngine engine = new AudioConversionEngine(2);
+        AtomicInteger runs = new AtomicInteger();
+        AudioConversionEngine.Batch batch = engine.newBatch();
+        Future<Integer> f1 = batch.submit("same", runs::incrementAndGet);
+        Future<Integer> f2 = batch.submit("same", runs::incrementAndGet);
+        batch.await();
+        assertSame(f1, f2);
+        assertEquals(1, runs.get());
+        assertEquals(1, batch.size());
+    }
+
+    @Test
+    public void testBatchRethrowsFirstFailureAfterAllFinish() throws Exception {
+        AudioConversionEngine engine = new AudioConversionEngine(2);
+        AtomicInteger finished = new AtomicInteger();
+        AudioConversionEngine.Batch batch = engine.newBatch();
+        batch.submit("bad", () -> {
+            throw new ConversionException("bad");
+        });
+        for (int i = 0; i < 4; i++) {
+            batch.submit("good-" + i, () -> {
+                Thread.sleep(10);
+                return finished.incrementAndGet();
+            });
+        }
+        try {
+            batch.await();
+            fail("Expected a ConversionException");
+        } catch (ConversionException e) {
+            assertEquals("bad", e.getMessage());
+        }
+        assertEquals(4, finished.get());
+    }
+
+    @Test
+    public void testThreadsHavePrivateTmpDirs() throws Exception {
+        AudioConversionEngine engine = new AudioConversionEngine(2);
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        AudioConversionEngine.Batch batch = engine.newBatch();
+        Future<File> d1 = batch.submit("1", () -> {
+            bothStarted.countDown();
+            bothStarted.await(5, TimeUnit.SECONDS);
+            return engine.getTmpDir();
+        });
+        Future<File> d2 = batch.submit("2", () -> {
+            bothStarted.countDown();
+            bothStarted.await(5, TimeUnit.SECONDS);
+            return engine.getTmpDir();
+        });
+        batch.await();
+        assertTrue(d1.get().isDirectory());
+        assertNotEquals(d1.get(), d2.get());
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.literacybridge.acm.repository;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CacheIndexTest {
+    private static final FilenameFilter WAV_FILES = (dir, name) -> name.endsWith(".wav");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        File root = tmp.newFolder("cache");
+        CacheIndex index = new CacheIndex(root, WAV_FILES);
+        File a = write(root, "a/a.wav", 100);
+        File b = write(root, "b/b.wav", 200);
+        File c = write(root, "c/c.wav", 300);
+        index.touch(a, false);
+        Thread.sleep(5);
+        index.touch(b, false);
+        Thread.sleep(5);
+        index.touch(c, false);
+        Thread.sleep(5);
+        index.touch(a, false);
+        assertEquals(600, index.getSizeInBytes());
+
+        assertEquals(200, index.evictOldest());
+        assertFalse(b.exists());
+        assertEquals(300, index.evictOldest());
+        assertFalse(c.exists());
+        // The most recently used file is never evicted.
+        assertEquals(-1, index.evictOldest());
+        assertTrue(a.exists());
+    }
+
+    @Test
+    public void testJournalIsReplayed() throws Exception {
+        File root = tmp.newFolder("cache");
+        CacheIndex index = new CacheIndex(root, WAV_FILES);
+        File a = write(root, "a/a.wav", 100);
+        File b = write(root, "b/b.wav", 200);
+        index.touch(a, false);
+        index.touch(b, false);
+        index.removeDirectory(b.getParentFile());
+        index.close();
+
+        CacheIndex reopened = new CacheIndex(root, WAV_FILES);
+        assertEquals(1, reopened.size());
+        assertEquals(100, reopened.getSizeInBytes());
+    }
+
+    @Test
+    public void testRebuildsDamagedJournal() throws Exception {
+        File root = tmp.newFolder("cache");
+        write(root, "a/a.wav", 100);
+        write(root, "b/b.wav", 200);
+        write(root, "b/b.mp3", 400);
+        Files.write(new File(root, CacheIndex.JOURNAL_FILE_NAME).toPath(), "garbage\n".getBytes());
+
+        CacheIndex index = new CacheIndex(root, WAV_FILES);
+        assertEquals(2, index.size());
+        assertEquals(300, index.getSizeInBytes());
+    }
+
+    @Test
+    public void testPendingFilesAreSizedLater() throws Exception {
+        File root = tmp.newFolder("cache");
+        CacheIndex index = new CacheIndex(root, WAV_FILES);
+        File a = new File(root, "a/a.wav");
+        index.touch(a, true);
+        assertEquals(1, index.size());
+        assertEquals(0, index.getSizeInBytes());
+
+        write(root, "a/a.wav", 100);
+        index.resolvePending();
+        assertEquals(100, index.getSizeInBytes());
+    }
+
+    @Test
+    public void testSkipsFilesInUse() throws Exception {
+        File root = tmp.newFolder("cache");
+        CacheIndex index = new CacheIndex(root, WAV_FILES);
+        File a = write(root, "a/a.wav", 100);
+        File b = write(root, "b/b.wav", 200);
+        File c = write(root, "c/c.wav", 300);
+        index.touch(a, false);
+        Thread.sleep(5);
+        index.touch(b, false);
+        Thread.sleep(5);
+        index.touch(c, false);
+
+        // "a" is in use, so "b" goes first.
+        CacheIndex.EvictionGuard guard = (file, deletion) -> {
+            if (file.equals(a)) return false;
+            deletion.run();
+            return true;
+        };
+        assertEquals(200, index.evictOldest(guard));
+        assertTrue(a.exists());
+        assertFalse(b.exists());
+        assertEquals(-1, index.evictOldest(guard));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void testTouchesAreFlushed() throws Exception {
+        File root = tmp.newFolder("cache");
+        CacheIndex index = new CacheIndex(root, WAV_FILES);
+        File a = write(root, "a/a.wav", 100);
+        File b = write(root, "b/b.wav", 200);
+        index.touch(a, false);
+        index.touch(b, false);
+        File journal = new File(root, CacheIndex.JOURNAL_FILE_NAME);
+        long journalLength = journal.length();
+
+        // Reading a file that is already indexed doesn't write to the journal...
+        Thread.sleep(5);
+        index.touch(a, false);
+        assertEquals(journalLength, journal.length());
+        assertEquals(1, index.touchesPending());
+
+        // ...until the touches are flushed. The new access time survives a restart.
+        index.flushTouches();
+        assertTrue(journal.length() > journalLength);
+        assertEquals(0, index.touchesPending());
+        CacheIndex reopened = new CacheIndex(root, WAV_FILES);
+        assertEquals(200, reopened.evictOldest());
+        assertTrue(a.exists());
+    }
+
+    private static File write(File root, String path, int size) throws IOException {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), new byte[size]);
+        return file;
+    }
+}
@@ -7,6 +7,8 @@ import org.literacybridge.acm.sandbox.Sandbox.AddOp;
 import org.literacybridge.acm.sandbox.Sandbox.DeleteOp;
 import org.literacybridge.acm.sandbox.Sandbox.FileOp;
 import org.literacybridge.acm.sandbox.Sandbox.MoveOp;
+import org.literacybridge.acm.sandbox.Sandbox.MovedOutOp;
+import org.literacybridge.acm.sandbox.Sandbox.RmDirOp;
 
 import java.io.BufferedWriter;
 import java.io.File;
@@ -15,12 +17,18 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class SandboxTest {
     public static final String filename = "myFile";
@@ -653,6 +661,154 @@ public class SandboxTest {
 
     }
 
+    @Test
+    public void testJournalRestoresOrder() throws IOException {
+        initWithBaseFiles();
+
+        File a = new File(base, "a");
+        File b = new File(base, "b");
+        File c = new File(base, "c");
+
+        addFile(c, ++fileNo);
+        sb.moveFile(a, b);
+        sb.delete(new File(base, filename));
+        addFile(a, ++fileNo);
+        Map<Path,FileOp> q1 = sb.getWorkQueue();
+
+        Sandbox sb2 = new Sandbox(base, sandbox);
+        Map<Path,FileOp> q2 = sb2.getWorkQueue();
+
+        assertEquals("Expect same paths, in the same order.", new ArrayList<>(q1.keySet()), new ArrayList<>(q2.keySet()));
+        for (Path p : q1.keySet()) {
+            assertEquals(q1.get(p).getId(), q2.get(p).getId());
+        }
+        assertEquals(Paths.get("a"), ((MoveOp) q2.get(Paths.get("b"))).fromPath);
+        assertTrue(sb2.exists(c));
+        assertFalse(sb2.exists(new File(base, filename)));
+    }
+
+    @Test
+    public void testInterruptedCommitIsFinished() throws IOException {
+        initWithBaseFiles();
+
+        File a = new File(base, "a");
+        long aSize = a.length();
+        File b = new File(base, "b");
+        File c = new File(base, "c");
+        File d = new File(base, "d");
+
+        addFile(c, ++fileNo);
+        addFile(d, ++fileNo);
+        sb.moveFile(a, b);
+        long newASize = ++fileNo;
+        addFile(a, newASize);
+
+        // Stop after the first step (c, d, a->b); the new a is added in the second.
+        try {
+            sb.commit(x -> {
+                if (x.equals(b)) throw new IllegalStateException("crash");
+            }, x -> {});
+            fail("Expected the commit to stop.");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        assertTrue(c.exists());
+        assertFalse(a.exists());
+        assertEquals(aSize, b.length());
+
+        // Opening the sandbox again finishes the commit, without moving anything twice.
+        Sandbox sb2 = new Sandbox(base, sandbox);
+        assertFalse(sb2.hasChanges());
+        assertEquals(newASize, a.length());
+        assertEquals(aSize, b.length());
+        assertTrue(d.exists());
+        assertFalse(sandbox.exists());
+    }
+
+    @Test
+    public void testFailedCommitIsFinishedLater() throws IOException {
+        initWithFile();
+        File x = new File(base, "x");
+        File y = new File(base, "y");
+        assertTrue(x.mkdir() && y.mkdir());
+        File x1 = new File(x, "1");
+        File y1 = new File(y, "1");
+        File x2 = new File(x, "2");
+        addFile(x1, ++fileNo);
+        addFile(y1, ++fileNo);
+        addFile(x2, ++fileNo);
+
+        // The two directories are done in parallel; y/1 fails.
+        sb.failCommitAt = 1;
+        assertFalse(sb.commit());
+        assertTrue(x1.exists());
+        assertTrue(x2.exists());
+        assertFalse(y1.exists());
+        // The journal is kept, with the queue.
+        assertTrue(sb.hasChanges());
+        assertTrue(new File(sandbox, "workqueue.journal").exists());
+
+        // Opening the sandbox again finishes the commit.
+        Sandbox sb2 = new Sandbox(base, sandbox);
+        assertFalse(sb2.hasChanges());
+        assertTrue(x1.exists());
+        assertTrue(y1.exists());
+        assertTrue(x2.exists());
+        assertFalse(sandbox.exists());
+    }
+
+    @Test
+    public void testFailedCommitIsFinishedByNextCommit() throws IOException {
+        initWithFile();
+        File a = new File(base, "a");
+        File b = new File(base, "b");
+        addFile(a, ++fileNo);
+        addFile(b, ++fileNo);
+
+        // One directory, so applied on this thread; b fails.
+        sb.failCommitAt = 1;
+        assertFalse(sb.commit());
+        assertTrue(a.exists());
+        assertFalse(b.exists());
+        assertTrue(sb.hasChanges());
+
+        sb.failCommitAt = -1;
+        assertTrue(sb.commit());
+        assertFalse(sb.hasChanges());
+        assertTrue(b.exists());
+        assertFalse(sandbox.exists());
+    }
+
+    @Test
+    public void testExistsSeesBaseChanges() throws IOException {
+        initWithFile();
+        File other = new File(base, "other");
+
+        assertFalse(sb.exists(other));
+        assertEquals(1, sb.listPaths(base.toPath()).size());
+        // As when the cloud sync delivers a file.
+        assertTrue(other.createNewFile());
+        assertTrue(sb.exists(other));
+        assertEquals(2, sb.listPaths(base.toPath()).size());
+    }
+
+    @Test
+    public void testCommitSteps() {
+        List<Map.Entry<Path, FileOp>> ops = new ArrayList<>();
+        ops.add(new SimpleEntry<>(Paths.get("x/1"), new AddOp()));
+        ops.add(new SimpleEntry<>(Paths.get("y/1"), new AddOp()));
+        ops.add(new SimpleEntry<>(Paths.get("y/2"), new MoveOp(Paths.get("x/1"))));
+        ops.add(new SimpleEntry<>(Paths.get("x/1"), new MovedOutOp()));
+        ops.add(new SimpleEntry<>(Paths.get("z"), new DeleteOp()));
+        ops.add(new SimpleEntry<>(Paths.get("y"), new RmDirOp()));
+
+        List<List<Integer>> steps = Sandbox.planCommit(ops);
+        assertEquals(3, steps.size());
+        assertEquals(Arrays.asList(0, 1, 4), steps.get(0));
+        assertEquals(Arrays.asList(2), steps.get(1));
+        assertEquals(Arrays.asList(3, 5), steps.get(2));
+    }
+
     /**
      * Prints the operation queue.
      *
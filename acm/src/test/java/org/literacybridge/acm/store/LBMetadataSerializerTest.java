@@ -0,0 +1,175 @@
+package org.literacybridge.acm.store;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.literacybridge.acm.store.MetadataSpecification.*;
+
+public class LBMetadataSerializerTest {
+    private Taxonomy taxonomy;
+    private List<Category> categories;
+    private final LBMetadataSerializer serializer = new LBMetadataSerializer();
+
+    @Before
+    public void setUp() {
+        taxonomy = Taxonomy.createTaxonomy(null, null);
+        categories = StreamSupport.stream(taxonomy.breadthFirstIterator().spliterator(), false)
+            .filter(c -> !c.hasChildren() && !taxonomy.isRoot(c))
+            .limit(3)
+            .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testRoundTripEveryField() throws IOException {
+        Metadata metadata = allFields();
+
+        byte[] encoded = serializer.encode(categories, metadata);
+        Metadata decoded = new Metadata();
+        List<Category> decodedCategories = new ArrayList<>();
+        serializer.decode(encoded, 0, encoded.length, decoded, taxonomy, decodedCategories);
+
+        assertEquals(categories, decodedCategories);
+        assertSameFields(metadata, decoded);
+        // Every field is in the encoding.
+        assertEquals(LBMetadataIDs.FieldToIDMap.size(), decoded.size());
+    }
+
+    @Test
+    public void testVersion1IsStillReadable() throws IOException {
+        Metadata metadata = allFields();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            serializer.serialize(categories, metadata, out);
+        }
+        byte[] version1 = bytes.toByteArray();
+        assertEquals(LBMetadataSerializer.METADATA_VERSION_1, version1[0]);
+
+        Metadata decoded = new Metadata();
+        List<Category> decodedCategories = new ArrayList<>();
+        serializer.decode(version1, 0, version1.length, decoded, taxonomy, decodedCategories);
+
+        assertEquals(categories, decodedCategories);
+        assertSameFields(metadata, decoded);
+
+        // And the version 2 encoding is smaller.
+        assertTrue(serializer.encode(categories, metadata).length < version1.length);
+    }
+
+    @Test
+    public void testDecodeFromOffset() throws IOException {
+        Metadata metadata = allFields();
+        byte[] encoded = serializer.encode(categories, metadata);
+        byte[] padded = new byte[encoded.length + 20];
+        System.arraycopy(encoded, 0, padded, 7, encoded.length);
+
+        Metadata decoded = new Metadata();
+        serializer.decode(padded, 7, encoded.length, decoded, taxonomy, new ArrayList<>());
+        assertSameFields(metadata, decoded);
+    }
+
+    @Test
+    public void testLazyDecoding() throws IOException {
+        Metadata metadata = allFields();
+        byte[] encoded = serializer.encode(categories, metadata);
+
+        Metadata first = new Metadata();
+        serializer.decode(encoded, 0, encoded.length, first, taxonomy, new ArrayList<>());
+        Metadata second = new Metadata();
+        serializer.decode(encoded, 0, encoded.length, second, taxonomy, new ArrayList<>());
+
+        assertTrue(first.containsField(LB_NOTES));
+        assertEquals(metadata.get(DC_TITLE), first.get(DC_TITLE));
+        // Values of the fields with few distinct values are shared.
+        assertSame(first.getMetadataValue(DC_LANGUAGE).getValue(), second.getMetadataValue(DC_LANGUAGE).getValue());
+
+        // Changing a field decodes the rest, and keeps their order.
+        first.putMetadataField(DC_TITLE, MetadataValue.newValue("Changed"));
+        assertEquals("Changed", first.get(DC_TITLE));
+        assertEquals(new ArrayList<>(metadata.keySet()), new ArrayList<>(first.keySet()));
+    }
+
+    @Test
+    public void testDecodeIntoExistingMetadata() throws IOException {
+        Metadata metadata = new Metadata();
+        metadata.putMetadataField(DC_TITLE, MetadataValue.newValue("Title"));
+        byte[] encoded = serializer.encode(categories, metadata);
+
+        Metadata existing = new Metadata();
+        existing.putMetadataField(DC_TITLE, MetadataValue.newValue("Old title"));
+        existing.putMetadataField(LB_NOTES, MetadataValue.newValue("Notes"));
+        serializer.decode(encoded, 0, encoded.length, existing, taxonomy, new ArrayList<>());
+
+        assertEquals("Title", existing.get(DC_TITLE));
+        assertEquals("Notes", existing.get(LB_NOTES));
+    }
+
+    @Test
+    public void testUnknownFieldsAreSkipped() throws IOException {
+        // Version 2, two fields: no categories, and a field from the future.
+        byte[] encoded = {2, 2, 0, 1, 0, (byte) 0xe7, 0x07, 3, 'a', 'b', 'c'};
+        Metadata decoded = new Metadata();
+        List<Category> decodedCategories = new ArrayList<>();
+        serializer.decode(encoded, 0, encoded.length, decoded, taxonomy, decodedCategories);
+
+        assertTrue(decodedCategories.isEmpty());
+        assertEquals(0, decoded.size());
+        assertFalse(decoded.containsField(DC_TITLE));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws IOException {
+        byte[] encoded = serializer.encode(categories, allFields());
+        serializer.decode(encoded, 0, encoded.length - 5, new Metadata(), taxonomy, new ArrayList<>());
+    }
+
+    @Test(expected = IOException.class)
+    public void testDamagedIntegerFailsWhenDecoded() throws IOException {
+        // Version 2, two fields: no categories, and LB_STATUS with a varint that doesn't end.
+        byte[] encoded = {2, 2, 0, 1, 0, 33, 1, (byte) 0x80};
+        // Lazily decoded, but the damage is found now, not when the field is first used.
+        serializer.decode(encoded, 0, encoded.length, new Metadata(), taxonomy, new ArrayList<>());
+    }
+
+    /**
+     * @return metadata with a value for every serialized field, including non-ASCII text and
+     * negative numbers.
+     */
+    @SuppressWarnings("unchecked")
+    private static Metadata allFields() {
+        Metadata metadata = new Metadata();
+        for (Map.Entry<MetadataField<?>, Class<?>> entry : LBMetadataIDs.FieldToValueClassMap.entrySet()) {
+            MetadataField<?> field = entry.getKey();
+            if (entry.getValue() == Integer.class) {
+                metadata.putMetadataField((MetadataField<Integer>) field, MetadataValue.newValue(-12345));
+            } else if (entry.getValue() == RFC3066LanguageCode.class) {
+                metadata.putMetadataField((MetadataField<RFC3066LanguageCode>) field,
+                    MetadataValue.newValue(new RFC3066LanguageCode("en_US")));
+            } else {
+                metadata.putMetadataField((MetadataField<String>) field,
+                    MetadataValue.newValue(field.getName() + " Kaʻahumanu, Ɔdɔ 🎵"));
+            }
+        }
+        return metadata;
+    }
+
+    private static void assertSameFields(Metadata expected, Metadata actual) {
+        for (MetadataField<?> field : Arrays.asList(LBMetadataIDs.FieldToIDMap.keySet().toArray(new MetadataField<?>[0]))) {
+            assertEquals(field.getName(), expected.getMetadataValue(field), actual.getMetadataValue(field));
+        }
+        assertEquals(expected.size(), actual.size());
+    }
+}
@@ -4,13 +4,27 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.lucene.document.Document;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -34,6 +48,26 @@ public class LuceneMetadataStoreTest {
     };
   }
 
+  /**
+   * A committable whose change fails when the index applies it, after the index has already
+   * applied the changes before it.
+   */
+  private final static Committable newFailingIndexOperation() {
+    return new Committable() {
+      @Override
+      public boolean doCommit(Transaction t) throws IOException {
+        t.addOperation(writer -> {
+          throw new IOException("Disk full");
+        });
+        return true;
+      }
+
+      @Override
+      public void doRollback(Transaction t) throws IOException {
+      }
+    };
+  }
+
   private final static Committable newFailingRollback() {
     return new Committable() {
       @Override
@@ -144,6 +178,56 @@ public class LuceneMetadataStoreTest {
     assertNumSearchResults(store, "lorem", p2, 0);
   }
 
+  @Test
+  public void testLazyLoading() throws Exception {
+    File indexDir = tmp.newFolder();
+    Taxonomy taxonomy = Taxonomy.createTaxonomy(null, null);
+    LuceneMetadataStore store = new LuceneMetadataStore(taxonomy, indexDir);
+
+    AudioItem a1 = store.newAudioItem("1");
+    AudioItem a2 = store.newAudioItem("2");
+    AudioItem a3 = store.newAudioItem("3");
+    a1.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+        MetadataValue.newValue("Lorem"));
+    a2.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+        MetadataValue.newValue("Lorem ipsum"));
+    a3.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+        MetadataValue.newValue("Lorem ipsum dolor"));
+    store.commit(a1, a2, a3);
+    Playlist p1 = store.newPlaylist("1");
+    p1.addAudioItem(a2);
+    p1.addAudioItem(a3);
+    store.commit(p1);
+    store.deleteAudioItem("3");
+    store.commit(a3);
+    // Release the index, so that the lazy store can write to it.
+    store.close();
+
+    LuceneMetadataStore lazyStore = new LuceneMetadataStore(taxonomy, indexDir, true);
+    assertNumItems(lazyStore.getAudioItems(), 2);
+    assertNull(lazyStore.getAudioItem("3"));
+
+    AudioItem lazy2 = lazyStore.getAudioItem("2");
+    assertEquals("Lorem ipsum", lazy2.getTitle());
+    assertSame(lazy2, lazyStore.getAudioItem("2"));
+    assertEquals(1, lazy2.getPlaylists().size());
+    assertEquals(p1.getId(), lazy2.getPlaylists().iterator().next().getId());
+    assertTrue(lazyStore.getAudioItem("1").getPlaylists().isEmpty());
+
+    AudioItem a4 = lazyStore.newAudioItem("4");
+    a4.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+        MetadataValue.newValue("Dolor"));
+    lazyStore.commit(a4);
+    assertNumItems(lazyStore.getAudioItems(), 3);
+    assertSame(a4, lazyStore.getAudioItem("4"));
+
+    AudioItem lazy1 = lazyStore.getAudioItem("1");
+    lazyStore.deleteAudioItem("1");
+    lazyStore.commit(lazy1);
+    assertNumItems(lazyStore.getAudioItems(), 2);
+    assertNull(lazyStore.getAudioItem("1"));
+  }
+
   @Test
   public void testSearch() throws Exception {
     LuceneMetadataStore store = newStore();
@@ -392,6 +476,101 @@ public class LuceneMetadataStoreTest {
     assertNumSearchResults(store, "lorem", p3, 1);
   }
 
+  @Test
+  public void testBatch() throws Exception {
+    File indexDir = tmp.newFolder();
+    Taxonomy taxonomy = Taxonomy.createTaxonomy(null, null);
+    LuceneMetadataStore store = new LuceneMetadataStore(taxonomy, indexDir);
+
+    AudioItem a1 = store.newAudioItem("1");
+    AudioItem a2 = store.newAudioItem("2");
+    AudioItem a3 = store.newAudioItem("3");
+    a1.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+        MetadataValue.newValue("Lorem"));
+    a2.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+        MetadataValue.newValue("Lorem ipsum"));
+    a3.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+        MetadataValue.newValue("Lorem ipsum dolor"));
+
+    MetadataStore.Batch batch = store.newBatch();
+    try {
+      store.commit(a1, a2);
+      // Visible to this store right away...
+      assertNumSearchResults(store, "lor", 2);
+      // ...but not yet written for anyone else.
+      assertNumItems(new LuceneMetadataStore(taxonomy, indexDir).getAudioItems(), 0);
+
+      // A failed transaction doesn't undo the earlier work of the batch.
+      a1.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+          MetadataValue.newValue("Dolor"));
+      Exception expectedException = null;
+      try {
+        store.commit(a1, newFailingCommittable());
+      } catch (Exception e) {
+        expectedException = e;
+      }
+      assertNotNull(expectedException);
+      assertEquals("Lorem", a1.getTitle());
+      assertNumSearchResults(store, "lor", 2);
+
+      store.commit(a3);
+      assertNumSearchResults(store, "lor", 3);
+    } finally {
+      batch.close();
+    }
+
+    assertNumItems(new LuceneMetadataStore(taxonomy, indexDir).getAudioItems(), 3);
+  }
+
+  @Test
+  public void testIndexFailureKeepsEarlierBatchWork() throws Exception {
+    File indexDir = tmp.newFolder();
+    Taxonomy taxonomy = Taxonomy.createTaxonomy(null, null);
+    LuceneMetadataStore store = new LuceneMetadataStore(taxonomy, indexDir);
+
+    AudioItem a1 = store.newAudioItem("1");
+    AudioItem a2 = store.newAudioItem("2");
+    AudioItem a3 = store.newAudioItem("3");
+    AudioItem a4 = store.newAudioItem("4");
+    for (AudioItem item : new AudioItem[] {a1, a2, a4}) {
+      item.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+          MetadataValue.newValue("Lorem " + item.getId()));
+    }
+    a3.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+        MetadataValue.newValue("Ipsum"));
+    store.commit(a3);
+
+    MetadataStore.Batch batch = store.newBatch();
+    try {
+      store.commit(a1);
+      store.commit(a2);
+      // The change to a3 is applied to the writer, then the transaction fails. Only its changes
+      // are lost.
+      a3.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+          MetadataValue.newValue("Lorem 3"));
+      Exception expectedException = null;
+      try {
+        store.commit(a3, newFailingIndexOperation());
+      } catch (IOException e) {
+        expectedException = e;
+      }
+      assertNotNull(expectedException);
+      assertEquals("Ipsum", a3.getTitle());
+      assertNumSearchResults(store, "lor", 2);
+
+      store.commit(a4);
+      assertNumSearchResults(store, "lor", 3);
+    } finally {
+      batch.close();
+    }
+
+    LuceneMetadataStore reopened = new LuceneMetadataStore(taxonomy, indexDir);
+    assertNumItems(reopened.getAudioItems(), 4);
+    assertNumSearchResults(reopened, "lor", 3);
+    assertNumSearchResults(reopened, "ipsum", 1);
+  }
+
+
   @Test
   public void testNoNestedTransactions() throws Exception {
     LuceneMetadataStore store = newStore();
@@ -462,6 +641,106 @@ public class LuceneMetadataStoreTest {
     assertNull(active.get());
   }
 
+  @Test
+  public void testReindexOldIndex() throws Exception {
+    File indexDir = tmp.newFolder();
+    Taxonomy taxonomy = Taxonomy.createTaxonomy(null, null);
+
+    // An index as written before the uid doc values were added: the same documents, without them.
+    AudioItemDocumentFactory factory = new AudioItemDocumentFactory();
+    FacetsConfig facetsConfig = new FacetsConfig();
+    facetsConfig.setMultiValued(AudioItemIndex.CATEGORIES_FACET_FIELD, true);
+    facetsConfig.setMultiValued(AudioItemIndex.LOCALES_FACET_FIELD, true);
+    facetsConfig.setMultiValued(AudioItemIndex.PLAYLISTS_FACET_FIELD, true);
+    Playlist p1 = new Playlist("0");
+    p1.setName("old");
+    IndexWriterConfig config = new IndexWriterConfig(new AudioItemDocumentFactory.PrefixAnalyzer());
+    try (IndexWriter writer = new IndexWriter(FSDirectory.open(indexDir.toPath()), config)) {
+      for (String id : new String[] { "1", "2", "3" }) {
+        AudioItem audioItem = new AudioItem(id);
+        audioItem.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+            MetadataValue.newValue("Lorem " + id));
+        if (!id.equals("2")) {
+          p1.addAudioItem(audioItem);
+          audioItem.addPlaylist(p1);
+        }
+        Document doc = factory.createLuceneDocument(audioItem);
+        doc.removeFields(AudioItemIndex.UID_DOC_VALUES_FIELD);
+        writer.addDocument(facetsConfig.build(doc));
+      }
+      Map<String, String> commitData = new HashMap<>();
+      commitData.put(AudioItemIndex.PLAYLIST_NAMES_COMMIT_DATA, "0:old");
+      commitData.put(AudioItemIndex.MAX_PLAYLIST_UID_COMMIT_DATA, "1");
+      writer.setCommitData(commitData);
+    }
+
+    // Read-only, the old documents are used as they are.
+    LuceneMetadataStore readOnly = new LuceneMetadataStore(taxonomy, indexDir, false, false);
+    assertNumItems(readOnly.getAudioItems(), 3);
+    assertNumSearchResults(readOnly, "lorem", 3);
+    assertNumSearchResults(readOnly, "lorem", readOnly.getPlaylist("0"), 2);
+    readOnly.close();
+    try (DirectoryReader reader = DirectoryReader.open(FSDirectory.open(indexDir.toPath()))) {
+      for (LeafReaderContext leaf : reader.leaves()) {
+        assertNull(leaf.reader().getSortedDocValues(AudioItemIndex.UID_DOC_VALUES_FIELD));
+      }
+    }
+
+    LuceneMetadataStore store = new LuceneMetadataStore(taxonomy, indexDir);
+    assertNumItems(store.getAudioItems(), 3);
+    assertNumSearchResults(store, "lorem", 3);
+    Playlist reloaded = store.getPlaylist("0");
+    assertEquals("old", reloaded.getName());
+    assertEquals(Lists.newArrayList("1", "3"), Lists.newArrayList(reloaded.getAudioItemList()));
+    assertNumSearchResults(store, "lorem", reloaded, 2);
+    store.close();
+
+    try (DirectoryReader reader = DirectoryReader.open(FSDirectory.open(indexDir.toPath()))) {
+      for (LeafReaderContext leaf : reader.leaves()) {
+        Bits docsWithUid = DocValues.getDocsWithField(leaf.reader(), AudioItemIndex.UID_DOC_VALUES_FIELD);
+        Bits liveDocs = leaf.reader().getLiveDocs();
+        for (int docId = 0; docId < leaf.reader().maxDoc(); docId++) {
+          assertTrue(liveDocs != null && !liveDocs.get(docId) || docsWithUid.get(docId));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testMetadataVersion() throws Exception {
+    File indexDir = tmp.newFolder();
+    Taxonomy taxonomy = Taxonomy.createTaxonomy(null, null);
+    LuceneMetadataStore store = new LuceneMetadataStore(taxonomy, indexDir);
+    AudioItem a1 = store.newAudioItem("1");
+    a1.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+        MetadataValue.newValue("Lorem"));
+    store.commit(a1);
+    // Unless asked for, the compact encoding isn't written; older ACMs can't read it.
+    store.setCompactMetadata(true);
+    AudioItem a2 = store.newAudioItem("2");
+    a2.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+        MetadataValue.newValue("Ipsum"));
+    store.commit(a2);
+    store.close();
+
+    Map<String, Byte> firstBytes = new HashMap<>();
+    try (DirectoryReader reader = DirectoryReader.open(FSDirectory.open(indexDir.toPath()))) {
+      for (int docId = 0; docId < reader.maxDoc(); docId++) {
+        Document doc = reader.document(docId);
+        firstBytes.put(doc.get(AudioItemIndex.UID_FIELD),
+            doc.getBinaryValue(AudioItemIndex.RAW_METADATA_FIELD).bytes[0]);
+      }
+    }
+    // Version 1 starts with the little-endian int 1.
+    assertEquals(LBMetadataSerializer.METADATA_VERSION_1, (int) firstBytes.get("1"));
+    assertEquals(LBMetadataSerializer.METADATA_VERSION_2, (int) firstBytes.get("2"));
+
+    store = new LuceneMetadataStore(taxonomy, indexDir);
+    assertEquals("Lorem", store.getAudioItem("1").getTitle());
+    assertEquals("Ipsum", store.getAudioItem("2").getTitle());
+    store.close();
+  }
+
   private LuceneMetadataStore newStore() throws Exception {
     Taxonomy taxonomy = Taxonomy.createTaxonomy(null,null);
     return new LuceneMetadataStore(taxonomy, tmp.newFolder());
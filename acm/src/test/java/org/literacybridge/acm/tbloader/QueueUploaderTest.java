@@ -0,0 +1,281 @@
+package org.literacybridge.acm.tbloader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QueueUploaderTest {
+    private static final long PART_SIZE = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Keeps uploaded objects in memory, and can be told to fail.
+     */
+    private static class FakeTransport implements UploadTransport {
+        final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+        final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+        final AtomicInteger partsUploaded = new AtomicInteger();
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        volatile int failAtPart = -1;
+        // Uploads of this key always fail.
+        volatile String failKey;
+        final AtomicInteger failures = new AtomicInteger();
+
+        @Override
+        public boolean isOnline() {
+            return true;
+        }
+
+        @Override
+        public void putObject(String key, File file) throws IOException {
+            if (key.equals(failKey)) {
+                failures.incrementAndGet();
+                throw new IOException("Access denied");
+            }
+            int now = active.incrementAndGet();
+            maxActive.accumulateAndGet(now, Math::max);
+            try {
+                Thread.sleep(20);
+                objects.put(key, Files.readAllBytes(file.toPath()));
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+
+        @Override
+        public String createMultipartUpload(String key) {
+            String uploadId = "upload-" + uploads.size();
+            uploads.put(uploadId, new ConcurrentHashMap<>());
+            return uploadId;
+        }
+
+        @Override
+        public String uploadPart(String key, String uploadId, int partNumber, File file, long offset, long length)
+            throws IOException
+        {
+            if (partNumber == failAtPart) {
+                failAtPart = -1;
+                failures.incrementAndGet();
+                throw new IOException("Connection lost");
+            }
+            Map<Integer, byte[]> parts = uploads.get(uploadId);
+            if (parts == null) {
+                throw new UploadExpiredException("No such upload " + uploadId, null);
+            }
+            byte[] bytes = new byte[(int) length];
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                raf.seek(offset);
+                raf.readFully(bytes);
+            }
+            parts.put(partNumber, bytes);
+            partsUploaded.incrementAndGet();
+            return "tag" + partNumber;
+        }
+
+        @Override
+        public void completeMultipartUpload(String key, String uploadId, List<String> partTags) throws IOException {
+            Map<Integer, byte[]> parts = uploads.remove(uploadId);
+            if (parts == null) {
+                throw new UploadExpiredException("No such upload " + uploadId, null);
+            }
+            ByteArrayOutputStream object = new ByteArrayOutputStream();
+            for (int i = 1; i <= partTags.size(); i++) {
+                assertEquals("tag" + i, partTags.get(i - 1));
+                object.write(parts.get(i));
+            }
+            objects.put(key, object.toByteArray());
+        }
+    }
+
+    @Test
+    public void testUploadsConcurrently() throws Exception {
+        File queueDir = folder.newFolder("uploadQueue");
+        for (int i = 0; i < 20; i++) {
+            makeFile(new File(queueDir, "collected-data/tbcd000c/file" + i + ".zip"), 100 + i);
+        }
+        UploadQueue queue = new UploadQueue(queueDir);
+        queue.load();
+        assertEquals(20, queue.size());
+
+        FakeTransport transport = new FakeTransport();
+        newUploader(queue, transport, 4).run(() -> false, true);
+
+        assertEquals(20, transport.objects.size());
+        assertEquals(119, transport.objects.get("collected-data/tbcd000c/file19.zip").length);
+        assertTrue(transport.maxActive.get() > 1);
+        assertTrue(transport.maxActive.get() <= 4);
+        assertEquals(0, queue.size());
+        assertFalse(new File(queueDir, "collected-data").exists());
+    }
+
+    @Test
+    public void testMultipartResumesAfterRestart() throws Exception {
+        File queueDir = folder.newFolder("uploadQueue");
+        File file = new File(queueDir, "user-recordings/big.zip");
+        byte[] content = makeFile(file, 4500);
+
+        FakeTransport transport = new FakeTransport();
+        transport.failAtPart = 3;
+        UploadQueue queue = new UploadQueue(queueDir);
+        queue.load();
+        // Stop at the first failure, as though the TB-Loader were closed.
+        newUploader(queue, transport, 2).run(() -> transport.failures.get() > 0, false);
+        assertEquals(2, transport.partsUploaded.get());
+        assertTrue(file.exists());
+
+        // A new queue reads the progress from the index.
+        UploadQueue restarted = new UploadQueue(queueDir);
+        restarted.load();
+        newUploader(restarted, transport, 2).run(() -> false, true);
+
+        // Parts 1 and 2 weren't sent again.
+        assertEquals(5, transport.partsUploaded.get());
+        assertArrayEquals(content, transport.objects.get("user-recordings/big.zip"));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testExpiredUploadStartsAgain() throws Exception {
+        File queueDir = folder.newFolder("uploadQueue");
+        byte[] content = makeFile(new File(queueDir, "big.zip"), 2500);
+
+        FakeTransport transport = new FakeTransport();
+        transport.failAtPart = 2;
+        UploadQueue queue = new UploadQueue(queueDir);
+        queue.load();
+        newUploader(queue, transport, 1).run(() -> transport.failures.get() > 0, false);
+        // The server forgets the upload.
+        transport.uploads.clear();
+
+        UploadQueue restarted = new UploadQueue(queueDir);
+        restarted.load();
+        newUploader(restarted, transport, 1).run(() -> false, true);
+        assertArrayEquals(content, transport.objects.get("big.zip"));
+        assertEquals(0, restarted.size());
+    }
+
+    @Test
+    public void testAddedFilesAreUploaded() throws Exception {
+        File queueDir = folder.newFolder("uploadQueue");
+        UploadQueue queue = new UploadQueue(queueDir);
+        queue.load();
+        File file = new File(queueDir, "abandoned-data/x.zip");
+        makeFile(file, 10);
+        queue.add(file);
+        queue.add(file);
+        assertEquals(1, queue.size());
+        assertEquals(10, queue.getStatus().nBytes);
+
+        FakeTransport transport = new FakeTransport();
+        newUploader(queue, transport, 1).run(() -> false, true);
+        assertEquals(Arrays.asList("abandoned-data/x.zip"), Arrays.asList(transport.objects.keySet().toArray()));
+    }
+
+    @Test(timeout = 10_000)
+    public void testFailingFileDoesNotBlockOthers() throws Exception {
+        File queueDir = folder.newFolder("uploadQueue");
+        // The smallest file, so the first one taken.
+        makeFile(new File(queueDir, "bad.zip"), 10);
+        for (int i = 0; i < 5; i++) {
+            makeFile(new File(queueDir, "file" + i + ".zip"), 100 + i);
+        }
+        UploadQueue queue = new UploadQueue(queueDir);
+        queue.load();
+
+        FakeTransport transport = new FakeTransport();
+        transport.failKey = "bad.zip";
+        newUploader(queue, transport, 1).run(() -> transport.objects.size() == 5, false);
+
+        assertEquals(5, transport.objects.size());
+        assertTrue(transport.failures.get() >= 1);
+        assertEquals(1, queue.size());
+        assertTrue(new File(queueDir, "bad.zip").exists());
+    }
+
+    @Test(timeout = 10_000)
+    public void testFailingFileIsLeftWhenStopping() throws Exception {
+        File queueDir = folder.newFolder("uploadQueue");
+        makeFile(new File(queueDir, "bad.zip"), 10);
+        makeFile(new File(queueDir, "good.zip"), 100);
+        UploadQueue queue = new UploadQueue(queueDir);
+        queue.load();
+
+        FakeTransport transport = new FakeTransport();
+        transport.failKey = "bad.zip";
+        newUploader(queue, transport, 1).run(() -> false, true);
+
+        assertEquals(1, transport.objects.size());
+        assertEquals(QueueUploader.MAX_TRIES_WHEN_STOPPING, transport.failures.get());
+        assertEquals(1, queue.size());
+        assertTrue(new File(queueDir, "bad.zip").exists());
+    }
+
+    @Test
+    public void testIndexIsAppended() throws Exception {
+        File queueDir = folder.newFolder("uploadQueue");
+        File indexFile = new File(queueDir.getParentFile(), queueDir.getName() + ".index");
+        File small = new File(queueDir, "small.zip");
+        File big = new File(queueDir, "big.zip");
+        makeFile(small, 10);
+        UploadQueue queue = new UploadQueue(queueDir);
+        queue.load();
+        String loaded = new String(Files.readAllBytes(indexFile.toPath()), StandardCharsets.UTF_8);
+
+        makeFile(big, 2500);
+        queue.add(big);
+        UploadQueue.Entry entry = queue.take();
+        queue.remove(entry);
+        entry = queue.take();
+        queue.startMultipart(entry, "upload-1");
+        queue.addPart(entry, "tag1");
+        queue.addPart(entry, "tag2");
+        String index = new String(Files.readAllBytes(indexFile.toPath()), StandardCharsets.UTF_8);
+        assertTrue(index.startsWith(loaded));
+        assertEquals(5, index.substring(loaded.length()).split("\n").length);
+
+        UploadQueue restarted = new UploadQueue(queueDir);
+        restarted.load();
+        assertEquals(1, restarted.size());
+        UploadQueue.Entry resumed = restarted.take();
+        assertEquals("big.zip", resumed.key);
+        assertEquals("upload-1", resumed.uploadId);
+        assertEquals(Arrays.asList("tag1", "tag2"), resumed.partTags);
+    }
+
+    private static QueueUploader newUploader(UploadQueue queue, UploadTransport transport, int maxConcurrent) {
+        return new QueueUploader(queue, transport, maxConcurrent, PART_SIZE, status -> {})
+            .withDelays(50, 1);
+    }
+
+    private static byte[] makeFile(File file, int size) throws IOException {
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * 31 + size);
+        }
+        Files.write(file.toPath(), content);
+        return content;
+    }
+}
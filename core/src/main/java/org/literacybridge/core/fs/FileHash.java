@@ -0,0 +1,70 @@
+package org.literacybridge.core.fs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hashes of file content, as lower case hex strings, for caches and manifests that need to know
+ * whether content has changed.
+ */
+public final class FileHash {
+    public static final String SHA_1 = "SHA-1";
+    public static final String SHA_256 = "SHA-256";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private FileHash() {
+    }
+
+    /**
+     * @param file to be hashed.
+     * @return the hex SHA-256 of the file's content.
+     * @throws IOException if the file can't be read.
+     */
+    public static String sha256(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return hash(in, SHA_256);
+        }
+    }
+
+    /**
+     * Reads the stream to its end, but doesn't close it.
+     * @param in the content to be hashed.
+     * @param algorithm a MessageDigest algorithm, like SHA_1 or SHA_256.
+     * @return the hex hash of the content.
+     * @throws IOException if the stream can't be read.
+     */
+    public static String hash(InputStream in, String algorithm) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-1 and SHA-256.
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            digest.update(buffer, 0, n);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @param bytes to be formatted.
+     * @return the bytes as lower case hex, two digits per byte.
+     */
+    public static String toHex(byte[] bytes) {
+        char[] result = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            result[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(result);
+    }
+}
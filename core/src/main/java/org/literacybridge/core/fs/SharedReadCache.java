@@ -0,0 +1,253 @@
+package org.literacybridge.core.fs;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the contents of read-only files in memory, so that many readers of the same files, like
+ * several Talking Books being loaded from one deployment, read each file from disk only once.
+ *
+ * Files are read through a view of a directory, from wrap(). Files larger than the maximum file
+ * size, or that would take the cache over its maximum size, are read from disk as usual. Nothing
+ * is ever evicted; the cache is meant to live as long as a batch of work over unchanging files.
+ */
+public class SharedReadCache {
+    private final long maxBytes;
+    private final long maxFileBytes;
+
+    private final ConcurrentHashMap<String, Read> contents = new ConcurrentHashMap<>();
+    private final AtomicLong sizeInBytes = new AtomicLong();
+    private final AtomicLong bytesFromCache = new AtomicLong();
+    private final AtomicLong bytesFromDisk = new AtomicLong();
+
+    /**
+     * @param maxBytes the most file content to hold in memory.
+     * @param maxFileBytes larger files are never cached.
+     */
+    public SharedReadCache(long maxBytes, long maxFileBytes) {
+        this.maxBytes = maxBytes;
+        this.maxFileBytes = maxFileBytes;
+    }
+
+    /**
+     * A view of the given file or directory that reads file contents through this cache.
+     * @param root to be viewed.
+     * @return the view.
+     */
+    public TbFile wrap(TbFile root) {
+        return root instanceof CachedFile ? root : new CachedFile(root);
+    }
+
+    public long getSizeInBytes() {
+        return sizeInBytes.get();
+    }
+
+    /**
+     * @return bytes that readers got from memory, rather than from disk.
+     */
+    public long getBytesFromCache() {
+        return bytesFromCache.get();
+    }
+
+    /**
+     * @return bytes read from disk, to fill the cache or for files that aren't cached.
+     */
+    public long getBytesFromDisk() {
+        return bytesFromDisk.get();
+    }
+
+    private InputStream openFileInputStream(TbFile file) throws IOException {
+        byte[] bytes = getContents(file);
+        if (bytes != null) {
+            bytesFromCache.addAndGet(bytes.length);
+            return new ByteArrayInputStream(bytes);
+        }
+        bytesFromDisk.addAndGet(file.length());
+        return file.openFileInputStream();
+    }
+
+    /**
+     * The contents of the file, reading it if this is the first request. Concurrent first requests
+     * wait for one read.
+     * @return the contents, or null if the file isn't cached.
+     */
+    private byte[] getContents(TbFile file) throws IOException {
+        String key = file.getAbsolutePath();
+        Read task = contents.get(key);
+        if (task == null) {
+            long length = file.length();
+            if (length > maxFileBytes || sizeInBytes.addAndGet(length) > maxBytes) {
+                if (length <= maxFileBytes) sizeInBytes.addAndGet(-length);
+                return null;
+            }
+            Read newTask = new Read(file, length);
+            task = contents.putIfAbsent(key, newTask);
+            if (task == null) {
+                task = newTask;
+                task.run();
+            } else {
+                // Somebody else got there first.
+                sizeInBytes.addAndGet(-length);
+            }
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            // Only the one who removes the failed read gives back its space.
+            if (contents.remove(key, task)) {
+                sizeInBytes.addAndGet(-task.length);
+            }
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * The read of a file's contents, with the space that it holds in the cache.
+     */
+    private class Read extends FutureTask<byte[]> {
+        final long length;
+
+        Read(TbFile file, long length) {
+            super(() -> readFully(file, (int) length));
+            this.length = length;
+        }
+    }
+
+    private byte[] readFully(TbFile file, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        try (InputStream in = file.openFileInputStream()) {
+            int n;
+            while (offset < length && (n = in.read(bytes, offset, length - offset)) > 0) {
+                offset += n;
+            }
+        }
+        if (offset != length) {
+            throw new IOException(String.format("Expected %d bytes but read %d from %s", length, offset, file.getAbsolutePath()));
+        }
+        bytesFromDisk.addAndGet(length);
+        return bytes;
+    }
+
+    /**
+     * A TbFile that delegates to another, but reads file contents through the cache.
+     */
+    private class CachedFile extends TbFile {
+        private final TbFile file;
+
+        CachedFile(TbFile file) {
+            this.file = file;
+        }
+
+        @Override
+        public TbFile open(String child) {
+            return new CachedFile(file.open(child));
+        }
+
+        @Override
+        public TbFile getParent() {
+            TbFile parent = file.getParent();
+            return parent == null ? null : new CachedFile(parent);
+        }
+
+        @Override
+        public String getName() {
+            return file.getName();
+        }
+
+        @Override
+        public String getAbsolutePath() {
+            return file.getAbsolutePath();
+        }
+
+        @Override
+        public void renameTo(String newName) {
+            file.renameTo(newName);
+        }
+
+        @Override
+        public boolean exists() {
+            return file.exists();
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return file.isDirectory();
+        }
+
+        @Override
+        public boolean mkdir() {
+            return file.mkdir();
+        }
+
+        @Override
+        public boolean mkdirs() {
+            return file.mkdirs();
+        }
+
+        @Override
+        public void createNew(InputStream content, Flags... flags) throws IOException {
+            file.createNew(content, flags);
+        }
+
+        @Override
+        public OutputStream createNew(Flags... flags) throws IOException {
+            return file.createNew(flags);
+        }
+
+        @Override
+        public boolean delete() {
+            return file.delete();
+        }
+
+        @Override
+        public long length() {
+            return file.length();
+        }
+
+        @Override
+        public long lastModified() {
+            return file.lastModified();
+        }
+
+        @Override
+        public String[] list() {
+            return file.list();
+        }
+
+        @Override
+        public String[] list(FilenameFilter filter) {
+            return file.list(filter);
+        }
+
+        @Override
+        public TbFile[] listFiles(FilenameFilter filter) {
+            TbFile[] files = file.listFiles(filter);
+            if (files == null) return null;
+            TbFile[] result = new TbFile[files.length];
+            for (int i = 0; i < files.length; i++) {
+                result[i] = new CachedFile(files[i]);
+            }
+            return result;
+        }
+
+        @Override
+        public long getFreeSpace() {
+            return file.getFreeSpace();
+        }
+
+        @Override
+        public InputStream openFileInputStream() throws IOException {
+            return SharedReadCache.this.openFileInputStream(file);
+        }
+    }
+}
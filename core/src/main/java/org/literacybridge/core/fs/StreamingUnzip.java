@@ -0,0 +1,497 @@
+package org.literacybridge.core.fs;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Extracts a zip as it is read from a stream, like a download, so that the zip never needs to be
+ * saved, and the extraction is finished when the download is.
+ *
+ * Each entry's CRC is checked. After each entry, the offset of the next one is known, and is
+ * remembered (in a small file in the output directory) so that an interrupted extraction can
+ * resume there: after a failed read the stream is opened again at that offset, and a later
+ * unzip() of the same zip into the same directory picks up where the earlier one stopped.
+ *
+ * Only the local headers are read, never the central directory. That's enough for zips written
+ * by ZipOutputStream or ZipEngine; a STORED entry must have its sizes in the local header.
+ */
+public class StreamingUnzip {
+  private static final Logger LOG = Logger.getLogger(StreamingUnzip.class.getName());
+
+  public static final String PROGRESS_FILE_NAME = ".unzip-progress";
+  private static final String ID_PROPERTY = "id";
+  private static final String OFFSET_PROPERTY = "offset";
+  // Don't write the progress file more often than this.
+  private static final long SAVE_INTERVAL_MILLIS = 1000;
+
+  private static final int LOCAL_HEADER = 0x04034b50;
+  private static final int CENTRAL_HEADER = 0x02014b50;
+  private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+  private static final int DATA_DESCRIPTOR = 0x08074b50;
+  private static final int FLAG_ENCRYPTED = 0x0001;
+  private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+  private static final int ZIP64_EXTRA = 0x0001;
+  private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+  /**
+   * Where the zip comes from.
+   */
+  public interface Source {
+    /**
+     * @param offset of the first byte wanted.
+     * @return a stream of the zip's bytes, from the offset. Closed by the caller.
+     * @throws IOException if the zip can't be opened.
+     */
+    InputStream open(long offset) throws IOException;
+  }
+
+  /**
+   * A Source for a zip file.
+   */
+  public static Source fileSource(File zipFile) {
+    return offset -> {
+      InputStream in = new FileInputStream(zipFile);
+      long skipped = 0;
+      while (skipped < offset) {
+        long n = in.skip(offset - skipped);
+        if (n <= 0) {
+          in.close();
+          throw new EOFException("Unable to skip to " + offset + " in " + zipFile);
+        }
+        skipped += n;
+      }
+      return in;
+    };
+  }
+
+  private final String id;
+  private final long totalSize;
+  private final int retries;
+  private final ZipUnzip.UnzipListener listener;
+
+  public static class Builder {
+    private String id = "";
+    private long totalSize = -1;
+    private int retries = 3;
+    private ZipUnzip.UnzipListener listener;
+
+    /**
+     * @param id identifies the zip, like its name and eTag. Progress saved for a different id is
+     *           ignored, and the output directory cleared.
+     */
+    public Builder withId(String id) {
+      this.id = id;
+      return this;
+    }
+
+    /**
+     * @param totalSize of the zip, for the listener.
+     */
+    public Builder withTotalSize(long totalSize) {
+      this.totalSize = totalSize;
+      return this;
+    }
+
+    /**
+     * @param retries times the stream is re-opened after a failure, before giving up.
+     */
+    public Builder withRetries(int retries) {
+      this.retries = Math.max(0, retries);
+      return this;
+    }
+
+    /**
+     * @param listener called with (bytes of the zip read so far, totalSize) after each entry.
+     */
+    public Builder withListener(ZipUnzip.UnzipListener listener) {
+      this.listener = listener;
+      return this;
+    }
+
+    public StreamingUnzip build() {
+      return new StreamingUnzip(this);
+    }
+  }
+
+  private StreamingUnzip(Builder builder) {
+    this.id = builder.id;
+    this.totalSize = builder.totalSize;
+    this.retries = builder.retries;
+    this.listener = builder.listener;
+  }
+
+  /**
+   * Extracts the zip into the directory, resuming an earlier extraction of the same zip if there
+   * was one.
+   * @param source of the zip.
+   * @param outDir where to extract it.
+   * @return true if the zip was extracted completely, false if the listener cancelled (the
+   * progress is saved, so a later call resumes).
+   * @throws IOException if the zip can't be read after the retries, or is corrupt, or a file
+   * can't be written.
+   */
+  public boolean unzip(Source source, File outDir) throws IOException {
+    File progressFile = new File(outDir, PROGRESS_FILE_NAME);
+    long offset = loadProgress(progressFile, outDir);
+    int failures = 0;
+    while (true) {
+      Extraction extraction = new Extraction(outDir, progressFile, offset);
+      try (InputStream in = source.open(offset)) {
+        boolean finished = extraction.run(in);
+        if (finished) {
+          //noinspection ResultOfMethodCallIgnored
+          progressFile.delete();
+        }
+        return finished;
+      } catch (ZipException e) {
+        // The zip itself is bad; reading it again won't help.
+        throw e;
+      } catch (IOException e) {
+        if (extraction.offset > offset) {
+          // Made progress; the count starts again.
+          failures = 0;
+        }
+        offset = extraction.offset;
+        extraction.saveProgress();
+        if (++failures > retries) {
+          throw e;
+        }
+        LOG.log(Level.WARNING, String.format("Unzip interrupted at %d, resuming: %s", offset, e.getMessage()));
+      }
+    }
+  }
+
+  /**
+   * @return the offset at which to resume, or 0 to start over (in which case the directory is
+   * cleared of anything from an extraction of some other zip).
+   */
+  private long loadProgress(File progressFile, File outDir) throws IOException {
+    if (progressFile.isFile()) {
+      Properties progress = new Properties();
+      try (InputStream in = new FileInputStream(progressFile)) {
+        progress.load(in);
+        if (id.equals(progress.getProperty(ID_PROPERTY))) {
+          return Long.parseLong(progress.getProperty(OFFSET_PROPERTY, "0"));
+        }
+      } catch (IOException | NumberFormatException e) {
+        // Start over.
+      }
+    }
+    if (outDir.exists()) {
+      deleteContents(outDir);
+    } else if (!outDir.mkdirs()) {
+      throw new IOException("Unable to create directory " + outDir);
+    }
+    return 0;
+  }
+
+  private static void deleteContents(File dir) {
+    File[] files = dir.listFiles();
+    if (files == null) return;
+    for (File file : files) {
+      if (file.isDirectory()) {
+        deleteContents(file);
+      }
+      //noinspection ResultOfMethodCallIgnored
+      file.delete();
+    }
+  }
+
+  /**
+   * One pass over the stream, from a given offset.
+   */
+  private class Extraction {
+    private final File outDir;
+    private final String canonicalOutDir;
+    private final File progressFile;
+    // The offset of the first entry not yet extracted.
+    long offset;
+    private long lastSave = System.currentTimeMillis();
+    private final byte[] buffer = new byte[ZipEngine.BUFFER_SIZE];
+
+    Extraction(File outDir, File progressFile, long offset) throws IOException {
+      this.outDir = outDir;
+      this.canonicalOutDir = outDir.getCanonicalPath() + File.separator;
+      this.progressFile = progressFile;
+      this.offset = offset;
+    }
+
+    /**
+     * @return true when the end of the entries is reached, false if cancelled.
+     */
+    boolean run(InputStream stream) throws IOException {
+      Input in = new Input(stream, offset);
+      while (true) {
+        int signature = in.readInt();
+        if (signature == CENTRAL_HEADER || signature == END_OF_CENTRAL_DIRECTORY) {
+          return true;
+        }
+        if (signature != LOCAL_HEADER) {
+          throw new ZipException(String.format("Bad zip entry header at %d", in.position - 4));
+        }
+        extractEntry(in);
+        offset = in.position;
+        if (listener != null && !listener.progress(offset, totalSize)) {
+          saveProgress();
+          return false;
+        }
+        if (System.currentTimeMillis() - lastSave >= SAVE_INTERVAL_MILLIS) {
+          saveProgress();
+        }
+      }
+    }
+
+    private void extractEntry(Input in) throws IOException {
+      in.readShort(); // version needed
+      int flags = in.readShort();
+      int method = in.readShort();
+      in.readInt(); // time and date
+      long crc = in.readInt() & 0xFFFFFFFFL;
+      long compressedSize = in.readInt() & 0xFFFFFFFFL;
+      long size = in.readInt() & 0xFFFFFFFFL;
+      int nameLength = in.readShort();
+      int extraLength = in.readShort();
+      byte[] nameBytes = new byte[nameLength];
+      in.readFully(nameBytes, 0, nameLength);
+      String name = new String(nameBytes, StandardCharsets.UTF_8);
+      byte[] extra = new byte[extraLength];
+      in.readFully(extra, 0, extraLength);
+      boolean zip64 = false;
+      // Zip64 sizes, if the header's are just markers.
+      for (int ix = 0; ix + 4 <= extra.length; ) {
+        int tag = le16(extra, ix);
+        int length = le16(extra, ix + 2);
+        if (tag == ZIP64_EXTRA) {
+          zip64 = true;
+          int at = ix + 4;
+          if (size == ZIP64_MAGIC && at + 8 <= extra.length) {
+            size = le64(extra, at);
+            at += 8;
+          }
+          if (compressedSize == ZIP64_MAGIC && at + 8 <= extra.length) {
+            compressedSize = le64(extra, at);
+          }
+        }
+        ix += 4 + length;
+      }
+      if ((flags & FLAG_ENCRYPTED) != 0) {
+        throw new ZipException("Encrypted zip entries aren't supported: " + name);
+      }
+      boolean hasDescriptor = (flags & FLAG_DATA_DESCRIPTOR) != 0;
+
+      File file = new File(outDir, name);
+      if (!(file.getCanonicalPath() + File.separator).startsWith(canonicalOutDir)) {
+        throw new ZipException("Zip entry is outside of the target directory: " + name);
+      }
+      boolean isDirectory = name.endsWith("/");
+      File dir = isDirectory ? file : file.getParentFile();
+      if (!dir.mkdirs() && !dir.isDirectory()) {
+        throw new IOException("Unable to create directory " + dir);
+      }
+      CRC32 actualCrc = new CRC32();
+      long actualSize;
+      long actualCompressedSize;
+      // A directory entry has no data, but may still be "compressed" (ZipOutputStream does that).
+      try (OutputStream out = isDirectory ? new NullOutputStream() : new FileOutputStream(file)) {
+        if (method == 0) {
+          if (hasDescriptor) {
+            throw new ZipException("Stored entry without sizes: " + name);
+          }
+          copyStored(in, out, compressedSize, actualCrc);
+          actualSize = actualCompressedSize = compressedSize;
+        } else if (method == 8) {
+          long start = in.position;
+          actualSize = inflate(in, out, actualCrc);
+          actualCompressedSize = in.position - start;
+        } else {
+          throw new ZipException("Unsupported compression method " + method + ": " + name);
+        }
+      }
+      if (hasDescriptor) {
+        long value = in.readInt() & 0xFFFFFFFFL;
+        if (value == DATA_DESCRIPTOR) {
+          value = in.readInt() & 0xFFFFFFFFL;
+        }
+        crc = value;
+        compressedSize = zip64 ? in.readLong() : in.readInt() & 0xFFFFFFFFL;
+        size = zip64 ? in.readLong() : in.readInt() & 0xFFFFFFFFL;
+      }
+      if (actualCrc.getValue() != crc || actualSize != size || actualCompressedSize != compressedSize) {
+        throw new ZipException("CRC or size mismatch in zip entry " + name);
+      }
+    }
+
+    private void copyStored(Input in, OutputStream out, long size, CRC32 crc) throws IOException {
+      long remaining = size;
+      while (remaining > 0) {
+        int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+        crc.update(buffer, 0, n);
+        out.write(buffer, 0, n);
+        remaining -= n;
+      }
+    }
+
+    private long inflate(Input in, OutputStream out, CRC32 crc) throws IOException {
+      Inflater inflater = new Inflater(true);
+      long size = 0;
+      try {
+        while (!inflater.finished()) {
+          if (inflater.needsInput()) {
+            in.fill();
+            inflater.setInput(in.buffer, in.pos, in.limit - in.pos);
+            in.consume(in.limit - in.pos);
+          }
+          int n;
+          try {
+            n = inflater.inflate(buffer);
+          } catch (DataFormatException e) {
+            throw new ZipException("Bad compressed data: " + e.getMessage());
+          }
+          if (n > 0) {
+            crc.update(buffer, 0, n);
+            out.write(buffer, 0, n);
+            size += n;
+          } else if (inflater.needsDictionary()) {
+            throw new ZipException("Bad compressed data: needs dictionary");
+          }
+        }
+        // Give back what the inflater didn't use; it's the next header.
+        in.unconsume(inflater.getRemaining());
+      } finally {
+        inflater.end();
+      }
+      return size;
+    }
+
+    void saveProgress() {
+      Properties progress = new Properties();
+      progress.setProperty(ID_PROPERTY, id);
+      progress.setProperty(OFFSET_PROPERTY, Long.toString(offset));
+      try (OutputStream out = new FileOutputStream(progressFile)) {
+        progress.store(out, null);
+      } catch (IOException e) {
+        // Then a restart starts over.
+        LOG.log(Level.WARNING, "Unable to save unzip progress", e);
+      }
+      lastSave = System.currentTimeMillis();
+    }
+  }
+
+  private static int le16(byte[] b, int at) {
+    return (b[at] & 0xFF) | (b[at + 1] & 0xFF) << 8;
+  }
+
+  private static long le64(byte[] b, int at) {
+    long value = 0;
+    for (int i = 7; i >= 0; i--) {
+      value = value << 8 | (b[at + i] & 0xFF);
+    }
+    return value;
+  }
+
+  private static class NullOutputStream extends OutputStream {
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+    }
+  }
+
+  /**
+   * A buffered stream that knows its position in the zip, and can give back bytes read past the
+   * end of compressed data.
+   */
+  private static class Input {
+    private final InputStream in;
+    final byte[] buffer = new byte[ZipEngine.BUFFER_SIZE];
+    int pos = 0;
+    int limit = 0;
+    long position;
+
+    Input(InputStream in, long position) {
+      this.in = in;
+      this.position = position;
+    }
+
+    /**
+     * Makes sure there's at least one byte in the buffer.
+     */
+    void fill() throws IOException {
+      if (pos < limit) return;
+      int n = in.read(buffer, 0, buffer.length);
+      if (n <= 0) {
+        throw new EOFException("Unexpected end of zip at " + position);
+      }
+      pos = 0;
+      limit = n;
+    }
+
+    void consume(int n) {
+      pos += n;
+      position += n;
+    }
+
+    void unconsume(int n) {
+      pos -= n;
+      position -= n;
+    }
+
+    int read(byte[] b, int off, int len) throws IOException {
+      fill();
+      int n = Math.min(len, limit - pos);
+      System.arraycopy(buffer, pos, b, off, n);
+      consume(n);
+      return n;
+    }
+
+    void readFully(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        int n = read(b, off, len);
+        off += n;
+        len -= n;
+      }
+    }
+
+    void skip(long n) throws IOException {
+      while (n > 0) {
+        fill();
+        int k = (int) Math.min(n, limit - pos);
+        consume(k);
+        n -= k;
+      }
+    }
+
+    int readShort() throws IOException {
+      byte[] b = new byte[2];
+      readFully(b, 0, 2);
+      return le16(b, 0);
+    }
+
+    int readInt() throws IOException {
+      byte[] b = new byte[4];
+      readFully(b, 0, 4);
+      return le16(b, 0) | le16(b, 2) << 16;
+    }
+
+    long readLong() throws IOException {
+      byte[] b = new byte[8];
+      readFully(b, 0, 8);
+      return le64(b, 0);
+    }
+  }
+}
@@ -0,0 +1,789 @@
+package org.literacybridge.core.fs;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Zips and unzips directory trees, using several threads.
+ *
+ * Unzipping extracts the entries of the ZipFile concurrently, since they can be read in any
+ * order. Zipping reads, checksums and compresses the files on the worker threads, while one
+ * thread writes the finished entries in order; already-compressed audio can be stored rather
+ * than deflated, and when the zip is a file, stored files are copied into it with
+ * FileChannel.transferTo. Copies go through large per-thread buffers.
+ *
+ * The parallel zip writer doesn't write Zip64, so a tree that might be too big, or has too many
+ * files, for a plain zip is zipped by ZipOutputStream instead, on one thread. Whether it might be
+ * too big is judged from the most the files could take in the zip, with their headers, and
+ * with deflate's worst case for data that doesn't compress.
+ *
+ * ZipUnzip's static methods use an engine with the default settings.
+ */
+public class ZipEngine {
+  private static final Logger LOG = Logger.getLogger(ZipEngine.class.getName());
+
+  static final int BUFFER_SIZE = 256 * 1024;
+  // Files up to this size are read, and compressed, whole by the workers. Larger ones are
+  // streamed by the writer.
+  static final int IN_MEMORY_LIMIT = 1024 * 1024;
+  // Entries prepared ahead of the writer, per thread. Bounds the memory used.
+  private static final int WINDOW_PER_THREAD = 2;
+  // Without Zip64, sizes and offsets must fit in 32 bits, and the count in 16. The largest
+  // values themselves mean "see the Zip64 record", so they must be less.
+  private static final long MAX_ZIP32_VALUE = 0xFFFFFFFFL;
+  private static final int MAX_ZIP32_ENTRIES = 0xFFFF;
+  // The local header, data descriptor and central directory header of an entry, besides its
+  // name, which is in both headers.
+  private static final int ENTRY_OVERHEAD = 30 + 16 + 46;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+
+  private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() {
+      return new byte[BUFFER_SIZE];
+    }
+  };
+
+  private final int threads;
+  private final Set<String> storedExtensions;
+  private final boolean parallelCompression;
+
+  public static class Builder {
+    private int threads = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    private Set<String> storedExtensions = ZipUnzip.COMPRESSED_AUDIO_EXTENSIONS;
+    private boolean parallelCompression = true;
+
+    /**
+     * @param threads to extract or compress with. 1 to do everything on the calling thread.
+     */
+    public Builder withThreads(int threads) {
+      this.threads = Math.max(1, threads);
+      return this;
+    }
+
+    /**
+     * @param storedExtensions Files with these (lower case) extensions are stored, not deflated.
+     */
+    public Builder withStoredExtensions(Set<String> storedExtensions) {
+      this.storedExtensions = new HashSet<>(storedExtensions);
+      return this;
+    }
+
+    /**
+     * @param parallelCompression if false, zips are written by ZipOutputStream, on one thread.
+     */
+    public Builder withParallelCompression(boolean parallelCompression) {
+      this.parallelCompression = parallelCompression;
+      return this;
+    }
+
+    public ZipEngine build() {
+      return new ZipEngine(this);
+    }
+  }
+
+  private ZipEngine(Builder builder) {
+    this.threads = builder.threads;
+    this.storedExtensions = builder.storedExtensions;
+    this.parallelCompression = builder.parallelCompression;
+  }
+
+  /**
+   * One file or directory to be zipped.
+   */
+  private static class Item {
+    final String name;
+    // Null for a directory.
+    final File file;
+    final long size;
+
+    Item(String name, File file) {
+      this.name = name;
+      this.file = file;
+      this.size = file == null ? 0 : file.length();
+    }
+  }
+
+  /**
+   * An entry, ready to be written: its sizes and checksum, and its data if that's in memory.
+   */
+  private static class Prepared {
+    final Item item;
+    final int method;
+    long crc;
+    long compressedSize;
+    // The (compressed, if deflated) data, or null if the writer is to read the file.
+    byte[] data;
+    int dataLength;
+
+    Prepared(Item item, int method) {
+      this.item = item;
+      this.method = method;
+    }
+  }
+
+  /**
+   * Zips a directory into a stream.
+   * @param inDir The directory to be zipped.
+   * @param out Receives the zip. Not closed.
+   * @param includeBaseDir If true, the entries are prefixed with the directory's name.
+   * @return the number of bytes written to the stream.
+   * @throws IOException if a file can't be read, or the stream can't be written.
+   */
+  public long zip(File inDir, OutputStream out, boolean includeBaseDir) throws IOException {
+    List<Item> items = collect(inDir, includeBaseDir, null);
+    Sink sink = new Sink(out);
+    write(items, sink);
+    sink.flush();
+    return sink.position;
+  }
+
+  /**
+   * Zips a directory, or some of its sub-directories, into a file.
+   * @param inDir The directory to be zipped.
+   * @param outFile The zip file to be created. Any existing file is replaced.
+   * @param includeBaseDir If true, the entries are prefixed with the directory's name.
+   * @param subdirs If not null, only these sub-directories are zipped (with the directory's own
+   *                entry).
+   * @throws IOException if a file can't be read, or the zip can't be written.
+   */
+  public void zip(File inDir, File outFile, boolean includeBaseDir, String[] subdirs)
+      throws IOException {
+    List<Item> items = collect(inDir, includeBaseDir, subdirs);
+    outFile.delete();
+    outFile.getParentFile().mkdirs();
+    try (FileOutputStream fos = new FileOutputStream(outFile)) {
+      Sink sink = new Sink(fos.getChannel());
+      write(items, sink);
+      sink.flush();
+    }
+  }
+
+  /**
+   * Unzips a file into a directory.
+   * @param inFile The .zip file.
+   * @param outDir Where to unzip the files.
+   * @param listener Optional callback for status; called on the calling thread.
+   * @throws IOException if the zip can't be read, or a file can't be written.
+   */
+  public void unzip(File inFile, File outDir, ZipUnzip.UnzipListener listener) throws IOException {
+    long total = inFile.length();
+    try (ZipFile zfile = new ZipFile(inFile)) {
+      // Make the directories first. If a name occurs more than once, the last one wins, as it
+      // would when extracting in order.
+      Map<String, ZipEntry> files = new LinkedHashMap<>();
+      Enumeration<? extends ZipEntry> entries = zfile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        if (entry.isDirectory()) {
+          new File(outDir, entry.getName()).mkdirs();
+        } else {
+          files.remove(entry.getName());
+          files.put(entry.getName(), entry);
+        }
+      }
+      if (listener != null) {
+        listener.progress(0, total);
+      }
+      if (threads == 1 || files.size() <= 1) {
+        long current = 0;
+        for (ZipEntry entry : files.values()) {
+          extract(zfile, entry, new File(outDir, entry.getName()));
+          if (listener != null) {
+            current += entry.getCompressedSize();
+            if (!listener.progress(current, total)) break;
+          }
+        }
+        return;
+      }
+      unzipConcurrently(zfile, files.values(), outDir, listener, total);
+    }
+  }
+
+  private void unzipConcurrently(ZipFile zfile, Collection<ZipEntry> files, File outDir,
+      ZipUnzip.UnzipListener listener, long total) throws IOException {
+    ExecutorService executor = newExecutor(Math.min(threads, files.size()));
+    List<Future<ZipEntry>> futures = new ArrayList<>();
+    try {
+      CompletionService<ZipEntry> completion = new ExecutorCompletionService<>(executor);
+      for (ZipEntry entry : files) {
+        futures.add(completion.submit(() -> {
+          extract(zfile, entry, new File(outDir, entry.getName()));
+          return entry;
+        }));
+      }
+      long current = 0;
+      for (int i = 0; i < futures.size(); i++) {
+        ZipEntry entry = completion.take().get();
+        if (listener != null) {
+          current += entry.getCompressedSize();
+          if (!listener.progress(current, total)) break;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while unzipping " + zfile.getName(), e);
+    } catch (ExecutionException e) {
+      throw asIOException(e);
+    } finally {
+      // Anything not yet started is abandoned (when cancelled, or after a failure).
+      for (Future<ZipEntry> future : futures) {
+        future.cancel(false);
+      }
+      executor.shutdown();
+      awaitQuietly(executor);
+    }
+  }
+
+  private static void extract(ZipFile zfile, ZipEntry entry, File file) throws IOException {
+    file.getParentFile().mkdirs();
+    byte[] buffer = BUFFERS.get();
+    try (InputStream in = zfile.getInputStream(entry);
+        OutputStream out = new FileOutputStream(file)) {
+      int length;
+      while ((length = in.read(buffer)) > 0) {
+        out.write(buffer, 0, length);
+      }
+    }
+  }
+
+  /**
+   * Lists what's to be zipped, in the order ZipUnzip has always zipped it.
+   */
+  private List<Item> collect(File inDir, boolean includeBaseDir, String[] subdirs) {
+    File baseDir = includeBaseDir ? inDir.getParentFile() : inDir;
+    List<Item> items = new ArrayList<>();
+    if (subdirs == null) {
+      collect(baseDir, inDir, items, includeBaseDir, true);
+    } else {
+      collect(baseDir, inDir, items, includeBaseDir, false);
+      for (String dir : subdirs) {
+        File f = new File(inDir, dir);
+        if (f.exists()) {
+          collect(baseDir, f, items, false, true);
+        }
+      }
+    }
+    return items;
+  }
+
+  private static void collect(File baseDir, File dir, List<Item> items, boolean includeBaseDir,
+      boolean includeChildren) {
+    if (includeBaseDir || dir != baseDir) {
+      items.add(new Item(relativeName(baseDir, dir), null));
+    }
+    if (!includeChildren)
+      return;
+    File[] files = dir.listFiles();
+    if (files == null)
+      return;
+    for (File file : files) {
+      if (file.isDirectory()) {
+        collect(baseDir, file, items, false, true);
+      } else {
+        items.add(new Item(relativeName(baseDir, file), file));
+      }
+    }
+  }
+
+  private static String relativeName(File baseDir, File file) {
+    return baseDir.toURI().relativize(file.toURI()).getPath();
+  }
+
+  private boolean isStored(File file) {
+    String name = file.getName();
+    int ix = name.lastIndexOf('.');
+    return ix > 0 && storedExtensions.contains(name.substring(ix + 1).toLowerCase());
+  }
+
+  private void write(List<Item> items, Sink sink) throws IOException {
+    if (!parallelCompression || items.size() >= MAX_ZIP32_ENTRIES
+        || maxZipSize(items) >= MAX_ZIP32_VALUE) {
+      writeWithZipOutputStream(items, sink);
+      return;
+    }
+    ExecutorService executor = threads > 1 ? newExecutor(threads) : null;
+    List<Future<Prepared>> futures = new ArrayList<>();
+    try {
+      // Entries get the time the zip was made, as ZipOutputStream gives them.
+      long dosTime = dosTime(System.currentTimeMillis());
+      List<CentralEntry> central = new ArrayList<>();
+      int window = threads * WINDOW_PER_THREAD;
+      int submitted = 0;
+      for (int i = 0; i < items.size(); i++) {
+        Prepared prepared;
+        if (executor == null) {
+          prepared = prepare(items.get(i));
+        } else {
+          while (submitted < items.size() && submitted < i + window) {
+            Item item = items.get(submitted++);
+            futures.add(executor.submit(() -> prepare(item)));
+          }
+          prepared = futures.get(i).get();
+          // Let the data be collected once it's written.
+          futures.set(i, null);
+        }
+        central.add(writeEntry(prepared, dosTime, sink));
+      }
+      writeCentralDirectory(central, dosTime, sink);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while zipping", e);
+    } catch (ExecutionException e) {
+      throw asIOException(e);
+    } finally {
+      if (executor != null) {
+        for (Future<Prepared> future : futures) {
+          if (future != null) future.cancel(false);
+        }
+        executor.shutdown();
+        awaitQuietly(executor);
+      }
+    }
+  }
+
+  /**
+   * @return the most bytes the items could take in a zip written by writeEntry and
+   * writeCentralDirectory.
+   */
+  private static long maxZipSize(List<Item> items) {
+    long size = END_OF_CENTRAL_DIRECTORY_SIZE;
+    for (Item item : items) {
+      // A name's UTF-8 is at most 3 bytes per char.
+      size += ENTRY_OVERHEAD + 2L * 3 * item.name.length() + maxDeflatedSize(item.size);
+    }
+    return size;
+  }
+
+  /**
+   * @return the most bytes that deflating size bytes can produce, as zlib's deflateBound().
+   */
+  private static long maxDeflatedSize(long size) {
+    return size + (size >> 12) + (size >> 14) + (size >> 25) + 13;
+  }
+
+  /**
+   * @return the value, which must fit in a zip's 32 bit field.
+   * @throws IOException if it doesn't, as when a file grew while being zipped.
+   */
+  private static int zip32(long value, String what) throws IOException {
+    if (value < 0 || value >= MAX_ZIP32_VALUE) {
+      throw new IOException(String.format("Zip too large without Zip64: %s is %d", what, value));
+    }
+    return (int) value;
+  }
+
+  /**
+   * Reads, checksums, and compresses (if it's to be deflated) a file small enough to hold in
+   * memory. For a larger file, only checksums it, if it's to be stored; the writer does the rest.
+   */
+  private Prepared prepare(Item item) throws IOException {
+    if (item.file == null) {
+      Prepared prepared = new Prepared(item, ZipEntry.STORED);
+      prepared.data = new byte[0];
+      return prepared;
+    }
+    boolean stored = isStored(item.file);
+    Prepared prepared = new Prepared(item, stored ? ZipEntry.STORED : ZipEntry.DEFLATED);
+    try {
+      if (item.size > IN_MEMORY_LIMIT) {
+        if (stored) {
+          prepared.crc = crcOf(item.file);
+          prepared.compressedSize = item.size;
+        }
+        return prepared;
+      }
+      byte[] bytes = readFully(item.file, (int) item.size);
+      CRC32 crc = new CRC32();
+      crc.update(bytes, 0, bytes.length);
+      prepared.crc = crc.getValue();
+      if (stored) {
+        prepared.data = bytes;
+        prepared.dataLength = bytes.length;
+      } else {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+          deflater.setInput(bytes);
+          deflater.finish();
+          ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 2 + 64);
+          byte[] buffer = BUFFERS.get();
+          while (!deflater.finished()) {
+            int length = deflater.deflate(buffer);
+            compressed.write(buffer, 0, length);
+          }
+          prepared.data = compressed.toByteArray();
+          prepared.dataLength = prepared.data.length;
+        } finally {
+          deflater.end();
+        }
+      }
+      prepared.compressedSize = prepared.dataLength;
+      return prepared;
+    } catch (IOException ioe) {
+      LOG.log(Level.WARNING, "IOException adding file in ZipEngine: " + item.file.getAbsolutePath());
+      throw ioe;
+    }
+  }
+
+  /**
+   * What the central directory needs to know about an entry.
+   */
+  private static class CentralEntry {
+    final byte[] name;
+    final int flags;
+    final int method;
+    final long crc;
+    final long compressedSize;
+    final long size;
+    final long offset;
+
+    CentralEntry(byte[] name, int flags, int method, long crc, long compressedSize, long size,
+        long offset) {
+      this.name = name;
+      this.flags = flags;
+      this.method = method;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.offset = offset;
+    }
+  }
+
+  // Names are UTF-8; with a data descriptor, the sizes and CRC follow the data.
+  private static final int FLAG_UTF8 = 0x0800;
+  private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+  private static final int VERSION = 20;
+
+  private CentralEntry writeEntry(Prepared prepared, long dosTime, Sink sink) throws IOException {
+    Item item = prepared.item;
+    byte[] name = item.name.getBytes(StandardCharsets.UTF_8);
+    long offset = sink.position;
+    zip32(offset, "offset of " + item.name);
+    // A large deflated file is compressed as it's written, so its sizes aren't known yet.
+    boolean streamed = prepared.data == null && prepared.method == ZipEntry.DEFLATED;
+    int flags = FLAG_UTF8 | (streamed ? FLAG_DATA_DESCRIPTOR : 0);
+
+    ByteBuffer header = littleEndian(30 + name.length);
+    header.putInt(0x04034b50);
+    header.putShort((short) VERSION);
+    header.putShort((short) flags);
+    header.putShort((short) prepared.method);
+    header.putInt((int) dosTime);
+    header.putInt(streamed ? 0 : (int) prepared.crc);
+    header.putInt(streamed ? 0 : zip32(prepared.compressedSize, "compressed size of " + item.name));
+    header.putInt(streamed ? 0 : zip32(item.size, "size of " + item.name));
+    header.putShort((short) name.length);
+    header.putShort((short) 0);
+    header.put(name);
+    sink.write(header.array(), 0, header.position());
+
+    if (prepared.data != null) {
+      sink.write(prepared.data, 0, prepared.dataLength);
+    } else if (!streamed) {
+      sink.transfer(item.file, item.size);
+    } else {
+      deflateInto(prepared, sink);
+      ByteBuffer descriptor = littleEndian(16);
+      descriptor.putInt(0x08074b50);
+      descriptor.putInt((int) prepared.crc);
+      descriptor.putInt(zip32(prepared.compressedSize, "compressed size of " + item.name));
+      descriptor.putInt(zip32(item.size, "size of " + item.name));
+      sink.write(descriptor.array(), 0, descriptor.position());
+    }
+    return new CentralEntry(name, flags, prepared.method, prepared.crc, prepared.compressedSize,
+        item.size, offset);
+  }
+
+  private static void deflateInto(Prepared prepared, Sink sink) throws IOException {
+    CRC32 crc = new CRC32();
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    byte[] buffer = BUFFERS.get();
+    byte[] compressed = new byte[BUFFER_SIZE];
+    long compressedSize = 0;
+    try (FileInputStream fin = new FileInputStream(prepared.item.file)) {
+      int length;
+      while ((length = fin.read(buffer)) > 0) {
+        crc.update(buffer, 0, length);
+        deflater.setInput(buffer, 0, length);
+        while (!deflater.needsInput()) {
+          int n = deflater.deflate(compressed);
+          sink.write(compressed, 0, n);
+          compressedSize += n;
+        }
+      }
+      deflater.finish();
+      while (!deflater.finished()) {
+        int n = deflater.deflate(compressed);
+        sink.write(compressed, 0, n);
+        compressedSize += n;
+      }
+    } finally {
+      deflater.end();
+    }
+    prepared.crc = crc.getValue();
+    prepared.compressedSize = compressedSize;
+  }
+
+  private static void writeCentralDirectory(List<CentralEntry> central, long dosTime, Sink sink)
+      throws IOException {
+    long start = sink.position;
+    for (CentralEntry entry : central) {
+      ByteBuffer header = littleEndian(46 + entry.name.length);
+      header.putInt(0x02014b50);
+      header.putShort((short) VERSION);
+      header.putShort((short) VERSION);
+      header.putShort((short) entry.flags);
+      header.putShort((short) entry.method);
+      header.putInt((int) dosTime);
+      header.putInt((int) entry.crc);
+      // The sizes and offset were checked by writeEntry.
+      header.putInt((int) entry.compressedSize);
+      header.putInt((int) entry.size);
+      header.putShort((short) entry.name.length);
+      // Extra field, comment, disk number, internal and external attributes.
+      header.putShort((short) 0);
+      header.putShort((short) 0);
+      header.putShort((short) 0);
+      header.putShort((short) 0);
+      header.putInt(0);
+      header.putInt((int) entry.offset);
+      header.put(entry.name);
+      sink.write(header.array(), 0, header.position());
+    }
+    long size = sink.position - start;
+    ByteBuffer end = littleEndian(22);
+    end.putInt(0x06054b50);
+    end.putShort((short) 0);
+    end.putShort((short) 0);
+    end.putShort((short) central.size());
+    end.putShort((short) central.size());
+    end.putInt(zip32(size, "central directory size"));
+    end.putInt(zip32(start, "central directory offset"));
+    end.putShort((short) 0);
+    sink.write(end.array(), 0, end.position());
+  }
+
+  /**
+   * Zips on the calling thread, with ZipOutputStream, which can write Zip64.
+   */
+  private void writeWithZipOutputStream(List<Item> items, Sink sink) throws IOException {
+    ZipOutputStream zout = new ZipOutputStream(sink.asOutputStream());
+    byte[] buffer = BUFFERS.get();
+    for (Item item : items) {
+      if (item.file == null) {
+        zout.putNextEntry(new ZipEntry(item.name));
+        continue;
+      }
+      try {
+        ZipEntry entry = new ZipEntry(item.name);
+        if (isStored(item.file)) {
+          // A stored entry needs its size and CRC up front.
+          entry.setMethod(ZipEntry.STORED);
+          entry.setSize(item.size);
+          entry.setCompressedSize(item.size);
+          entry.setCrc(crcOf(item.file));
+        }
+        zout.putNextEntry(entry);
+        try (FileInputStream fin = new FileInputStream(item.file)) {
+          int length;
+          while ((length = fin.read(buffer)) > 0) {
+            zout.write(buffer, 0, length);
+          }
+        }
+        zout.closeEntry();
+      } catch (IOException ioe) {
+        LOG.log(Level.WARNING, "IOException adding file in ZipEngine: " + item.file.getAbsolutePath());
+        throw ioe;
+      }
+    }
+    zout.finish();
+    zout.flush();
+  }
+
+  private static long crcOf(File file) throws IOException {
+    CRC32 crc = new CRC32();
+    byte[] buffer = BUFFERS.get();
+    try (FileInputStream fin = new FileInputStream(file)) {
+      int length;
+      while ((length = fin.read(buffer)) > 0) {
+        crc.update(buffer, 0, length);
+      }
+    }
+    return crc.getValue();
+  }
+
+  private static byte[] readFully(File file, int size) throws IOException {
+    byte[] bytes = new byte[size];
+    try (FileInputStream fin = new FileInputStream(file)) {
+      int offset = 0;
+      int length;
+      while (offset < size && (length = fin.read(bytes, offset, size - offset)) > 0) {
+        offset += length;
+      }
+      if (offset != size || fin.read() >= 0) {
+        throw new IOException("File changed while being zipped: " + file);
+      }
+    }
+    return bytes;
+  }
+
+  private static ByteBuffer littleEndian(int capacity) {
+    return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * The MS-DOS date and time, as zip headers hold them.
+   */
+  private static long dosTime(long millis) {
+    Calendar c = Calendar.getInstance();
+    c.setTimeInMillis(millis);
+    int year = c.get(Calendar.YEAR);
+    if (year < 1980) {
+      return (1 << 21) | (1 << 16);
+    }
+    return (year - 1980) << 25 | (c.get(Calendar.MONTH) + 1) << 21 | c.get(Calendar.DAY_OF_MONTH) << 16
+        | c.get(Calendar.HOUR_OF_DAY) << 11 | c.get(Calendar.MINUTE) << 5 | c.get(Calendar.SECOND) >> 1;
+  }
+
+  private static ExecutorService newExecutor(int threads) {
+    AtomicInteger threadNumber = new AtomicInteger();
+    return Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "zip-" + threadNumber.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  private static void awaitQuietly(ExecutorService executor) {
+    try {
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static IOException asIOException(ExecutionException e) {
+    Throwable cause = e.getCause();
+    if (cause instanceof IOException) {
+      return (IOException) cause;
+    }
+    if (cause instanceof RuntimeException) {
+      throw (RuntimeException) cause;
+    }
+    return new IOException(cause);
+  }
+
+  /**
+   * Where the zip is written: a file's channel, or a stream. Counts the bytes written, to know
+   * the entries' offsets.
+   */
+  private static class Sink {
+    private final FileChannel channel;
+    private final OutputStream out;
+    long position = 0;
+
+    Sink(FileChannel channel) {
+      this.channel = channel;
+      this.out = null;
+    }
+
+    Sink(OutputStream out) {
+      this.channel = null;
+      this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+    }
+
+    void write(byte[] bytes, int offset, int length) throws IOException {
+      if (channel != null) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      } else {
+        out.write(bytes, offset, length);
+      }
+      position += length;
+    }
+
+    /**
+     * Copies a file into the zip, without passing through the Java heap if the zip is a file.
+     */
+    void transfer(File file, long size) throws IOException {
+      try (FileInputStream fin = new FileInputStream(file)) {
+        if (channel != null) {
+          FileChannel in = fin.getChannel();
+          long done = 0;
+          while (done < size) {
+            long n = in.transferTo(done, size - done, channel);
+            if (n <= 0) throw new IOException("File changed while being zipped: " + file);
+            done += n;
+          }
+        } else {
+          byte[] buffer = BUFFERS.get();
+          long done = 0;
+          int length;
+          while (done < size && (length = fin.read(buffer, 0, (int) Math.min(buffer.length, size - done))) > 0) {
+            out.write(buffer, 0, length);
+            done += length;
+          }
+          if (done != size) throw new IOException("File changed while being zipped: " + file);
+        }
+      }
+      position += size;
+    }
+
+    void flush() throws IOException {
+      if (out != null) out.flush();
+    }
+
+    /**
+     * For ZipOutputStream; counts what it writes.
+     */
+    OutputStream asOutputStream() {
+      return new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+          Sink.this.write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+          Sink.this.write(b, off, len);
+        }
+      };
+    }
+  }
+}
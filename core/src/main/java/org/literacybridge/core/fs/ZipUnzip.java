@@ -1,18 +1,23 @@
 package org.literacybridge.core.fs;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Enumeration;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 public class ZipUnzip {
-  File baseInDir;
+  /**
+   * Extensions of audio files that are already compressed. Deflating them costs time and saves
+   * nothing, so they can be stored in a zip as-is.
+   */
+  public static final Set<String> COMPRESSED_AUDIO_EXTENSIONS = Collections.unmodifiableSet(
+      new HashSet<>(Arrays.asList("a18", "mp3", "ogg", "m4a", "aac", "opus")));
+
+  // Stores compressed audio, and uses a thread per processor (up to 8).
+  private static final ZipEngine DEFAULT_ENGINE = new ZipEngine.Builder().build();
 
     /**
      * Simple status of the unzip operation. Accumulates the uncompressed sizes of the files as
@@ -30,46 +35,23 @@ public class ZipUnzip {
       public boolean progress(long current, long total);
   }
 
-  private ZipUnzip(File baseDirectory) {
-    baseInDir = baseDirectory;
+  private ZipUnzip() {
   }
 
-  private void addDirectory(ZipOutputStream zout, File fileSource,
-      boolean includeBaseDir, boolean includeChildren) throws IOException {
-    if (includeBaseDir || fileSource != baseInDir) {
-      String relativeDirName = baseInDir.toURI().relativize(fileSource.toURI())
-          .getPath();
-      zout.putNextEntry(new ZipEntry(relativeDirName));
-    }
-    if (!includeChildren)
-      return;
-    File[] files = fileSource.listFiles();
-    for (File file : files) {
-      if (file.isDirectory()) {
-        addDirectory(zout, file, false, true);
-        continue;
-      }
-      try {
-        String relativeFileName = baseInDir.toURI().relativize(file.toURI()).getPath();
-        byte[] buffer = new byte[1024];
-        FileInputStream fin = new FileInputStream(file);
-        zout.putNextEntry(new ZipEntry(relativeFileName));
-        int length;
-        while ((length = fin.read(buffer)) > 0) {
-          zout.write(buffer, 0, length);
-        }
-        zout.closeEntry();
-        fin.close();
-      } catch (IOException ioe) {
-        try {
-            System.out.println("IOException adding file in ZipUnzip: " + file.getAbsolutePath());
-        } catch (Exception ex) {
-            // Ignore any exception printing exception message.
-            System.out.println("IOException in ZipUnzip.addDirectory: "+ioe.getMessage());
-        }
-        throw ioe;
-      }
-    }
+  /**
+   * Zips a directory straight into a stream, in one pass. Nothing is written to a temporary
+   * file, so the stream can be the final destination of the zip.
+   * @param inDir The directory to be zipped.
+   * @param out Receives the zip. Not closed.
+   * @param includeBaseDir If true, the entries are prefixed with the directory's name.
+   * @param storedExtensions Files with these (lower case) extensions are stored, not deflated.
+   * @return the number of bytes written to the stream.
+   * @throws IOException if a file can't be read, or the stream can't be written.
+   */
+  public static long zip(File inDir, OutputStream out, boolean includeBaseDir,
+      Set<String> storedExtensions) throws IOException {
+    return new ZipEngine.Builder().withStoredExtensions(storedExtensions).build()
+        .zip(inDir, out, includeBaseDir);
   }
 
   public static void zip(File inDir, File outFile) throws IOException {
@@ -78,40 +60,12 @@ public class ZipUnzip {
 
   public static void zip(File inDir, File outFile, boolean includeBaseDir)
       throws IOException {
-    ZipUnzip zipper;
-    if (includeBaseDir) {
-      zipper = new ZipUnzip(inDir.getParentFile());
-    } else {
-      zipper = new ZipUnzip(inDir);
-    }
-    outFile.delete();
-    outFile.getParentFile().mkdirs();
-    ZipOutputStream zout = new ZipOutputStream(new FileOutputStream(outFile));
-    zipper.addDirectory(zout, inDir, includeBaseDir, true);
-    zout.close();
-    // System.out.println("Zip file has been created!");
+    DEFAULT_ENGINE.zip(inDir, outFile, includeBaseDir, null);
   }
 
   public static void zip(File inDir, File outFile, boolean includeBaseDir,
       String[] subdirs) throws IOException {
-    ZipUnzip zipper;
-    if (includeBaseDir) {
-      zipper = new ZipUnzip(inDir.getParentFile());
-    } else {
-      zipper = new ZipUnzip(inDir);
-    }
-    outFile.delete();
-    outFile.getParentFile().mkdirs();
-    ZipOutputStream zout = new ZipOutputStream(new FileOutputStream(outFile));
-    zipper.addDirectory(zout, inDir, includeBaseDir, false);
-    for (String dir : subdirs) {
-      File f = new File(inDir, dir);
-      if (f.exists()) {
-        zipper.addDirectory(zout, f, false, true);
-      }
-    }
-    zout.close();
-    // System.out.println("Zip file has been created!");
+    DEFAULT_ENGINE.zip(inDir, outFile, includeBaseDir, subdirs);
   }
 
   public static void unzip(File inFile, File outDir) throws IOException {
@@ -120,51 +74,15 @@ public class ZipUnzip {
 
     /**
      * Unzip the given file into the given directory. If a listener is provided,
-     * call it with status updates.
+     * call it with status updates. The files are extracted concurrently; the listener is
+     * called as each one finishes.
      * @param inFile The .zip file.
      * @param outDir Where to unzip the files.
      * @param listener Optional callback for status.
      * @throws IOException if can't write to a file.
      */
   public static void unzip(File inFile, File outDir, UnzipListener listener) throws IOException {
-    File parentDir;
-    long current=0;
-    long total=inFile.length();
-    boolean cancelled = false;
-
-    parentDir = outDir;
-    ZipFile zfile = new ZipFile(inFile);
-    Enumeration<? extends ZipEntry> entries = zfile.entries();
-    if (listener != null) {
-        listener.progress(current, total);
-    }
-    while (entries.hasMoreElements() && !cancelled) {
-      ZipEntry entry = entries.nextElement();
-      File file = new File(parentDir, entry.getName());
-      if (entry.isDirectory()) {
-        file.mkdirs();
-      } else {
-        file.getParentFile().mkdirs();
-        InputStream in = zfile.getInputStream(entry);
-        try {
-          OutputStream out = new FileOutputStream(file);
-          byte[] buffer = new byte[1024];
-          while (true) {
-            int readCount = in.read(buffer);
-            if (readCount < 0) {
-              break;
-            }
-            out.write(buffer, 0, readCount);
-          }
-        } finally {
-          in.close();
-        }
-      }
-      if (listener != null) {
-          current += entry.getCompressedSize();
-          cancelled = !listener.progress(current, total);
-      }
-    }
+    DEFAULT_ENGINE.unzip(inFile, outDir, listener);
   }
 
 }
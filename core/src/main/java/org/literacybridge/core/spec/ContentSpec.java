@@ -2,7 +2,7 @@ package org.literacybridge.core.spec;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -21,15 +21,12 @@ import java.util.stream.Collectors;
 public class ContentSpec {
 
     private final List<DeploymentSpec> deploymentSpecs = new ArrayList<>();
+    private final Map<Integer, DeploymentSpec> deploymentSpecsByNumber = new HashMap<>();
     public List<DeploymentSpec> getDeploymentSpecs() {
         return deploymentSpecs;
     }
     public DeploymentSpec getDeployment(int deploymentNumber) {
-        return deploymentSpecs
-            .stream()
-            .filter(depl->depl.deploymentNumber == deploymentNumber)
-            .findFirst()
-            .orElse(null);
+        return deploymentSpecsByNumber.get(deploymentNumber);
     }
 
     /**
@@ -45,9 +42,14 @@ public class ContentSpec {
 
         if (deploymentSpec == null) {
             deploymentSpec = new DeploymentSpec(messageSpec.deploymentNumber);
-            deploymentSpecs.add(deploymentSpec);
-            // Deployments are kept in deployment order; other lists are in found order.
-            deploymentSpecs.sort(Comparator.comparing(a -> a.deploymentNumber));
+            deploymentSpecsByNumber.put(messageSpec.deploymentNumber, deploymentSpec);
+            // Deployments are kept in deployment order; other lists are in found order. Usually the
+            // new one goes at the end.
+            int ix = deploymentSpecs.size();
+            while (ix > 0 && deploymentSpecs.get(ix - 1).deploymentNumber > messageSpec.deploymentNumber) {
+                ix--;
+            }
+            deploymentSpecs.add(ix, deploymentSpec);
         }
 
         deploymentSpec.addMessage(messageSpec);
@@ -56,6 +58,8 @@ public class ContentSpec {
     public class DeploymentSpec {
         private final Integer deploymentNumber;
         private final List<PlaylistSpec> playlistSpecs = new ArrayList<>();
+        // {playlist title : index in playlistSpecs}
+        private final Map<String, Integer> playlistIxs = new HashMap<>();
 
         DeploymentSpec(Integer deploymentNumber) {
             this.deploymentNumber = deploymentNumber;
@@ -93,18 +97,11 @@ public class ContentSpec {
         }
 
         int getPlaylistIx(String playlistTitle) {
-            for (int ix = 0; ix< playlistSpecs.size(); ix++) {
-                if (playlistSpecs.get(ix).playlistTitle.equals(playlistTitle))
-                    return ix;
-            }
-            return -1;
+            return playlistIxs.getOrDefault(playlistTitle, -1);
         }
         public PlaylistSpec getPlaylist(String playlistTitle) {
-            return playlistSpecs
-                .stream()
-                .filter(pl->pl.playlistTitle.equals(playlistTitle))
-                .findFirst()
-                .orElse(null);
+            int ix = getPlaylistIx(playlistTitle);
+            return ix < 0 ? null : playlistSpecs.get(ix);
         }
 
         void addMessage(MessageSpec messageSpec) {
@@ -112,6 +109,7 @@ public class ContentSpec {
 
             if (playlistSpec == null) {
                 playlistSpec = new PlaylistSpec(messageSpec.deploymentNumber, messageSpec.playlistTitle);
+                playlistIxs.put(messageSpec.playlistTitle, playlistSpecs.size());
                 playlistSpecs.add(playlistSpec);
             }
 
@@ -123,6 +121,8 @@ public class ContentSpec {
         private final Integer deploymentNumber;
         private final String playlistTitle;
         private final List<MessageSpec> messageSpecs = new ArrayList<>();
+        // {message title : index in messageSpecs}
+        private final Map<String, Integer> messageIxs = new HashMap<>();
 
         public PlaylistSpec(Integer deploymentNumber, String playlistTitle) {
             this.deploymentNumber = deploymentNumber;
@@ -147,11 +147,7 @@ public class ContentSpec {
         }
 
         int getMessageIx(MessageSpec messageSpec) {
-            for (int ix = 0; ix< messageSpecs.size(); ix++) {
-                if (messageSpecs.get(ix).title.equals(messageSpec.title))
-                    return ix;
-            }
-            return -1;
+            return messageIxs.getOrDefault(messageSpec.title, -1);
         }
         public List<MessageSpec> getMessagesForLanguage(String languagecode) {
             return messageSpecs
@@ -168,9 +164,10 @@ public class ContentSpec {
 
         void addMessage(MessageSpec messageSpec) {
             int ix = getMessageIx(messageSpec);
-            if (ix < 0)
+            if (ix < 0) {
+                messageIxs.put(messageSpec.title, messageSpecs.size());
                 messageSpecs.add(messageSpec);
-            else
+            } else
                 messageSpecs.set(ix, messageSpec);
         }
 
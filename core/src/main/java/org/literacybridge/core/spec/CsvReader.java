@@ -25,6 +25,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -69,6 +70,13 @@ public class CsvReader {
         }
     }
 
+    /**
+     * Handler for rows, as the values of the columns found (see readRows).
+     */
+    interface RowHandler {
+        void handle(String[] values);
+    }
+
     /**
      * Worker to read a csv from a stream.
      * @param csvStream of the csv data.
@@ -77,20 +85,47 @@ public class CsvReader {
      * @return a Set of the names of the columns found in the .csv header, or an empty set if there is an error.
      */
     static Set<String> read(InputStream csvStream, String[] columns, Handler handler) throws IOException {
-        List<String[]> entries = null;
+        String[][] found = new String[1][];
+        readRows(csvStream, columns, values -> {
+            Map<String, String> record = new HashMap<>();
+            for (int ix = 0; ix < values.length; ix++) {
+                record.put(found[0][ix], values[ix]);
+            }
+            handler.handle(record);
+        }, names -> found[0] = names);
+        return found[0] == null ? new HashSet<>() : new HashSet<>(Arrays.asList(found[0]));
+    }
+
+    /**
+     * Reads a csv from a stream, giving each row to the handler as an array of the values of the
+     * columns of interest that were found, without making a Map of each row.
+     * @param csvStream of the csv data.
+     * @param columns of interest.
+     * @param handler to be called with each row.
+     * @param headerHandler called with the names of the columns found, in the order of the values,
+     *                      before any row. Not called if the csv is empty.
+     */
+    static void readRows(InputStream csvStream, String[] columns, RowHandler handler,
+        Consumer<String[]> headerHandler) throws IOException
+    {
         BOMInputStream bis = new BOMInputStream(csvStream);
         try (Reader ir = new InputStreamReader(bis, StandardCharsets.UTF_8);
             CSVReader reader = new CSVReader(ir)) {
 
-            Map<String, Integer> indices;
             String[] nextLine;
             nextLine = reader.readNext();
             if (nextLine != null) {
-                indices = indicesOfColumns(columns, nextLine);
+                Map<String, Integer> indices = indicesOfColumns(columns, nextLine);
+                String[] names = indices.keySet().toArray(new String[0]);
+                int[] ixs = new int[names.length];
+                for (int i = 0; i < names.length; i++) {
+                    ixs[i] = indices.get(names[i]);
+                }
+                headerHandler.accept(names);
                 while ((nextLine = reader.readNext()) != null) {
-                    Map<String, String> record = new HashMap<>();
-                    for (Map.Entry<String, Integer> e : indices.entrySet()) {
-                        int ix = e.getValue();
+                    String[] values = new String[ixs.length];
+                    for (int i = 0; i < ixs.length; i++) {
+                        int ix = ixs[i];
                         String value = "";
                         if (ix < nextLine.length)
                             value = nextLine[ix];
@@ -98,14 +133,12 @@ public class CsvReader {
                         if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
                             value = value.substring(1, value.length() - 1);
                         }
-                        record.put(e.getKey(), value);
+                        values[i] = value;
                     }
-                    handler.handle(record);
+                    handler.handle(values);
                 }
-                return indices.keySet();
             }
         }
-        return new HashSet<>();
     }
 
     /**
@@ -10,18 +10,26 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 /**
  * Program Specification wrapper.
+ *
+ * A program specification in a directory is read from a ProgramSpecSnapshot, so its .csv files are
+ * only parsed once per version. The lookups by deployment are computed once, and kept.
  */
 public class ProgramSpec {
+    private static final Logger LOG = Logger.getLogger(ProgramSpec.class.getName());
+
     public static final String DEPLOYMENT_INFO_PROPERTIES_NAME = "deployment_info.properties";
     @SuppressWarnings("DeprecatedIsStillUsed")
     @Deprecated
@@ -30,6 +38,10 @@ public class ProgramSpec {
     private Boolean haveLanguageLabelProvider = null;
     private LanguageLabelProvider languageLabelProvider;
     private final StreamProvider streamProvider;
+    // The directory, if the program spec is read from one.
+    private final File programSpecDir;
+    private ProgramSpecSnapshot snapshot = null;
+    private boolean snapshotLoaded = false;
 
     private List<String> components = null;
     private List<Deployment> deployments = null;
@@ -38,8 +50,22 @@ public class ProgramSpec {
     private ContentSpec contentSpec = null;
     private Properties deploymentProperties = null;
 
+    // Indices, built as needed.
+    private Map<Integer, Deployment> deploymentsByNumber = null;
+    private final Map<Integer, DeploymentRecipients> recipientsByDeployment = new HashMap<>();
+    private Set<String> languageCodes = null;
+
+    /**
+     * Sets where the snapshots of program specification directories are saved. Should be a local
+     * cache directory, not synced to other computers.
+     * @param directory for the snapshot files, or null for a directory in java.io.tmpdir.
+     */
+    public static void setSnapshotDirectory(File directory) {
+        ProgramSpecSnapshot.setDirectory(directory);
+    }
+
     public ProgramSpec(File programSpecDir) {
-        this(new FileStreamProvider(programSpecDir));
+        this(new FileStreamProvider(programSpecDir), programSpecDir);
     }
 
     /**
@@ -56,7 +82,12 @@ public class ProgramSpec {
      * @param streamProvider that will provide the data for the program spec.
      */
     public ProgramSpec(StreamProvider streamProvider) {
+        this(streamProvider, null);
+    }
+
+    private ProgramSpec(StreamProvider streamProvider, File programSpecDir) {
         this.streamProvider = streamProvider;
+        this.programSpecDir = programSpecDir;
     }
 
     private synchronized LanguageLabelProvider getLanguageLabelProvider() {
@@ -123,16 +154,52 @@ public class ProgramSpec {
         return streamProvider.getSpecStream(filenames);
     }
 
+    /**
+     * @return the snapshot of the program spec directory, or null if the program spec isn't in a
+     * directory, or the snapshot can't be loaded (in which case the files are read directly).
+     */
+    private synchronized ProgramSpecSnapshot getSnapshot() {
+        if (!snapshotLoaded) {
+            snapshotLoaded = true;
+            if (programSpecDir != null && programSpecDir.isDirectory()) {
+                try {
+                    snapshot = ProgramSpecSnapshot.load(programSpecDir);
+                } catch (IOException e) {
+                    LOG.log(Level.WARNING, "Unable to load program spec snapshot from " + programSpecDir, e);
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Reads the records of one part of the program specification, from the snapshot if there is
+     * one, otherwise from the .csv file.
+     * @param part to be read.
+     * @param handler for each record. Must not keep the record.
+     * @return the names of the columns found, or null if the part doesn't exist.
+     * @throws IOException if the part can't be read.
+     */
+    private Set<String> read(ProgramSpecSnapshot.Part part, CsvReader.Handler handler) throws IOException {
+        ProgramSpecSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.read(part, handler);
+        }
+        try (InputStream is = getSpecStream(part.filenames)) {
+            return is == null ? null : CsvReader.read(is, part.columns, handler);
+        }
+    }
+
     /**
      * Lazily loads the recipients from the program specification.
      * @return the RecipientList, or null if it can't be read.
      */
     public synchronized RecipientList getRecipients() {
         if (recipients == null) {
-            try (InputStream is = getSpecStream(Recipient.FILENAMES)) {
-                if (is != null) {
-                    final RecipientList result = new RecipientList(getLanguageLabelProvider());
-                    Set<String> columnsInRecips = CsvReader.read(is, Recipient.columnNames, result::add);
+            try {
+                final RecipientList result = new RecipientList(getLanguageLabelProvider());
+                Set<String> columnsInRecips = read(ProgramSpecSnapshot.Part.RECIPIENTS, result::add);
+                if (columnsInRecips != null) {
                     result.setFoundColumns(columnsInRecips);
                     recipients = result;
                 }
@@ -143,26 +210,50 @@ public class ProgramSpec {
         return recipients;
     }
 
+    /**
+     * The recipients of one deployment, all together and by language.
+     */
+    private static class DeploymentRecipients {
+        final RecipientList recipients;
+        final Map<String, RecipientList> byLanguage = new HashMap<>();
+
+        DeploymentRecipients(RecipientList recipients) {
+            this.recipients = recipients;
+        }
+    }
+
+    private synchronized DeploymentRecipients getDeploymentRecipients(int deploymentNumber) {
+        DeploymentRecipients result = recipientsByDeployment.get(deploymentNumber);
+        if (result == null) {
+            RecipientList filteredRecipients = new RecipientList(getLanguageLabelProvider());
+            RecipientList recipients = getRecipients();
+            if (recipients.hasDeploymentsColumn()) {
+                recipients.stream()
+                    .filter(r -> r.deployments == null || r.deployments.size()==0 || r.deployments.contains(deploymentNumber))
+                    .forEach(filteredRecipients::add);
+            } else {
+                Deployment deployment = getDeployment(deploymentNumber);
+                StringFilter componentFilter = deployment.componentFilter;
+                recipients.stream()
+                        .filter(r -> componentFilter.test(r.component))
+                        .forEach(filteredRecipients::add);
+            }
+            result = new DeploymentRecipients(filteredRecipients);
+            for (RecipientList.RecipientAdapter r : filteredRecipients) {
+                result.byLanguage.computeIfAbsent(r.languagecode, k -> new RecipientList(getLanguageLabelProvider())).add(r);
+            }
+            recipientsByDeployment.put(deploymentNumber, result);
+        }
+        return result;
+    }
+
     /**
      * Get the recipients whose components are configured to receive the given deployment.
      * @param deploymentNumber of interest.
-     * @return the Recipients in that deployment.
+     * @return the Recipients in that deployment. The list is shared, and must not be modified.
      */
     public RecipientList getRecipientsForDeployment(int deploymentNumber) {
-        RecipientList filteredRecipients = new RecipientList(getLanguageLabelProvider());
-        RecipientList recipients = getRecipients();
-        if (recipients.hasDeploymentsColumn()) {
-            recipients.stream()
-                .filter(r -> r.deployments == null || r.deployments.size()==0 || r.deployments.contains(deploymentNumber))
-                .forEach(filteredRecipients::add);
-        } else {
-            Deployment deployment = getDeployment(deploymentNumber);
-            StringFilter componentFilter = deployment.componentFilter;
-            recipients.stream()
-                    .filter(r -> componentFilter.test(r.component))
-                    .forEach(filteredRecipients::add);
-        }
-        return filteredRecipients;
+        return getDeploymentRecipients(deploymentNumber).recipients;
     }
 
     /**
@@ -170,14 +261,12 @@ public class ProgramSpec {
      * configured with the given language.
      * @param deploymentNumber of interest.
      * @param languagecode of interest.
-     * @return the Recipients in that deployment, with that language.
+     * @return the Recipients in that deployment, with that language. The list is shared, and must not
+     * be modified.
      */
     public RecipientList getRecipientsForDeploymentAndLanguage(int deploymentNumber, String languagecode) {
-        RecipientList filteredRecipients = new RecipientList(getLanguageLabelProvider());
-        getRecipientsForDeployment(deploymentNumber).stream()
-                .filter(r -> r.languagecode.equals(languagecode))
-                .forEach(filteredRecipients::add);
-        return filteredRecipients;
+        RecipientList filteredRecipients = getDeploymentRecipients(deploymentNumber).byLanguage.get(languagecode);
+        return filteredRecipients != null ? filteredRecipients : new RecipientList(getLanguageLabelProvider());
     }
 
     /**
@@ -187,8 +276,7 @@ public class ProgramSpec {
      * @return a Set of the languages.
      */
     public Set<String> getLanguagesForDeployment(int deploymentNumber) {
-        RecipientList recipients = getRecipientsForDeployment(deploymentNumber);
-        return recipients.stream().map(r -> r.languagecode).collect(Collectors.toSet());
+        return new HashSet<>(getDeploymentRecipients(deploymentNumber).byLanguage.keySet());
     }
 
     /**
@@ -239,18 +327,13 @@ public class ProgramSpec {
      */
     public synchronized Map<String, String> getRecipientsMap() {
         if (recipientsMap == null) {
-            try (InputStream is = getSpecStream(RecipientMap.FILENAME)) {
-                if (is != null) {
-                    final Map<String, String> result = new HashMap<>();
-                    CsvReader.read(is,
-                        RecipientMap.columnNames,
-                        record -> result.put(record.get(RecipientMap.columns.recipientid.name()),
-                            record.get(RecipientMap.columns.directory.name())));
-                    recipientsMap = result;
-                } else {
-                    // No recipients map
-                    recipientsMap = new HashMap<>();
-                }
+            try {
+                final Map<String, String> result = new HashMap<>();
+                // If there's no recipients map, it's empty.
+                read(ProgramSpecSnapshot.Part.RECIPIENTS_MAP,
+                    record -> result.put(record.get(RecipientMap.columns.recipientid.name()),
+                        record.get(RecipientMap.columns.directory.name())));
+                recipientsMap = result;
             } catch (IOException ignored) {
             }
         }
@@ -261,8 +344,11 @@ public class ProgramSpec {
      * A list of languages declared for any recipient in the project.
      * @return a list (in a set) of the ISO 639-3 language codes.
      */
-    public Set<String> getLanguageCodes() {
-        return getRecipients().stream().map(r -> r.languagecode).collect(Collectors.toSet());
+    public synchronized Set<String> getLanguageCodes() {
+        if (languageCodes == null) {
+            languageCodes = getRecipients().stream().map(r -> r.languagecode).collect(Collectors.toSet());
+        }
+        return new HashSet<>(languageCodes);
     }
     /**
      * Gets a list of used components in the Program. (That is, components which have recipient
@@ -288,15 +374,15 @@ public class ProgramSpec {
      */
     public synchronized List<Deployment> getDeployments() {
         if (deployments == null) {
-            try (InputStream is = getSpecStream(Deployment.FILENAMES)) {
-                if (is != null) {
-                    final List<Deployment> result = new ArrayList<>();
-                    CsvReader.read(is, Deployment.columnNames, record -> {
-                        try {
-                            result.add(new Deployment(record));
-                        } catch (ParseException ignored) {
-                        }
-                    });
+            try {
+                final List<Deployment> result = new ArrayList<>();
+                Set<String> found = read(ProgramSpecSnapshot.Part.DEPLOYMENTS, record -> {
+                    try {
+                        result.add(new Deployment(record));
+                    } catch (ParseException ignored) {
+                    }
+                });
+                if (found != null) {
                     deployments = result;
                 }
             } catch (IOException ignored) {
@@ -305,11 +391,14 @@ public class ProgramSpec {
         return deployments;
     }
 
-    public Deployment getDeployment(int deploymentNumber) {
-        return getDeployments().stream()
-            .filter(d -> d.deploymentnumber == deploymentNumber)
-            .findFirst()
-            .orElse(null);
+    public synchronized Deployment getDeployment(int deploymentNumber) {
+        if (deploymentsByNumber == null) {
+            Map<Integer, Deployment> result = new HashMap<>();
+            // If a number appears twice, the first one wins.
+            getDeployments().forEach(d -> result.putIfAbsent(d.deploymentnumber, d));
+            deploymentsByNumber = Collections.unmodifiableMap(result);
+        }
+        return deploymentsByNumber.get(deploymentNumber);
     }
 
     /**
@@ -319,11 +408,10 @@ public class ProgramSpec {
     public synchronized ContentSpec getContentSpec() {
         if (contentSpec == null) {
             ContentSpec newContentSpec = new ContentSpec();
-            try (InputStream fis = getSpecStream(ContentSpec.FILENAMES)) {
-                if (fis != null) {
-                    CsvReader.read(fis,
-                        ContentSpec.columnNames,
-                        x -> newContentSpec.addMessage(newContentSpec.new MessageSpec(x)));
+            try {
+                Set<String> found = read(ProgramSpecSnapshot.Part.CONTENT,
+                    x -> newContentSpec.addMessage(newContentSpec.new MessageSpec(x)));
+                if (found != null) {
                     contentSpec = newContentSpec;
                 }
             } catch (IOException e) {
@@ -342,7 +430,9 @@ public class ProgramSpec {
         if (deploymentProperties == null) {
             deploymentProperties = new Properties();
 
-            try (InputStream fis = getSpecStream(DEPLOYMENT_INFO_PROPERTIES_NAME, DEPLOYMENT_INFO_PROPERTIES_NAME_OLD)) {
+            ProgramSpecSnapshot snapshot = getSnapshot();
+            try (InputStream fis = snapshot != null ? snapshot.getDeploymentPropertiesStream()
+                                                    : getSpecStream(DEPLOYMENT_INFO_PROPERTIES_NAME, DEPLOYMENT_INFO_PROPERTIES_NAME_OLD)) {
                 if (fis != null) {
                     try (BufferedInputStream bis = new BufferedInputStream(fis)) {
                         deploymentProperties.load(bis);
@@ -0,0 +1,386 @@
+package org.literacybridge.core.spec;
+
+import org.apache.commons.io.IOUtils;
+import org.literacybridge.core.fs.FileHash;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+
+/**
+ * The parsed contents of a program specification directory: the columns of interest of each
+ * .csv file, and the deployment properties.
+ *
+ * Parsing the .csv files is the slow part of loading a ProgramSpec, so it is done once per
+ * version of the files. The result is saved in a local cache directory, in a binary file with the
+ * checksum of the files it came from, and is also kept in memory. A snapshot with a different
+ * checksum is ignored, and replaced. The snapshot isn't saved beside the .csv files, because they
+ * may be in a program's sandboxed and synced home directory.
+ *
+ * The binary form has a table of the distinct strings, and the rows as indices into it.
+ */
+class ProgramSpecSnapshot {
+    private static final Logger LOG = Logger.getLogger(ProgramSpecSnapshot.class.getName());
+
+    private static final String FILENAME_PREFIX = "progspec-";
+    private static final String FILENAME_SUFFIX = ".snapshot";
+    private static final int MAGIC = 0x50535331; // "PSS1"
+    private static final int VERSION = 1;
+    private static final int MAX_CACHED = 8;
+
+    /**
+     * The .csv files of a program specification.
+     */
+    enum Part {
+        RECIPIENTS(Recipient.FILENAMES, Recipient.columnNames),
+        RECIPIENTS_MAP(new String[]{RecipientMap.FILENAME}, RecipientMap.columnNames),
+        DEPLOYMENTS(Deployment.FILENAMES, Deployment.columnNames),
+        CONTENT(ContentSpec.FILENAMES, ContentSpec.columnNames);
+
+        final String[] filenames;
+        final String[] columns;
+
+        Part(String[] filenames, String[] columns) {
+            this.filenames = filenames;
+            this.columns = columns;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static final String[] PROPERTIES_FILENAMES = {ProgramSpec.DEPLOYMENT_INFO_PROPERTIES_NAME,
+        ProgramSpec.DEPLOYMENT_INFO_PROPERTIES_NAME_OLD};
+
+    // Where the snapshot files are saved.
+    private static volatile File snapshotDirectory = defaultDirectory();
+
+    // Snapshots in memory, by directory; re-used while the files' sizes and times are unchanged.
+    private static final Map<String, ProgramSpecSnapshot> cache = new LinkedHashMap<String, ProgramSpecSnapshot>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ProgramSpecSnapshot> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+
+    /**
+     * One parsed .csv file: the names of the columns found, and the values of those columns in
+     * each row.
+     */
+    private static class Table {
+        final String[] columns;
+        final List<String[]> rows = new ArrayList<>();
+
+        Table(String[] columns) {
+            this.columns = columns;
+        }
+    }
+
+    private final long checksum;
+    private final Map<Part, Table> tables = new EnumMap<>(Part.class);
+    private byte[] deploymentProperties;
+    private String stamp;
+
+    private ProgramSpecSnapshot(long checksum) {
+        this.checksum = checksum;
+    }
+
+    /**
+     * See ProgramSpec.setSnapshotDirectory().
+     */
+    static void setDirectory(File directory) {
+        snapshotDirectory = directory == null ? defaultDirectory() : directory;
+    }
+
+    private static File defaultDirectory() {
+        return new File(System.getProperty("java.io.tmpdir"), "progspec-snapshots");
+    }
+
+    /**
+     * @return the snapshot file for a program specification directory, named for the directory's path.
+     */
+    private static File snapshotFileFor(File dir) throws IOException {
+        byte[] path = dir.getAbsolutePath().getBytes(StandardCharsets.UTF_8);
+        String hash = FileHash.hash(new ByteArrayInputStream(path), FileHash.SHA_1);
+        return new File(snapshotDirectory, FILENAME_PREFIX + hash.substring(0, 16) + FILENAME_SUFFIX);
+    }
+
+    /**
+     * Gets the snapshot of a program specification directory, from memory, from the snapshot file,
+     * or by parsing the .csv files (and then saving the snapshot file).
+     * @param dir with the program specification.
+     * @return the snapshot.
+     * @throws IOException if the files can't be read.
+     */
+    static ProgramSpecSnapshot load(File dir) throws IOException {
+        File[] files = new File[Part.values().length + 1];
+        for (Part part : Part.values()) {
+            files[part.ordinal()] = find(dir, part.filenames);
+        }
+        files[files.length - 1] = find(dir, PROPERTIES_FILENAMES);
+        String stamp = stamp(files);
+        String key = dir.getAbsolutePath();
+        synchronized (cache) {
+            ProgramSpecSnapshot cached = cache.get(key);
+            if (cached != null && cached.stamp.equals(stamp)) {
+                return cached;
+            }
+        }
+
+        byte[][] contents = new byte[files.length][];
+        for (int ix = 0; ix < files.length; ix++) {
+            if (files[ix] != null) {
+                try (InputStream in = new FileInputStream(files[ix])) {
+                    contents[ix] = IOUtils.toByteArray(in);
+                }
+            }
+        }
+        long checksum = checksum(files, contents);
+
+        File snapshotFile = snapshotFileFor(dir);
+        ProgramSpecSnapshot snapshot = read(snapshotFile, checksum);
+        if (snapshot == null) {
+            snapshot = parse(checksum, contents);
+            snapshot.write(snapshotFile);
+        }
+        snapshot.stamp = stamp;
+        synchronized (cache) {
+            cache.put(key, snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Gives each row of a part to the handler, as CsvReader.read() would.
+     *
+     * The same Map is given for every row; the handler must not keep it.
+     * @param part of interest.
+     * @param handler for each row.
+     * @return the names of the columns found, or null if there is no such file.
+     */
+    Set<String> read(Part part, CsvReader.Handler handler) {
+        Table table = tables.get(part);
+        if (table == null) return null;
+        Map<String, String> record = new HashMap<>();
+        for (String[] row : table.rows) {
+            record.clear();
+            for (int ix = 0; ix < row.length; ix++) {
+                record.put(table.columns[ix], row[ix]);
+            }
+            handler.handle(record);
+        }
+        Set<String> found = new HashSet<>();
+        for (String column : table.columns) found.add(column);
+        return found;
+    }
+
+    /**
+     * @return the deployment properties file, or null if there is none.
+     */
+    InputStream getDeploymentPropertiesStream() {
+        return deploymentProperties == null ? null : new ByteArrayInputStream(deploymentProperties);
+    }
+
+    private static File find(File dir, String[] filenames) {
+        for (String filename : filenames) {
+            File file = new File(dir, filename);
+            if (file.isFile()) return file;
+        }
+        return null;
+    }
+
+    private static String stamp(File[] files) {
+        StringBuilder stamp = new StringBuilder();
+        for (File file : files) {
+            if (file == null) {
+                stamp.append("-;");
+            } else {
+                stamp.append(file.getName()).append(':').append(file.length()).append(':')
+                    .append(file.lastModified()).append(';');
+            }
+        }
+        return stamp.toString();
+    }
+
+    private static long checksum(File[] files, byte[][] contents) {
+        CRC32 crc = new CRC32();
+        Adler32 adler = new Adler32();
+        for (int ix = 0; ix < files.length; ix++) {
+            byte[] name = (files[ix] == null ? "-" : files[ix].getName() + ':' + contents[ix].length)
+                .getBytes(StandardCharsets.UTF_8);
+            crc.update(name);
+            adler.update(name);
+            if (contents[ix] != null) {
+                crc.update(contents[ix]);
+                adler.update(contents[ix]);
+            }
+        }
+        return (crc.getValue() << 32) | adler.getValue();
+    }
+
+    private static ProgramSpecSnapshot parse(long checksum, byte[][] contents) throws IOException {
+        ProgramSpecSnapshot snapshot = new ProgramSpecSnapshot(checksum);
+        for (Part part : Part.values()) {
+            byte[] content = contents[part.ordinal()];
+            if (content == null) continue;
+            List<String[]> rows = new ArrayList<>();
+            String[][] columns = {new String[0]};
+            CsvReader.readRows(new ByteArrayInputStream(content), part.columns, rows::add,
+                names -> columns[0] = names);
+            Table table = new Table(columns[0]);
+            table.rows.addAll(rows);
+            snapshot.tables.put(part, table);
+        }
+        snapshot.deploymentProperties = contents[contents.length - 1];
+        return snapshot;
+    }
+
+    /**
+     * Reads a snapshot file, if there is one for the given checksum.
+     * @return the snapshot, or null if there's no file, or it is for other files, or is unreadable.
+     */
+    private static ProgramSpecSnapshot read(File snapshotFile, long checksum) {
+        if (!snapshotFile.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != checksum) {
+                return null;
+            }
+            ProgramSpecSnapshot snapshot = new ProgramSpecSnapshot(checksum);
+            String[] strings = new String[readVarInt(in)];
+            byte[] buffer = new byte[256];
+            for (int ix = 0; ix < strings.length; ix++) {
+                int length = readVarInt(in);
+                if (length > buffer.length) buffer = new byte[Math.max(length, buffer.length * 2)];
+                in.readFully(buffer, 0, length);
+                strings[ix] = new String(buffer, 0, length, StandardCharsets.UTF_8);
+            }
+            for (Part part : Part.values()) {
+                if (!in.readBoolean()) continue;
+                String[] columns = new String[readVarInt(in)];
+                for (int ix = 0; ix < columns.length; ix++) {
+                    columns[ix] = strings[readVarInt(in)];
+                }
+                Table table = new Table(columns);
+                int numRows = readVarInt(in);
+                for (int r = 0; r < numRows; r++) {
+                    String[] row = new String[columns.length];
+                    for (int ix = 0; ix < row.length; ix++) {
+                        row[ix] = strings[readVarInt(in)];
+                    }
+                    table.rows.add(row);
+                }
+                snapshot.tables.put(part, table);
+            }
+            int propertiesLength = in.readInt();
+            if (propertiesLength >= 0) {
+                snapshot.deploymentProperties = new byte[propertiesLength];
+                in.readFully(snapshot.deploymentProperties);
+            }
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            LOG.log(Level.FINE, "Ignoring unreadable program spec snapshot " + snapshotFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * Saves the snapshot. It is only a cache, so if it can't be written (a read-only directory,
+     * perhaps), that's OK.
+     */
+    private void write(File snapshotFile) {
+        // The distinct strings, numbered in order of appearance.
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        for (Table table : tables.values()) {
+            for (String column : table.columns) ids.putIfAbsent(column, ids.size());
+            for (String[] row : table.rows) {
+                for (String value : row) ids.putIfAbsent(value, ids.size());
+            }
+        }
+        File tempFile = null;
+        try {
+            //noinspection ResultOfMethodCallIgnored
+            snapshotFile.getParentFile().mkdirs();
+            tempFile = File.createTempFile(snapshotFile.getName() + '.', ".tmp", snapshotFile.getParentFile());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(checksum);
+                writeVarInt(out, ids.size());
+                for (String string : ids.keySet()) {
+                    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                    writeVarInt(out, bytes.length);
+                    out.write(bytes);
+                }
+                for (Part part : Part.values()) {
+                    Table table = tables.get(part);
+                    out.writeBoolean(table != null);
+                    if (table == null) continue;
+                    writeVarInt(out, table.columns.length);
+                    for (String column : table.columns) writeVarInt(out, ids.get(column));
+                    writeVarInt(out, table.rows.size());
+                    for (String[] row : table.rows) {
+                        for (String value : row) writeVarInt(out, ids.get(value));
+                    }
+                }
+                if (deploymentProperties == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(deploymentProperties.length);
+                    out.write(deploymentProperties);
+                }
+            }
+            // Replace any old snapshot.
+            if (!tempFile.renameTo(snapshotFile)) {
+                //noinspection ResultOfMethodCallIgnored
+                snapshotFile.delete();
+                if (!tempFile.renameTo(snapshotFile)) {
+                    throw new IOException("Unable to rename " + tempFile + " to " + snapshotFile);
+                }
+            }
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Unable to save program spec snapshot " + snapshotFile, e);
+            if (tempFile != null) {
+                //noinspection ResultOfMethodCallIgnored
+                tempFile.delete();
+            }
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -7,6 +7,7 @@ import org.literacybridge.core.utils.IHierarchicalRecord;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -20,6 +21,10 @@ public class RecipientList extends DelayeredHierarchicalList<RecipientList.Recip
     private final static String[] REQUIRED_ALWAYS = {"Community"};
     
     private final Map<String, Integer> numTbsCache = new HashMap<>();
+    // Indices by recipientid and by community, and the modCount when they were built.
+    private Map<String, RecipientAdapter> recipientsById = null;
+    private Map<String, List<RecipientAdapter>> recipientsByCommunity = null;
+    private int indexedModCount = -1;
 
     // The 'deployments' column was added, and provides a different way than 'component' to determine if a recipient
     // should receive a given deployment. Hence, the program spec needs to know if the recipients list even has
@@ -65,11 +70,43 @@ public class RecipientList extends DelayeredHierarchicalList<RecipientList.Recip
     }
 
     public RecipientAdapter getRecipient(String recipientid) {
-        for (RecipientAdapter recip : this) {
-            if (recip.recipientid.equals(recipientid))
-                return recip;
+        return index().get(recipientid);
+    }
+
+    /**
+     * @param communityname of interest.
+     * @return the Recipients in the community, or an empty list if there are none.
+     */
+    public synchronized List<RecipientAdapter> getRecipientsInCommunity(String communityname) {
+        index();
+        return new ArrayList<>(recipientsByCommunity.getOrDefault(communityname, Collections.emptyList()));
+    }
+
+    /**
+     * Builds the indices, if the list has changed since they were built.
+     * @return the recipients by recipientid.
+     */
+    private synchronized Map<String, RecipientAdapter> index() {
+        if (recipientsById == null || indexedModCount != modCount) {
+            Map<String, RecipientAdapter> byId = new HashMap<>();
+            Map<String, List<RecipientAdapter>> byCommunity = new HashMap<>();
+            for (RecipientAdapter recip : this) {
+                // If a recipientid appears twice, the first one wins.
+                byId.putIfAbsent(recip.recipientid, recip);
+                byCommunity.computeIfAbsent(recip.communityname, k -> new ArrayList<>()).add(recip);
+            }
+            recipientsById = byId;
+            recipientsByCommunity = byCommunity;
+            indexedModCount = modCount;
         }
-        return null;
+        return recipientsById;
+    }
+
+    @Override
+    public RecipientAdapter set(int index, RecipientAdapter element) {
+        // ArrayList.set() doesn't count as a modification, but it changes the indices.
+        recipientsById = null;
+        return super.set(index, element);
     }
 
     public List<String> getPath(String recipientid) {
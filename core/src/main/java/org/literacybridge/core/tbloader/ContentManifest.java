@@ -0,0 +1,227 @@
+package org.literacybridge.core.tbloader;
+
+import org.literacybridge.core.fs.FileHash;
+import org.literacybridge.core.fs.TbFile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Describes the files of a TBv2 content image, or of the content on a Talking Book: the path,
+ * size, and hash of each file. Comparing the manifest of what is on a Talking Book with the
+ * manifest of what should be there tells the TB-Loader which files to copy and which to delete.
+ *
+ * Format of the manifest file:
+ * # content manifest 1
+ * ${hash} ${size} ${path}    # one line per file, path relative to the image, separated by '/'
+ *
+ * A manifest may also list directories, as "- 0 ${path}/", so that empty ones can be re-created.
+ *
+ * The TB-Builder writes a manifest for every image, as manifests.v2/${image}.txt in the
+ * deployment. The TB-Loader writes the merged manifest of the images it loaded as
+ * content/content_manifest.txt on the Talking Book.
+ */
+public class ContentManifest {
+    public static final String MANIFESTS_DIR = "manifests.v2";
+    public static final String DEVICE_MANIFEST_NAME = "content_manifest.txt";
+    private static final String HEADER = "# content manifest 1";
+    // The "hash" of a directory entry.
+    public static final String DIRECTORY_HASH = "-";
+    // Zero-byte files in these image directories may be markers for files in the shadow directory.
+    private static final String SHADOWED_DIR = "content";
+
+    public static class Entry {
+        public final String path;
+        public final long size;
+        public final String hash;
+
+        public Entry(String path, long size, String hash) {
+            this.path = path;
+            this.size = size;
+            this.hash = hash;
+        }
+
+        /**
+         * @param other another entry, probably for the same path.
+         * @return true if the two entries describe the same content.
+         */
+        public boolean sameContent(Entry other) {
+            return other != null && size == other.size && hash.equals(other.hash);
+        }
+
+        public boolean isDirectory() {
+            return path.endsWith("/");
+        }
+
+        /**
+         * @param root the image or Talking Book root.
+         * @return the file for this entry, under the given root.
+         */
+        public TbFile open(TbFile root) {
+            return root.open(Arrays.asList(path.split("/")));
+        }
+    }
+
+    // Sorted, so that the same content always gives the same manifest.
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    public void add(Entry entry) {
+        entries.put(entry.path, entry);
+    }
+
+    /**
+     * Adds all of another manifest's entries to this one, replacing any with the same path, as
+     * when a second image is copied over a first.
+     * @param other manifest to add.
+     */
+    public void addAll(ContentManifest other) {
+        entries.putAll(other.entries);
+    }
+
+    public Entry get(String path) {
+        return entries.get(path);
+    }
+
+    public Collection<Entry> getEntries() {
+        return entries.values();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getTotalSize() {
+        return entries.values().stream().mapToLong(e -> e.size).sum();
+    }
+
+    /**
+     * Reads a manifest.
+     * @param in stream with the manifest.
+     * @return the manifest.
+     * @throws IOException if the stream can't be read, or isn't a manifest.
+     */
+    public static ContentManifest read(InputStream in) throws IOException {
+        ContentManifest manifest = new ContentManifest();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line = reader.readLine();
+        if (!HEADER.equals(line)) {
+            throw new IOException("Not a content manifest: " + line);
+        }
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().isEmpty()) continue;
+            String[] parts = line.split(" ", 3);
+            if (parts.length != 3) {
+                throw new IOException("Malformed content manifest line: " + line);
+            }
+            try {
+                manifest.add(new Entry(parts[2], Long.parseLong(parts[1]), parts[0]));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed content manifest line: " + line, e);
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Reads a manifest from a file.
+     * @param file with the manifest.
+     * @return the manifest, or null if there is no such file or it isn't a valid manifest.
+     */
+    public static ContentManifest read(TbFile file) {
+        if (!file.exists()) return null;
+        try (InputStream in = file.openFileInputStream()) {
+            return read(in);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public void write(OutputStream out) {
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.print(HEADER + "\n");
+        for (Entry entry : entries.values()) {
+            writer.print(entry.hash + ' ' + entry.size + ' ' + entry.path + '\n');
+        }
+        writer.flush();
+    }
+
+    public void write(TbFile file) throws IOException {
+        try (OutputStream out = file.createNew()) {
+            write(out);
+        }
+    }
+
+    /**
+     * Builds the manifest of the files that copying the image puts on a Talking Book. A zero-byte
+     * file in the content directory, with a counterpart in the shadow directory, is described by the
+     * counterpart, as the TB-Loader copies that in its place.
+     * @param imageDir the image.
+     * @param shadowDir the deployment's shadow files, or null if none.
+     * @param excludedPaths image-relative paths that aren't copied as-is, like content/packages_data.txt.
+     * @return the image's manifest.
+     * @throws IOException if a file can't be read.
+     */
+    public static ContentManifest forImage(TbFile imageDir, TbFile shadowDir, Set<String> excludedPaths)
+        throws IOException {
+        ContentManifest manifest = new ContentManifest();
+        addFiles(manifest, imageDir, "", shadowDir, excludedPaths);
+        return manifest;
+    }
+
+    private static void addFiles(ContentManifest manifest, TbFile dir, String prefix, TbFile shadowDir,
+        Set<String> excludedPaths) throws IOException
+    {
+        String[] names = dir.list();
+        if (names == null) return;
+        for (String name : names) {
+            TbFile file = dir.open(name);
+            String path = prefix + name;
+            if (file.isDirectory()) {
+                addFiles(manifest, file, path + '/', shadowDir, excludedPaths);
+            } else if (!excludedPaths.contains(path)) {
+                TbFile source = getSourceFile(file, path, shadowDir);
+                manifest.add(new Entry(path, source.length(), hash(source)));
+            }
+        }
+    }
+
+    /**
+     * The file that is actually copied for a file in an image: the file itself, or, for a zero-byte
+     * marker, its counterpart in the shadow directory.
+     * @param imageFile the file in the image.
+     * @param path the file's image-relative path, separated by '/'.
+     * @param shadowDir the deployment's shadow files, or null if none.
+     * @return the file to be copied.
+     */
+    public static TbFile getSourceFile(TbFile imageFile, String path, TbFile shadowDir) {
+        if (shadowDir != null && imageFile.length() == 0 && path.startsWith(SHADOWED_DIR + '/')) {
+            TbFile shadowFile = shadowDir.open(Arrays.asList(path.split("/")));
+            if (shadowFile.exists()) {
+                return shadowFile;
+            }
+        }
+        return imageFile;
+    }
+
+    /**
+     * @param file to be hashed.
+     * @return the hex SHA-1 of the file's content.
+     * @throws IOException if the file can't be read.
+     */
+    public static String hash(TbFile file) throws IOException {
+        try (InputStream in = file.openFileInputStream()) {
+            return FileHash.hash(in, FileHash.SHA_1);
+        }
+    }
+}
@@ -68,6 +68,21 @@ public class TBLoaderConfig {
         private String userEmail = null;
         private String userName = null;
 
+        public Builder() {}
+
+        /**
+         * A builder initialized from an existing configuration, to make a variation of it.
+         * @param config to be copied.
+         */
+        public Builder(TBLoaderConfig config) {
+            this.tbLoaderId = config.tbLoaderId;
+            this.collectedDataDirectory = config.collectedDataDirectory;
+            this.tempDirectory = config.tempDirectory;
+            this.fileSystemUtilities = config.fileSystemUtilities;
+            this.userEmail = config.userEmail;
+            this.userName = config.userName;
+        }
+
         public final TBLoaderConfig build() {
             List<String> missing = new ArrayList<>();
 
@@ -12,6 +12,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
@@ -28,6 +29,12 @@ import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -159,6 +166,7 @@ import static org.literacybridge.core.tbloader.TBLoaderUtils.getBytesString;
  */
 public abstract class TBLoaderCore {
     private static final Logger LOG = Logger.getLogger(TBLoaderCore.class.getName());
+
     final String mLegacyFormatUpdateTimestamp;
     protected Result.FORMAT_OP mFormatOp;
 
@@ -186,6 +194,7 @@ public abstract class TBLoaderCore {
         private boolean mStatsOnly = false;
         protected boolean mRefreshFirmware = false;
         protected int mPostUpdateDelayMillis = 0;
+        protected BackgroundZipper mBackgroundZipper = null;
         protected final Set<String> mAcceptableFirmware = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
 
         public Builder() {}
@@ -281,6 +290,18 @@ public abstract class TBLoaderCore {
             return this;
         }
 
+        /**
+         * If given, the collected data is zipped after the Talking Book is released, rather than
+         * while it is still connected, so that it can be unplugged sooner. Use the same zipper
+         * for every update that uses the same temp directory.
+         * @param backgroundZipper for the device, or null to zip in the foreground.
+         * @return the builder
+         */
+        public Builder withBackgroundZipper(BackgroundZipper backgroundZipper) {
+            this.mBackgroundZipper = backgroundZipper;
+            return this;
+        }
+
         /**
          * A list of the firmware versions that are acceptable to this deployment.
          * @param acceptables versions, as a comma separated list of strings.
@@ -320,7 +341,8 @@ public abstract class TBLoaderCore {
     private long mStepStartTime;
     protected int mStepFileCount;
     protected long mStepBytesCount;
-    private OperationLog.Operation mStepsLog;
+    private long mTotalBytesCount;
+    protected OperationLog.Operation mStepsLog;
     protected TbFile.CopyProgress mCopyListener;
 
     final TbFlashData mTtbFlashData;
@@ -431,6 +453,8 @@ public abstract class TBLoaderCore {
         public final FORMAT_OP reformatOp;
         public final boolean verified;
         public final String duration;
+        // Bytes copied to and from the Talking Book, in all of the steps.
+        public final long bytesCopied;
 
         private Result() {
             this.gotStatistics = false;
@@ -438,6 +462,7 @@ public abstract class TBLoaderCore {
             this.reformatOp = FORMAT_OP.noFormat;
             this.verified = false;
             this.duration = "";
+            this.bytesCopied = 0;
         }
 
         protected Result(long startTime,
@@ -445,11 +470,21 @@ public abstract class TBLoaderCore {
             boolean corrupted,
             FORMAT_OP reformatOp,
             boolean verified) {
+            this(startTime, gotStatistics, corrupted, reformatOp, verified, 0);
+        }
+
+        protected Result(long startTime,
+            boolean gotStatistics,
+            boolean corrupted,
+            FORMAT_OP reformatOp,
+            boolean verified,
+            long bytesCopied) {
             this.gotStatistics = gotStatistics;
             this.corrupted = corrupted;
             this.reformatOp = reformatOp;
             this.verified = verified;
             this.duration = getDuration(startTime); // Nice printed format
+            this.bytesCopied = bytesCopied;
         }
     }
 
@@ -496,10 +531,14 @@ public abstract class TBLoaderCore {
         };
 
         mUpdateStartTime = System.nanoTime();
+        mTotalBytesCount = 0;
         mClearedFlashStatistics = false;
 
         // Get the roots for the Talking Book, the Temp directory, and the Staging Directory.
         mTalkingBookRoot = mTbDeviceInfo.getRootFile();
+        if (mBuilder.mBackgroundZipper != null) {
+            mBuilder.mBackgroundZipper.await();
+        }
         mTempDirectory = mTbLoaderConfig.getTempDirectory();
         mTalkingBookDataRoot = getTempTbDataDir(); // was: mTempDirectory.open(mTalkingBookDataDirectoryPath);
         // mkdir "${syncpath}"
@@ -597,7 +636,7 @@ public abstract class TBLoaderCore {
 
         Result result = new Result(mUpdateStartTime,
                 gotStatistics, mTbHasDiskCorruption, mFormatOp,
-                verified);
+                verified, mTotalBytesCount);
         String completionMessage = String.format("TB-Loader updated in %s", result.duration);
         mProgressListener.detail("");
         mProgressListener.log(completionMessage);
@@ -989,7 +1028,10 @@ public abstract class TBLoaderCore {
     }
 
     /**
-     * Zips the statistics, logs, and other files, and copies them to the collected data directory.
+     * Zips the statistics, logs, and other files, straight into the collected data directory.
+     *
+     * The files have already been copied from the Talking Book, so with a background zip, the
+     * Talking Book can be released before the zip is written.
      *
      * @param action to be logged, for statistics.
      * @throws IOException If the .zip can't be created.
@@ -1012,23 +1054,121 @@ public abstract class TBLoaderCore {
         // Put a copy into the operationaldata directory.
         eraseAndOverwriteFile(getCollectedOpDataDir().open(STATS_COLLECTED_PROPERTIES_NAME), props.toString());
 
-        // Same name and location as the tempDirectory, but a file with a .zip extension.
-        TbFile tempZip = getTempTbDataZip(); // was: mTempDirectory.open(mTalkingBookDataZipPath);
-
         File sourceFilesDir = new File(mTalkingBookDataRoot.getAbsolutePath());
-        File tempZipFile = new File(tempZip.getAbsolutePath());
-        ZipUnzip.zip(sourceFilesDir, tempZipFile, true);
-
         // Where the .zip is supposed to go.
         TbFile outputZip = getCollectedTbDataZip(); // was projectCollectedData.open(mTalkingBookDataZipPath);
+        TbFile tempDirectory = mTempDirectory;
+
+        if (mBuilder.mBackgroundZipper != null) {
+            String serialNumber = mTbDeviceInfo.getSerialNumber();
+            long queuedTime = System.currentTimeMillis();
+            mBuilder.mBackgroundZipper.submit(() -> {
+                OperationLog.Operation opLog = OperationLog.startOperation("TbDataBackgroundZip");
+                opLog.put("serialno", serialNumber);
+                try {
+                    long startTime = System.currentTimeMillis();
+                    long bytes = zipToCollectedData(sourceFilesDir, outputZip, tempDirectory);
+                    long millis = System.currentTimeMillis() - startTime;
+                    opLog.put("bytes", bytes)
+                        .put("queuedmillis", startTime - queuedTime)
+                        .put("savedmillis", millis)
+                        .put("success", true);
+                    LOG.log(Level.INFO, String.format("TBL!: Zipped %s in background, %d bytes in %d ms", serialNumber, bytes, millis));
+                } catch (Exception e) {
+                    opLog.put("success", false).put("exception", e.getMessage());
+                    LOG.log(Level.WARNING, "TBL!: Unable to zip Talking Book statistics:", e);
+                } finally {
+                    opLog.finish();
+                }
+            });
+            mStepsLog.put("zip.background", true);
+            finishStep("zipping in background");
+        } else {
+            long startTime = System.currentTimeMillis();
+            mStepBytesCount += zipToCollectedData(sourceFilesDir, outputZip, tempDirectory);
+            mStepsLog.put("zip.millis", System.currentTimeMillis() - startTime);
+            finishStep();
+        }
+    }
 
+    /**
+     * Zips the collected data in one pass, writing directly to the collected data directory,
+     * then cleans out the temp directory.
+     * @return the size of the zip.
+     */
+    private static long zipToCollectedData(File sourceFilesDir, TbFile outputZip, TbFile tempDirectory) throws IOException {
         // Make the directory to hold the .zip, if necessary, then put it there.
         outputZip.getParent().mkdirs();
-        mStepBytesCount += TbFile.copy(tempZip, outputZip);
-
+        long bytes;
+        try (OutputStream out = outputZip.createNew()) {
+            // Recordings are already compressed; deflating them again only costs time.
+            bytes = ZipUnzip.zip(sourceFilesDir, out, true, ZipUnzip.COMPRESSED_AUDIO_EXTENSIONS);
+        }
         // Clean out everything we put in the temp directory. Any other cruft that was there, as well.
-        mTempDirectory.delete(contentRecursive);
-        finishStep();
+        tempDirectory.delete(contentRecursive);
+        return bytes;
+    }
+
+    /**
+     * Zips one device's collected data in the background. The zips, and any tasks run after them,
+     * run one at a time, because they use the device's temp directory; the device's next update
+     * waits for them before it uses that directory. Other devices have their own zippers, and
+     * don't wait.
+     */
+    public static class BackgroundZipper {
+        private final ExecutorService executor;
+        private Future<?> pending = null;
+
+        /**
+         * @param name of the zipping thread.
+         */
+        public BackgroundZipper(String name) {
+            // Not a daemon, so a pending zip will finish even if the application exits.
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> new Thread(r, name));
+            executor.allowCoreThreadTimeOut(true);
+            this.executor = executor;
+        }
+
+        synchronized void submit(Runnable task) {
+            pending = executor.submit(task);
+        }
+
+        /**
+         * Waits for any collected data still being zipped in the background. Call before exiting,
+         * so that no Talking Book's data is lost.
+         */
+        public void await() {
+            Future<?> pending;
+            synchronized (this) {
+                pending = this.pending;
+            }
+            if (pending != null) {
+                try {
+                    pending.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    // Already logged by the zip itself.
+                }
+            }
+        }
+
+        /**
+         * Runs a task after any background zip has been written, such as queueing the zip for
+         * upload. If there is no background zip, runs it now, on this thread. The next update
+         * waits for the task, as it does for the zip.
+         * @param task to be run.
+         */
+        public void runAfter(Runnable task) {
+            synchronized (this) {
+                if (pending != null && !pending.isDone()) {
+                    pending = executor.submit(task);
+                    return;
+                }
+            }
+            task.run();
+        }
     }
 
 
@@ -1126,6 +1266,7 @@ public abstract class TBLoaderCore {
      */
     protected void finishStep(String... resultStrings) {
         mStepsLog.split(mCurrentStep.toString()+".time");
+        mTotalBytesCount += mStepBytesCount;
         StringBuilder builder = new StringBuilder(mCurrentStep.description());
         for (String rs : resultStrings) {
             builder.append(", ").append(rs);
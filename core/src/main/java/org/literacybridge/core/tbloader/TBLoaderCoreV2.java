@@ -17,12 +17,15 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import static org.literacybridge.core.fs.TbFile.Flags.contentRecursive;
 import static org.literacybridge.core.tbloader.ProgressListener.Steps.*;
 
 @SuppressWarnings("RedundantThrows")
 class TBLoaderCoreV2 extends TBLoaderCore {
+    private static final Logger LOG = Logger.getLogger(TBLoaderCoreV2.class.getName());
 
     public static final String BOOTCOUNT_TXT = "bootcount.txt";
     public static final String LOGS_DIR = "log";
@@ -36,6 +39,9 @@ class TBLoaderCoreV2 extends TBLoaderCore {
         super(builder);
     }
 
+    // False if the content on the Talking Book doesn't match the deployment's manifest.
+    private boolean mContentVerified = true;
+
     TbFile tempTbDataDir;
     TbFile tempTbDataZip;
     TbFile collectedOpDataDir;
@@ -336,6 +342,113 @@ class TBLoaderCoreV2 extends TBLoaderCore {
     protected void updateContent() throws IOException {
         startStep(updateContent);
 
+        // What should be on the Talking Book, and what its last update says is there. Either may be missing.
+        TbFile deviceManifestFile = mTalkingBookRoot.open("content").open(ContentManifest.DEVICE_MANIFEST_NAME);
+        Map<String, TbFile> imageForPath = new HashMap<>();
+        ContentManifest newManifest = getDeploymentManifest(imageForPath);
+        ContentManifest deviceManifest = ContentManifest.read(deviceManifestFile);
+        // Until the update is complete and verified, the Talking Book has no manifest. An interrupted update
+        // thus leads to a full copy next time.
+        deviceManifestFile.delete();
+
+        boolean delta = false;
+        if (newManifest != null && deviceManifest != null) {
+            try {
+                delta = updateContentDelta(deviceManifest, newManifest, imageForPath);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "TBL!: Delta content update failed", e);
+            }
+            if (!delta) {
+                mProgressListener.log("Talking Book content is inconsistent; copying all content.");
+            }
+        }
+        if (!delta) {
+            copyAllContent();
+        }
+
+        // Merge/copy the package_data.txt file(s).
+        copyPackageData();
+
+        mContentVerified = newManifest == null || verifyContent(newManifest);
+        if (newManifest != null && mContentVerified) {
+            newManifest.write(deviceManifestFile);
+        }
+        mStepsLog.put("updateContent.mode", delta ? "delta" : "full");
+
+        finishStep(delta ? "changed files only" : "all files");
+    }
+
+    /**
+     * Reads the manifests of the images to be loaded, and merges them, later images replacing files
+     * of earlier ones, as the copy does.
+     * @param imageForPath receives, for every path in the merged manifest, the image with the file.
+     * @return the merged manifest, or null if any image has no manifest.
+     */
+    private ContentManifest getDeploymentManifest(Map<String, TbFile> imageForPath) {
+        ContentManifest result = new ContentManifest();
+        TbFile manifestsDir = mDeploymentDirectory.open(ContentManifest.MANIFESTS_DIR);
+        for (String imageName : mNewDeploymentInfo.getPackageNames()) {
+            TbFile imagePath = mDeploymentDirectory.open("images.v2").open(imageName);
+            ContentManifest imageManifest = ContentManifest.read(manifestsDir.open(imageName + ".txt"));
+            if (imageManifest == null || !imagePath.exists()) {
+                return null;
+            }
+            for (ContentManifest.Entry entry : imageManifest.getEntries()) {
+                imageForPath.put(entry.path, imagePath);
+            }
+            result.addAll(imageManifest);
+        }
+        return result;
+    }
+
+    /**
+     * Brings the Talking Book's content from what its manifest describes to the new manifest: copies
+     * files that are new, changed, or not as the Talking Book's manifest says, and deletes files that
+     * are no longer in the content.
+     * @return true if the content was updated, false if the Talking Book should get a full copy.
+     * @throws IOException if a file can't be copied.
+     */
+    private boolean updateContentDelta(ContentManifest deviceManifest, ContentManifest newManifest,
+        Map<String, TbFile> imageForPath) throws IOException {
+        TbFile shadowFilesDir = mDeploymentDirectory.open("shadowFiles");
+        int unchanged = 0;
+        int deleted = 0;
+        for (ContentManifest.Entry entry : deviceManifest.getEntries()) {
+            if (newManifest.get(entry.path) == null) {
+                if (entry.open(mTalkingBookRoot).delete()) deleted++;
+            }
+        }
+        for (ContentManifest.Entry entry : newManifest.getEntries()) {
+            TbFile targetFile = entry.open(mTalkingBookRoot);
+            // Only the sizes on the Talking Book are checked; reading the content back from the card would
+            // cost as much as copying it.
+            if (entry.sameContent(deviceManifest.get(entry.path)) && targetFile.exists() &&
+                targetFile.length() == entry.size) {
+                unchanged++;
+                continue;
+            }
+            TbFile imageFile = entry.open(imageForPath.get(entry.path));
+            TbFile sourceFile = ContentManifest.getSourceFile(imageFile, entry.path, shadowFilesDir);
+            if (!sourceFile.exists() || sourceFile.length() != entry.size) {
+                // The deployment doesn't match its own manifest.
+                return false;
+            }
+            TbFile targetDir = targetFile.getParent();
+            if (!targetDir.exists()) {
+                targetDir.mkdirs();
+            }
+            mCopyListener.copying(sourceFile, targetFile);
+            mStepBytesCount += TbFile.copy(sourceFile, targetFile);
+        }
+        mStepsLog.put("updateContent.unchanged", unchanged).put("updateContent.deleted", deleted);
+        return true;
+    }
+
+    /**
+     * Copies every file of every image to the Talking Book.
+     * @throws IOException if a file can't be copied.
+     */
+    private void copyAllContent() throws IOException {
         // Remember the zero-byte marker files here. Fix them up later.
         Map<String, TbFile> shadowedFiles = new HashMap<>();
 
@@ -379,11 +492,22 @@ class TBLoaderCoreV2 extends TBLoaderCore {
                 TbFile.copy(sourceFile, targetFile);
             }
         }
+    }
 
-        // Merge/copy the package_data.txt file(s).
-        copyPackageData();
-
-        finishStep();
+    /**
+     * Checks that every file in the manifest is on the Talking Book, with the right size.
+     * @param manifest of the content that should be on the Talking Book.
+     * @return true if it all is.
+     */
+    private boolean verifyContent(ContentManifest manifest) {
+        for (ContentManifest.Entry entry : manifest.getEntries()) {
+            TbFile file = entry.open(mTalkingBookRoot);
+            if (!file.exists() || file.length() != entry.size) {
+                mProgressListener.log(String.format("Content file %s is missing or incomplete.", entry.path));
+                return false;
+            }
+        }
+        return true;
     }
 
     private void copyPackageData() throws IOException {
@@ -411,7 +535,7 @@ class TBLoaderCoreV2 extends TBLoaderCore {
         boolean verified;
         // A file, more or less at random.
         TbFile system = mTalkingBookRoot.open(SYSTEM_DIR);
-        verified = system.open(TBLoaderConstants.DEPLOYMENT_PROPERTIES_NAME).exists();
+        verified = system.open(TBLoaderConstants.DEPLOYMENT_PROPERTIES_NAME).exists() && mContentVerified;
         return verified;
     }
 
@@ -0,0 +1,348 @@
+package org.literacybridge.core.tbloader;
+
+import org.literacybridge.core.fs.OperationLog;
+import org.literacybridge.core.fs.SharedReadCache;
+import org.literacybridge.core.fs.TbFile;
+import org.literacybridge.core.tbdevice.TbDeviceInfo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.literacybridge.core.tbloader.TBLoaderUtils.getBytesString;
+
+/**
+ * Updates several Talking Books at once, as on a hub station with many devices connected.
+ *
+ * Each device gets its own TBLoaderCore, on its own thread, with its own temp directory,
+ * collected data directory, and ProgressListener. The deployment is read through one
+ * SharedReadCache, so the content common to all the devices is read from disk once.
+ *
+ * Usage:
+ *   TBLoaderScheduler scheduler = new TBLoaderScheduler.Builder()
+ *       .withTbLoaderConfig(config)
+ *       .withDeploymentDirectory(deploymentDir)
+ *       .withProgressListenerFactory(name -> new MyListener(name))
+ *       .build();
+ *   TBLoaderScheduler.Summary summary = scheduler.updateAll(devices);
+ */
+public class TBLoaderScheduler {
+    private static final Logger LOG = Logger.getLogger(TBLoaderScheduler.class.getName());
+
+    private static final long DEFAULT_CACHE_SIZE = 512L * 1024 * 1024;
+    // Bigger files are streamed from disk; the page cache still helps with them.
+    private static final long MAX_CACHED_FILE_SIZE = 16L * 1024 * 1024;
+
+    /**
+     * Creates a ProgressListener for one device.
+     */
+    public interface ProgressListenerFactory {
+        ProgressListener forDevice(String deviceName);
+    }
+
+    /**
+     * One Talking Book to be updated.
+     */
+    public static class DeviceUpdate {
+        public final TbDeviceInfo tbDeviceInfo;
+        public final DeploymentInfo oldDeploymentInfo;
+        public final DeploymentInfo newDeploymentInfo;
+
+        public DeviceUpdate(TbDeviceInfo tbDeviceInfo, DeploymentInfo oldDeploymentInfo,
+            DeploymentInfo newDeploymentInfo) {
+            this.tbDeviceInfo = tbDeviceInfo;
+            this.oldDeploymentInfo = oldDeploymentInfo;
+            this.newDeploymentInfo = newDeploymentInfo;
+        }
+    }
+
+    /**
+     * The outcome of updating one Talking Book.
+     */
+    public static class DeviceResult {
+        public final String deviceName;
+        public final DeviceUpdate update;
+        // Null if the update threw an exception.
+        public final TBLoaderCore.Result result;
+        public final Throwable error;
+        public final long millis;
+
+        DeviceResult(String deviceName, DeviceUpdate update, TBLoaderCore.Result result,
+            Throwable error, long millis) {
+            this.deviceName = deviceName;
+            this.update = update;
+            this.result = result;
+            this.error = error;
+            this.millis = millis;
+        }
+
+        public boolean isSuccess() {
+            return result != null && result.verified;
+        }
+
+        public long getBytesCopied() {
+            return result != null ? result.bytesCopied : 0;
+        }
+
+        /**
+         * @return throughput in bytes per second.
+         */
+        public double getBytesPerSecond() {
+            return millis > 0 ? getBytesCopied() * 1000.0 / millis : 0;
+        }
+    }
+
+    /**
+     * The outcome of updating all the devices, in the order they were given.
+     */
+    public static class Summary {
+        public final List<DeviceResult> results;
+        public final long millis;
+        public final long bytesFromCache;
+        public final long bytesFromDisk;
+
+        Summary(List<DeviceResult> results, long millis, long bytesFromCache, long bytesFromDisk) {
+            this.results = results;
+            this.millis = millis;
+            this.bytesFromCache = bytesFromCache;
+            this.bytesFromDisk = bytesFromDisk;
+        }
+
+        public int getSuccessCount() {
+            return (int) results.stream().filter(DeviceResult::isSuccess).count();
+        }
+
+        public long getBytesCopied() {
+            return results.stream().mapToLong(DeviceResult::getBytesCopied).sum();
+        }
+
+        /**
+         * @return aggregate throughput, all devices together, in bytes per second.
+         */
+        public double getBytesPerSecond() {
+            return millis > 0 ? getBytesCopied() * 1000.0 / millis : 0;
+        }
+
+        /**
+         * @return a report of each device, and of all of them together, one line each.
+         */
+        public List<String> format() {
+            List<String> lines = new ArrayList<>();
+            for (DeviceResult r : results) {
+                lines.add(String.format(Locale.US, "%-24s %-8s %10s in %6.1f s, %10s/s%s", r.deviceName,
+                    r.isSuccess() ? "ok" : "FAILED", getBytesString(r.getBytesCopied()), r.millis / 1000.0,
+                    getBytesString((long) r.getBytesPerSecond()),
+                    r.error != null ? " (" + r.error.getMessage() + ")" : ""));
+            }
+            lines.add(String.format(Locale.US, "%d of %d device(s) updated, %s in %.1f s, %s/s aggregate; content: %s from memory, %s from disk",
+                getSuccessCount(), results.size(), getBytesString(getBytesCopied()), millis / 1000.0,
+                getBytesString((long) getBytesPerSecond()), getBytesString(bytesFromCache),
+                getBytesString(bytesFromDisk)));
+            return lines;
+        }
+    }
+
+    public static class Builder {
+        private TBLoaderConfig tbLoaderConfig;
+        private TbFile deploymentDirectory;
+        private ProgressListenerFactory progressListenerFactory;
+        private int threads = 0;
+        private long cacheSize = DEFAULT_CACHE_SIZE;
+        private String location = "Other";
+        private String acceptableFirmware;
+        private boolean backgroundZip = false;
+
+        public TBLoaderScheduler build() {
+            List<String> missing = new ArrayList<>();
+            if (tbLoaderConfig == null) missing.add("tbLoaderConfig");
+            if (deploymentDirectory == null) missing.add("deploymentDirectory");
+            if (progressListenerFactory == null) missing.add("progressListenerFactory");
+            if (!missing.isEmpty()) {
+                throw new IllegalStateException("TBLoaderScheduler.Builder not initialized with " + missing);
+            }
+            return new TBLoaderScheduler(this);
+        }
+
+        /**
+         * The configuration for the devices. Each device's temp and collected data directories are
+         * made within the configuration's temp and collected data directories.
+         * @param tbLoaderConfig the common configuration.
+         * @return the builder
+         */
+        public Builder withTbLoaderConfig(TBLoaderConfig tbLoaderConfig) {
+            this.tbLoaderConfig = tbLoaderConfig;
+            return this;
+        }
+
+        public Builder withDeploymentDirectory(TbFile deploymentDirectory) {
+            this.deploymentDirectory = deploymentDirectory;
+            return this;
+        }
+
+        public Builder withProgressListenerFactory(ProgressListenerFactory progressListenerFactory) {
+            this.progressListenerFactory = progressListenerFactory;
+            return this;
+        }
+
+        /**
+         * @param threads the most devices to update at once. 0, the default, for all of them.
+         * @return the builder
+         */
+        public Builder withThreads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * @param cacheSize the most deployment content to hold in memory, in bytes.
+         * @return the builder
+         */
+        public Builder withCacheSize(long cacheSize) {
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        public Builder withLocation(String location) {
+            this.location = location;
+            return this;
+        }
+
+        public Builder withAcceptableFirmware(String acceptableFirmware) {
+            this.acceptableFirmware = acceptableFirmware;
+            return this;
+        }
+
+        public Builder withBackgroundZip(boolean backgroundZip) {
+            this.backgroundZip = backgroundZip;
+            return this;
+        }
+    }
+
+    private final Builder builder;
+    // By device name. Each device zips in the background on its own, and waits only for its own zip.
+    private final Map<String, TBLoaderCore.BackgroundZipper> backgroundZippers = new HashMap<>();
+
+    private TBLoaderScheduler(Builder builder) {
+        this.builder = builder;
+    }
+
+    /**
+     * Waits for every device's collected data still being zipped in the background. Call before
+     * exiting, so that no Talking Book's data is lost.
+     */
+    public void awaitBackgroundZips() {
+        List<TBLoaderCore.BackgroundZipper> zippers;
+        synchronized (backgroundZippers) {
+            zippers = new ArrayList<>(backgroundZippers.values());
+        }
+        zippers.forEach(TBLoaderCore.BackgroundZipper::await);
+    }
+
+    private TBLoaderCore.BackgroundZipper backgroundZipper(String deviceName) {
+        if (!builder.backgroundZip) return null;
+        synchronized (backgroundZippers) {
+            return backgroundZippers.computeIfAbsent(deviceName,
+                name -> new TBLoaderCore.BackgroundZipper("tbdata-zip-" + name));
+        }
+    }
+
+    /**
+     * Updates all of the devices, in parallel, and waits for them to finish.
+     * @param updates the devices, and what to put on them.
+     * @return the results, in the same order as the devices.
+     */
+    public Summary updateAll(List<DeviceUpdate> updates) {
+        SharedReadCache cache = new SharedReadCache(builder.cacheSize, MAX_CACHED_FILE_SIZE);
+        TbFile deploymentDirectory = cache.wrap(builder.deploymentDirectory);
+        int threads = builder.threads > 0 ? Math.min(builder.threads, updates.size()) : updates.size();
+        OperationLog.Operation opLog = OperationLog.startOperation("TbLoaderSchedulerUpdate");
+        opLog.put("devices", updates.size()).put("threads", threads);
+
+        long startTime = System.currentTimeMillis();
+        List<DeviceResult> results = new ArrayList<>();
+        if (!updates.isEmpty()) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(threads,
+                r -> new Thread(r, "tbloader-" + threadNumber.incrementAndGet()));
+            try {
+                List<Future<DeviceResult>> futures = new ArrayList<>();
+                for (int i = 0; i < updates.size(); i++) {
+                    DeviceUpdate update = updates.get(i);
+                    String deviceName = deviceName(i, update);
+                    futures.add(executor.submit(() -> updateOne(deviceName, update, deploymentDirectory)));
+                }
+                for (Future<DeviceResult> future : futures) {
+                    results.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // updateOne catches everything, so this shouldn't happen.
+                LOG.log(Level.SEVERE, "TBL!: Unexpected exception updating devices", e);
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        Summary summary = new Summary(results, System.currentTimeMillis() - startTime,
+            cache.getBytesFromCache(), cache.getBytesFromDisk());
+        opLog.put("succeeded", summary.getSuccessCount())
+            .put("bytes", summary.getBytesCopied())
+            .put("bytespersecond", (long) summary.getBytesPerSecond())
+            .put("bytesfromcache", summary.bytesFromCache)
+            .put("bytesfromdisk", summary.bytesFromDisk)
+            .finish();
+        for (String line : summary.format()) {
+            LOG.log(Level.INFO, "TBL!: " + line);
+        }
+        return summary;
+    }
+
+    private DeviceResult updateOne(String deviceName, DeviceUpdate update, TbFile deploymentDirectory) {
+        long startTime = System.currentTimeMillis();
+        ProgressListener progressListener = builder.progressListenerFactory.forDevice(deviceName);
+        try {
+            // Every device gets its own working directories; TBLoaderCore uses fixed names within them.
+            TBLoaderConfig config = new TBLoaderConfig.Builder(builder.tbLoaderConfig)
+                .withTempDirectory(builder.tbLoaderConfig.getTempDirectory().open(deviceName))
+                .withCollectedDataDirectory(builder.tbLoaderConfig.getCollectedDataDirectory().open(deviceName))
+                .build();
+            TBLoaderCore tbLoader = new TBLoaderCore.Builder()
+                .withTbLoaderConfig(config)
+                .withTbDeviceInfo(update.tbDeviceInfo)
+                .withDeploymentDirectory(deploymentDirectory)
+                .withOldDeploymentInfo(update.oldDeploymentInfo)
+                .withNewDeploymentInfo(update.newDeploymentInfo)
+                .withAcceptableFirmware(builder.acceptableFirmware)
+                .withLocation(builder.location)
+                .withRefreshFirmware(false)
+                .withBackgroundZipper(backgroundZipper(deviceName))
+                .withProgressListener(progressListener)
+                .build();
+            TBLoaderCore.Result result = tbLoader.update();
+            return new DeviceResult(deviceName, update, result, null, System.currentTimeMillis() - startTime);
+        } catch (Throwable e) {
+            LOG.log(Level.WARNING, "TBL!: Unable to update " + deviceName, e);
+            progressListener.error("Unable to update Talking Book: " + e.getMessage());
+            return new DeviceResult(deviceName, update, null, e, System.currentTimeMillis() - startTime);
+        }
+    }
+
+    /**
+     * A name for the device, unique within the batch, and usable as a directory name.
+     */
+    private static String deviceName(int index, DeviceUpdate update) {
+        String srn = update.newDeploymentInfo != null ? update.newDeploymentInfo.getSerialNumber() : null;
+        if (srn == null) srn = update.tbDeviceInfo.getSerialNumber();
+        return String.format(Locale.US, "%02d-%s", index + 1, srn.replaceAll("[^A-Za-z0-9_-]", "_"));
+    }
+}
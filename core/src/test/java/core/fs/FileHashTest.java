@@ -0,0 +1,36 @@
+package core.fs;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.core.fs.FileHash;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class FileHashTest {
+    private static final byte[] ABC = "abc".getBytes(StandardCharsets.US_ASCII);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testKnownHashes() throws IOException {
+        File file = tmp.newFile("abc.txt");
+        Files.write(file.toPath(), ABC);
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", FileHash.sha256(file));
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d",
+            FileHash.hash(new ByteArrayInputStream(ABC), FileHash.SHA_1));
+    }
+
+    @Test
+    public void testToHex() {
+        assertEquals("", FileHash.toHex(new byte[0]));
+        assertEquals("00017f80ff", FileHash.toHex(new byte[]{0, 1, 0x7f, (byte) 0x80, (byte) 0xff}));
+    }
+}
@@ -0,0 +1,76 @@
+package core.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.core.fs.FsFile;
+import org.literacybridge.core.fs.SharedReadCache;
+import org.literacybridge.core.fs.TbFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+public class SharedReadCacheTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testCachedFileIsReadOnce() throws IOException {
+        File file = tmp.newFile("a.bin");
+        Files.write(file.toPath(), new byte[100]);
+        SharedReadCache cache = new SharedReadCache(1000, 1000);
+        TbFile cached = cache.wrap(new FsFile(file));
+
+        for (int i = 0; i < 3; i++) {
+            try (InputStream in = cached.openFileInputStream()) {
+                assertEquals(100, drain(in));
+            }
+        }
+        assertEquals(100, cache.getSizeInBytes());
+        assertEquals(100, cache.getBytesFromDisk());
+        assertEquals(300, cache.getBytesFromCache());
+    }
+
+    @Test
+    public void testFailedReadGivesBackItsSpace() throws IOException {
+        File file = tmp.newFile("short.bin");
+        Files.write(file.toPath(), new byte[100]);
+        // Claims to be longer than it is, so the read comes up short.
+        TbFile shortFile = new FsFile(file) {
+            @Override
+            public long length() {
+                return 200;
+            }
+        };
+        SharedReadCache cache = new SharedReadCache(1000, 1000);
+
+        try {
+            cache.wrap(shortFile).openFileInputStream();
+            fail("Expected the short read to fail.");
+        } catch (IOException expected) {
+            // expected
+        }
+        assertEquals(0, cache.getSizeInBytes());
+
+        // The file can be cached once it reads properly.
+        try (InputStream in = cache.wrap(new FsFile(file)).openFileInputStream()) {
+            assertEquals(100, drain(in));
+        }
+        assertEquals(100, cache.getSizeInBytes());
+    }
+
+    private static int drain(InputStream in) throws IOException {
+        int total = 0;
+        int n;
+        byte[] buffer = new byte[64];
+        while ((n = in.read(buffer)) > 0) {
+            total += n;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,206 @@
+package core.fs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.core.fs.StreamingUnzip;
+import org.literacybridge.core.fs.ZipEngine;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+public class StreamingUnzipTest {
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final Random random = new Random(3);
+
+  private File makeTree() throws IOException {
+    File root = tmp.newFolder("content");
+    File audio = new File(root, "DEPL/messages/audio");
+    assertTrue(audio.mkdirs());
+    assertTrue(new File(root, "DEPL/empty").mkdirs());
+    for (int i = 0; i < 30; i++) {
+      byte[] bytes = new byte[20000 + i];
+      random.nextBytes(bytes);
+      Files.write(new File(audio, "m" + i + ".a18").toPath(), bytes);
+    }
+    // Large and compressible: deflated, with a data descriptor.
+    byte[] text = new byte[1500000];
+    for (int i = 0; i < text.length; i++) text[i] = (byte) ('a' + random.nextInt(3));
+    Files.write(new File(root, "DEPL/list.txt").toPath(), text);
+    Files.write(new File(root, "DEPL/small.txt").toPath(), "hello".getBytes());
+    return root;
+  }
+
+  private File zip(File root, boolean parallel) throws IOException {
+    File zipFile = new File(tmp.getRoot(), "content-" + parallel + ".zip");
+    new ZipEngine.Builder().withParallelCompression(parallel).build().zip(root, zipFile, true, null);
+    return zipFile;
+  }
+
+  @Test
+  public void testStreamingUnzip() throws Exception {
+    File root = makeTree();
+    for (boolean parallel : new boolean[] {true, false}) {
+      File zipFile = zip(root, parallel);
+      File outDir = new File(tmp.getRoot(), "out-" + parallel);
+      List<Long> progress = new ArrayList<>();
+      boolean finished = new StreamingUnzip.Builder()
+          .withTotalSize(zipFile.length())
+          .withListener((current, total) -> progress.add(current) || true)
+          .build()
+          .unzip(StreamingUnzip.fileSource(zipFile), outDir);
+      assertTrue(finished);
+      assertSameTree(root, new File(outDir, "content"));
+      assertTrue(new File(outDir, "content/DEPL/empty").isDirectory());
+      assertFalse(new File(outDir, StreamingUnzip.PROGRESS_FILE_NAME).exists());
+      try (ZipFile zip = new ZipFile(zipFile)) {
+        assertEquals(zip.size(), progress.size());
+      }
+    }
+  }
+
+  @Test
+  public void testResumesAfterFailedRead() throws Exception {
+    File zipFile = zip(makeTree(), true);
+    byte[] zipBytes = Files.readAllBytes(zipFile.toPath());
+    List<Long> opens = new ArrayList<>();
+    // The first two opens fail part way through.
+    StreamingUnzip.Source flaky = offset -> {
+      opens.add(offset);
+      InputStream in = new ByteArrayInputStream(zipBytes, (int) offset, zipBytes.length - (int) offset);
+      long failAt = opens.size() <= 2 ? 300000 : Long.MAX_VALUE;
+      return new FilterInputStream(in) {
+        long read = 0;
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+          if (read >= failAt) throw new IOException("Connection reset");
+          int n = super.read(b, off, (int) Math.min(len, failAt - read));
+          read += Math.max(0, n);
+          return n;
+        }
+      };
+    };
+    File outDir = new File(tmp.getRoot(), "out");
+    assertTrue(new StreamingUnzip.Builder().withId("z").build().unzip(flaky, outDir));
+    assertEquals(3, opens.size());
+    assertEquals(0L, (long) opens.get(0));
+    assertTrue(opens.get(1) > 0);
+    assertTrue(opens.get(2) >= opens.get(1));
+    assertSameTree(new File(tmp.getRoot(), "content"), new File(outDir, "content"));
+  }
+
+  @Test
+  public void testCancelAndResume() throws Exception {
+    File root = makeTree();
+    File zipFile = zip(root, true);
+    File outDir = new File(tmp.getRoot(), "out");
+    int[] entries = {0};
+    boolean finished = new StreamingUnzip.Builder()
+        .withId("rev-a")
+        .withListener((current, total) -> ++entries[0] < 10)
+        .build()
+        .unzip(StreamingUnzip.fileSource(zipFile), outDir);
+    assertFalse(finished);
+    assertTrue(new File(outDir, StreamingUnzip.PROGRESS_FILE_NAME).exists());
+
+    // The same zip resumes: only the remaining entries are extracted.
+    entries[0] = 0;
+    finished = new StreamingUnzip.Builder()
+        .withId("rev-a")
+        .withListener((current, total) -> ++entries[0] > 0)
+        .build()
+        .unzip(StreamingUnzip.fileSource(zipFile), outDir);
+    assertTrue(finished);
+    try (ZipFile zip = new ZipFile(zipFile)) {
+      assertEquals(zip.size() - 10, entries[0]);
+    }
+    assertSameTree(root, new File(outDir, "content"));
+  }
+
+  @Test
+  public void testDifferentZipStartsOver() throws Exception {
+    File root = makeTree();
+    File zipFile = zip(root, true);
+    File outDir = tmp.newFolder("out");
+    Files.write(new File(outDir, "stale.txt").toPath(), new byte[10]);
+    assertTrue(new StreamingUnzip.Builder().withId("rev-b").build()
+        .unzip(StreamingUnzip.fileSource(zipFile), outDir));
+    assertFalse(new File(outDir, "stale.txt").exists());
+    assertSameTree(root, new File(outDir, "content"));
+  }
+
+  @Test
+  public void testCorruptEntryIsRejected() throws Exception {
+    File zipFile = zip(makeTree(), true);
+    byte[] zipBytes = Files.readAllBytes(zipFile.toPath());
+    long dataOffset;
+    try (ZipFile zip = new ZipFile(zipFile)) {
+      ZipEntry entry = zip.getEntry("content/DEPL/messages/audio/m7.a18");
+      assertNotNull(entry);
+      assertEquals(ZipEntry.STORED, entry.getMethod());
+      // Find the entry's data: it's the only place its first bytes occur.
+      byte[] first = new byte[64];
+      try (InputStream in = zip.getInputStream(entry)) {
+        assertEquals(64, in.read(first));
+      }
+      dataOffset = indexOf(zipBytes, first);
+    }
+    zipBytes[(int) dataOffset + 1000] ^= 0x10;
+    File corrupt = new File(tmp.getRoot(), "corrupt.zip");
+    Files.write(corrupt.toPath(), zipBytes);
+    try {
+      new StreamingUnzip.Builder().build()
+          .unzip(StreamingUnzip.fileSource(corrupt), new File(tmp.getRoot(), "out"));
+      fail("Expected a CRC error");
+    } catch (ZipException expected) {
+      assertTrue(expected.getMessage().contains("m7.a18"));
+    }
+  }
+
+  private static long indexOf(byte[] haystack, byte[] needle) {
+    outer:
+    for (int i = 0; i + needle.length <= haystack.length; i++) {
+      for (int j = 0; j < needle.length; j++) {
+        if (haystack[i + j] != needle[j]) continue outer;
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  private static void assertSameTree(File expected, File actual) throws IOException {
+    String[] names = expected.list();
+    assertNotNull(names);
+    for (String name : names) {
+      File e = new File(expected, name);
+      File a = new File(actual, name);
+      if (e.isDirectory()) {
+        assertTrue(a.getPath(), a.isDirectory());
+        assertSameTree(e, a);
+      } else {
+        assertArrayEquals(name, Files.readAllBytes(e.toPath()), Files.readAllBytes(a.toPath()));
+      }
+    }
+    assertEquals(names.length, actual.list().length);
+  }
+}
@@ -0,0 +1,220 @@
+package core.fs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.core.fs.ZipEngine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+public class ZipEngineTest {
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final Random random = new Random(1);
+
+  /**
+   * A deployment-like tree: small and large audio (stored), small and large text (deflated), an
+   * empty file, an empty directory, and a name that isn't ASCII.
+   */
+  private File makeTree() throws IOException {
+    File root = tmp.newFolder("content");
+    File messages = new File(root, "messages/audio");
+    assertTrue(messages.mkdirs());
+    assertTrue(new File(root, "empty").mkdirs());
+    write(new File(messages, "small.a18"), randomBytes(50000));
+    write(new File(messages, "large.mp3"), randomBytes(3 * 1024 * 1024 + 17));
+    write(new File(root, "messages/list.txt"), text(20000));
+    write(new File(root, "large.txt"), text(2 * 1024 * 1024 + 5));
+    write(new File(root, "nothing.txt"), new byte[0]);
+    write(new File(root, "B\u01cenb\u00f9.txt"), text(100));
+    return root;
+  }
+
+  @Test
+  public void testParallelZipRoundTrip() throws Exception {
+    File root = makeTree();
+    File zipFile = new File(tmp.getRoot(), "out/content.zip");
+    new ZipEngine.Builder().withThreads(4).build().zip(root, zipFile, true, null);
+
+    Map<String, byte[]> expected = contentsOf(root.getParentFile(), root);
+    assertEquals(expected.keySet(), readWithZipFile(zipFile).keySet());
+    for (Map.Entry<String, byte[]> entry : readWithZipFile(zipFile).entrySet()) {
+      assertArrayEquals(entry.getKey(), expected.get(entry.getKey()), entry.getValue());
+    }
+    for (Map.Entry<String, byte[]> entry : readWithZipInputStream(zipFile).entrySet()) {
+      assertArrayEquals(entry.getKey(), expected.get(entry.getKey()), entry.getValue());
+    }
+
+    try (ZipFile zip = new ZipFile(zipFile)) {
+      assertEquals(ZipEntry.STORED, zip.getEntry("content/messages/audio/small.a18").getMethod());
+      assertEquals(ZipEntry.STORED, zip.getEntry("content/messages/audio/large.mp3").getMethod());
+      ZipEntry large = zip.getEntry("content/large.txt");
+      assertEquals(ZipEntry.DEFLATED, large.getMethod());
+      assertTrue(large.getCompressedSize() < large.getSize());
+      assertNotNull(zip.getEntry("content/empty/"));
+    }
+
+    File outDir = tmp.newFolder("unzipped");
+    new ZipEngine.Builder().withThreads(4).build().unzip(zipFile, outDir, null);
+    assertTrue(new File(outDir, "content/empty").isDirectory());
+    Map<String, byte[]> unzipped = contentsOf(outDir, new File(outDir, "content"));
+    assertEquals(expected.keySet(), unzipped.keySet());
+    for (Map.Entry<String, byte[]> entry : unzipped.entrySet()) {
+      assertArrayEquals(entry.getKey(), expected.get(entry.getKey()), entry.getValue());
+    }
+  }
+
+  @Test
+  public void testSequentialAndParallelAgree() throws Exception {
+    File root = makeTree();
+    ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+    long parallelBytes = new ZipEngine.Builder().withThreads(3).build().zip(root, parallel, false);
+    ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+    long sequentialBytes = new ZipEngine.Builder()
+        .withThreads(1)
+        .withParallelCompression(false)
+        .build()
+        .zip(root, sequential, false);
+    assertEquals(parallel.size(), parallelBytes);
+    assertEquals(sequential.size(), sequentialBytes);
+
+    File parallelZip = tmp.newFile("parallel.zip");
+    Files.write(parallelZip.toPath(), parallel.toByteArray());
+    File sequentialZip = tmp.newFile("sequential.zip");
+    Files.write(sequentialZip.toPath(), sequential.toByteArray());
+    Map<String, byte[]> fromParallel = readWithZipInputStream(parallelZip);
+    Map<String, byte[]> fromSequential = readWithZipInputStream(sequentialZip);
+    assertEquals(fromSequential.keySet(), fromParallel.keySet());
+    for (String name : fromSequential.keySet()) {
+      assertArrayEquals(name, fromSequential.get(name), fromParallel.get(name));
+    }
+  }
+
+  @Test
+  public void testZipSubdirs() throws Exception {
+    File root = makeTree();
+    File zipFile = new File(tmp.getRoot(), "subdirs.zip");
+    new ZipEngine.Builder().build().zip(root, zipFile, false, new String[] {"messages", "missing"});
+    Map<String, byte[]> entries = readWithZipFile(zipFile);
+    assertEquals(new HashSet<>(Arrays.asList("messages/", "messages/audio/",
+        "messages/audio/small.a18", "messages/audio/large.mp3", "messages/list.txt")),
+        entries.keySet());
+  }
+
+  @Test
+  public void testUnzipCancel() throws Exception {
+    File root = tmp.newFolder("many");
+    for (int i = 0; i < 1000; i++) {
+      write(new File(root, "file" + i + ".txt"), text(100));
+    }
+    File zipFile = new File(tmp.getRoot(), "many.zip");
+    new ZipEngine.Builder().build().zip(root, zipFile, false, null);
+
+    File outDir = tmp.newFolder("cancelled");
+    AtomicInteger calls = new AtomicInteger();
+    new ZipEngine.Builder().withThreads(2).build().unzip(zipFile, outDir, (current, total) -> {
+      // The first call is the (0, total) before anything is extracted.
+      return calls.incrementAndGet() < 3;
+    });
+    assertEquals(3, calls.get());
+    String[] extracted = outDir.list();
+    assertNotNull(extracted);
+    assertFalse(extracted.length == 1000);
+    assertTrue(extracted.length >= 2);
+  }
+
+  private byte[] randomBytes(int size) {
+    byte[] bytes = new byte[size];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+
+  private byte[] text(int size) {
+    byte[] bytes = new byte[size];
+    for (int i = 0; i < size; i++) {
+      bytes[i] = (byte) ('a' + random.nextInt(4));
+    }
+    return bytes;
+  }
+
+  private static void write(File file, byte[] bytes) throws IOException {
+    try (OutputStream out = new FileOutputStream(file)) {
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * The files (and directories, as names ending in '/', with no bytes) under dir, by name
+   * relative to base.
+   */
+  private static Map<String, byte[]> contentsOf(File base, File dir) throws IOException {
+    Map<String, byte[]> contents = new HashMap<>();
+    String prefix = base.toURI().relativize(dir.toURI()).getPath();
+    if (!prefix.isEmpty()) {
+      contents.put(prefix, new byte[0]);
+    }
+    for (File file : dir.listFiles()) {
+      if (file.isDirectory()) {
+        contents.putAll(contentsOf(base, file));
+      } else {
+        contents.put(base.toURI().relativize(file.toURI()).getPath(), Files.readAllBytes(file.toPath()));
+      }
+    }
+    return contents;
+  }
+
+  private static Map<String, byte[]> readWithZipFile(File zipFile) throws IOException {
+    Map<String, byte[]> contents = new HashMap<>();
+    try (ZipFile zip = new ZipFile(zipFile)) {
+      for (ZipEntry entry : java.util.Collections.list(zip.entries())) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        copy(zip.getInputStream(entry), bytes);
+        contents.put(entry.getName(), bytes.toByteArray());
+      }
+    }
+    return contents;
+  }
+
+  private static Map<String, byte[]> readWithZipInputStream(File zipFile) throws IOException {
+    Map<String, byte[]> contents = new HashMap<>();
+    try (ZipInputStream zin = new ZipInputStream(new FileInputStream(zipFile))) {
+      ZipEntry entry;
+      while ((entry = zin.getNextEntry()) != null) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        copy(zin, bytes);
+        contents.put(entry.getName(), bytes.toByteArray());
+      }
+    }
+    return contents;
+  }
+
+  private static void copy(java.io.InputStream in, OutputStream out) throws IOException {
+    byte[] buffer = new byte[8192];
+    int length;
+    while ((length = in.read(buffer)) > 0) {
+      out.write(buffer, 0, length);
+    }
+  }
+}
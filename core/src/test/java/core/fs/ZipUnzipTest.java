@@ -0,0 +1,55 @@
+package core.fs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.core.fs.ZipUnzip;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class ZipUnzipTest {
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testZipToStream() throws Exception {
+    File dataDir = tmp.newFolder("tbData");
+    File recordings = new File(dataDir, "recordings");
+    assertTrue(recordings.mkdirs());
+    byte[] audio = new byte[200000];
+    new Random(1).nextBytes(audio);
+    Files.write(new File(recordings, "uf1.a18").toPath(), audio);
+    byte[] log = new byte[100000];
+    Files.write(new File(dataDir, "log.txt").toPath(), log);
+
+    File zipFile = new File(tmp.getRoot(), "tbData.zip");
+    long bytes;
+    try (OutputStream out = new FileOutputStream(zipFile)) {
+      bytes = ZipUnzip.zip(dataDir, out, true, ZipUnzip.COMPRESSED_AUDIO_EXTENSIONS);
+    }
+    assertEquals(zipFile.length(), bytes);
+
+    try (ZipFile zip = new ZipFile(zipFile)) {
+      ZipEntry audioEntry = zip.getEntry("tbData/recordings/uf1.a18");
+      assertEquals(ZipEntry.STORED, audioEntry.getMethod());
+      ZipEntry logEntry = zip.getEntry("tbData/log.txt");
+      assertEquals(ZipEntry.DEFLATED, logEntry.getMethod());
+      assertTrue(logEntry.getCompressedSize() < log.length);
+    }
+
+    File outDir = tmp.newFolder("out");
+    ZipUnzip.unzip(zipFile, outDir);
+    assertArrayEquals(audio, Files.readAllBytes(new File(outDir, "tbData/recordings/uf1.a18").toPath()));
+    assertArrayEquals(log, Files.readAllBytes(new File(outDir, "tbData/log.txt").toPath()));
+  }
+}
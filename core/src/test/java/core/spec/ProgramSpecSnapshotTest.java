@@ -0,0 +1,193 @@
+package core.spec;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.core.spec.ContentSpec;
+import org.literacybridge.core.spec.ProgramSpec;
+import org.literacybridge.core.spec.RecipientList;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ProgramSpecSnapshotTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File snapshots;
+
+    @Before
+    public void setUp() throws IOException {
+        snapshots = tmp.newFolder("snapshots");
+        ProgramSpec.setSnapshotDirectory(snapshots);
+    }
+
+    @After
+    public void tearDown() {
+        ProgramSpec.setSnapshotDirectory(null);
+    }
+
+    private File copyProgSpec() throws IOException {
+        File source = new File(ProgramSpecSnapshotTest.class.getClassLoader().getResource("progspec1").getFile());
+        File dir = tmp.newFolder("progspec");
+        for (File file : source.listFiles((d, n) -> n.endsWith(".csv"))) {
+            Files.copy(file.toPath(), new File(dir, file.getName()).toPath());
+        }
+        return dir;
+    }
+
+    @Test
+    public void testSnapshotMatchesCsv() throws IOException {
+        File dir = copyProgSpec();
+
+        // From the .csv files, with a ProgramSpec that doesn't use a snapshot.
+        ProgramSpec fromCsv = new ProgramSpec(filenames -> {
+            for (String filename : filenames) {
+                File file = new File(dir, filename);
+                if (file.exists()) {
+                    try {
+                        return Files.newInputStream(file.toPath());
+                    } catch (IOException e) {
+                        return null;
+                    }
+                }
+            }
+            return null;
+        });
+        ProgramSpec first = new ProgramSpec(dir);
+        assertEquals(12, first.getRecipients().size());
+        File snapshot = onlySnapshot();
+        // Nothing is written beside the .csv files.
+        assertEquals(0, dir.listFiles((d, n) -> !n.endsWith(".csv")).length);
+        byte[] snapshotBytes = Files.readAllBytes(snapshot.toPath());
+
+        // The same again, from the snapshot; it isn't rewritten.
+        ProgramSpec second = new ProgramSpec(dir);
+        for (ProgramSpec programSpec : new ProgramSpec[]{first, second}) {
+            assertEquals(fromCsv.getRecipients().size(), programSpec.getRecipients().size());
+            assertEquals(fromCsv.getRecipientsMap(), programSpec.getRecipientsMap());
+            assertEquals(fromCsv.getDeployments().size(), programSpec.getDeployments().size());
+            assertEquals(fromCsv.getLanguagesForDeployment(1), programSpec.getLanguagesForDeployment(1));
+            assertEquals(fromCsv.getRecipientsForDeployment(1).size(), programSpec.getRecipientsForDeployment(1).size());
+            assertEquals(describe(fromCsv.getContentSpec()), describe(programSpec.getContentSpec()));
+        }
+        assertArrayEquals(snapshotBytes, Files.readAllBytes(snapshot.toPath()));
+    }
+
+    @Test
+    public void testChangedCsvReplacesSnapshot() throws IOException {
+        File dir = copyProgSpec();
+        assertEquals(12, new ProgramSpec(dir).getRecipients().size());
+
+        File recipientsFile = new File(dir, "recipients.csv");
+        Files.write(recipientsFile.toPath(),
+            "999,TEST,Amplio,Amplio,Terrestrial,HI,HI,Haiku,New Place,,0,1,Someone,Group,en,,\n".getBytes(),
+            StandardOpenOption.APPEND);
+        ProgramSpec programSpec = new ProgramSpec(dir);
+        assertEquals(13, programSpec.getRecipients().size());
+        assertNotNull(programSpec.getRecipients().getRecipient("999"));
+        assertEquals(1, programSpec.getRecipients().getRecipientsInCommunity("New Place").size());
+    }
+
+    @Test
+    public void testCorruptSnapshotIsIgnored() throws IOException {
+        File dir = copyProgSpec();
+        assertEquals(12, new ProgramSpec(dir).getRecipients().size());
+        File snapshot = onlySnapshot();
+        byte[] bytes = Files.readAllBytes(snapshot.toPath());
+        Files.write(snapshot.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+        // Touch a .csv file, unchanged, so that the snapshot in memory isn't used.
+        File recipientsFile = new File(dir, "recipients.csv");
+        assertTrue(recipientsFile.setLastModified(recipientsFile.lastModified() - 10_000));
+
+        assertEquals(12, new ProgramSpec(dir).getRecipients().size());
+        assertEquals(bytes.length, snapshot.length());
+    }
+
+    @Test
+    public void testIndices() throws IOException {
+        ProgramSpec programSpec = new ProgramSpec(copyProgSpec());
+        RecipientList recipients = programSpec.getRecipients();
+
+        assertEquals("101", recipients.getRecipient("101").recipientid);
+        assertNull(recipients.getRecipient("no such recipient"));
+        assertEquals(1, recipients.getRecipientsInCommunity("Point of View").size());
+        assertTrue(recipients.getRecipientsInCommunity("Nowhere").isEmpty());
+
+        assertSame(programSpec.getDeployments().get(1), programSpec.getDeployment(2));
+        assertNull(programSpec.getDeployment(99));
+
+        // The languages can be changed by the caller without changing the program spec.
+        Set<String> languages = programSpec.getLanguagesForDeployment(1);
+        languages.add("xyz");
+        assertFalse(programSpec.getLanguagesForDeployment(1).contains("xyz"));
+
+        int total = 0;
+        for (String language : programSpec.getLanguagesForDeployment(2)) {
+            total += programSpec.getRecipientsForDeploymentAndLanguage(2, language).size();
+        }
+        assertEquals(programSpec.getRecipientsForDeployment(2).size(), total);
+        assertTrue(programSpec.getRecipientsForDeploymentAndLanguage(2, "xyz").isEmpty());
+
+        ContentSpec contentSpec = programSpec.getContentSpec();
+        int previous = Integer.MIN_VALUE;
+        for (ContentSpec.DeploymentSpec deploymentSpec : contentSpec.getDeploymentSpecs()) {
+            assertTrue(deploymentSpec.getDeploymentNumber() > previous);
+            previous = deploymentSpec.getDeploymentNumber();
+            assertSame(deploymentSpec, contentSpec.getDeployment(previous));
+            for (ContentSpec.PlaylistSpec playlistSpec : deploymentSpec.getPlaylistSpecs()) {
+                assertSame(playlistSpec, deploymentSpec.getPlaylist(playlistSpec.getPlaylistTitle()));
+                for (ContentSpec.MessageSpec messageSpec : playlistSpec.getMessageSpecs()) {
+                    assertSame(messageSpec, playlistSpec.getMessageSpecs().get(messageSpec.getOrdinal()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSnapshotPerDirectory() throws IOException {
+        File dir = copyProgSpec();
+        new ProgramSpec(dir).getRecipients();
+        File other = tmp.newFolder("other");
+        for (File file : dir.listFiles()) {
+            Files.copy(file.toPath(), new File(other, file.getName()).toPath());
+        }
+        new ProgramSpec(other).getRecipients();
+        Set<String> names = new HashSet<>(Arrays.asList(snapshots.list()));
+        assertEquals(2, names.size());
+    }
+
+    private File onlySnapshot() {
+        File[] files = snapshots.listFiles();
+        assertNotNull(files);
+        assertEquals(1, files.length);
+        return files[0];
+    }
+
+    private static String describe(ContentSpec contentSpec) {
+        StringBuilder result = new StringBuilder();
+        for (ContentSpec.DeploymentSpec deploymentSpec : contentSpec.getDeploymentSpecs()) {
+            for (ContentSpec.PlaylistSpec playlistSpec : deploymentSpec.getPlaylistSpecs()) {
+                for (ContentSpec.MessageSpec messageSpec : playlistSpec.getMessageSpecs()) {
+                    result.append(messageSpec.getName()).append('|').append(messageSpec.languagecode).append('\n');
+                }
+            }
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,64 @@
+package core.tbloader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.core.fs.FsFile;
+import org.literacybridge.core.tbloader.ContentManifest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+public class ContentManifestTest {
+    private static final String PKG = "DEMO-1-en";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        ContentManifest manifest = new ContentManifest();
+        manifest.add(new ContentManifest.Entry("content/messages/a b.mp3", 1234, "abcd"));
+        manifest.add(new ContentManifest.Entry("system/csm_data.txt", 0, "ef01"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        manifest.write(out);
+
+        ContentManifest read = ContentManifest.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(2, read.size());
+        assertTrue(read.get("content/messages/a b.mp3").sameContent(manifest.get("content/messages/a b.mp3")));
+        assertEquals(1234, read.getTotalSize());
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAManifest() throws IOException {
+        ContentManifest.read(new ByteArrayInputStream("hello\n".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testShadowedFiles() throws IOException {
+        File deployment = tmp.newFolder("deployment");
+        File image = new File(deployment, "images.v2/" + PKG);
+        write(new File(image, "content/messages/a.mp3"), "");
+        write(new File(deployment, "shadowFiles/content/messages/a.mp3"), "the real audio");
+        write(new File(image, "system/empty.txt"), "");
+
+        ContentManifest manifest = ContentManifest.forImage(new FsFile(image),
+            new FsFile(new File(deployment, "shadowFiles")), Collections.emptySet());
+        assertEquals("the real audio".length(), manifest.get("content/messages/a.mp3").size);
+        // Only content is shadowed.
+        assertEquals(0, manifest.get("system/empty.txt").size);
+    }
+
+    private static void write(File file, String content) throws IOException {
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,123 @@
+package core.tbloader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.core.fs.FsFile;
+import org.literacybridge.core.fs.TbFile;
+import org.literacybridge.core.tbdevice.TbDeviceInfo;
+import org.literacybridge.core.tbloader.DeploymentInfo;
+import org.literacybridge.core.tbloader.TBLoaderConfig;
+import org.literacybridge.core.tbloader.TBLoaderConstants;
+import org.literacybridge.core.tbloader.TBLoaderScheduler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+public class TBLoaderSchedulerTest {
+    private final static String FS = File.separator;
+    private static final int NUM_DEVICES = 3;
+    private static final String srnPrefix = TBLoaderConstants.NEW_TB_SRN_PREFIX;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void updateSeveralDevices() throws IOException {
+        File cwd = new File("").getAbsoluteFile();
+        FsFile sourceImage = new FsFile(new File(cwd,
+            "testData"+FS+"TB-Loaders"+FS+"DEMO"+FS+"content"+FS+"DEMO-2016-2"));
+        File tbRootImage = new File(cwd, "testData"+FS+"tbImages"+FS+"DEMObefore");
+        File testRoot = tmp.newFolder();
+
+        // Several directory-backed Talking Books, each with its own serial number.
+        List<TBLoaderScheduler.DeviceUpdate> updates = new ArrayList<>();
+        List<File> tbRoots = new ArrayList<>();
+        for (int i = 0; i < NUM_DEVICES; i++) {
+            File tbRoot = new File(testRoot, "tbroot" + i);
+            assertTrue("Couldn't create subdirectory for virtual TB.", tbRoot.mkdirs());
+            FileUtils.copyDirectory(tbRootImage, tbRoot);
+            tbRoots.add(tbRoot);
+
+            String srn = String.format("%s%08x", srnPrefix, 0x12340000 + i);
+            TbDeviceInfo tbDevice = TbDeviceInfo.getDeviceInfoFor(new FsFile(tbRoot), null, srnPrefix,
+                TbDeviceInfo.DEVICE_VERSION.NONE);
+            tbDevice.setSerialNumber(srn);
+            updates.add(new TBLoaderScheduler.DeviceUpdate(tbDevice,
+                tbDevice.createDeploymentInfo("PROJ2"), getNewDeploymentInfo(srn)));
+        }
+
+        TbFile collectedDataDir = new FsFile(new File(testRoot, "collected-data"));
+        TBLoaderConfig tbLoaderConfig = new TBLoaderConfig.Builder()
+            .withTbLoaderId("1234")
+            .withCollectedDataDirectory(collectedDataDir)
+            .withTempDirectory(new FsFile(new File(testRoot, "tempdir")))
+            .withUserEmail("tester")
+            .build();
+
+        Set<String> listenerNames = new HashSet<>();
+        TBLoaderScheduler scheduler = new TBLoaderScheduler.Builder()
+            .withTbLoaderConfig(tbLoaderConfig)
+            .withDeploymentDirectory(sourceImage)
+            .withProgressListenerFactory(name -> {
+                synchronized (listenerNames) {
+                    listenerNames.add(name);
+                }
+                return new TBLoaderIntegrationTest.StatusDisplay();
+            })
+            .build();
+
+        TBLoaderScheduler.Summary summary = scheduler.updateAll(updates);
+
+        assertEquals(NUM_DEVICES, summary.results.size());
+        assertEquals(NUM_DEVICES, listenerNames.size());
+        for (int i = 0; i < NUM_DEVICES; i++) {
+            TBLoaderScheduler.DeviceResult result = summary.results.get(i);
+            assertNotNull("Expected a result for " + result.deviceName, result.result);
+            assertTrue("Expected bytes copied to " + result.deviceName, result.getBytesCopied() > 0);
+            assertEquals(updates.get(i), result.update);
+            // Every device's collected data is kept apart.
+            assertTrue(new File(collectedDataDir.getAbsolutePath(), result.deviceName).isDirectory());
+            assertEquals(updates.get(i).newDeploymentInfo.getSerialNumber(),
+                deploymentProperty(tbRoots.get(i), TBLoaderConstants.TALKING_BOOK_ID_PROPERTY));
+        }
+        assertTrue("Expected content to be shared among the devices", summary.bytesFromCache > 0);
+        assertEquals(NUM_DEVICES + 1, summary.format().size());
+    }
+
+    private String deploymentProperty(File tbRoot, String name) throws IOException {
+        Properties props = new Properties();
+        try (InputStream is = new FileInputStream(new File(tbRoot, "system"+FS+"deployment.properties"))) {
+            props.load(is);
+        }
+        return props.getProperty(name);
+    }
+
+    private DeploymentInfo getNewDeploymentInfo(String srn) {
+        return new DeploymentInfo.DeploymentInfoBuilder()
+            .withSerialNumber(srn)
+            .withNewSerialNumber(false)
+            .withProjectName("PROJ2")
+            .withDeploymentName("PROJ2-18-2")
+            .withPackageName("DEMO-2016-2-EN")
+            .withUpdateDirectory(null)
+            .withUpdateTimestamp("Tue Feb 27 00:00:00 HST 2018")
+            .withFirmwareRevision("r1999")
+            .withCommunity("demo-Seattle")
+            .withRecipientid("123456789abc")
+            .asTestDeployment(false)
+            .build();
+    }
+}
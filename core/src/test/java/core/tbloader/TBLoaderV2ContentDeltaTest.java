@@ -0,0 +1,241 @@
+package core.tbloader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.core.fs.FsFile;
+import org.literacybridge.core.fs.TbFile;
+import org.literacybridge.core.tbdevice.TbDeviceInfo;
+import org.literacybridge.core.tbloader.ContentManifest;
+import org.literacybridge.core.tbloader.DeploymentInfo;
+import org.literacybridge.core.tbloader.PackagesData;
+import org.literacybridge.core.tbloader.TBLoaderConfig;
+import org.literacybridge.core.tbloader.TBLoaderCore;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+/**
+ * Updates of a directory-backed TBv2, which copy only the content that changed since the last
+ * update, as described by the manifest left on the Talking Book.
+ *
+ * A same-sized change to a file on the Talking Book isn't seen by a delta update, but is replaced
+ * by a full copy; the tests use that to tell which kind of update was done.
+ */
+public class TBLoaderV2ContentDeltaTest {
+    private static final String PKG = "DEMO-1-en";
+    private static final String DEPL = "DEMO-21-1";
+    private static final String PROMPT = "content/prompts/en/1.mp3";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File deployment;
+    private File image;
+    private File tbRoot;
+    private File deviceManifest;
+
+    @Before
+    public void setUp() throws IOException {
+        deployment = tmp.newFolder("deployment");
+        image = new File(deployment, "images.v2/" + PKG);
+        write(new File(image, "content/messages/a.mp3"), "message a");
+        write(new File(image, "content/messages/b.mp3"), "message b");
+        write(new File(image, PROMPT), "prompt 1");
+        write(new File(image, "system/csm_data.txt"), "csm");
+        buildImage();
+
+        tbRoot = tmp.newFolder("tbroot");
+        write(new File(tbRoot, "system/device_ID.txt"), "00A1.00B2.00C3.4D");
+        deviceManifest = new File(tbRoot, "content/" + ContentManifest.DEVICE_MANIFEST_NAME);
+
+        // The first update has no manifest on the Talking Book, so is a full copy.
+        assertTrue(update().verified);
+        assertTrue(deviceManifest.exists());
+        assertEquals("message b", read(new File(tbRoot, "content/messages/b.mp3")));
+    }
+
+    @Test
+    public void testDeletesStaleFiles() throws IOException {
+        assertTrue(new File(image, "content/messages/b.mp3").delete());
+        buildImage();
+        changeOnDevice();
+
+        assertTrue(update().verified);
+        assertFalse(new File(tbRoot, "content/messages/b.mp3").exists());
+        assertEquals("message a", read(new File(tbRoot, "content/messages/a.mp3")));
+        assertDeltaUpdate();
+    }
+
+    @Test
+    public void testCopiesChangedFiles() throws IOException {
+        write(new File(image, "content/messages/a.mp3"), "message a, revised");
+        // Same size, different content.
+        write(new File(image, "content/messages/b.mp3"), "MESSAGE B");
+        write(new File(image, "content/messages/c.mp3"), "message c");
+        buildImage();
+        changeOnDevice();
+
+        assertTrue(update().verified);
+        assertEquals("message a, revised", read(new File(tbRoot, "content/messages/a.mp3")));
+        assertEquals("MESSAGE B", read(new File(tbRoot, "content/messages/b.mp3")));
+        assertEquals("message c", read(new File(tbRoot, "content/messages/c.mp3")));
+        // System files are cleared by every update, and restored from the image.
+        assertEquals("csm", read(new File(tbRoot, "system/csm_data.txt")));
+        assertDeltaUpdate();
+        assertNotNull(ContentManifest.read(new FsFile(deviceManifest)).get("content/messages/c.mp3"));
+    }
+
+    @Test
+    public void testRecopiesFilesMissingFromDevice() throws IOException {
+        // The manifest says the file is there, but it isn't, or isn't all there.
+        assertTrue(new File(tbRoot, "content/messages/a.mp3").delete());
+        write(new File(tbRoot, "content/messages/b.mp3"), "message");
+        changeOnDevice();
+
+        assertTrue(update().verified);
+        assertEquals("message a", read(new File(tbRoot, "content/messages/a.mp3")));
+        assertEquals("message b", read(new File(tbRoot, "content/messages/b.mp3")));
+        assertDeltaUpdate();
+    }
+
+    @Test
+    public void testMissingDeviceManifestCopiesAll() throws IOException {
+        assertTrue(deviceManifest.delete());
+        changeOnDevice();
+
+        assertTrue(update().verified);
+        assertFullUpdate();
+        assertNotNull(ContentManifest.read(new FsFile(deviceManifest)));
+    }
+
+    @Test
+    public void testCorruptDeviceManifestCopiesAll() throws IOException {
+        write(deviceManifest, "not a manifest\n");
+        changeOnDevice();
+
+        assertTrue(update().verified);
+        assertFullUpdate();
+        assertNotNull(ContentManifest.read(new FsFile(deviceManifest)));
+    }
+
+    @Test
+    public void testMalformedDeviceManifestCopiesAll() throws IOException {
+        // A valid header, but an entry that can't be parsed.
+        String manifest = read(deviceManifest);
+        write(deviceManifest, manifest.replaceFirst("\n", "\nabcd not-a-size content/messages/x.mp3\n"));
+        changeOnDevice();
+
+        assertTrue(update().verified);
+        assertFullUpdate();
+        assertNotNull(ContentManifest.read(new FsFile(deviceManifest)));
+    }
+
+    @Test
+    public void testMissingDeploymentManifestCopiesAll() throws IOException {
+        assertTrue(new File(deployment, ContentManifest.MANIFESTS_DIR + "/" + PKG + ".txt").delete());
+        changeOnDevice();
+
+        assertTrue(update().verified);
+        assertFullUpdate();
+        // Without a manifest for the deployment, the Talking Book gets none.
+        assertNull(ContentManifest.read(new FsFile(deviceManifest)));
+    }
+
+    /**
+     * Makes a change on the Talking Book that only a full copy replaces.
+     */
+    private void changeOnDevice() throws IOException {
+        write(new File(tbRoot, PROMPT), "PROMPT 1");
+    }
+
+    private void assertDeltaUpdate() throws IOException {
+        assertEquals("PROMPT 1", read(new File(tbRoot, PROMPT)));
+    }
+
+    private void assertFullUpdate() throws IOException {
+        assertEquals("prompt 1", read(new File(tbRoot, PROMPT)));
+    }
+
+    /**
+     * Writes the image's packages_data.txt and manifest, as the TB-Builder does.
+     */
+    private void buildImage() throws IOException {
+        PackagesData packagesData = new PackagesData(DEPL);
+        PackagesData.PackageData packageData = packagesData.addPackage(PKG)
+            .withPromptPath(Paths.get("content/prompts/en"))
+            .withAnnouncement(Paths.get(PROMPT));
+        PackagesData.PackageData.PlaylistData playlist = packageData.addPlaylist("health")
+            .withShortPrompt("health", Paths.get(PROMPT))
+            .withLongPrompt("health", Paths.get(PROMPT));
+        for (String name : new File(image, "content/messages").list()) {
+            playlist.addMessage(name, Paths.get("content/messages", name));
+        }
+        try (OutputStream out = new FileOutputStream(new File(image, "content/" + PackagesData.PACKAGES_DATA_TXT))) {
+            packagesData.exportPackageDataFile(out, PKG);
+        }
+
+        File manifestsDir = new File(deployment, ContentManifest.MANIFESTS_DIR);
+        assertTrue(manifestsDir.isDirectory() || manifestsDir.mkdirs());
+        ContentManifest.forImage(new FsFile(image), null,
+            Collections.singleton("content/" + PackagesData.PACKAGES_DATA_TXT))
+            .write(new FsFile(new File(manifestsDir, PKG + ".txt")));
+    }
+
+    private TBLoaderCore.Result update() throws IOException {
+        TbDeviceInfo tbDevice = TbDeviceInfo.getDeviceInfoFor(new FsFile(tbRoot), null, null,
+            TbDeviceInfo.DEVICE_VERSION.TBv2);
+        DeploymentInfo newDeploymentInfo = new DeploymentInfo.DeploymentInfoBuilder()
+            .withSerialNumber(tbDevice.getSerialNumber())
+            .withNewSerialNumber(false)
+            .withProjectName("DEMO")
+            .withDeploymentName(DEPL)
+            .withPackageNames(Collections.singletonList(PKG))
+            .withUpdateTimestamp("Tue Feb 27 00:00:00 HST 2018")
+            .withFirmwareRevision("r1999")
+            .withCommunity("demo-Seattle")
+            .withRecipientid("123456789abc")
+            .asTestDeployment(false)
+            .build();
+        TbFile testRoot = new FsFile(tmp.getRoot());
+        TBLoaderConfig tbLoaderConfig = new TBLoaderConfig.Builder()
+            .withTbLoaderId("1234")
+            .withCollectedDataDirectory(testRoot.open("collected-data"))
+            .withTempDirectory(testRoot.open("tempdir"))
+            .withUserEmail("tester")
+            .build();
+        return new TBLoaderCore.Builder()
+            .withTbLoaderConfig(tbLoaderConfig)
+            .withTbDeviceInfo(tbDevice)
+            .withDeploymentDirectory(new FsFile(deployment))
+            .withOldDeploymentInfo(tbDevice.createDeploymentInfo("DEMO"))
+            .withNewDeploymentInfo(newDeploymentInfo)
+            .withLocation("Other")
+            .withRefreshFirmware(false)
+            .withProgressListener(new TBLoaderIntegrationTest.StatusDisplay())
+            .build()
+            .update();
+    }
+
+    private static void write(File file, String content) throws IOException {
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}